@@ -6,6 +6,9 @@ import cs6650.ziqunliu.chatflow.client.metrics.Metrics;
 import cs6650.ziqunliu.chatflow.client.model.MessageType;
 import cs6650.ziqunliu.chatflow.client.websocket.ClientWebSocketEndpoint;
 import cs6650.ziqunliu.chatflow.client.websocket.ConnectionManager;
+import cs6650.ziqunliu.chatflow.client.websocket.ConnectionManagers;
+import cs6650.ziqunliu.chatflow.client.websocket.DeflateCodec;
+import cs6650.ziqunliu.chatflow.client.worker.BatchSenderWorker;
 import cs6650.ziqunliu.chatflow.client.worker.Producer;
 import cs6650.ziqunliu.chatflow.client.worker.SenderWorker;
 import java.io.IOException;
@@ -29,9 +32,26 @@ public class ClientMain {
   private static final int NUM_SENDERS = 40;
   private static final int QUEUE_CAPACITY = 500_000;
 
+  // Messages per batch frame (1 = one frame and one ACK per message) and max wait to fill one.
+  // Capped at the server's chatflow.batch.maxItems, which rejects every item of a larger batch
+  private static final int BATCH_MAX_ITEMS = Integer.getInteger("chatflow.batch.maxItems", 500);
+  private static final int BATCH_SIZE =
+      Math.max(1, Math.min(Integer.getInteger("chatflow.batch.size", 1), BATCH_MAX_ITEMS));
+  private static final long BATCH_LINGER_MS = Long.getLong("chatflow.batch.lingerMs", 5);
+
+  // Use the chatflow.binary.v1 subprotocol instead of JSON text frames
+  private static final boolean BINARY = Boolean.getBoolean("chatflow.binary");
+  // Wrap frames with DeflateCodec (chatflow.json.deflate.v1 / chatflow.binary.deflate.v1)
+  private static final boolean DEFLATE = Boolean.getBoolean("chatflow.deflate");
+
   private static final int POOL_SIZE = 2;  // connections per room
   public static final int NUM_ROOMS = 20;
-  private static final String WS_URI = "ws://54.148.180.35:8080/server/ws/chat";
+  // -Dchatflow.uri overrides it, e.g. when EmbeddedServer runs this client in its own JVM
+  private static final String WS_URI =
+      System.getProperty("chatflow.uri", "ws://54.148.180.35:8080/server/ws/chat");
+  // Rooms go to their owner among -Dchatflow.cluster.nodes, or all to WS_URI when it is unset
+  private static final ConnectionManagers ROUTING =
+      ConnectionManagers.fromProperties(WS_URI, BINARY, DEFLATE);
 
   public static void main(String[] args) throws Exception {
     java.util.logging.Logger.getLogger("org.glassfish.tyrus").setLevel(java.util.logging.Level.OFF);
@@ -58,7 +78,7 @@ public class ClientMain {
         int roomId = (threadId % NUM_ROOMS) + 1;  // Route 32 threads to 20 rooms
 
         // Each thread establishes one WebSocket connection
-        ConnectionManager manager = new ConnectionManager(WS_URI + "/" + roomId, 1, warmupMetrics);
+        ConnectionManager manager = ROUTING.create(roomId, 1, warmupMetrics);
 
         try {
           // System.out.println("Thread" + threadId);
@@ -75,7 +95,7 @@ public class ClientMain {
             // System.out.println("Thread " + threadId + " message " + i);
             ChatMessage msg = MessageGenerator.next();
             msg = new ChatMessage(msg.getUserId(), msg.getUsername(), msg.getMessage(), roomId,
-                msg.getMessageType(), msg.getTimestamp());
+                msg.getMessageType(), msg.getTimestamp(), msg.getMessageId());
 
             try {
               manager.sendMessage(msg);
@@ -132,7 +152,12 @@ public class ClientMain {
 
     // 1. Start consumer SenderWorkers. senderPool blocks at take() until producer puts messages.
     for (int i = 0; i < NUM_SENDERS; i++) {
-      senderPool.submit(new SenderWorker(i, queue, managers, metrics, sendersDoneLatch));
+      if (BATCH_SIZE > 1) {
+        senderPool.submit(new BatchSenderWorker(i, queue, managers, metrics, sendersDoneLatch,
+            BATCH_SIZE, BATCH_LINGER_MS));
+      } else {
+        senderPool.submit(new SenderWorker(i, queue, managers, metrics, sendersDoneLatch));
+      }
     }
     System.out.println("3");
 
@@ -166,6 +191,9 @@ public class ClientMain {
     senderPool.awaitTermination(5, TimeUnit.SECONDS);
 
     System.out.println(metrics.summary("MAIN PHASE, NUM_SENDERS=" + NUM_SENDERS));
+    if (DEFLATE) {
+      System.out.println(DeflateCodec.summary());
+    }
     
     // ===== Output per-message metrics =====
     try {
@@ -190,7 +218,7 @@ public class ClientMain {
 
     // Initialize managers/rooms
     for (int roomId = 1; roomId <= NUM_ROOMS; roomId++) {
-      managers[roomId] = new ConnectionManager(WS_URI + "/" + roomId, POOL_SIZE, metrics);
+      managers[roomId] = ROUTING.create(roomId, POOL_SIZE, metrics);
     }
 
     // Connect gradually - room by room to reduce server pressure
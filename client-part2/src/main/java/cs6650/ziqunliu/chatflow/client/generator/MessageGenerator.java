@@ -4,6 +4,7 @@ import cs6650.ziqunliu.chatflow.client.model.ChatMessage;
 import cs6650.ziqunliu.chatflow.client.model.MessageType;
 import java.time.Instant;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MessageGenerator {
 
@@ -21,6 +22,14 @@ public class MessageGenerator {
   private static final int MAX_USER_ID = 100_000;
   private static final int MAX_ROOM_ID = 20;
 
+  // -Dchatflow.messageIds=false sends messages without ids (no server-side dedupe)
+  private static final boolean MESSAGE_IDS =
+      Boolean.parseBoolean(System.getProperty("chatflow.messageIds", "true"));
+  // messageIds are "<run prefix>-<counter>", unique across client runs and compact on the wire
+  private static final String ID_PREFIX =
+      Long.toString(ThreadLocalRandom.current().nextLong() >>> 16, 36) + "-";
+  private static final AtomicLong ids = new AtomicLong();
+
   public static ChatMessage next() {
     ThreadLocalRandom r = ThreadLocalRandom.current();
 
@@ -31,7 +40,10 @@ public class MessageGenerator {
     MessageType type = pickType(r);
     String timestamp = Instant.now().toString();
 
-    return new ChatMessage(userId, username, message, roomId, type.name(), timestamp);
+    String messageId = MESSAGE_IDS ? ID_PREFIX + Long.toString(ids.incrementAndGet(), 36) : null;
+
+    return new ChatMessage(userId, username, message, roomId, type.name(), timestamp,
+        messageId);
   }
 
   /**
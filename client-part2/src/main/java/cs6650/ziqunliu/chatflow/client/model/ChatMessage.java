@@ -1,5 +1,7 @@
 package cs6650.ziqunliu.chatflow.client.model;
 
+import java.util.List;
+
 /**
  * Message model of client, represents payload of client. Serialized into JSON and sent to
  * WebSocket
@@ -12,6 +14,8 @@ public class ChatMessage {
   public final int roomId;
   public final String messageType;
   public final String timestamp;
+  // Same on every retry, so the server can drop the copies; null sends no messageId
+  public final String messageId;
 
   private ChatMessage() {
     userId = -1;
@@ -20,16 +24,23 @@ public class ChatMessage {
     roomId = -1;
     messageType = "POISON";
     timestamp = null;
+    messageId = null;
   }
 
   public ChatMessage(int userId, String username, String message, int roomId, String messageType,
       String timestamp) {
+    this(userId, username, message, roomId, messageType, timestamp, null);
+  }
+
+  public ChatMessage(int userId, String username, String message, int roomId, String messageType,
+      String timestamp, String messageId) {
     this.userId = userId;
     this.username = username;
     this.message = message;
     this.roomId = roomId;
     this.messageType = messageType;
     this.timestamp = timestamp;
+    this.messageId = messageId;
   }
 
 
@@ -56,11 +67,32 @@ public class ChatMessage {
   public String getTimestamp() {
     return timestamp;
   }
+
+  public String getMessageId() {
+    return messageId;
+  }
+
   public String toJson() {
     return "{" + "\"userId\":" + userId + "," + "\"username\":\"" + escape(username) + "\","
         + "\"message\":\"" + escape(message) + "\"," + "\"roomId\":" + roomId + ","
         + "\"messageType\":\"" + escape(messageType) + "\"," + "\"timestamp\":\"" + escape(
-        timestamp) + "\"" + "}";
+        timestamp) + "\""
+        + (messageId == null ? "" : ",\"messageId\":\"" + escape(messageId) + "\"") + "}";
+  }
+
+  /**
+   * Batch frame: the messages' JSON objects in one JSON array.
+   */
+  public static String toJsonArray(List<ChatMessage> messages) {
+    StringBuilder sb = new StringBuilder(messages.size() * 192);
+    sb.append('[');
+    for (int i = 0; i < messages.size(); i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(messages.get(i).toJson());
+    }
+    return sb.append(']').toString();
   }
 
   private static String escape(String s) {
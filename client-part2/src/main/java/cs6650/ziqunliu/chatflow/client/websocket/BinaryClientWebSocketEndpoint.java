@@ -0,0 +1,17 @@
+package cs6650.ziqunliu.chatflow.client.websocket;
+
+import cs6650.ziqunliu.chatflow.client.metrics.Metrics;
+import java.net.URI;
+import javax.websocket.ClientEndpoint;
+
+/**
+ * Same connection as {@link ClientWebSocketEndpoint}, but offers the chatflow.binary.v1
+ * subprotocol at handshake. The message handlers are inherited; the server answers in binary.
+ */
+@ClientEndpoint(subprotocols = {BinaryCodec.SUBPROTOCOL})
+public class BinaryClientWebSocketEndpoint extends ClientWebSocketEndpoint {
+
+  public BinaryClientWebSocketEndpoint(Metrics metrics, URI serverUri) {
+    super(metrics, serverUri);
+  }
+}
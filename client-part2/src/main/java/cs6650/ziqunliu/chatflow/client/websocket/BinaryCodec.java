@@ -0,0 +1,227 @@
+package cs6650.ziqunliu.chatflow.client.websocket;
+
+import cs6650.ziqunliu.chatflow.client.model.ChatMessage;
+import cs6650.ziqunliu.chatflow.client.model.MessageType;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Client side of the server's chatflow.binary.v1 wire format (see the server's BinaryCodec for
+ * the frame layouts). Only what the load client needs: encoding CHAT and BATCH frames and
+ * reading the frame type, messageId and BATCH_ACK codes of replies.
+ */
+public final class BinaryCodec {
+
+  public static final String SUBPROTOCOL = "chatflow.binary.v1";
+
+  public static final byte CHAT = 0x01;
+  public static final byte BATCH = 0x02;
+  public static final byte BROADCAST = 0x10;
+  public static final byte ERROR = 0x11;
+  public static final byte BATCH_ACK = 0x12;
+  public static final byte DUPLICATE_ACK = 0x13;
+
+  private static final int HAS_USER_ID = 1;
+  private static final int HAS_USERNAME = 1 << 1;
+  private static final int HAS_MESSAGE = 1 << 2;
+  private static final int HAS_TIMESTAMP = 1 << 3;
+  private static final int HAS_MESSAGE_TYPE = 1 << 4;
+  private static final int HAS_MESSAGE_ID = 1 << 5;
+
+  private BinaryCodec() {
+  }
+
+  public static ByteBuffer encode(ChatMessage msg) {
+    Writer out = new Writer(64 + msg.getMessage().length() * 3);
+    out.writeByte(CHAT);
+    writeChat(out, msg);
+    return out.toBuffer();
+  }
+
+  public static ByteBuffer encodeBatch(List<ChatMessage> messages) {
+    Writer out = new Writer(16 + messages.size() * 96);
+    out.writeByte(BATCH);
+    out.writeVarLong(messages.size());
+    for (ChatMessage msg : messages) {
+      writeChat(out, msg);
+    }
+    return out.toBuffer();
+  }
+
+  /**
+   * @return the type byte of a received frame, or -1 for an empty frame
+   */
+  public static int typeOf(ByteBuffer frame) {
+    return frame.remaining() == 0 ? -1 : frame.get(frame.position());
+  }
+
+  /**
+   * @return the messageId of a BROADCAST or DUPLICATE_ACK frame, null for other frames and
+   *         broadcasts of messages without one
+   */
+  public static String messageIdOf(ByteBuffer frame) {
+    ByteBuffer in = frame.duplicate();
+    int type = in.hasRemaining() ? in.get() : -1;
+    if (type == DUPLICATE_ACK) {
+      readVarLong(in);  // roomId
+      readVarLong(in);  // sequence
+    } else if (type == BROADCAST) {
+      for (int i = 0; i < 4; i++) {
+        readVarLong(in);  // roomId, sequence, serverMicros, userId
+      }
+      skipString(in);  // username
+      skipString(in);  // message
+      readVarLong(in);  // clientMicros
+      if (!in.hasRemaining()) {
+        return null;
+      }
+      in.get();  // type
+    } else {
+      return null;
+    }
+    String id = readString(in);
+    return id == null || id.isEmpty() ? null : id;
+  }
+
+  /**
+   * Render a binary BATCH_ACK in the JSON text form, so ACK handling is the same for both
+   * protocols.
+   */
+  public static String batchAckToJson(ByteBuffer frame) {
+    ByteBuffer in = frame.duplicate();
+    in.get();  // type
+    long roomId = readVarLong(in);
+    long accepted = readVarLong(in);
+    int count = (int) readVarLong(in);
+    StringBuilder sb = new StringBuilder(64 + count * 2);
+    sb.append("{\"status\":\"BATCH_ACK\",\"roomId\":\"").append(roomId)
+        .append("\",\"accepted\":").append(accepted).append(",\"codes\":[");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(readVarLong(in));
+    }
+    return sb.append("]}").toString();
+  }
+
+  private static void writeChat(Writer out, ChatMessage msg) {
+    // Fields the server cannot get in binary form are left out; it then reports them missing
+    long micros = 0;
+    boolean hasTimestamp = false;
+    try {
+      Instant instant = Instant.parse(msg.getTimestamp());
+      micros = Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L),
+          instant.getNano() / 1000);
+      hasTimestamp = true;
+    } catch (DateTimeException | ArithmeticException | NullPointerException ignored) {
+    }
+    int type = -1;
+    for (MessageType t : MessageType.values()) {
+      if (t.name().equals(msg.getMessageType())) {
+        type = t.ordinal();
+      }
+    }
+
+    int flags = HAS_USER_ID
+        | (msg.getUsername() != null ? HAS_USERNAME : 0)
+        | (msg.getMessage() != null ? HAS_MESSAGE : 0)
+        | (hasTimestamp ? HAS_TIMESTAMP : 0)
+        | (type >= 0 ? HAS_MESSAGE_TYPE : 0)
+        | (msg.getMessageId() != null ? HAS_MESSAGE_ID : 0);
+    out.writeByte(flags);
+    out.writeVarLong(zigzag(msg.getUserId()));
+    if (msg.getUsername() != null) {
+      out.writeString(msg.getUsername());
+    }
+    if (msg.getMessage() != null) {
+      out.writeString(msg.getMessage());
+    }
+    if (hasTimestamp) {
+      out.writeVarLong(zigzag(micros));
+    }
+    if (type >= 0) {
+      out.writeByte(type);
+    }
+    if (msg.getMessageId() != null) {
+      out.writeString(msg.getMessageId());
+    }
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long readVarLong(ByteBuffer in) {
+    long value = 0;
+    for (int shift = 0; shift < 64 && in.hasRemaining(); shift += 7) {
+      int b = in.get() & 0xFF;
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    return -1;
+  }
+
+  private static void skipString(ByteBuffer in) {
+    long length = readVarLong(in);
+    in.position((int) Math.min(in.limit(), in.position() + Math.max(0, length)));
+  }
+
+  private static String readString(ByteBuffer in) {
+    long length = readVarLong(in);
+    if (length < 0 || length > in.remaining()) {
+      return null;
+    }
+    byte[] bytes = new byte[(int) length];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static final class Writer {
+
+    private byte[] buf;
+    private int pos;
+
+    Writer(int capacity) {
+      buf = new byte[capacity];
+    }
+
+    void writeByte(int b) {
+      ensure(1);
+      buf[pos++] = (byte) b;
+    }
+
+    void writeVarLong(long value) {
+      ensure(10);
+      while ((value & ~0x7FL) != 0) {
+        buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buf[pos++] = (byte) value;
+    }
+
+    void writeString(String s) {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(bytes.length);
+      ensure(bytes.length);
+      System.arraycopy(bytes, 0, buf, pos, bytes.length);
+      pos += bytes.length;
+    }
+
+    ByteBuffer toBuffer() {
+      return ByteBuffer.wrap(buf, 0, pos).slice();
+    }
+
+    private void ensure(int extra) {
+      if (pos + extra > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+      }
+    }
+  }
+}
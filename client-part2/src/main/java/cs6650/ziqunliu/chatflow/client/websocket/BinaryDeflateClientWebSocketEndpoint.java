@@ -0,0 +1,17 @@
+package cs6650.ziqunliu.chatflow.client.websocket;
+
+import cs6650.ziqunliu.chatflow.client.metrics.Metrics;
+import java.net.URI;
+import javax.websocket.ClientEndpoint;
+
+/**
+ * BinaryCodec frames, compressed: offers chatflow.binary.deflate.v1 and wraps every frame in
+ * both directions with {@link DeflateCodec}.
+ */
+@ClientEndpoint(subprotocols = {DeflateCodec.BINARY_SUBPROTOCOL})
+public class BinaryDeflateClientWebSocketEndpoint extends ClientWebSocketEndpoint {
+
+  public BinaryDeflateClientWebSocketEndpoint(Metrics metrics, URI serverUri) {
+    super(metrics, serverUri, new DeflateCodec.Session(), true);
+  }
+}
@@ -3,6 +3,8 @@ package cs6650.ziqunliu.chatflow.client.websocket;
 import cs6650.ziqunliu.chatflow.client.metrics.Metrics;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -14,6 +16,7 @@ import javax.websocket.OnClose;
 import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
+import javax.websocket.RemoteEndpoint;
 import javax.websocket.Session;
 import javax.websocket.WebSocketContainer;
 
@@ -25,21 +28,56 @@ import javax.websocket.WebSocketContainer;
 public class ClientWebSocketEndpoint {
 
   private static final WebSocketContainer SHARED_CONTAINER = ContainerProvider.getWebSocketContainer();
+  // Server's ClusterRouting.REDIRECT_CLOSE_CODE: the room lives on the node in the close reason
+  public static final int REDIRECT_CLOSE_CODE = 4001;
+  // 1012 Service Restart from a draining server; with cluster routing the reason is the ws base
+  // URI of the room's next node, reached with the server's "skip" query parameter raised by one
+  public static final int DRAIN_CLOSE_CODE = 1012;
+  private static final String SKIP_PARAMETER = "skip";
+  // Close a session that received nothing for this long; 0 keeps it open forever. The server's
+  // heartbeat pings quiet sessions (Tyrus answers them) and closes dead ones itself
+  private static final long MAX_IDLE_TIMEOUT_MS = Long.getLong("chatflow.idleTimeoutMs", 0);
 
   private final Object connectLock = new Object();
   public Metrics metrics;
-  public URI serverUri;
+  public volatile URI serverUri;  // replaced when the server redirects this room
   public volatile Session session;
   public CountDownLatch openLatch = new CountDownLatch(1);
+
+  // One way of writing a frame, so text and binary share the waiting logic
+  private interface Send {
+    void to(RemoteEndpoint.Basic remote) throws IOException;
+  }
   
   // Fields for response waiting
   private volatile String lastResponse;
   private volatile CountDownLatch responseLatch;
+  // When set, only the sender's copy of this message (or its DUPLICATE ack) or an error frame
+  // counts as the response; other users' broadcasts and late ACKs of earlier sends do not
+  private volatile String expectedMessageId;
+  private static final String ERROR_MARKER = "\"errorCode\"";
+
+  // Fields for batch ACK waiting; other frames (broadcasts, replay) do not release it
+  private static final String BATCH_ACK_MARKER = "\"status\":\"BATCH_ACK\"";
+  private volatile String lastBatchAck;
+  private volatile CountDownLatch batchAckLatch;
 
 
+  // Set by the deflate subclasses: every frame is a DeflateCodec message wrapping either JSON
+  // text or (binaryPayload) a BinaryCodec frame
+  private final DeflateCodec.Session deflate;
+  private final boolean binaryPayload;
+
   public ClientWebSocketEndpoint(Metrics metrics, URI serverUri) {
+    this(metrics, serverUri, null, false);
+  }
+
+  protected ClientWebSocketEndpoint(Metrics metrics, URI serverUri, DeflateCodec.Session deflate,
+      boolean binaryPayload) {
     this.metrics = metrics;
     this.serverUri = serverUri;
+    this.deflate = deflate;
+    this.binaryPayload = binaryPayload;
   }
 
   public void connect() throws IOException {
@@ -66,7 +104,7 @@ public class ClientWebSocketEndpoint {
     }
 
     synchronized (this) {
-      this.session.getBasicRemote().sendText(text);
+      writeText(this.session.getBasicRemote(), text);
     }
   }
 
@@ -77,6 +115,29 @@ public class ClientWebSocketEndpoint {
    * @return Server response, or null if timeout
    */
   public String sendAndWait(String text, long timeoutMs) throws IOException, InterruptedException {
+    return sendAndWait(remote -> writeText(remote, text), null, timeoutMs);
+  }
+
+  /**
+   * {@link #sendAndWait(String, long)} for a message carrying {@code messageId}: only a reply
+   * for that id, or an error, is taken as its ACK.
+   */
+  public String sendAndWait(String text, String messageId, long timeoutMs)
+      throws IOException, InterruptedException {
+    return sendAndWait(remote -> writeText(remote, text), messageId, timeoutMs);
+  }
+
+  /**
+   * Binary variant of {@link #sendAndWait(String, String, long)} for chatflow.binary.v1
+   * sessions.
+   */
+  public String sendAndWait(ByteBuffer frame, String messageId, long timeoutMs)
+      throws IOException, InterruptedException {
+    return sendAndWait(remote -> writeBinary(remote, frame), messageId, timeoutMs);
+  }
+
+  private String sendAndWait(Send send, String messageId, long timeoutMs)
+      throws IOException, InterruptedException {
     if (this.session == null || !session.isOpen()) {
       throw new IOException("Session not open");
     }
@@ -85,12 +146,14 @@ public class ClientWebSocketEndpoint {
       // Create a new latch for this request
       this.responseLatch = new CountDownLatch(1);
       this.lastResponse = null;
+      this.expectedMessageId = messageId;
       
       // Send the message
-      this.session.getBasicRemote().sendText(text);
+      send.to(this.session.getBasicRemote());
       
       // Wait for response
       boolean received = responseLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+      this.expectedMessageId = null;
       
       // Log timeout warning (only first few to avoid spam)
       if (!received) {
@@ -101,6 +164,61 @@ public class ClientWebSocketEndpoint {
     }
   }
 
+  /**
+   * Send a batch frame and wait for the server's single batch ACK.
+   * @param batchJson JSON array of messages
+   * @param timeoutMs Timeout in milliseconds
+   * @return The BATCH_ACK frame, or null if timeout
+   */
+  public String sendBatchAndWait(String batchJson, long timeoutMs)
+      throws IOException, InterruptedException {
+    return sendBatchAndWait(remote -> writeText(remote, batchJson), timeoutMs);
+  }
+
+  /**
+   * Binary variant of {@link #sendBatchAndWait(String, long)}; the ACK is returned in its JSON
+   * text form.
+   */
+  public String sendBatchAndWait(ByteBuffer batchFrame, long timeoutMs)
+      throws IOException, InterruptedException {
+    return sendBatchAndWait(remote -> writeBinary(remote, batchFrame), timeoutMs);
+  }
+
+  private String sendBatchAndWait(Send send, long timeoutMs)
+      throws IOException, InterruptedException {
+    if (this.session == null || !session.isOpen()) {
+      throw new IOException("Session not open");
+    }
+
+    synchronized (this) {
+      this.batchAckLatch = new CountDownLatch(1);
+      this.lastBatchAck = null;
+
+      send.to(this.session.getBasicRemote());
+
+      boolean received = batchAckLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+      this.batchAckLatch = null;
+      if (!received) {
+        System.err.println("[TIMEOUT] No batch ACK after " + timeoutMs + "ms for " + serverUri);
+      }
+
+      return received ? lastBatchAck : null;
+    }
+  }
+
+  // Callers hold the endpoint's monitor, which also serializes the deflate stream
+  private void writeText(RemoteEndpoint.Basic remote, String text) throws IOException {
+    if (deflate == null) {
+      remote.sendText(text);
+    } else {
+      remote.sendBinary(deflate.encode(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8))));
+    }
+  }
+
+  private void writeBinary(RemoteEndpoint.Basic remote, ByteBuffer frame) throws IOException {
+    remote.sendBinary(deflate == null ? frame.duplicate() : deflate.encode(frame));
+  }
+
   public void close() {
     if (session != null) {
       try {
@@ -113,13 +231,29 @@ public class ClientWebSocketEndpoint {
   @OnOpen
   public void onOpen(Session session) {
     this.session = session;
-    this.session.setMaxIdleTimeout(0);
+    this.session.setMaxIdleTimeout(MAX_IDLE_TIMEOUT_MS);
+    if (deflate != null) {
+      deflate.restart();
+    }
     this.openLatch.countDown();
     this.metrics.incConnectionsCreated();
   }
 
   @OnMessage
   public void onMessage(String message) {
+    CountDownLatch batchLatch = this.batchAckLatch;
+    if (batchLatch != null && message.contains(BATCH_ACK_MARKER)) {
+      this.lastBatchAck = message;
+      batchLatch.countDown();
+      return;
+    }
+
+    String expected = this.expectedMessageId;
+    if (expected != null && !message.contains("\"messageId\":\"" + expected + "\"")
+        && !message.contains(ERROR_MARKER)) {
+      return;
+    }
+
     // Store the response
     this.lastResponse = message;
     
@@ -130,6 +264,48 @@ public class ClientWebSocketEndpoint {
     }
   }
 
+  /**
+   * Replies on chatflow.binary.v1 sessions. A BATCH_ACK is handed over in its JSON text form;
+   * any other frame releases a single-message wait like a text reply does. On deflate sessions
+   * every reply arrives here and is unwrapped first.
+   */
+  @OnMessage
+  public void onBinaryMessage(ByteBuffer message) {
+    if (deflate != null) {
+      byte[] payload = deflate.decode(message);
+      if (payload == null) {
+        System.err.println("Undecodable compressed frame from " + serverUri);
+        return;
+      }
+      if (!binaryPayload) {
+        onMessage(new String(payload, StandardCharsets.UTF_8));
+        return;
+      }
+      message = ByteBuffer.wrap(payload);
+    }
+
+    if (BinaryCodec.typeOf(message) == BinaryCodec.BATCH_ACK) {
+      CountDownLatch batchLatch = this.batchAckLatch;
+      if (batchLatch != null) {
+        this.lastBatchAck = BinaryCodec.batchAckToJson(message);
+        batchLatch.countDown();
+      }
+      return;
+    }
+
+    String expected = this.expectedMessageId;
+    if (expected != null && BinaryCodec.typeOf(message) != BinaryCodec.ERROR
+        && !expected.equals(BinaryCodec.messageIdOf(message))) {
+      return;
+    }
+
+    this.lastResponse = "binary frame type " + BinaryCodec.typeOf(message);
+    CountDownLatch latch = this.responseLatch;
+    if (latch != null) {
+      latch.countDown();
+    }
+  }
+
   @OnError
   public void onError(Session session, Throwable throwable) {
     System.err.println(
@@ -140,7 +316,58 @@ public class ClientWebSocketEndpoint {
 
   @OnClose
   public void onClose(Session session, CloseReason closeReason) {
+    int code = closeReason == null ? 0 : closeReason.getCloseCode().getCode();
+    if (code == REDIRECT_CLOSE_CODE) {
+      redirect(closeReason.getReasonPhrase(), false);
+    } else if (code == DRAIN_CLOSE_CODE && closeReason.getReasonPhrase().startsWith("ws")) {
+      redirect(closeReason.getReasonPhrase(), true);
+    }
+    if (deflate != null) {
+      deflate.close();
+    }
     this.session = null;
     this.openLatch.countDown();
   }
+
+  /**
+   * Point the next {@link #connect()} at {@code ownerUri}, keeping this endpoint's /{roomId} and
+   * query; a drained node's handover also raises the skip parameter. The ConnectionManager
+   * reconnects on its next send, as after any other close, and retries a send that failed on
+   * the old URI without backing off.
+   */
+  private void redirect(String ownerUri, boolean drained) {
+    if (ownerUri == null || ownerUri.isEmpty()) {
+      return;
+    }
+    URI current = this.serverUri;
+    String path = current.getRawPath();
+    String query = drained ? raiseSkip(current.getRawQuery()) : current.getRawQuery();
+    try {
+      this.serverUri = URI.create(ownerUri + path.substring(path.lastIndexOf('/'))
+          + (query == null ? "" : "?" + query));
+    } catch (IllegalArgumentException e) {
+      System.err.println("Ignoring redirect to invalid URI: " + ownerUri);
+      return;
+    }
+    System.err.println("Redirected " + current + " -> " + this.serverUri);
+  }
+
+  private static String raiseSkip(String query) {
+    int skip = 0;
+    StringBuilder rest = new StringBuilder();
+    if (query != null) {
+      for (String pair : query.split("&")) {
+        if (pair.startsWith(SKIP_PARAMETER + "=")) {
+          try {
+            skip = Integer.parseInt(pair.substring(SKIP_PARAMETER.length() + 1));
+          } catch (NumberFormatException ignored) {
+            // Counted from 0 again
+          }
+        } else if (!pair.isEmpty()) {
+          rest.append(pair).append('&');
+        }
+      }
+    }
+    return rest.append(SKIP_PARAMETER).append('=').append(skip + 1).toString();
+  }
 }
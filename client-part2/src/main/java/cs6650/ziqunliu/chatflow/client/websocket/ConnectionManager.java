@@ -5,6 +5,7 @@ import cs6650.ziqunliu.chatflow.client.model.ChatMessage;
 import cs6650.ziqunliu.chatflow.client.model.LatencyRecord;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -20,6 +21,8 @@ public class ConnectionManager {
   private static final Integer MAX_RETRIES = 5;
   private static final long BASE_BACKOFF_MS = 100;
   private static final long RESPONSE_TIMEOUT_MS = 2000; // 2 second timeout for server response
+  // Server's MessageValidationService.DUPLICATE batch item code
+  private static final int DUPLICATE = 15;
 
   private final Integer poolSize;  // number of connections
   private final String wsUri;  // base websocket uri, no /{roomId}
@@ -28,14 +31,27 @@ public class ConnectionManager {
   private final AtomicInteger rr = new AtomicInteger(0);
   private final Integer roomId;
   private final ConcurrentLinkedQueue<ChatMessage> failedMessages = new ConcurrentLinkedQueue<>();
+  private final boolean binary;  // chatflow.binary.v1 instead of JSON text
+  private final boolean deflate;  // wrap frames with DeflateCodec
 
   public ConnectionManager(String wsUri, int poolSize, Metrics metrics) {
+    this(wsUri, poolSize, metrics, false);
+  }
+
+  public ConnectionManager(String wsUri, int poolSize, Metrics metrics, boolean binary) {
+    this(wsUri, poolSize, metrics, binary, false);
+  }
+
+  public ConnectionManager(String wsUri, int poolSize, Metrics metrics, boolean binary,
+      boolean deflate) {
     if (wsUri.endsWith("/")) {
       wsUri = wsUri.substring(0, wsUri.length() - 1);
     }
     this.wsUri = wsUri;
     this.poolSize = poolSize;
     this.metrics = metrics;
+    this.binary = binary;
+    this.deflate = deflate;
 
     int rid = Integer.parseInt(wsUri.substring(wsUri.lastIndexOf('/') + 1));
     this.roomId = rid;
@@ -43,10 +59,19 @@ public class ConnectionManager {
     // poolSize is number of connections. Each connection
     URI uri = URI.create(wsUri);
     for (int connectionId = 0; connectionId < poolSize; connectionId++) {
-      this.endpoints.add(new ClientWebSocketEndpoint(metrics, uri));
+      this.endpoints.add(newEndpoint(uri));
     }
   }
 
+  private ClientWebSocketEndpoint newEndpoint(URI uri) {
+    if (deflate) {
+      return binary ? new BinaryDeflateClientWebSocketEndpoint(metrics, uri)
+          : new DeflateClientWebSocketEndpoint(metrics, uri);
+    }
+    return binary ? new BinaryClientWebSocketEndpoint(metrics, uri)
+        : new ClientWebSocketEndpoint(metrics, uri);
+  }
+
   public void connectAll() throws IOException {
     for (ClientWebSocketEndpoint ep : this.endpoints) {
       ep.connect();
@@ -80,6 +105,7 @@ public class ConnectionManager {
     for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
       // Count every attempt
       this.metrics.incSendAttempts();
+      URI target = this.endpoints.get(index).serverUri;
 
       try {  // Try to connect and send
 
@@ -99,7 +125,11 @@ public class ConnectionManager {
         }
 
         // Send and wait for server response (ACK)
-        String response = ep.sendAndWait(chatMessage.toJson(), RESPONSE_TIMEOUT_MS);
+        String response = binary
+            ? ep.sendAndWait(BinaryCodec.encode(chatMessage), chatMessage.getMessageId(),
+                RESPONSE_TIMEOUT_MS)
+            : ep.sendAndWait(chatMessage.toJson(), chatMessage.getMessageId(),
+                RESPONSE_TIMEOUT_MS);
         
         // Record ACK time immediately after receiving response
         long ackTime = System.currentTimeMillis();
@@ -150,6 +180,9 @@ public class ConnectionManager {
           return;
         }
 
+        if (redirected(index, target)) {
+          continue;
+        }
         try {  // B. Retry with exponential backoff
           Thread.sleep(backoff);
         } catch (InterruptedException ignored) {
@@ -173,6 +206,131 @@ public class ConnectionManager {
     }
   }
 
+  /**
+   * Send messages of this room as one batch frame and wait for the single batch ACK. The batch
+   * is retried as a whole like {@link #sendMessage}; each item then counts as a success or, if
+   * the server rejected it, a failure, all with the batch round trip as latency.
+   */
+  public void sendBatch(List<ChatMessage> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    int index = Math.floorMod(rr.getAndIncrement(), this.poolSize);
+    String batchJson = binary ? null : ChatMessage.toJsonArray(batch);
+    ByteBuffer batchFrame = binary ? BinaryCodec.encodeBatch(batch) : null;
+    long backoff = BASE_BACKOFF_MS;
+    long sendTime = System.currentTimeMillis();
+
+    for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
+      this.metrics.incSendAttempts(batch.size());
+      URI target = this.endpoints.get(index).serverUri;
+
+      try {
+        ClientWebSocketEndpoint ep = this.endpoints.get(index);
+        if (ep.session == null || !ep.session.isOpen()) {
+          if (!reconnect(index)) {
+            throw new IOException("Reconnect failed");
+          }
+        }
+        if (attempt > 1) {
+          sendTime = System.currentTimeMillis();
+        }
+
+        String ack = binary ? ep.sendBatchAndWait(batchFrame, RESPONSE_TIMEOUT_MS)
+            : ep.sendBatchAndWait(batchJson, RESPONSE_TIMEOUT_MS);
+        long latency = System.currentTimeMillis() - sendTime;
+        if (ack == null) {
+          throw new IOException("Batch ACK timeout");
+        }
+
+        int[] codes = parseCodes(ack, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+          ChatMessage msg = batch.get(i);
+          // A DUPLICATE item was accepted by an earlier attempt of this batch
+          boolean ok = codes[i] == 0 || codes[i] == DUPLICATE;
+          if (ok) {
+            this.metrics.incSuccess();
+          } else {
+            this.metrics.incFail();
+          }
+          this.metrics.recordLatency(new LatencyRecord(sendTime, msg.getMessageType(), latency,
+              ok ? "OK" : "REJECTED", msg.getRoomId()));
+        }
+        return;
+
+      } catch (IOException | RuntimeException | InterruptedException e) {
+        if (attempt == 1 && this.metrics.getFail() < 100) {
+          System.err.println("Batch send failed: room=" + roomId + ", size=" + batch.size()
+              + ", error=" + e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+
+        if (e instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+          failBatch(batch, sendTime);
+          return;
+        }
+        if (attempt == MAX_RETRIES) {
+          failBatch(batch, sendTime);
+          return;
+        }
+
+        if (redirected(index, target)) {
+          continue;
+        }
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException ignored) {
+          Thread.currentThread().interrupt();
+          failBatch(batch, sendTime);
+          return;
+        }
+        backoff *= 2;
+      }
+    }
+  }
+
+  private void failBatch(List<ChatMessage> batch, long sendTime) {
+    for (ChatMessage msg : batch) {
+      this.metrics.recordLatency(new LatencyRecord(sendTime, msg.getMessageType(), -1, "FAIL",
+          msg.getRoomId()));
+      this.metrics.incFail();
+    }
+    this.failedMessages.addAll(batch);
+  }
+
+  /**
+   * Read the per-item status codes out of a BATCH_ACK frame. Items missing from the ACK count
+   * as rejected.
+   */
+  private static int[] parseCodes(String ack, int count) {
+    int[] codes = new int[count];
+    java.util.Arrays.fill(codes, -1);
+    int start = ack.indexOf("\"codes\":[");
+    if (start < 0) {
+      return codes;
+    }
+    int pos = start + "\"codes\":[".length();
+    for (int i = 0; i < count && pos < ack.length() && ack.charAt(pos) != ']'; i++) {
+      int value = 0;
+      while (pos < ack.length() && Character.isDigit(ack.charAt(pos))) {
+        value = value * 10 + (ack.charAt(pos++) - '0');
+      }
+      codes[i] = value;
+      if (pos < ack.length() && ack.charAt(pos) == ',') {
+        pos++;
+      }
+    }
+    return codes;
+  }
+
+  /**
+   * @return true if the endpoint was sent to another node (a redirect or a drained node's
+   *     handover) since the attempt started: the next attempt goes there, with no need to wait
+   */
+  private boolean redirected(int index, URI target) {
+    return !target.equals(this.endpoints.get(index).serverUri);
+  }
+
   private boolean reconnect(int index) {
     try {
       this.endpoints.get(index).connect();
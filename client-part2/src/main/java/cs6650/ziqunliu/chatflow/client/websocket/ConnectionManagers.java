@@ -0,0 +1,54 @@
+package cs6650.ziqunliu.chatflow.client.websocket;
+
+import cs6650.ziqunliu.chatflow.client.metrics.Metrics;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates room ConnectionManagers pointed at the node that owns each room. The nodes come from
+ * {@code -Dchatflow.cluster.nodes} (comma-separated ws base URIs, exactly the strings the servers
+ * are given, in any order) and are placed on a {@link ConsistentHashRing} with
+ * {@code -Dchatflow.cluster.virtualNodes} points each. Without the property every room goes to
+ * the default URI. If the client's view is stale, the server closes the session with a redirect
+ * and the endpoint reconnects to the owner, see {@link ClientWebSocketEndpoint#onClose}.
+ */
+public class ConnectionManagers {
+
+  private final ConsistentHashRing ring;
+  private final boolean binary;
+  private final boolean deflate;
+
+  public ConnectionManagers(List<String> nodes, int virtualNodes, boolean binary,
+      boolean deflate) {
+    this.ring = new ConsistentHashRing(nodes, virtualNodes);
+    this.binary = binary;
+    this.deflate = deflate;
+  }
+
+  /**
+   * @param defaultUri ws base URI (no /{roomId}) used when chatflow.cluster.nodes is not set
+   */
+  public static ConnectionManagers fromProperties(String defaultUri, boolean binary,
+      boolean deflate) {
+    String nodes = System.getProperty("chatflow.cluster.nodes", "").trim();
+    return new ConnectionManagers(
+        Arrays.asList(nodes.isEmpty() ? new String[]{defaultUri} : nodes.split(",")),
+        Integer.getInteger("chatflow.cluster.virtualNodes", 160), binary, deflate);
+  }
+
+  /**
+   * @return ws base URI of the node owning {@code roomId}
+   */
+  public String nodeFor(int roomId) {
+    return ring.nodeFor(roomId);
+  }
+
+  public List<String> nodes() {
+    return ring.nodes();
+  }
+
+  public ConnectionManager create(int roomId, int poolSize, Metrics metrics) {
+    return new ConnectionManager(nodeFor(roomId) + "/" + roomId, poolSize, metrics, binary,
+        deflate);
+  }
+}
@@ -0,0 +1,112 @@
+package cs6650.ziqunliu.chatflow.client.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable consistent-hash ring mapping roomIds to nodes. Every node is placed at
+ * {@code virtualNodes} points, the 64-bit hashes of {@code node + "#" + i}; a room belongs to the
+ * first point at or after the hash of its id, wrapping around. Adding or removing one of N nodes
+ * only moves the rooms on the arcs that node gains or loses, about 1/N of them, and the virtual
+ * nodes keep every node's share of the ring close to 1/N.
+ *
+ * <p>Copy of the server's {@code cluster.ConsistentHashRing}: the client routes each room to the
+ * node the server will accept it on, so both must use the same hash, node list and virtualNodes.
+ * Points are a sorted {@code long[]} with a parallel owner index; a lookup is one binary search.
+ * The server's {@code ConsistentHashRingTest} compiles this file and fails if it routes any room
+ * differently, so change both copies together.
+ */
+public final class ConsistentHashRing {
+
+  private final List<String> nodes;
+  private final long[] points;
+  private final int[] owners;
+
+  /**
+   * @param nodes        node names, here ws base URIs; duplicates and blanks are dropped
+   * @param virtualNodes points per node, at least 1
+   */
+  public ConsistentHashRing(List<String> nodes, int virtualNodes) {
+    List<String> distinct = new ArrayList<>();
+    for (String node : nodes) {
+      node = node.trim();
+      if (!node.isEmpty() && !distinct.contains(node)) {
+        distinct.add(node);
+      }
+    }
+    if (distinct.isEmpty()) {
+      throw new IllegalArgumentException("ring needs at least one node");
+    }
+    this.nodes = Collections.unmodifiableList(distinct);
+
+    int perNode = Math.max(1, virtualNodes);
+    long[] entries = new long[distinct.size() * perNode];
+    long[] keyed = new long[entries.length];
+    // Sort points together with their owner: sort (point, index) pairs through an index array
+    Integer[] order = new Integer[entries.length];
+    for (int n = 0; n < distinct.size(); n++) {
+      for (int i = 0; i < perNode; i++) {
+        int at = n * perNode + i;
+        entries[at] = hash(distinct.get(n) + "#" + i);
+        order[at] = at;
+      }
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(entries[a], entries[b]));
+    int[] ownerOf = new int[entries.length];
+    for (int i = 0; i < order.length; i++) {
+      keyed[i] = entries[order[i]];
+      ownerOf[i] = order[i] / perNode;
+    }
+    this.points = keyed;
+    this.owners = ownerOf;
+  }
+
+  /**
+   * @return the node owning {@code roomId}
+   */
+  public String nodeFor(int roomId) {
+    return nodes.get(owners[indexFor(roomId)]);
+  }
+
+  public List<String> nodes() {
+    return nodes;
+  }
+
+  private int indexFor(int roomId) {
+    long key = mix(roomId);
+    int i = Arrays.binarySearch(points, key);
+    if (i < 0) {
+      i = -i - 1;
+    }
+    return i == points.length ? 0 : i;
+  }
+
+  /**
+   * 64-bit FNV-1a over the UTF-8 bytes, finished with the murmur3 mixer so that names differing
+   * only in the last character still land far apart.
+   */
+  static long hash(String s) {
+    long h = 0xcbf29ce484222325L;
+    for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+      h ^= b & 0xff;
+      h *= 0x100000001b3L;
+    }
+    return fmix64(h);
+  }
+
+  static long mix(int roomId) {
+    return fmix64(roomId * 0x9E3779B97F4A7C15L);
+  }
+
+  private static long fmix64(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
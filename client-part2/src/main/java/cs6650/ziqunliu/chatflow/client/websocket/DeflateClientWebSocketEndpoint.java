@@ -0,0 +1,17 @@
+package cs6650.ziqunliu.chatflow.client.websocket;
+
+import cs6650.ziqunliu.chatflow.client.metrics.Metrics;
+import java.net.URI;
+import javax.websocket.ClientEndpoint;
+
+/**
+ * JSON messages, compressed: offers chatflow.json.deflate.v1 and wraps every frame in both
+ * directions with {@link DeflateCodec}.
+ */
+@ClientEndpoint(subprotocols = {DeflateCodec.JSON_SUBPROTOCOL})
+public class DeflateClientWebSocketEndpoint extends ClientWebSocketEndpoint {
+
+  public DeflateClientWebSocketEndpoint(Metrics metrics, URI serverUri) {
+    super(metrics, serverUri, new DeflateCodec.Session(), false);
+  }
+}
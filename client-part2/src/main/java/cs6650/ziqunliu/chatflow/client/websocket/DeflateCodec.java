@@ -0,0 +1,216 @@
+package cs6650.ziqunliu.chatflow.client.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Client side of the server's chatflow.json.deflate.v1 and chatflow.binary.deflate.v1
+ * subprotocols (see the server's DeflateCodec for the message layout). Every message is one
+ * header byte (bit 0 COMPRESSED, bit 1 RESET) and a raw DEFLATE or plain payload; both sides
+ * prime new streams with the same {@link #DICTIONARY}.
+ *
+ * <p>Tuned with -Dchatflow.deflate.minBytes, -Dchatflow.deflate.level and
+ * -Dchatflow.deflate.contextTakeover, independently of the server's settings.
+ */
+public final class DeflateCodec {
+
+  public static final String JSON_SUBPROTOCOL = "chatflow.json.deflate.v1";
+  public static final String BINARY_SUBPROTOCOL = "chatflow.binary.deflate.v1";
+
+  private static final int MIN_BYTES = Integer.getInteger("chatflow.deflate.minBytes", 128);
+  private static final int LEVEL = Integer.getInteger("chatflow.deflate.level", 6);
+  private static final boolean CONTEXT_TAKEOVER =
+      Boolean.getBoolean("chatflow.deflate.contextTakeover");
+  // Same cap as the server's chatflow.ws.maxTextMessageBytes default
+  private static final int MAX_INFLATED_BYTES = 256 * 1024;
+
+  private static final int COMPRESSED = 1;
+  private static final int RESET = 1 << 1;
+
+  private static final byte[] TAIL = {0, 0, (byte) 0xFF, (byte) 0xFF};
+
+  /**
+   * Must stay byte-for-byte identical to the server's dictionary.
+   */
+  private static final byte[] DICTIONARY = (
+      "Hello!How are you?Anyone here?Nice to meet you.Good morning!Good night!What's up?LOL"
+          + "Sounds good.I agree.Let's go.See you later.Great idea.Thanks!You're welcome."
+          + "No problem.Interesting.Cool!Awesome!Nice.Where are you from?I'm studying CS."
+          + "Working on distributed systems.This is fun.Test message.Random chat.Checking in."
+          + "Join the room.Leaving soon.Back in a minute.Any updates?Let's debug.It works."
+          + "It fails sometimes.Retrying...Message queue.Thread pool.WebSocket client."
+          + "Performance test.Throughput matters.Warmup phase.Main phase.Connection dropped."
+          + "Reconnected.All good.Room is busy.Room is quiet.Ping.Pong.Done."
+          + "{\"status\":\"ERROR\",\"roomId\":\"\",\"errorCode\":\"VALIDATION_FAILED\","
+          + "\"message\":\"\",\"serverTimestamp\":\""
+          + "{\"status\":\"BATCH_ACK\",\"roomId\":\"\",\"accepted\":,\"codes\":[0,0,0,0,0,0,0,0]}"
+          + "{\"userId\":,\"username\":\"user\",\"message\":\"\",\"roomId\":,"
+          + "\"messageType\":\"TEXT\",\"timestamp\":\""
+          + "\"messageType\":\"JOIN\"\"messageType\":\"LEAVE\""
+          + "{\"userId\":\"\",\"username\":\"user\",\"clientTimestamp\":\"\","
+          + "\"messageType\":\"TEXT\",\"sequence\":,\"status\":\"SUCCESS\",\"roomId\":\"\","
+          + "\"message\":\"\",\"serverTimestamp\":\"").getBytes(StandardCharsets.UTF_8);
+
+  private static final LongAdder sentRaw = new LongAdder();
+  private static final LongAdder sentWire = new LongAdder();
+  private static final LongAdder receivedRaw = new LongAdder();
+  private static final LongAdder receivedWire = new LongAdder();
+  private static final LongAdder compressNanos = new LongAdder();
+  private static final LongAdder inflateNanos = new LongAdder();
+
+  private DeflateCodec() {
+  }
+
+  /**
+   * Compression state of one endpoint, reused across its reconnects. Sends are serialized by
+   * the endpoint and receives come from the container's single reader; the lock only orders
+   * them against {@link #close()}, which frees the native zlib streams when a connection
+   * closes. The next connection's {@link #restart()} allocates new ones.
+   */
+  public static final class Session {
+
+    private Deflater deflater;
+    private Inflater inflater;
+    private boolean streamStarted;
+
+    public Session() {
+      restart();
+    }
+
+    /**
+     * Start new streams; called when the endpoint (re)connects.
+     */
+    public synchronized void restart() {
+      if (deflater == null) {
+        deflater = new Deflater(LEVEL, true);
+        inflater = new Inflater(true);
+      }
+      streamStarted = false;
+    }
+
+    /**
+     * Free the native zlib streams; called when the connection closes. Idempotent.
+     */
+    public synchronized void close() {
+      if (deflater != null) {
+        deflater.end();
+        inflater.end();
+        deflater = null;
+        inflater = null;
+      }
+    }
+
+    /**
+     * @return the wrapped message; a closed session sends the payload uncompressed, which the
+     *     server accepts as well
+     */
+    public synchronized ByteBuffer encode(ByteBuffer payload) {
+      int inputLength = payload.remaining();
+      if (inputLength < MIN_BYTES || deflater == null) {
+        ByteBuffer out = ByteBuffer.allocate(1 + inputLength);
+        out.put((byte) 0).put(payload.duplicate()).flip();
+        sentRaw.add(inputLength);
+        sentWire.add(out.remaining());
+        return out;
+      }
+      long start = System.nanoTime();
+      int header = COMPRESSED;
+      if (!CONTEXT_TAKEOVER || !streamStarted) {
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        streamStarted = true;
+        header |= RESET;
+      }
+      byte[] input = new byte[inputLength];
+      payload.duplicate().get(input);
+      deflater.setInput(input);
+
+      byte[] out = new byte[inputLength / 2 + 64];
+      out[0] = (byte) header;
+      int length = 1;
+      while (true) {
+        length += deflater.deflate(out, length, out.length - length, Deflater.SYNC_FLUSH);
+        if (length < out.length) {
+          break;
+        }
+        out = Arrays.copyOf(out, out.length * 2);
+      }
+      length -= TAIL.length;
+
+      sentRaw.add(inputLength);
+      sentWire.add(length);
+      compressNanos.add(System.nanoTime() - start);
+      return ByteBuffer.wrap(out, 0, length);
+    }
+
+    /**
+     * @return the payload, or null if the message is malformed or the session is closed
+     */
+    public synchronized byte[] decode(ByteBuffer message) {
+      byte[] bytes = new byte[message.remaining()];
+      message.duplicate().get(bytes);
+      if (bytes.length == 0) {
+        return null;
+      }
+      receivedWire.add(bytes.length);
+      if ((bytes[0] & COMPRESSED) == 0) {
+        receivedRaw.add(bytes.length - 1);
+        return Arrays.copyOfRange(bytes, 1, bytes.length);
+      }
+      if (inflater == null) {
+        return null;
+      }
+      long start = System.nanoTime();
+      try {
+        if ((bytes[0] & RESET) != 0) {
+          inflater.reset();
+          inflater.setDictionary(DICTIONARY);
+        }
+        byte[] input = Arrays.copyOfRange(bytes, 1, bytes.length + TAIL.length);
+        System.arraycopy(TAIL, 0, input, bytes.length - 1, TAIL.length);
+        inflater.setInput(input);
+        byte[] out = new byte[Math.max(256, input.length * 4)];
+        int length = 0;
+        do {
+          if (length == out.length) {
+            if (out.length >= MAX_INFLATED_BYTES) {
+              return null;
+            }
+            out = Arrays.copyOf(out, Math.min(out.length * 2, MAX_INFLATED_BYTES));
+          }
+          int n = inflater.inflate(out, length, out.length - length);
+          if (n == 0 && !inflater.needsInput() && length < out.length) {
+            return null;
+          }
+          length += n;
+        } while (!inflater.needsInput() || length == out.length);
+        receivedRaw.add(length);
+        return Arrays.copyOf(out, length);
+      } catch (DataFormatException e) {
+        return null;
+      } finally {
+        inflateNanos.add(System.nanoTime() - start);
+      }
+    }
+  }
+
+  /**
+   * One line with the wire/raw ratio in each direction and the CPU spent per raw KB.
+   */
+  public static String summary() {
+    long sent = sentRaw.sum();
+    long received = receivedRaw.sum();
+    return String.format(
+        "DEFLATE: sent %d -> %d bytes (ratio %.3f, %.0f ns/KB), received %d -> %d bytes "
+            + "(ratio %.3f, %.0f ns/KB inflate)",
+        sent, sentWire.sum(), sent == 0 ? 1.0 : (double) sentWire.sum() / sent,
+        sent == 0 ? 0.0 : compressNanos.sum() * 1024.0 / sent,
+        receivedWire.sum(), received, received == 0 ? 1.0 : (double) receivedWire.sum() / received,
+        received == 0 ? 0.0 : inflateNanos.sum() * 1024.0 / received);
+  }
+}
@@ -0,0 +1,136 @@
+package cs6650.ziqunliu.chatflow.client.worker;
+
+import static cs6650.ziqunliu.chatflow.client.ClientMain.NUM_ROOMS;
+
+import cs6650.ziqunliu.chatflow.client.metrics.Metrics;
+import cs6650.ziqunliu.chatflow.client.model.ChatMessage;
+import cs6650.ziqunliu.chatflow.client.websocket.ConnectionManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Like {@link SenderWorker}, but groups messages per room into batch frames. A room's batch is
+ * sent when it reaches {@code batchSize} messages or when its oldest message has waited
+ * {@code lingerMs}, whichever comes first.
+ */
+public class BatchSenderWorker implements Runnable {
+
+  private final int workerId;
+  private final BlockingQueue<ChatMessage> queue;
+  private final ConnectionManager[] managers;
+  private final Metrics metrics;
+  private final CountDownLatch doneLatch;
+  private final int batchSize;
+  private final long lingerNs;
+
+  // Indexed by roomId
+  private final List<List<ChatMessage>> pending = new ArrayList<>();
+  private final long[] firstQueuedAt = new long[NUM_ROOMS + 1];
+
+  public BatchSenderWorker(int workerId, BlockingQueue<ChatMessage> queue,
+      ConnectionManager[] managers, Metrics metrics, CountDownLatch doneLatch, int batchSize,
+      long lingerMs) {
+    this.workerId = workerId;
+    this.queue = queue;
+    this.managers = managers;
+    this.metrics = metrics;
+    this.doneLatch = doneLatch;
+    this.batchSize = batchSize;
+    this.lingerNs = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+    for (int roomId = 0; roomId <= NUM_ROOMS; roomId++) {
+      pending.add(new ArrayList<>(batchSize));
+    }
+  }
+
+  @Override
+  public void run() {
+    int messageCount = 0;
+    try {
+      while (true) {
+        // Block until a message arrives or the oldest pending batch is due
+        long deadline = nextDeadline();
+        ChatMessage msg = deadline == Long.MAX_VALUE ? queue.take()
+            : queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+        if (msg != null) {
+          // Check for POISON pill: send what is left and exit
+          if (msg.getRoomId() == -1) {
+            messageCount += flushAll();
+            System.out.println("BatchSenderWorker-" + workerId + ": Received POISON, processed "
+                + messageCount + " messages. Exiting.");
+            return;
+          }
+
+          int roomId = msg.getRoomId();
+          if (roomId < 1 || roomId > NUM_ROOMS) {
+            metrics.incFail();
+            continue;
+          }
+          List<ChatMessage> batch = pending.get(roomId);
+          if (batch.isEmpty()) {
+            firstQueuedAt[roomId] = System.nanoTime();
+          }
+          batch.add(msg);
+          if (batch.size() >= batchSize) {
+            messageCount += flush(roomId);
+          }
+        }
+        messageCount += flushExpired();
+      }
+    } catch (InterruptedException e) {
+      System.err.println("BatchSenderWorker-" + workerId + ": Interrupted after " + messageCount
+          + " messages");
+      Thread.currentThread().interrupt();
+    } finally {
+      System.out.println(
+          "BatchSenderWorker-" + workerId + ": Finally block, calling doneLatch.countDown()");
+      doneLatch.countDown();
+    }
+  }
+
+  /**
+   * @return when the oldest pending batch must go out, Long.MAX_VALUE if nothing is pending
+   */
+  private long nextDeadline() {
+    long deadline = Long.MAX_VALUE;
+    for (int roomId = 1; roomId <= NUM_ROOMS; roomId++) {
+      if (!pending.get(roomId).isEmpty()) {
+        deadline = Math.min(deadline, firstQueuedAt[roomId] + lingerNs);
+      }
+    }
+    return deadline;
+  }
+
+  private int flushExpired() {
+    long now = System.nanoTime();
+    int sent = 0;
+    for (int roomId = 1; roomId <= NUM_ROOMS; roomId++) {
+      if (!pending.get(roomId).isEmpty() && now - firstQueuedAt[roomId] >= lingerNs) {
+        sent += flush(roomId);
+      }
+    }
+    return sent;
+  }
+
+  private int flushAll() {
+    int sent = 0;
+    for (int roomId = 1; roomId <= NUM_ROOMS; roomId++) {
+      sent += flush(roomId);
+    }
+    return sent;
+  }
+
+  private int flush(int roomId) {
+    List<ChatMessage> batch = pending.get(roomId);
+    int size = batch.size();
+    if (size == 0) {
+      return 0;
+    }
+    managers[roomId].sendBatch(batch);
+    batch.clear();
+    return size;
+  }
+}
@@ -0,0 +1,177 @@
+package cs6650.ziqunliu.chatflow.server.broadcast;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import cs6650.ziqunliu.chatflow.server.codec.BinaryCodec;
+import cs6650.ziqunliu.chatflow.server.codec.DeflateCodec;
+import cs6650.ziqunliu.chatflow.server.model.event.MessageBroadcastEvent;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Immutable, already-serialized outbound frame. A broadcast event is encoded once and the same
+ * frame instance is queued for every recipient in the room. The binary form for
+ * {@link BinaryCodec#SUBPROTOCOL} sessions is likewise built once, on first use, and so are
+ * the shared {@link DeflateCodec} wrappings of the text and binary forms.
+ */
+public final class BroadcastFrame {
+
+  private static final Gson GSON = new Gson();
+  private static final LongAdder encodes = new LongAdder();
+  private static final LongAdder binaryEncodes = new LongAdder();
+  private static final ByteBuffer NO_BINARY = ByteBuffer.allocate(0);
+  // Source marker of frames relayed by another node: the binary form is rebuilt from the text
+  private static final Object RELAYED = new Object();
+  private static final AtomicReferenceFieldUpdater<BroadcastFrame, ByteBuffer> BINARY =
+      AtomicReferenceFieldUpdater.newUpdater(BroadcastFrame.class, ByteBuffer.class, "binary");
+
+  private final String text;
+  // Room sequence of an accepted message, 0 for every other frame
+  private final long sequence;
+  // Source of the binary form, dropped once that is built; null for plain text frames
+  private volatile Object event;
+  private volatile ByteBuffer bytes;
+  private volatile ByteBuffer binary;
+  private volatile ByteBuffer deflatedText;
+  private volatile ByteBuffer deflatedBinary;
+
+  private BroadcastFrame(String text, long sequence, Object event) {
+    this.text = text;
+    this.sequence = sequence;
+    this.event = event;
+  }
+
+  /**
+   * Serialize a response/event to JSON. This is the only place outbound JSON is produced, so
+   * {@link #getEncodeCount()} is the number of serializations the server performed.
+   */
+  public static BroadcastFrame encode(Object event) {
+    return encode(event, 0);
+  }
+
+  /**
+   * {@link #encode(Object)} for the broadcast of a message this node accepted with
+   * {@code sequence}, so a joining session can tell it apart from its history replay.
+   */
+  public static BroadcastFrame encode(Object event, long sequence) {
+    encodes.increment();
+    return new BroadcastFrame(GSON.toJson(event), sequence, event);
+  }
+
+  /**
+   * Wrap text that is already in its final form (no serialization involved).
+   */
+  public static BroadcastFrame ofText(String text) {
+    return new BroadcastFrame(text, 0, null);
+  }
+
+  /**
+   * Wrap a broadcast event encoded elsewhere: relayed by another node over the room bus, or
+   * replayed from room history. Nothing is parsed unless a binary session needs the binary form.
+   */
+  public static BroadcastFrame relayed(String text) {
+    return new BroadcastFrame(text, 0, RELAYED);
+  }
+
+  public String text() {
+    return text;
+  }
+
+  /**
+   * @return the room sequence of a message accepted by this node, 0 for any other frame
+   */
+  public long sequence() {
+    return sequence;
+  }
+
+  /**
+   * UTF-8 bytes of the frame. Built on first use; every caller gets its own read-only view, so
+   * positions never interfere between recipients.
+   */
+  public ByteBuffer bytes() {
+    ByteBuffer b = bytes;
+    if (b == null) {
+      b = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+      bytes = b;
+    }
+    return b.duplicate();
+  }
+
+  /**
+   * Binary form of the frame, built on the first call from a binary session; every caller gets
+   * its own view.
+   *
+   * @return null if the frame has no binary form and must be sent as text
+   */
+  public ByteBuffer binary() {
+    ByteBuffer b = binary;
+    if (b == null) {
+      Object source = event;
+      if (source == RELAYED) {
+        source = parseRelayed(text);
+      }
+      b = source == null ? null : BinaryCodec.encode(source);
+      if (b == null) {
+        b = NO_BINARY;
+      } else {
+        binaryEncodes.increment();
+      }
+      // Racing first callers may both encode. Only the first result is published: a caller
+      // that read event after the winner dropped it built NO_BINARY and must not replace it
+      if (BINARY.compareAndSet(this, null, b)) {
+        event = null;
+      } else {
+        b = binary;
+      }
+    }
+    return b == NO_BINARY ? null : b.duplicate();
+  }
+
+  /**
+   * The UTF-8 text wrapped by {@link DeflateCodec#encodeShared}, built once.
+   */
+  public ByteBuffer deflatedText() {
+    ByteBuffer b = deflatedText;
+    if (b == null) {
+      b = DeflateCodec.encodeShared(bytes());
+      deflatedText = b;
+    }
+    return b.duplicate();
+  }
+
+  /**
+   * The binary form wrapped by {@link DeflateCodec#encodeShared}, built once.
+   *
+   * @return null if the frame has no binary form
+   */
+  public ByteBuffer deflatedBinary() {
+    ByteBuffer b = deflatedBinary;
+    if (b == null) {
+      ByteBuffer payload = binary();
+      if (payload == null) {
+        return null;
+      }
+      b = DeflateCodec.encodeShared(payload);
+      deflatedBinary = b;
+    }
+    return b.duplicate();
+  }
+
+  private static MessageBroadcastEvent parseRelayed(String text) {
+    try {
+      return GSON.fromJson(text, MessageBroadcastEvent.class);
+    } catch (JsonParseException e) {
+      return null;
+    }
+  }
+
+  public static long getBinaryEncodeCount() {
+    return binaryEncodes.sum();
+  }
+
+  public static long getEncodeCount() {
+    return encodes.sum();
+  }
+}
@@ -0,0 +1,112 @@
+package cs6650.ziqunliu.chatflow.server.broadcast;
+
+import cs6650.ziqunliu.chatflow.server.codec.WireProtocol;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.room.Room;
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+import java.util.concurrent.atomic.LongAdder;
+import javax.websocket.Session;
+
+/**
+ * Fan-out engine. Every session gets a {@link SessionOutbound} at @OnOpen; broadcasting a frame
+ * only enqueues it on each recipient's outbound, the actual socket writes happen on the
+ * container's async completion threads. Frames are encoded once by the caller and shared by all
+ * recipients, so deliveries / encodes is the effective fan-out ratio.
+ */
+public class RoomBroadcaster {
+
+  private static final LongAdder enqueued = new LongAdder();
+  private static final LongAdder delivered = new LongAdder();
+  private static final LongAdder dropped = new LongAdder();
+  private static final LongAdder failed = new LongAdder();
+
+  /**
+   * Create the outbound queue of a newly opened session, speaking the wire protocol its
+   * handshake negotiated.
+   */
+  public static SessionOutbound attach(Session session) {
+    WireProtocol protocol = WireProtocol.of(session.getNegotiatedSubprotocol());
+    return new SessionOutbound(session, ServerConfig.OUTBOUND_QUEUE_CAPACITY, protocol);
+  }
+
+  /**
+   * Stop room broadcasts to a session that a drain will close, see
+   * {@link SessionContext#stopFanIn()}.
+   */
+  public static void stopFanIn(SessionContext ctx) {
+    ctx.stopFanIn();
+  }
+
+  /**
+   * Discard whatever is still queued for a closing session.
+   */
+  public static void detach(SessionContext ctx) {
+    ctx.getOutbound().close();
+  }
+
+  /**
+   * Send one frame to a single session through its outbound queue.
+   */
+  public static boolean send(SessionContext ctx, BroadcastFrame frame) {
+    return enqueue(ctx.getOutbound(), frame);
+  }
+
+  /**
+   * Send one frame to every session of a room, except those a drain is about to close.
+   *
+   * @return number of sessions the frame was queued for
+   */
+  public static int broadcast(Room room, BroadcastFrame frame) {
+    int queued = 0;
+    for (SessionContext member : room.members()) {
+      if (!member.isFanInStopped() && send(member, frame)) {
+        queued++;
+      }
+    }
+    return queued;
+  }
+
+  private static boolean enqueue(SessionOutbound outbound, BroadcastFrame frame) {
+    if (outbound.offer(frame)) {
+      enqueued.increment();
+      return true;
+    }
+    dropped.increment();
+    return false;
+  }
+
+  static void recordDelivered() {
+    delivered.increment();
+  }
+
+  static void recordFailed() {
+    failed.increment();
+  }
+
+  public static long getEnqueuedCount() {
+    return enqueued.sum();
+  }
+
+  public static long getDeliveredCount() {
+    return delivered.sum();
+  }
+
+  public static long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  public static long getFailedCount() {
+    return failed.sum();
+  }
+
+  public static String getStats() {
+    long encodes = BroadcastFrame.getEncodeCount();
+    long deliveries = getDeliveredCount();
+    return String.format(
+        "encodes: %d, binaryEncodes: %d, deliveries: %d, deliveriesPerEncode: %.2f, "
+            + "enqueued: %d, dropped: %d, failed: %d",
+        encodes, BroadcastFrame.getBinaryEncodeCount(), deliveries,
+        encodes == 0 ? 0.0 : (double) deliveries / encodes, getEnqueuedCount(),
+        getDroppedCount(), getFailedCount());
+  }
+}
@@ -0,0 +1,251 @@
+package cs6650.ziqunliu.chatflow.server.broadcast;
+
+import cs6650.ziqunliu.chatflow.server.codec.DeflateCodec;
+import cs6650.ziqunliu.chatflow.server.codec.WireProtocol;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+/**
+ * Bounded outbound queue of one WebSocket session. Any thread may enqueue; frames are written
+ * one at a time through the async remote, and each write completion starts the next one. The
+ * enqueuing thread never waits on the socket, so a slow peer only fills its own queue.
+ *
+ * <p>While a joining session replays room history, live frames are held back ({@link #hold()})
+ * and replayed frames, queued separately, are written first. Live copies of replayed messages
+ * are skipped, matched by sequence.
+ */
+public class SessionOutbound implements SendHandler {
+
+  private static final LongAdder replayDuplicates = new LongAdder();
+
+  private final Session session;
+  private final int capacity;
+  private final WireProtocol protocol;
+  // Inbound and (with context takeover) outbound DEFLATE streams, deflate protocols only
+  private final DeflateCodec.Session deflate;
+  private final Queue<BroadcastFrame> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  // Bounded by the room history size, not by capacity
+  private final Queue<BroadcastFrame> replay = new ConcurrentLinkedQueue<>();
+
+  // Drain loop guard: only the thread that moves wip from 0 runs the loop
+  private final AtomicInteger wip = new AtomicInteger();
+  private volatile boolean writing;
+  private volatile boolean closed;
+  private volatile boolean held;
+  // Sequences sent by the history replay, set once by release: the range, and the sorted
+  // sequences if the range has holes. Only the drain loop reads them
+  private long replayedMin;
+  private long replayedMax = -1;
+  private long[] replayedGaps;
+
+  public SessionOutbound(Session session, int capacity, WireProtocol protocol) {
+    this.session = session;
+    this.capacity = capacity;
+    this.protocol = protocol;
+    this.deflate = protocol.deflate ? new DeflateCodec.Session() : null;
+  }
+
+  /**
+   * Queue a frame for this session.
+   *
+   * @return false if the session is closed or its queue is full, the frame is dropped
+   */
+  public boolean offer(BroadcastFrame frame) {
+    if (closed) {
+      return false;
+    }
+    if (size.incrementAndGet() > capacity) {
+      size.decrementAndGet();
+      return false;
+    }
+    queue.offer(frame);
+    drain();
+    return true;
+  }
+
+  /**
+   * Queue a replayed history frame. It is written before any held live frame.
+   *
+   * @return false if the session is closed
+   */
+  public boolean offerReplay(BroadcastFrame frame) {
+    if (closed) {
+      return false;
+    }
+    replay.offer(frame);
+    drain();
+    return true;
+  }
+
+  /**
+   * Keep live frames queued (still bounded by capacity) until {@link #release()}; replayed
+   * frames are still written.
+   */
+  public void hold() {
+    held = true;
+  }
+
+  public void release() {
+    release(null, 0);
+  }
+
+  /**
+   * Stop holding live frames, and from now on skip those already sent by a history replay. A
+   * message accepted while its session joined can be in the history the replay read and also
+   * be broadcast to the session after it joined, possibly only after the replay ended; only
+   * the replayed copy is written.
+   *
+   * @param replayed sequences of the frames the replay sent, in any order
+   */
+  public void release(long[] replayed, int count) {
+    if (count > 0) {
+      long[] sorted = Arrays.copyOf(replayed, count);
+      Arrays.sort(sorted);
+      replayedMin = sorted[0];
+      replayedMax = sorted[count - 1];
+      // Usually the replay is a run of consecutive sequences and the bounds say it all
+      replayedGaps = replayedMax - replayedMin + 1 == count ? null : sorted;
+    }
+    // Published after the fields above; the drain loop reads held before polling live frames
+    held = false;
+    drain();
+  }
+
+  /**
+   * Write queued frames until the queue is empty or a write is in flight. A completion that
+   * fires inline on the writing thread only bumps wip, so the outer loop picks up the next
+   * frame instead of recursing.
+   */
+  private void drain() {
+    if (wip.getAndIncrement() != 0) {
+      return;
+    }
+    do {
+      if (!writing && !closed) {
+        BroadcastFrame next = replay.poll();
+        if (next == null && !held) {
+          next = queue.poll();
+          while (next != null && wasReplayed(next.sequence())) {
+            size.decrementAndGet();
+            replayDuplicates.increment();
+            next = queue.poll();
+          }
+          if (next != null) {
+            size.decrementAndGet();
+          }
+        }
+        if (next != null) {
+          writing = true;
+          try {
+            ByteBuffer payload = encode(next);
+            if (payload != null) {
+              session.getAsyncRemote().sendBinary(payload, this);
+            } else {
+              session.getAsyncRemote().sendText(next.text(), this);
+            }
+          } catch (RuntimeException e) {
+            // Session closed under us (IllegalStateException), stop writing
+            writing = false;
+            close();
+          }
+        }
+      }
+    } while (wip.decrementAndGet() != 0);
+  }
+
+  private boolean wasReplayed(long sequence) {
+    if (sequence < replayedMin || sequence > replayedMax || sequence == 0) {
+      return false;
+    }
+    long[] gaps = replayedGaps;
+    return gaps == null || Arrays.binarySearch(gaps, sequence) >= 0;
+  }
+
+  /**
+   * @return live frames skipped because a history replay had already sent them
+   */
+  public static long getReplayDuplicateCount() {
+    return replayDuplicates.sum();
+  }
+
+  /**
+   * Binary message for this session's protocol, or null to send the frame as text. Only the
+   * drain loop calls this, so a per-session DEFLATE stream sees frames in send order.
+   */
+  private ByteBuffer encode(BroadcastFrame frame) {
+    if (!protocol.deflate) {
+      return protocol.binary ? frame.binary() : null;
+    }
+    ByteBuffer payload = protocol.binary ? frame.binary() : frame.bytes();
+    if (payload == null) {
+      return null;  // Text-only frame on a binary protocol
+    }
+    ByteBuffer own = deflate.encode(payload);
+    if (own != null) {
+      return own;
+    }
+    return protocol.binary ? frame.deflatedBinary() : frame.deflatedText();
+  }
+
+  @Override
+  public void onResult(SendResult result) {
+    writing = false;
+    if (result.isOK()) {
+      RoomBroadcaster.recordDelivered();
+    } else {
+      RoomBroadcaster.recordFailed();
+    }
+    drain();
+  }
+
+  /**
+   * Stop writing, discard queued frames and free the DEFLATE streams. Called from @OnClose.
+   */
+  public void close() {
+    closed = true;
+    queue.clear();
+    replay.clear();
+    size.set(0);
+    if (deflate != null) {
+      deflate.close();
+    }
+  }
+
+  public int pending() {
+    return size.get();
+  }
+
+  /**
+   * @return true if nothing is queued or being written, so closing now loses no frame
+   */
+  public boolean isFlushed() {
+    return size.get() == 0 && replay.isEmpty() && !writing;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  public WireProtocol getProtocol() {
+    return protocol;
+  }
+
+  /**
+   * @return the session's DEFLATE state, null unless a deflate protocol was negotiated
+   */
+  public DeflateCodec.Session getDeflate() {
+    return deflate;
+  }
+
+  public Session getSession() {
+    return session;
+  }
+}
@@ -0,0 +1,26 @@
+package cs6650.ziqunliu.chatflow.server.bus;
+
+import cs6650.ziqunliu.chatflow.server.broadcast.BroadcastFrame;
+import cs6650.ziqunliu.chatflow.server.broadcast.RoomBroadcaster;
+import cs6650.ziqunliu.chatflow.server.room.Room;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+
+/**
+ * Single-node bus: a published frame only goes to this JVM's sessions, as before the bus
+ * existed.
+ */
+public class InProcessRoomBus implements RoomBus {
+
+  @Override
+  public void publish(int roomId, BroadcastFrame frame) {
+    Room room = RoomRegistry.get(roomId);
+    if (room != null) {
+      RoomBroadcaster.broadcast(room, frame);
+    }
+  }
+
+  @Override
+  public String getStats() {
+    return "bus: inprocess";
+  }
+}
@@ -0,0 +1,30 @@
+package cs6650.ziqunliu.chatflow.server.bus;
+
+import cs6650.ziqunliu.chatflow.server.broadcast.BroadcastFrame;
+
+/**
+ * Fan-out of accepted messages across server nodes. The implementation is picked once at
+ * startup with {@code -Dchatflow.bus.mode}, see {@link RoomBuses}.
+ */
+public interface RoomBus {
+
+  /**
+   * Deliver a frame to the room's sessions on this node and on every other node that has
+   * sessions in the room. Never blocks on the network.
+   */
+  void publish(int roomId, BroadcastFrame frame);
+
+  /**
+   * The room gained its first or lost its last session on this node; called by RoomRegistry.
+   */
+  default void interestChanged(int roomId) {
+  }
+
+  /**
+   * Stop background threads and close connections, if any.
+   */
+  default void shutdown() {
+  }
+
+  String getStats();
+}
@@ -0,0 +1,80 @@
+package cs6650.ziqunliu.chatflow.server.bus;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the room bus selected by configuration:
+ * <ul>
+ *   <li>{@code inprocess} (default): one node, local fan-out only</li>
+ *   <li>{@code socket}: nodes exchange messages over TCP, {@code -Dchatflow.bus.port} and
+ *   {@code -Dchatflow.bus.peers}</li>
+ * </ul>
+ */
+public final class RoomBuses {
+
+  private static RoomBus instance;
+
+  private RoomBuses() {
+  }
+
+  /**
+   * The server-wide bus, created on first use.
+   */
+  public static synchronized RoomBus get() {
+    if (instance == null) {
+      instance = create(ServerConfig.BUS_MODE);
+    }
+    return instance;
+  }
+
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      instance.shutdown();
+      instance = null;
+    }
+  }
+
+  public static RoomBus create(String mode) {
+    switch (mode) {
+      case "socket":
+        try {
+          return new SocketRoomBus(InetAddress.getByName(ServerConfig.BUS_BIND_ADDRESS),
+              ServerConfig.BUS_PORT, parsePeers(ServerConfig.BUS_PEERS),
+              ServerConfig.BUS_LINGER_MS, ServerConfig.BUS_MAX_BATCH_BYTES,
+              ServerConfig.BUS_QUEUE_CAPACITY);
+        } catch (IOException e) {
+          throw new IllegalStateException("Cannot listen on chatflow.bus.bindAddress "
+              + ServerConfig.BUS_BIND_ADDRESS + " port " + ServerConfig.BUS_PORT, e);
+        }
+      case "inprocess":
+        return new InProcessRoomBus();
+      default:
+        throw new IllegalArgumentException("Unknown chatflow.bus.mode: " + mode);
+    }
+  }
+
+  /**
+   * @param peers comma-separated {@code host:port} list, may be empty
+   */
+  public static List<InetSocketAddress> parsePeers(String peers) {
+    List<InetSocketAddress> result = new ArrayList<>();
+    for (String peer : peers.split(",")) {
+      peer = peer.trim();
+      if (peer.isEmpty()) {
+        continue;
+      }
+      int colon = peer.lastIndexOf(':');
+      if (colon <= 0) {
+        throw new IllegalArgumentException("chatflow.bus.peers entry is not host:port: " + peer);
+      }
+      result.add(InetSocketAddress.createUnresolved(peer.substring(0, colon),
+          Integer.parseInt(peer.substring(colon + 1))));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,470 @@
+package cs6650.ziqunliu.chatflow.server.bus;
+
+import cs6650.ziqunliu.chatflow.server.broadcast.BroadcastFrame;
+import cs6650.ziqunliu.chatflow.server.broadcast.RoomBroadcaster;
+import cs6650.ziqunliu.chatflow.server.room.Room;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Multi-node bus over plain TCP, for several server processes on one box or a small cluster.
+ * Every node listens on {@code chatflow.bus.port} and dials each of {@code chatflow.bus.peers}.
+ *
+ * <p>Interest is pulled: over the connection it dialed, a node sends SUBSCRIBE when a room
+ * gets its first local session and UNSUBSCRIBE when the room empties, and receives that
+ * room's messages on the same connection. A publishing node therefore only relays a room to
+ * the peers that have sessions in it, and a relayed message is delivered locally, never relayed
+ * again.
+ *
+ * <p>Relays are batched per subscriber: a writer thread collects frames for up to
+ * {@code chatflow.bus.lingerMs} (or {@code maxBatchBytes}) and writes one record per room, so
+ * the number of records and flushes grows with active rooms, not with messages. A full relay
+ * queue drops the frame for that peer only, like a full session outbound.
+ *
+ * <pre>
+ *   SUBSCRIBE    0x01, int roomId
+ *   UNSUBSCRIBE  0x02, int roomId
+ *   BATCH        0x03, int roomId, int count, count x (int length, UTF-8 JSON frame)
+ * </pre>
+ */
+public class SocketRoomBus implements RoomBus {
+
+  public static final byte SUBSCRIBE = 0x01;
+  public static final byte UNSUBSCRIBE = 0x02;
+  public static final byte BATCH = 0x03;
+
+  private static final int BACKLOG = 128;
+  private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+  private static final long MAX_RECONNECT_DELAY_MS = 2000;
+
+  private final ServerSocket server;
+  private final Thread acceptor;
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+  private final List<PeerLink> links = new ArrayList<>();
+  private final long lingerNanos;
+  private final int maxBatchBytes;
+  private final int queueCapacity;
+  private volatile boolean running = true;
+
+  private final LongAdder relayedOut = new LongAdder();
+  private final LongAdder batchesOut = new LongAdder();
+  private final LongAdder flushes = new LongAdder();
+  private final LongAdder bytesOut = new LongAdder();
+  private final LongAdder relayedIn = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+
+  /**
+   * Listen on {@code bindAddress}:{@code port} (0 picks a free one) and start dialing
+   * {@code peers}.
+   */
+  public SocketRoomBus(InetAddress bindAddress, int port, List<InetSocketAddress> peers,
+      int lingerMs, int maxBatchBytes, int queueCapacity) throws IOException {
+    this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMs));
+    this.maxBatchBytes = maxBatchBytes;
+    this.queueCapacity = queueCapacity;
+    this.server = new ServerSocket(port, BACKLOG, bindAddress);
+    this.acceptor = daemon(this::acceptLoop, "chatflow-bus-accept");
+    acceptor.start();
+    for (InetSocketAddress peer : peers) {
+      PeerLink link = new PeerLink(peer);
+      links.add(link);
+      link.thread.start();
+    }
+  }
+
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  /**
+   * @return socket writes of relay batches so far, all subscribers together
+   */
+  public long getFlushCount() {
+    return flushes.sum();
+  }
+
+  @Override
+  public void publish(int roomId, BroadcastFrame frame) {
+    Room room = RoomRegistry.get(roomId);
+    if (room != null) {
+      RoomBroadcaster.broadcast(room, frame);
+    }
+    for (Subscriber subscriber : subscribers) {
+      if (subscriber.wants(roomId)) {
+        subscriber.offer(roomId, frame.text());
+      }
+    }
+  }
+
+  @Override
+  public void interestChanged(int roomId) {
+    for (PeerLink link : links) {
+      link.changed.offer(roomId);
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    running = false;
+    closeQuietly(server);
+    for (Subscriber subscriber : subscribers) {
+      closeQuietly(subscriber.socket);
+    }
+    for (PeerLink link : links) {
+      link.close();
+    }
+    join(acceptor);
+    for (Subscriber subscriber : subscribers) {
+      join(subscriber.writer);
+    }
+    for (PeerLink link : links) {
+      join(link.thread);
+    }
+  }
+
+  @Override
+  public String getStats() {
+    int connected = 0;
+    for (PeerLink link : links) {
+      if (link.connected) {
+        connected++;
+      }
+    }
+    long batches = batchesOut.sum();
+    return String.format("bus: socket, peersConnected: %d/%d, subscribers: %d, relayedOut: %d, "
+            + "busBatchesOut: %d, messagesPerBatch: %.2f, busFlushes: %d, busBytesOut: %d, "
+            + "relayedIn: %d, busDropped: %d", connected, links.size(), subscribers.size(),
+        relayedOut.sum(), batches, batches == 0 ? 0.0 : (double) relayedOut.sum() / batches,
+        flushes.sum(), bytesOut.sum(), relayedIn.sum(), dropped.sum());
+  }
+
+  private void acceptLoop() {
+    while (running) {
+      try {
+        Socket socket = server.accept();
+        socket.setTcpNoDelay(true);
+        Subscriber subscriber = new Subscriber(socket);
+        subscribers.add(subscriber);
+        subscriber.reader.start();
+        subscriber.writer.start();
+      } catch (IOException e) {
+        if (running) {
+          System.err.println("Bus accept failed: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * A peer that dialed this node: the rooms it subscribed to and the queue of frames to relay
+   * to it. Its reader thread applies SUBSCRIBE/UNSUBSCRIBE, its writer thread sends batches.
+   */
+  private final class Subscriber {
+
+    private final Socket socket;
+    private final BlockingQueue<Relay> queue;
+    private final Thread reader;
+    private final Thread writer;
+    // Sorted room ids; replaced (never modified) by the reader thread, read by publishers
+    private volatile int[] rooms = new int[0];
+
+    Subscriber(Socket socket) {
+      this.socket = socket;
+      this.queue = new ArrayBlockingQueue<>(queueCapacity);
+      String name = socket.getRemoteSocketAddress().toString();
+      this.reader = daemon(this::readLoop, "chatflow-bus-sub-in-" + name);
+      this.writer = daemon(this::writeLoop, "chatflow-bus-sub-out-" + name);
+    }
+
+    boolean wants(int roomId) {
+      return Arrays.binarySearch(rooms, roomId) >= 0;
+    }
+
+    void offer(int roomId, String text) {
+      if (queue.offer(new Relay(roomId, text))) {
+        relayedOut.increment();
+      } else {
+        dropped.increment();
+      }
+    }
+
+    private void readLoop() {
+      try (DataInputStream in = new DataInputStream(
+          new BufferedInputStream(socket.getInputStream()))) {
+        while (running) {
+          byte type = in.readByte();
+          int roomId = in.readInt();
+          if (type != SUBSCRIBE && type != UNSUBSCRIBE) {
+            throw new IOException("bad bus control record " + type);
+          }
+          rooms = type == SUBSCRIBE ? withRoom(rooms, roomId) : withoutRoom(rooms, roomId);
+        }
+      } catch (IOException e) {
+        // Peer went away or shut down
+      } finally {
+        subscribers.remove(this);
+        closeQuietly(socket);
+        writer.interrupt();
+      }
+    }
+
+    private void writeLoop() {
+      List<Relay> batch = new ArrayList<>();
+      Map<Integer, List<String>> byRoom = new LinkedHashMap<>();
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(socket.getOutputStream(), 64 * 1024))) {
+        while (running && !socket.isClosed()) {
+          Relay first = queue.poll(100, TimeUnit.MILLISECONDS);
+          if (first == null) {
+            continue;
+          }
+          batch.add(first);
+          int bytes = first.text.length();
+          long deadline = System.nanoTime() + lingerNanos;
+          while (bytes < maxBatchBytes) {
+            long wait = deadline - System.nanoTime();
+            Relay next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+              break;
+            }
+            batch.add(next);
+            bytes += next.text.length();
+          }
+          for (Relay relay : batch) {
+            byRoom.computeIfAbsent(relay.roomId, id -> new ArrayList<>()).add(relay.text);
+          }
+          for (Map.Entry<Integer, List<String>> entry : byRoom.entrySet()) {
+            writeBatch(out, entry.getKey(), entry.getValue());
+          }
+          out.flush();
+          flushes.increment();
+          batch.clear();
+          byRoom.clear();
+        }
+      } catch (IOException | InterruptedException e) {
+        // Socket closed by the reader or by shutdown
+      } finally {
+        closeQuietly(socket);
+      }
+    }
+
+    private void writeBatch(DataOutputStream out, int roomId, List<String> texts)
+        throws IOException {
+      int before = out.size();
+      out.writeByte(BATCH);
+      out.writeInt(roomId);
+      out.writeInt(texts.size());
+      for (String text : texts) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+      }
+      batchesOut.increment();
+      bytesOut.add(out.size() - before);
+    }
+  }
+
+  private static int[] withRoom(int[] rooms, int roomId) {
+    int index = Arrays.binarySearch(rooms, roomId);
+    if (index >= 0) {
+      return rooms;
+    }
+    int insert = -index - 1;
+    int[] next = new int[rooms.length + 1];
+    System.arraycopy(rooms, 0, next, 0, insert);
+    next[insert] = roomId;
+    System.arraycopy(rooms, insert, next, insert + 1, rooms.length - insert);
+    return next;
+  }
+
+  private static int[] withoutRoom(int[] rooms, int roomId) {
+    int index = Arrays.binarySearch(rooms, roomId);
+    if (index < 0) {
+      return rooms;
+    }
+    int[] next = new int[rooms.length - 1];
+    System.arraycopy(rooms, 0, next, 0, index);
+    System.arraycopy(rooms, index + 1, next, index, rooms.length - index - 1);
+    return next;
+  }
+
+  private static final class Relay {
+
+    private final int roomId;
+    private final String text;
+
+    Relay(int roomId, String text) {
+      this.roomId = roomId;
+      this.text = text;
+    }
+  }
+
+  /**
+   * Connection this node dialed to one peer. The link thread (re)connects, subscribes to every
+   * room with local sessions and then keeps the peer's view in sync with room changes; a
+   * reader thread per connection delivers the peer's batches to local sessions.
+   */
+  private final class PeerLink {
+
+    private final InetSocketAddress peer;
+    private final Thread thread;
+    private final BlockingQueue<Integer> changed = new LinkedBlockingQueue<>();
+    private volatile Socket socket;
+    private volatile boolean connected;
+
+    PeerLink(InetSocketAddress peer) {
+      this.peer = peer;
+      this.thread = daemon(this::run, "chatflow-bus-peer-" + peer.getHostString() + ":"
+          + peer.getPort());
+    }
+
+    private void run() {
+      long delay = 100;
+      while (running) {
+        try (Socket s = new Socket()) {
+          s.connect(new InetSocketAddress(peer.getHostString(), peer.getPort()), 2000);
+          s.setTcpNoDelay(true);
+          socket = s;
+          connected = true;
+          delay = 100;
+          Thread reader = daemon(() -> readLoop(s), thread.getName() + "-in");
+          reader.start();
+          syncSubscriptions(s, reader);
+        } catch (IOException e) {
+          // Peer not up yet or gone; retry below
+        } catch (InterruptedException e) {
+          return;
+        } finally {
+          connected = false;
+          socket = null;
+        }
+        if (!running) {
+          return;
+        }
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException e) {
+          return;
+        }
+        delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MS);
+      }
+    }
+
+    /**
+     * Subscribe to all local rooms, then follow {@link #interestChanged} until the connection
+     * fails. Each change is re-checked against the registry, so notifications that arrive out
+     * of order still leave the peer with the right set.
+     */
+    private void syncSubscriptions(Socket s, Thread reader)
+        throws IOException, InterruptedException {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(s.getOutputStream()));
+      Set<Integer> subscribed = new HashSet<>();
+      changed.clear();
+      for (int roomId : RoomRegistry.liveRoomIds()) {
+        out.writeByte(SUBSCRIBE);
+        out.writeInt(roomId);
+        subscribed.add(roomId);
+      }
+      out.flush();
+      while (running && reader.isAlive()) {
+        Integer roomId = changed.poll(100, TimeUnit.MILLISECONDS);
+        if (roomId == null) {
+          continue;
+        }
+        do {
+          boolean wanted = RoomRegistry.get(roomId) != null;
+          if (wanted ? subscribed.add(roomId) : subscribed.remove(roomId)) {
+            out.writeByte(wanted ? SUBSCRIBE : UNSUBSCRIBE);
+            out.writeInt(roomId);
+          }
+          roomId = changed.poll();
+        } while (roomId != null);
+        out.flush();
+      }
+    }
+
+    private void readLoop(Socket s) {
+      try (DataInputStream in = new DataInputStream(
+          new BufferedInputStream(s.getInputStream(), 64 * 1024))) {
+        while (running) {
+          byte type = in.readByte();
+          int roomId = in.readInt();
+          int count = in.readInt();
+          if (type != BATCH || count < 0) {
+            throw new IOException("bad bus record " + type);
+          }
+          Room room = RoomRegistry.get(roomId);
+          for (int i = 0; i < count; i++) {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_FRAME_BYTES) {
+              throw new IOException("bad bus frame length " + length);
+            }
+            byte[] utf8 = new byte[length];
+            in.readFully(utf8);
+            relayedIn.increment();
+            if (room != null) {
+              RoomBroadcaster.broadcast(room,
+                  BroadcastFrame.relayed(new String(utf8, StandardCharsets.UTF_8)));
+            }
+          }
+        }
+      } catch (IOException e) {
+        // Connection lost; the link thread notices the reader is gone and reconnects
+      } finally {
+        closeQuietly(s);
+      }
+    }
+
+    void close() {
+      thread.interrupt();
+      closeQuietly(socket);
+    }
+  }
+
+  private static Thread daemon(Runnable task, String name) {
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  private static void join(Thread thread) {
+    try {
+      thread.join(2000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void closeQuietly(java.io.Closeable closeable) {
+    if (closeable == null) {
+      return;
+    }
+    try {
+      closeable.close();
+    } catch (IOException ignored) {
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package cs6650.ziqunliu.chatflow.server.cluster;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+
+/**
+ * Which node owns a room. With {@code -Dchatflow.cluster.nodes} unset every node accepts every
+ * room; otherwise a session opened for a room owned elsewhere is closed with
+ * {@link #REDIRECT_CLOSE_CODE} and the owner's ws base URI as the reason phrase, and the client
+ * reconnects there.
+ *
+ * <p>A draining node hands its rooms on instead ({@link #fallbackFor}): the client reconnects
+ * with the {@value #SKIP_PARAMETER} query parameter raised by one, and nodes then route the
+ * room as if its first {@code skip} nodes on the ring were gone. So every client of a drained
+ * room lands on the same node, without the nodes having to know which of them drain.
+ */
+public final class ClusterRouting {
+
+  /** Private-use close code (4000-4999): "wrong node, reconnect to the URI in the reason". */
+  public static final int REDIRECT_CLOSE_CODE = 4001;
+  public static final CloseReason.CloseCode REDIRECT =
+      CloseReason.CloseCodes.getCloseCode(REDIRECT_CLOSE_CODE);
+
+  /** Query parameter: how many nodes, starting at the owner, to pass over on the ring. */
+  public static final String SKIP_PARAMETER = "skip";
+
+  // Close reasons are limited to 123 bytes by the WebSocket protocol
+  private static final int MAX_REASON_BYTES = 123;
+
+  // Null when routing is off, or when the node list names no node (see CONFIG_ERROR)
+  private static final ConsistentHashRing RING = buildRing();
+  private static final String SELF = ServerConfig.CLUSTER_SELF.trim();
+  private static final LongAdder redirects = new LongAdder();
+
+  // Set instead of failing class initialization, which would surface in an unrelated onOpen
+  private static final String CONFIG_ERROR = checkConfig();
+
+  private ClusterRouting() {
+  }
+
+  /**
+   * Load and check the {@code chatflow.cluster.*} settings. Called at web application startup,
+   * so a misconfigured cluster fails the deployment rather than the first session's onOpen.
+   *
+   * @throws IllegalStateException if the settings are inconsistent
+   */
+  public static void validate() {
+    if (CONFIG_ERROR != null) {
+      throw new IllegalStateException(CONFIG_ERROR);
+    }
+  }
+
+  /**
+   * @param skip the session's {@value #SKIP_PARAMETER}; 0, or out of range, for the owner
+   * @return the serving node's ws base URI if {@code roomId} belongs to another node, null if
+   * this node should serve it
+   */
+  public static String redirectFor(int roomId, int skip) {
+    validate();
+    if (RING == null) {
+      return null;
+    }
+    String owner = RING.nodeFor(roomId, skip);
+    if (owner == null) {
+      owner = RING.nodeFor(roomId);
+    }
+    if (owner.equals(SELF)) {
+      return null;
+    }
+    redirects.increment();
+    return owner;
+  }
+
+  /**
+   * Where a draining node sends a session of {@code roomId} it serves with {@code skip}: the
+   * next node on the ring. The client reconnects there with {@code skip + 1}.
+   *
+   * @return the node's ws base URI, or null without routing or once every node was skipped
+   */
+  public static String fallbackFor(int roomId, int skip) {
+    if (RING == null) {
+      return null;
+    }
+    String next = RING.nodeFor(roomId, Math.max(0, skip) + 1);
+    return next == null || next.equals(SELF) ? null : next;
+  }
+
+  /**
+   * @return the {@value #SKIP_PARAMETER} the client connected with, 0 if absent or malformed
+   */
+  public static int skipOf(Session session) {
+    List<String> values = session.getRequestParameterMap().get(SKIP_PARAMETER);
+    if (values == null || values.isEmpty()) {
+      return 0;
+    }
+    try {
+      return Math.max(0, Integer.parseInt(values.get(0)));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static ConsistentHashRing buildRing() {
+    String nodes = ServerConfig.CLUSTER_NODES.trim();
+    if (nodes.isEmpty()) {
+      return null;
+    }
+    try {
+      return new ConsistentHashRing(Arrays.asList(nodes.split(",")),
+          ServerConfig.CLUSTER_VIRTUAL_NODES);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static String checkConfig() {
+    if (RING == null) {
+      return ServerConfig.CLUSTER_NODES.trim().isEmpty() ? null
+          : "chatflow.cluster.nodes names no node: " + ServerConfig.CLUSTER_NODES;
+    }
+    if (!RING.nodes().contains(SELF)) {
+      return "chatflow.cluster.self must be one of chatflow.cluster.nodes: " + SELF;
+    }
+    for (String node : RING.nodes()) {
+      if (node.getBytes(StandardCharsets.UTF_8).length > MAX_REASON_BYTES) {
+        return "chatflow.cluster.nodes entry too long: " + node;
+      }
+    }
+    return null;
+  }
+
+  public static long getRedirectCount() {
+    return redirects.sum();
+  }
+
+  public static String getStats() {
+    return RING == null
+        ? "cluster: off"
+        : "cluster: " + RING.nodes().size() + " nodes, redirects " + getRedirectCount();
+  }
+}
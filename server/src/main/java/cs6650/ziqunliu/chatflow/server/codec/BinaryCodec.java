@@ -0,0 +1,354 @@
+package cs6650.ziqunliu.chatflow.server.codec;
+
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import cs6650.ziqunliu.chatflow.server.model.dto.ChatMessageDTO;
+import cs6650.ziqunliu.chatflow.server.model.event.MessageBroadcastEvent;
+import cs6650.ziqunliu.chatflow.server.model.response.BatchAckResponse;
+import cs6650.ziqunliu.chatflow.server.model.response.DuplicateAckResponse;
+import cs6650.ziqunliu.chatflow.server.model.response.ErrorResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary wire format of the {@value #SUBPROTOCOL} WebSocket subprotocol. Every frame starts
+ * with a type byte. Integers are LEB128 varints (zigzag for signed values), strings are a
+ * varint byte length followed by UTF-8, MessageType is its ordinal byte and timestamps are
+ * epoch microseconds.
+ *
+ * <pre>
+ *   CHAT           flags, [zz userId], [username], [message], [zz timestampMicros],
+ *                  [type byte], [messageId]
+ *                  flags bit 0..5 mark which of the six fields are present (null otherwise)
+ *   BATCH          count, count x CHAT body (without type byte)
+ *   BROADCAST      roomId, sequence, zz serverMicros, zz userId, username, message,
+ *                  zz clientMicros, type byte, messageId (empty if none)
+ *   ERROR          roomId, errorCode, message, zz serverMicros
+ *   BATCH_ACK      roomId, accepted, count, count x code
+ *   DUPLICATE_ACK  roomId, sequence, messageId
+ * </pre>
+ *
+ * Decoding is exception-free: a malformed frame decodes to null, like a validation code.
+ */
+public final class BinaryCodec {
+
+  public static final String SUBPROTOCOL = "chatflow.binary.v1";
+
+  // Client to server
+  public static final byte CHAT = 0x01;
+  public static final byte BATCH = 0x02;
+  // Server to client
+  public static final byte BROADCAST = 0x10;
+  public static final byte ERROR = 0x11;
+  public static final byte BATCH_ACK = 0x12;
+  public static final byte DUPLICATE_ACK = 0x13;
+
+  private static final int HAS_USER_ID = 1;
+  private static final int HAS_USERNAME = 1 << 1;
+  private static final int HAS_MESSAGE = 1 << 2;
+  private static final int HAS_TIMESTAMP = 1 << 3;
+  private static final int HAS_MESSAGE_TYPE = 1 << 4;
+  private static final int HAS_MESSAGE_ID = 1 << 5;
+
+  private static final MessageType[] TYPES = MessageType.values();
+
+  private BinaryCodec() {
+  }
+
+  /**
+   * @return the frame's type byte, or -1 for an empty frame
+   */
+  public static int typeOf(byte[] frame) {
+    return frame.length == 0 ? -1 : frame[0];
+  }
+
+  /**
+   * Decode a CHAT frame into the same DTO the JSON path produces, so validation is shared.
+   * Ids and timestamps come back as their canonical text.
+   *
+   * @return the message, or null if the frame is malformed
+   */
+  public static ChatMessageDTO decodeChat(byte[] frame) {
+    Reader in = new Reader(frame, 1);
+    ChatMessageDTO dto = in.readChat();
+    return dto != null && in.atEnd() ? dto : null;
+  }
+
+  /**
+   * @return the messages of a BATCH frame, or null if the frame is malformed
+   */
+  public static List<ChatMessageDTO> decodeBatch(byte[] frame) {
+    Reader in = new Reader(frame, 1);
+    long count = in.readVarLong();
+    // Every item needs at least its flags byte
+    if (count < 0 || count > frame.length) {
+      return null;
+    }
+    List<ChatMessageDTO> items = new ArrayList<>((int) count);
+    for (int i = 0; i < count; i++) {
+      ChatMessageDTO dto = in.readChat();
+      if (dto == null) {
+        return null;
+      }
+      items.add(dto);
+    }
+    return in.atEnd() ? items : null;
+  }
+
+  /**
+   * Encode a CHAT frame, the way a binary client does. Used by tools and benchmarks.
+   *
+   * @throws NumberFormatException if userId is not a number
+   * @throws DateTimeException if the timestamp is not an ISO-8601 instant
+   */
+  public static ByteBuffer encodeChat(ChatMessageDTO dto) {
+    Writer out = new Writer(64 + (dto.getMessage() == null ? 0 : dto.getMessage().length() * 3));
+    out.writeByte(CHAT);
+    int flags = (dto.getUserId() != null ? HAS_USER_ID : 0)
+        | (dto.getUsername() != null ? HAS_USERNAME : 0)
+        | (dto.getMessage() != null ? HAS_MESSAGE : 0)
+        | (dto.getTimestamp() != null ? HAS_TIMESTAMP : 0)
+        | (dto.getMessageType() != null ? HAS_MESSAGE_TYPE : 0)
+        | (dto.getMessageId() != null ? HAS_MESSAGE_ID : 0);
+    out.writeByte(flags);
+    if (dto.getUserId() != null) {
+      out.writeVarLong(zigzag(Long.parseLong(dto.getUserId())));
+    }
+    if (dto.getUsername() != null) {
+      out.writeString(dto.getUsername());
+    }
+    if (dto.getMessage() != null) {
+      out.writeString(dto.getMessage());
+    }
+    if (dto.getTimestamp() != null) {
+      out.writeVarLong(zigzag(toMicros(dto.getTimestamp())));
+    }
+    if (dto.getMessageType() != null) {
+      out.writeByte(dto.getMessageType().ordinal());
+    }
+    if (dto.getMessageId() != null) {
+      out.writeString(dto.getMessageId());
+    }
+    return out.toBuffer();
+  }
+
+  /**
+   * Encode an outbound response or event.
+   *
+   * @return the frame, or null if the object has no binary form (it is then sent as text)
+   */
+  public static ByteBuffer encode(Object event) {
+    try {
+      if (event instanceof MessageBroadcastEvent) {
+        return encodeBroadcast((MessageBroadcastEvent) event);
+      }
+      if (event instanceof ErrorResponse) {
+        return encodeError((ErrorResponse) event);
+      }
+      if (event instanceof BatchAckResponse) {
+        return encodeBatchAck((BatchAckResponse) event);
+      }
+      if (event instanceof DuplicateAckResponse) {
+        return encodeDuplicateAck((DuplicateAckResponse) event);
+      }
+    } catch (NumberFormatException | DateTimeException | ArithmeticException e) {
+      // A field outside the binary ranges (e.g. a year beyond epoch micros): fall back to text
+    }
+    return null;
+  }
+
+  private static ByteBuffer encodeBroadcast(MessageBroadcastEvent event) {
+    Writer out = new Writer(64 + event.getMessage().length() * 3);
+    out.writeByte(BROADCAST);
+    out.writeVarLong(Integer.parseInt(event.getRoomId()));
+    out.writeVarLong(event.getSequence());
+    out.writeVarLong(zigzag(toMicros(event.getServerTimestamp())));
+    out.writeVarLong(zigzag(Long.parseLong(event.getUserId())));
+    out.writeString(event.getUsername());
+    out.writeString(event.getMessage());
+    out.writeVarLong(zigzag(toMicros(event.getClientTimestamp())));
+    out.writeByte(MessageType.valueOf(event.getMessageType()).ordinal());
+    out.writeString(event.getMessageId());
+    return out.toBuffer();
+  }
+
+  private static ByteBuffer encodeError(ErrorResponse error) {
+    Writer out = new Writer(64);
+    out.writeByte(ERROR);
+    out.writeVarLong(error.getRoomId() == null ? 0 : Integer.parseInt(error.getRoomId()));
+    out.writeString(error.getErrorCode());
+    out.writeString(error.getMessage());
+    out.writeVarLong(zigzag(toMicros(error.getServerTimestamp())));
+    return out.toBuffer();
+  }
+
+  private static ByteBuffer encodeBatchAck(BatchAckResponse ack) {
+    int[] codes = ack.getCodes();
+    Writer out = new Writer(16 + codes.length);
+    out.writeByte(BATCH_ACK);
+    out.writeVarLong(Integer.parseInt(ack.getRoomId()));
+    out.writeVarLong(ack.getAccepted());
+    out.writeVarLong(codes.length);
+    for (int code : codes) {
+      out.writeVarLong(code);
+    }
+    return out.toBuffer();
+  }
+
+  private static ByteBuffer encodeDuplicateAck(DuplicateAckResponse ack) {
+    Writer out = new Writer(16 + ack.getMessageId().length() * 3);
+    out.writeByte(DUPLICATE_ACK);
+    out.writeVarLong(Integer.parseInt(ack.getRoomId()));
+    out.writeVarLong(ack.getSequence());
+    out.writeString(ack.getMessageId());
+    return out.toBuffer();
+  }
+
+  private static long toMicros(String isoInstant) {
+    if (isoInstant == null) {
+      throw new DateTimeParseException("missing timestamp", "", 0);
+    }
+    return EpochMicros.parse(isoInstant);
+  }
+
+  private static String fromMicros(long micros) {
+    return EpochMicros.format(micros);
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Bounds-checked cursor; every read reports malformed input through {@link #failed}.
+   */
+  private static final class Reader {
+
+    private final byte[] buf;
+    private int pos;
+    private boolean failed;
+
+    Reader(byte[] buf, int pos) {
+      this.buf = buf;
+      this.pos = pos;
+    }
+
+    boolean atEnd() {
+      return !failed && pos == buf.length;
+    }
+
+    ChatMessageDTO readChat() {
+      int flags = readByte();
+      if (failed || (flags & ~0x3F) != 0) {
+        return null;
+      }
+      ChatMessageDTO dto = new ChatMessageDTO();
+      if ((flags & HAS_USER_ID) != 0) {
+        dto.setUserId(Long.toString(unzigzag(readVarLong())));
+      }
+      if ((flags & HAS_USERNAME) != 0) {
+        dto.setUsername(readString());
+      }
+      if ((flags & HAS_MESSAGE) != 0) {
+        dto.setMessage(readString());
+      }
+      if ((flags & HAS_TIMESTAMP) != 0) {
+        dto.setTimestamp(fromMicros(unzigzag(readVarLong())));
+      }
+      if ((flags & HAS_MESSAGE_TYPE) != 0) {
+        int type = readByte();
+        // Unknown enum values become null, like Gson does for unknown names
+        dto.setMessageType(type >= 0 && type < TYPES.length ? TYPES[type] : null);
+      }
+      if ((flags & HAS_MESSAGE_ID) != 0) {
+        dto.setMessageId(readString());
+      }
+      return failed ? null : dto;
+    }
+
+    int readByte() {
+      if (pos >= buf.length) {
+        failed = true;
+        return -1;
+      }
+      return buf[pos++] & 0xFF;
+    }
+
+    long readVarLong() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = readByte();
+        if (failed) {
+          return 0;
+        }
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      failed = true;
+      return 0;
+    }
+
+    String readString() {
+      long length = readVarLong();
+      if (failed || length < 0 || length > buf.length - pos) {
+        failed = true;
+        return null;
+      }
+      String s = new String(buf, pos, (int) length, StandardCharsets.UTF_8);
+      pos += (int) length;
+      return s;
+    }
+  }
+
+  private static final class Writer {
+
+    private byte[] buf;
+    private int pos;
+
+    Writer(int capacity) {
+      buf = new byte[capacity];
+    }
+
+    void writeByte(int b) {
+      ensure(1);
+      buf[pos++] = (byte) b;
+    }
+
+    void writeVarLong(long value) {
+      ensure(10);
+      while ((value & ~0x7FL) != 0) {
+        buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buf[pos++] = (byte) value;
+    }
+
+    void writeString(String s) {
+      byte[] bytes = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(bytes.length);
+      ensure(bytes.length);
+      System.arraycopy(bytes, 0, buf, pos, bytes.length);
+      pos += bytes.length;
+    }
+
+    ByteBuffer toBuffer() {
+      return ByteBuffer.wrap(buf, 0, pos).slice().asReadOnlyBuffer();
+    }
+
+    private void ensure(int extra) {
+      if (pos + extra > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+      }
+    }
+  }
+}
@@ -0,0 +1,471 @@
+package cs6650.ziqunliu.chatflow.server.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import cs6650.ziqunliu.chatflow.server.model.dto.ChatMessageDTO;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-pass decoder for the fixed {@link ChatMessageDTO} schema. It scans the frame once,
+ * matches keys in place and only allocates the field values and the DTO itself.
+ *
+ * <p>The fast path accepts strict, flat JSON objects only. Anything it is not sure about
+ * (nested values, booleans, non-canonical numbers, odd whitespace, malformed input, ...) is
+ * handed to Gson unchanged, so the caller sees exactly the result or
+ * {@link JsonParseException} that {@code GSON.fromJson(json, ChatMessageDTO.class)} gives.
+ *
+ * <p>Batch frames are a JSON array of such objects, see {@link #decodeBatch}.
+ */
+public final class ChatMessageDecoder {
+
+  private static final Gson GSON = new Gson();
+  private static final MessageType[] TYPES = MessageType.values();
+
+  /**
+   * Placeholder in a decoded batch for an item Gson could not bind to a message.
+   */
+  public static final ChatMessageDTO MALFORMED = new ChatMessageDTO();
+
+  private static final LongAdder fastPath = new LongAdder();
+  private static final LongAdder fallback = new LongAdder();
+
+  private static final int FIELD_UNKNOWN = -1;
+  private static final int FIELD_USER_ID = 0;
+  private static final int FIELD_USERNAME = 1;
+  private static final int FIELD_MESSAGE = 2;
+  private static final int FIELD_TIMESTAMP = 3;
+  private static final int FIELD_MESSAGE_TYPE = 4;
+  private static final int FIELD_MESSAGE_ID = 5;
+
+  private ChatMessageDecoder() {
+  }
+
+  /**
+   * Drop-in replacement for {@code GSON.fromJson(json, ChatMessageDTO.class)}.
+   *
+   * @throws JsonParseException when Gson rejects the frame, whatever exception Gson used
+   */
+  public static ChatMessageDTO decode(String json) {
+    ChatMessageDTO dto = json == null ? null : new Scanner(json).readMessage();
+    if (dto != null) {
+      fastPath.increment();
+      return dto;
+    }
+    fallback.increment();
+    try {
+      return GSON.fromJson(json, ChatMessageDTO.class);
+    } catch (JsonParseException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      // Gson 2.10 and older throw NumberFormatException on a malformed unicode escape
+      throw new JsonParseException(e);
+    }
+  }
+
+  /**
+   * Decode a batch frame: a JSON array whose items are decoded like {@link #decode}. An item
+   * that is not a message object comes back as {@link #MALFORMED}, a JSON null as null.
+   *
+   * @throws JsonParseException when the frame itself is not a JSON array
+   */
+  public static List<ChatMessageDTO> decodeBatch(String json) {
+    List<ChatMessageDTO> items = json == null ? null : new Scanner(json).readBatch();
+    if (items != null) {
+      fastPath.increment();
+      return items;
+    }
+    fallback.increment();
+    JsonElement root;
+    try {
+      root = JsonParser.parseString(json);
+    } catch (JsonParseException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      throw new JsonParseException(e);
+    }
+    if (!root.isJsonArray()) {
+      throw new JsonParseException("batch frame is not a JSON array");
+    }
+    items = new ArrayList<>(root.getAsJsonArray().size());
+    for (JsonElement item : root.getAsJsonArray()) {
+      try {
+        items.add(GSON.fromJson(item, ChatMessageDTO.class));
+      } catch (RuntimeException e) {
+        items.add(MALFORMED);
+      }
+    }
+    return items;
+  }
+
+  public static long getFastPathCount() {
+    return fastPath.sum();
+  }
+
+  public static long getFallbackCount() {
+    return fallback.sum();
+  }
+
+  public static String getStats() {
+    return String.format("decodeFastPath: %d, decodeFallback: %d", getFastPathCount(),
+        getFallbackCount());
+  }
+
+  /**
+   * Cursor over one frame. Every read method returns a negative position (or null) when the
+   * input leaves the strict subset, which sends the frame to Gson.
+   */
+  private static final class Scanner {
+
+    private final String s;
+    private final int len;
+    private int pos;
+
+    Scanner(String s) {
+      this.s = s;
+      this.len = s.length();
+    }
+
+    ChatMessageDTO readMessage() {
+      skipWs();
+      ChatMessageDTO dto = readObject();
+      return dto != null && atEnd() ? dto : null;
+    }
+
+    List<ChatMessageDTO> readBatch() {
+      skipWs();
+      if (pos >= len || s.charAt(pos) != '[') {
+        return null;
+      }
+      pos++;
+      List<ChatMessageDTO> items = new ArrayList<>();
+      skipWs();
+      if (pos < len && s.charAt(pos) == ']') {
+        pos++;
+        return atEnd() ? items : null;
+      }
+      while (true) {
+        skipWs();
+        ChatMessageDTO dto = readObject();
+        if (dto == null) {
+          return null;
+        }
+        items.add(dto);
+        skipWs();
+        if (pos >= len) {
+          return null;
+        }
+        char c = s.charAt(pos++);
+        if (c == ']') {
+          return atEnd() ? items : null;
+        }
+        if (c != ',') {
+          return null;
+        }
+      }
+    }
+
+    /**
+     * Read one flat object starting at the cursor, leaving the cursor after its closing brace.
+     */
+    private ChatMessageDTO readObject() {
+      if (pos >= len || s.charAt(pos) != '{') {
+        return null;
+      }
+      pos++;
+      ChatMessageDTO dto = new ChatMessageDTO();
+      skipWs();
+      if (pos < len && s.charAt(pos) == '}') {
+        pos++;
+        return dto;
+      }
+      while (true) {
+        skipWs();
+        int field = readKey();
+        if (field == Integer.MIN_VALUE) {
+          return null;
+        }
+        skipWs();
+        if (pos >= len || s.charAt(pos) != ':') {
+          return null;
+        }
+        pos++;
+        skipWs();
+        if (!readValue(dto, field)) {
+          return null;
+        }
+        skipWs();
+        if (pos >= len) {
+          return null;
+        }
+        char c = s.charAt(pos++);
+        if (c == '}') {
+          return dto;
+        }
+        if (c != ',') {
+          return null;
+        }
+      }
+    }
+
+    private boolean atEnd() {
+      skipWs();
+      return pos == len;
+    }
+
+    private void skipWs() {
+      while (pos < len) {
+        char c = s.charAt(pos);
+        if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+          return;
+        }
+        pos++;
+      }
+    }
+
+    /**
+     * Match a key in place against the schema without allocating it.
+     *
+     * @return one of the FIELD_ constants, or Integer.MIN_VALUE to fall back
+     */
+    private int readKey() {
+      if (pos >= len || s.charAt(pos) != '"') {
+        return Integer.MIN_VALUE;
+      }
+      int start = pos + 1;
+      int end = start;
+      while (end < len) {
+        char c = s.charAt(end);
+        if (c == '"') {
+          break;
+        }
+        if (c == '\\' || c < 0x20) {
+          return Integer.MIN_VALUE;
+        }
+        end++;
+      }
+      if (end >= len) {
+        return Integer.MIN_VALUE;
+      }
+      pos = end + 1;
+      int keyLen = end - start;
+      if (matches("userId", start, keyLen)) {
+        return FIELD_USER_ID;
+      }
+      if (matches("username", start, keyLen)) {
+        return FIELD_USERNAME;
+      }
+      if (matches("message", start, keyLen)) {
+        return FIELD_MESSAGE;
+      }
+      if (matches("timestamp", start, keyLen)) {
+        return FIELD_TIMESTAMP;
+      }
+      if (matches("messageType", start, keyLen)) {
+        return FIELD_MESSAGE_TYPE;
+      }
+      if (matches("messageId", start, keyLen)) {
+        return FIELD_MESSAGE_ID;
+      }
+      return FIELD_UNKNOWN;
+    }
+
+    private boolean matches(String key, int start, int keyLen) {
+      return key.length() == keyLen && s.regionMatches(start, key, 0, keyLen);
+    }
+
+    private boolean readValue(ChatMessageDTO dto, int field) {
+      if (pos >= len) {
+        return false;
+      }
+      char c = s.charAt(pos);
+      String value;
+      if (c == '"') {
+        value = readString();
+        if (value == null) {
+          return false;
+        }
+      } else if (c == 'n') {
+        if (!s.startsWith("null", pos)) {
+          return false;
+        }
+        pos += 4;
+        value = null;
+      } else if (c == '-' || (c >= '0' && c <= '9')) {
+        // Gson binds a number to a String field as its literal text
+        if (field == FIELD_MESSAGE_TYPE) {
+          return false;
+        }
+        value = readNumber();
+        if (value == null) {
+          return false;
+        }
+      } else {
+        return false;
+      }
+      assign(dto, field, value);
+      return true;
+    }
+
+    private void assign(ChatMessageDTO dto, int field, String value) {
+      switch (field) {
+        case FIELD_USER_ID:
+          dto.setUserId(value);
+          break;
+        case FIELD_USERNAME:
+          dto.setUsername(value);
+          break;
+        case FIELD_MESSAGE:
+          dto.setMessage(value);
+          break;
+        case FIELD_TIMESTAMP:
+          dto.setTimestamp(value);
+          break;
+        case FIELD_MESSAGE_TYPE:
+          dto.setMessageType(value == null ? null : typeOf(value));
+          break;
+        case FIELD_MESSAGE_ID:
+          dto.setMessageId(value);
+          break;
+        default:
+          // Unknown primitive member (e.g. roomId), Gson ignores it too
+          break;
+      }
+    }
+
+    /**
+     * Gson maps an unknown enum name to null, so does this.
+     */
+    private MessageType typeOf(String name) {
+      for (MessageType type : TYPES) {
+        if (type.name().equals(name)) {
+          return type;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Read a string literal. Values without escapes are a plain substring; escaped values are
+     * unescaped into a builder.
+     */
+    private String readString() {
+      int start = pos + 1;
+      int i = start;
+      while (i < len) {
+        char c = s.charAt(i);
+        if (c == '"') {
+          pos = i + 1;
+          return s.substring(start, i);
+        }
+        if (c == '\\') {
+          return readEscapedString(start, i);
+        }
+        if (c < 0x20) {
+          return null;
+        }
+        i++;
+      }
+      return null;
+    }
+
+    private String readEscapedString(int start, int firstEscape) {
+      StringBuilder sb = new StringBuilder(firstEscape - start + 16);
+      sb.append(s, start, firstEscape);
+      int i = firstEscape;
+      while (i < len) {
+        char c = s.charAt(i++);
+        if (c == '"') {
+          pos = i;
+          return sb.toString();
+        }
+        if (c < 0x20) {
+          return null;
+        }
+        if (c != '\\') {
+          sb.append(c);
+          continue;
+        }
+        if (i >= len) {
+          return null;
+        }
+        char e = s.charAt(i++);
+        switch (e) {
+          case '"':
+          case '\\':
+          case '/':
+            sb.append(e);
+            break;
+          case 'b':
+            sb.append('\b');
+            break;
+          case 'f':
+            sb.append('\f');
+            break;
+          case 'n':
+            sb.append('\n');
+            break;
+          case 'r':
+            sb.append('\r');
+            break;
+          case 't':
+            sb.append('\t');
+            break;
+          case 'u':
+            if (i + 4 > len) {
+              return null;
+            }
+            int code = 0;
+            for (int k = 0; k < 4; k++) {
+              int d = Character.digit(s.charAt(i + k), 16);
+              if (d < 0 || s.charAt(i + k) > 'f') {
+                return null;
+              }
+              code = (code << 4) | d;
+            }
+            sb.append((char) code);
+            i += 4;
+            break;
+          default:
+            return null;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Accept only canonical integers that fit in a long (no leading zeros, no -0, no fraction
+     * or exponent). For those Gson's literal text and this substring are identical.
+     */
+    private String readNumber() {
+      int start = pos;
+      int i = pos;
+      if (s.charAt(i) == '-') {
+        i++;
+      }
+      int digitsStart = i;
+      while (i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+        i++;
+      }
+      int digits = i - digitsStart;
+      if (digits == 0 || digits > 18) {
+        return null;
+      }
+      if (s.charAt(digitsStart) == '0' && (digits > 1 || digitsStart > start)) {
+        return null;
+      }
+      if (i < len) {
+        char next = s.charAt(i);
+        if (next == '.' || next == 'e' || next == 'E') {
+          return null;
+        }
+      }
+      pos = i;
+      return s.substring(start, i);
+    }
+  }
+}
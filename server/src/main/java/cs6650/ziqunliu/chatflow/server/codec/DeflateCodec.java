@@ -0,0 +1,315 @@
+package cs6650.ziqunliu.chatflow.server.codec;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Application-level compression for the {@value #JSON_SUBPROTOCOL} and
+ * {@value #BINARY_SUBPROTOCOL} subprotocols. Every message is a binary WebSocket message made of
+ * one header byte and a payload (a JSON text or a BinaryCodec frame):
+ *
+ * <pre>
+ *   header bit 0  COMPRESSED  payload is raw DEFLATE, sync-flushed, 00 00 FF FF tail removed
+ *   header bit 1  RESET       a new DEFLATE stream starts here, primed with {@link #DICTIONARY}
+ * </pre>
+ *
+ * Payloads under {@code chatflow.deflate.minBytes} go out uncompressed (header 0). Without
+ * context takeover (the default) every compressed message is RESET, so a broadcast frame is
+ * compressed once and shared by all recipients. With {@code chatflow.deflate.contextTakeover}
+ * each session keeps one stream going ({@link Session}), compressing better but once per
+ * recipient. A receiver never needs to know which mode its peer uses.
+ */
+public final class DeflateCodec {
+
+  public static final String JSON_SUBPROTOCOL = "chatflow.json.deflate.v1";
+  public static final String BINARY_SUBPROTOCOL = "chatflow.binary.deflate.v1";
+
+  static final int COMPRESSED = 1;
+  static final int RESET = 1 << 1;
+
+  private static final byte[] TAIL = {0, 0, (byte) 0xFF, (byte) 0xFF};
+
+  /**
+   * Preset dictionary, identical in the client. Common field names, values and the load
+   * client's phrases; DEFLATE finds matches near the end cheapest, so the most frequent parts
+   * come last.
+   */
+  static final byte[] DICTIONARY = (
+      "Hello!How are you?Anyone here?Nice to meet you.Good morning!Good night!What's up?LOL"
+          + "Sounds good.I agree.Let's go.See you later.Great idea.Thanks!You're welcome."
+          + "No problem.Interesting.Cool!Awesome!Nice.Where are you from?I'm studying CS."
+          + "Working on distributed systems.This is fun.Test message.Random chat.Checking in."
+          + "Join the room.Leaving soon.Back in a minute.Any updates?Let's debug.It works."
+          + "It fails sometimes.Retrying...Message queue.Thread pool.WebSocket client."
+          + "Performance test.Throughput matters.Warmup phase.Main phase.Connection dropped."
+          + "Reconnected.All good.Room is busy.Room is quiet.Ping.Pong.Done."
+          + "{\"status\":\"ERROR\",\"roomId\":\"\",\"errorCode\":\"VALIDATION_FAILED\","
+          + "\"message\":\"\",\"serverTimestamp\":\""
+          + "{\"status\":\"BATCH_ACK\",\"roomId\":\"\",\"accepted\":,\"codes\":[0,0,0,0,0,0,0,0]}"
+          + "{\"userId\":,\"username\":\"user\",\"message\":\"\",\"roomId\":,"
+          + "\"messageType\":\"TEXT\",\"timestamp\":\""
+          + "\"messageType\":\"JOIN\"\"messageType\":\"LEAVE\""
+          + "{\"userId\":\"\",\"username\":\"user\",\"clientTimestamp\":\"\","
+          + "\"messageType\":\"TEXT\",\"sequence\":,\"status\":\"SUCCESS\",\"roomId\":\"\","
+          + "\"message\":\"\",\"serverTimestamp\":\"").getBytes(StandardCharsets.UTF_8);
+
+  private static final LongAdder messages = new LongAdder();
+  private static final LongAdder skipped = new LongAdder();
+  private static final LongAdder rawBytes = new LongAdder();
+  private static final LongAdder wireBytes = new LongAdder();
+  private static final LongAdder compressNanos = new LongAdder();
+  private static final LongAdder inflatedBytes = new LongAdder();
+  private static final LongAdder inflateNanos = new LongAdder();
+  private static final LongAdder inflateErrors = new LongAdder();
+
+  // Stateless (no takeover) compression of shared frames: a fixed set of Deflaters, each used
+  // under its own lock and picked by thread id. Not per thread, since virtual dispatch threads
+  // live for one message; ended by shutdown(), after which shared frames go out uncompressed.
+  private static final SharedDeflater[] SHARED = sharedDeflaters(ServerConfig.DEFLATE_STRIPES);
+
+  private DeflateCodec() {
+  }
+
+  /**
+   * Wrap a payload as a self-contained message (RESET when compressed), shareable by any
+   * number of recipients.
+   */
+  public static ByteBuffer encodeShared(ByteBuffer payload) {
+    if (payload.remaining() < ServerConfig.DEFLATE_MIN_BYTES) {
+      return raw(payload);
+    }
+    long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    SharedDeflater shared = SHARED[(int) ((h ^ (h >>> 32)) & (SHARED.length - 1))];
+    synchronized (shared) {
+      if (shared.ended) {
+        return raw(payload);
+      }
+      if (shared.deflater == null) {
+        shared.deflater = new Deflater(ServerConfig.DEFLATE_LEVEL, true);
+      }
+      Deflater deflater = shared.deflater;
+      deflater.reset();
+      deflater.setDictionary(DICTIONARY);
+      return compress(deflater, payload, COMPRESSED | RESET);
+    }
+  }
+
+  /**
+   * End the native zlib streams of shared compression. Called when the web application stops,
+   * so a redeploy does not leave them to the garbage collector.
+   */
+  public static void shutdown() {
+    for (SharedDeflater shared : SHARED) {
+      synchronized (shared) {
+        shared.ended = true;
+        if (shared.deflater != null) {
+          shared.deflater.end();
+          shared.deflater = null;
+        }
+      }
+    }
+  }
+
+  private static SharedDeflater[] sharedDeflaters(int requested) {
+    int n = requested > 0 ? requested : Runtime.getRuntime().availableProcessors() * 2;
+    // A power of two, so the thread hash is masked
+    n = Integer.highestOneBit(Math.max(1, Math.min(n, 64)) * 2 - 1);
+    SharedDeflater[] shared = new SharedDeflater[n];
+    for (int i = 0; i < n; i++) {
+      shared[i] = new SharedDeflater();
+    }
+    return shared;
+  }
+
+  /**
+   * One stripe of shared compression, guarded by its own monitor. The Deflater is created on
+   * first use, so stripes no thread hashes to cost no native memory.
+   */
+  private static final class SharedDeflater {
+
+    private Deflater deflater;
+    private boolean ended;
+  }
+
+  /**
+   * Per-session state: the inbound DEFLATE stream and, with context takeover, the outbound
+   * one. Inbound calls come from the container thread reading the session, outbound calls from
+   * the session's single drain loop. The native zlib memory (tens of KB to inflate, a few
+   * hundred KB for a takeover deflater) is held until {@link #close()}, not until the session
+   * is collected. Each stream is used under its own lock, so close can race either side.
+   */
+  public static final class Session {
+
+    private final Inflater inflater = new Inflater(true);
+    private final Deflater deflater;
+    private boolean streamStarted;
+    // Guarded by inflater and deflater respectively
+    private boolean inflaterEnded;
+    private boolean deflaterEnded;
+
+    public Session() {
+      deflater = ServerConfig.DEFLATE_CONTEXT_TAKEOVER
+          ? new Deflater(ServerConfig.DEFLATE_LEVEL, true) : null;
+    }
+
+    /**
+     * Wrap an outbound payload for this session only, continuing its DEFLATE stream.
+     *
+     * @return null without context takeover; use the frame's shared encoding then
+     */
+    public ByteBuffer encode(ByteBuffer payload) {
+      if (deflater == null) {
+        return null;
+      }
+      if (payload.remaining() < ServerConfig.DEFLATE_MIN_BYTES) {
+        return raw(payload);
+      }
+      synchronized (deflater) {
+        if (deflaterEnded) {
+          return null;
+        }
+        int header = COMPRESSED;
+        if (!streamStarted) {
+          deflater.setDictionary(DICTIONARY);
+          streamStarted = true;
+          header |= RESET;
+        }
+        return compress(deflater, payload, header);
+      }
+    }
+
+    /**
+     * Unwrap an inbound message.
+     *
+     * @return the payload, or null if the message is malformed, inflates past
+     *     {@code chatflow.ws.maxTextMessageBytes} or the session is closed
+     */
+    public byte[] decode(byte[] message) {
+      if (message.length == 0) {
+        return null;
+      }
+      int header = message[0] & 0xFF;
+      if ((header & COMPRESSED) == 0) {
+        return Arrays.copyOfRange(message, 1, message.length);
+      }
+      synchronized (inflater) {
+        return inflaterEnded ? null : inflate(message, header);
+      }
+    }
+
+    /**
+     * Free the native zlib streams. Idempotent; later calls to encode and decode return null.
+     */
+    public void close() {
+      synchronized (inflater) {
+        if (!inflaterEnded) {
+          inflaterEnded = true;
+          inflater.end();
+        }
+      }
+      if (deflater != null) {
+        synchronized (deflater) {
+          if (!deflaterEnded) {
+            deflaterEnded = true;
+            deflater.end();
+          }
+        }
+      }
+    }
+
+    private byte[] inflate(byte[] message, int header) {
+      long start = System.nanoTime();
+      try {
+        if ((header & RESET) != 0) {
+          // Raw DEFLATE streams carry no dictionary id, both sides just agree on it
+          inflater.reset();
+          inflater.setDictionary(DICTIONARY);
+        }
+        byte[] input = Arrays.copyOfRange(message, 1, message.length + TAIL.length);
+        System.arraycopy(TAIL, 0, input, message.length - 1, TAIL.length);
+        inflater.setInput(input);
+        byte[] out = new byte[Math.max(256, input.length * 4)];
+        int length = 0;
+        do {
+          if (length == out.length) {
+            if (out.length >= ServerConfig.MAX_TEXT_MESSAGE_BYTES) {
+              inflateErrors.increment();
+              return null;
+            }
+            out = Arrays.copyOf(out,
+                Math.min(out.length * 2, ServerConfig.MAX_TEXT_MESSAGE_BYTES));
+          }
+          int n = inflater.inflate(out, length, out.length - length);
+          if (n == 0 && !inflater.needsInput() && length < out.length) {
+            // Final block or dictionary request: not something a peer of this codec sends
+            inflateErrors.increment();
+            return null;
+          }
+          length += n;
+        } while (!inflater.needsInput() || length == out.length);
+        inflatedBytes.add(length);
+        return Arrays.copyOf(out, length);
+      } catch (DataFormatException e) {
+        inflateErrors.increment();
+        return null;
+      } finally {
+        inflateNanos.add(System.nanoTime() - start);
+      }
+    }
+  }
+
+  private static ByteBuffer raw(ByteBuffer payload) {
+    ByteBuffer out = ByteBuffer.allocate(1 + payload.remaining());
+    out.put((byte) 0).put(payload.duplicate()).flip();
+    messages.increment();
+    skipped.increment();
+    rawBytes.add(payload.remaining());
+    wireBytes.add(out.remaining());
+    return out.asReadOnlyBuffer();
+  }
+
+  private static ByteBuffer compress(Deflater deflater, ByteBuffer payload, int header) {
+    long start = System.nanoTime();
+    int inputLength = payload.remaining();
+    byte[] input = new byte[inputLength];
+    payload.duplicate().get(input);
+    deflater.setInput(input);
+
+    byte[] out = new byte[inputLength / 2 + 64];
+    out[0] = (byte) header;
+    int length = 1;
+    while (true) {
+      length += deflater.deflate(out, length, out.length - length, Deflater.SYNC_FLUSH);
+      if (length < out.length) {
+        break;
+      }
+      out = Arrays.copyOf(out, out.length * 2);
+    }
+    // Drop the empty stored block that ends every sync flush, the receiver appends it back
+    length -= TAIL.length;
+
+    messages.increment();
+    rawBytes.add(inputLength);
+    wireBytes.add(length);
+    compressNanos.add(System.nanoTime() - start);
+    return ByteBuffer.wrap(out, 0, length).slice().asReadOnlyBuffer();
+  }
+
+  public static String getStats() {
+    long raw = rawBytes.sum();
+    long wire = wireBytes.sum();
+    return String.format(
+        "deflateMessages: %d, deflateSkipped: %d, deflateRatio: %.3f, deflateNsPerKB: %.0f, "
+            + "inflateNsPerKB: %.0f, inflateErrors: %d",
+        messages.sum(), skipped.sum(), raw == 0 ? 1.0 : (double) wire / raw,
+        raw == 0 ? 0.0 : compressNanos.sum() * 1024.0 / raw,
+        inflatedBytes.sum() == 0 ? 0.0 : inflateNanos.sum() * 1024.0 / inflatedBytes.sum(),
+        inflateErrors.sum());
+  }
+}
@@ -0,0 +1,147 @@
+package cs6650.ziqunliu.chatflow.server.codec;
+
+import java.time.Instant;
+
+/**
+ * ISO-8601 instant text to epoch microseconds and back, without going through
+ * {@link java.time.format.DateTimeFormatter}. The canonical UTC form
+ * {@code yyyy-MM-ddTHH:mm:ss[.fraction]Z} with a four-digit year is converted by hand; anything
+ * else goes through {@link Instant}, so results are always the same as Instant's.
+ */
+final class EpochMicros {
+
+  private static final int[] DAYS_IN_MONTH = {0, 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+  private EpochMicros() {
+  }
+
+  /**
+   * @throws java.time.DateTimeException if Instant.parse rejects the text
+   * @throws ArithmeticException if the instant does not fit epoch micros
+   */
+  static long parse(String s) {
+    long micros = parseCanonical(s);
+    if (micros != Long.MIN_VALUE) {
+      return micros;
+    }
+    Instant instant = Instant.parse(s);
+    return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L),
+        instant.getNano() / 1000);
+  }
+
+  /**
+   * Same text as {@code Instant.toString()}: fraction omitted when zero, else 3 or 6 digits.
+   */
+  static String format(long micros) {
+    long seconds = Math.floorDiv(micros, 1_000_000L);
+    int fraction = (int) Math.floorMod(micros, 1_000_000L);
+    long days = Math.floorDiv(seconds, 86_400L);
+    int secondOfDay = (int) Math.floorMod(seconds, 86_400L);
+
+    // Civil date from days since epoch (H. Hinnant's algorithm)
+    long z = days + 719_468;
+    long era = Math.floorDiv(z, 146_097);
+    long doe = z - era * 146_097;
+    long yoe = (doe - doe / 1460 + doe / 36_524 - doe / 146_096) / 365;
+    long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+    long mp = (5 * doy + 2) / 153;
+    int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+    int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+    long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+    if (year < 0 || year > 9999) {
+      return Instant.ofEpochSecond(seconds, fraction * 1000L).toString();
+    }
+
+    char[] out = new char[27];
+    int pos = 0;
+    pos = put(out, pos, (int) year, 4);
+    out[pos++] = '-';
+    pos = put(out, pos, month, 2);
+    out[pos++] = '-';
+    pos = put(out, pos, day, 2);
+    out[pos++] = 'T';
+    pos = put(out, pos, secondOfDay / 3600, 2);
+    out[pos++] = ':';
+    pos = put(out, pos, secondOfDay / 60 % 60, 2);
+    out[pos++] = ':';
+    pos = put(out, pos, secondOfDay % 60, 2);
+    if (fraction != 0) {
+      out[pos++] = '.';
+      pos = fraction % 1000 == 0 ? put(out, pos, fraction / 1000, 3) : put(out, pos, fraction, 6);
+    }
+    out[pos++] = 'Z';
+    return new String(out, 0, pos);
+  }
+
+  /**
+   * @return epoch micros, or Long.MIN_VALUE if the text is not in the canonical form
+   */
+  private static long parseCanonical(String s) {
+    int len = s.length();
+    if (len < 20 || s.charAt(len - 1) != 'Z' || s.charAt(4) != '-' || s.charAt(7) != '-'
+        || s.charAt(10) != 'T' || s.charAt(13) != ':' || s.charAt(16) != ':') {
+      return Long.MIN_VALUE;
+    }
+    int year = digits(s, 0, 4);
+    int month = digits(s, 5, 2);
+    int day = digits(s, 8, 2);
+    int hour = digits(s, 11, 2);
+    int minute = digits(s, 14, 2);
+    int second = digits(s, 17, 2);
+    if (year < 0 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23 || minute < 0
+        || minute > 59 || second < 0 || second > 59) {
+      return Long.MIN_VALUE;
+    }
+    boolean leap = (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    if (day > DAYS_IN_MONTH[month] + (month == 2 && leap ? 1 : 0)) {
+      return Long.MIN_VALUE;
+    }
+
+    int nanos = 0;
+    if (len > 20) {
+      // ".f" to ".fffffffff" before the Z
+      int count = len - 21;
+      if (s.charAt(19) != '.' || count < 1 || count > 9) {
+        return Long.MIN_VALUE;
+      }
+      int fraction = digits(s, 20, count);
+      if (fraction < 0) {
+        return Long.MIN_VALUE;
+      }
+      nanos = fraction;
+      for (int i = count; i < 9; i++) {
+        nanos *= 10;
+      }
+    }
+
+    // Days since epoch from the civil date (H. Hinnant's algorithm)
+    int y = month <= 2 ? year - 1 : year;
+    int era = Math.floorDiv(y, 400);
+    int yoe = y - era * 400;
+    int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    long days = era * 146_097L + doe - 719_468;
+    long seconds = days * 86_400 + hour * 3600 + minute * 60 + second;
+    return seconds * 1_000_000L + nanos / 1000;
+  }
+
+  private static int digits(String s, int start, int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static int put(char[] out, int pos, int value, int width) {
+    for (int i = pos + width - 1; i >= pos; i--) {
+      out[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+    return pos + width;
+  }
+}
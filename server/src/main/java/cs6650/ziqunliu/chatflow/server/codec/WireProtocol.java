@@ -0,0 +1,34 @@
+package cs6650.ziqunliu.chatflow.server.codec;
+
+/**
+ * What a session speaks, chosen by the WebSocket subprotocol negotiated at handshake. JSON text
+ * is the default when the client offers none.
+ */
+public enum WireProtocol {
+
+  JSON("", false, false),
+  BINARY(BinaryCodec.SUBPROTOCOL, true, false),
+  JSON_DEFLATE(DeflateCodec.JSON_SUBPROTOCOL, false, true),
+  BINARY_DEFLATE(DeflateCodec.BINARY_SUBPROTOCOL, true, true);
+
+  public final String subprotocol;
+  // Payloads use BinaryCodec frames instead of JSON
+  public final boolean binary;
+  // Payloads are wrapped by DeflateCodec and always travel as binary WebSocket messages
+  public final boolean deflate;
+
+  WireProtocol(String subprotocol, boolean binary, boolean deflate) {
+    this.subprotocol = subprotocol;
+    this.binary = binary;
+    this.deflate = deflate;
+  }
+
+  public static WireProtocol of(String negotiatedSubprotocol) {
+    for (WireProtocol protocol : values()) {
+      if (protocol.subprotocol.equals(negotiatedSubprotocol)) {
+        return protocol;
+      }
+    }
+    return JSON;
+  }
+}
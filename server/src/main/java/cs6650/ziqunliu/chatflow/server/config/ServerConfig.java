@@ -0,0 +1,173 @@
+package cs6650.ziqunliu.chatflow.server.config;
+
+/**
+ * Server tuning knobs. Each value can be overridden with a JVM system property, e.g.
+ * {@code -Dchatflow.outbound.capacity=4096} in Tomcat's setenv.sh.
+ */
+public final class ServerConfig {
+
+  // Max frames buffered per session before new frames are dropped for that session
+  public static final int OUTBOUND_QUEUE_CAPACITY =
+      Integer.getInteger("chatflow.outbound.capacity", 1024);
+
+  // Largest inbound text or binary frame, raised from Tomcat's 8 KB default so batches fit
+  public static final int MAX_TEXT_MESSAGE_BYTES =
+      Integer.getInteger("chatflow.ws.maxTextMessageBytes", 256 * 1024);
+  // Largest number of messages accepted in one batch frame
+  public static final int BATCH_MAX_ITEMS = Integer.getInteger("chatflow.batch.maxItems", 500);
+
+  // Application-level compression for the *.deflate.v1 subprotocols
+  public static final int DEFLATE_MIN_BYTES = Integer.getInteger("chatflow.deflate.minBytes", 128);
+  public static final int DEFLATE_LEVEL = Integer.getInteger("chatflow.deflate.level", 6);
+  public static final boolean DEFLATE_CONTEXT_TAKEOVER =
+      Boolean.parseBoolean(System.getProperty("chatflow.deflate.contextTakeover", "false"));
+  // Shared (no takeover) frames are compressed by this many locked Deflaters (0 = 2 x cores)
+  public static final int DEFLATE_STRIPES = Integer.getInteger("chatflow.deflate.stripes", 0);
+
+  // Rooms with id below this live in a flat array, larger ids in a hash map
+  public static final int ROOM_DIRECT_SLOTS = Integer.getInteger("chatflow.room.directSlots", 4096);
+  // A room's state (sequence, WAL, history, dedupe window, presence) is retired once the room
+  // has had no session for stateIdleMs (0 = only to make room); at most maxStates are kept,
+  // retiring the least recently used idle one to admit a new room. Keep stateIdleMs above
+  // chatflow.dedupe.windowMs
+  public static final long ROOM_STATE_IDLE_MS = Long.getLong("chatflow.room.stateIdleMs", 600_000);
+  public static final int ROOM_MAX_STATES = Integer.getInteger("chatflow.room.maxStates", 10_000);
+
+  // How inbound frames are scheduled: direct | sharded | virtual
+  public static final String DISPATCH_MODE = System.getProperty("chatflow.dispatch.mode", "direct");
+  public static final int DISPATCH_SHARDS = Integer.getInteger("chatflow.dispatch.shards",
+      Runtime.getRuntime().availableProcessors());
+  public static final int DISPATCH_MAILBOX_CAPACITY =
+      Integer.getInteger("chatflow.dispatch.mailboxCapacity", 8192);
+  public static final int DISPATCH_MAX_IN_FLIGHT =
+      Integer.getInteger("chatflow.dispatch.maxInFlight", 10000);
+
+  // Cross-node fan-out: inprocess (single node) | socket (TCP between the nodes in peers)
+  public static final String BUS_MODE = System.getProperty("chatflow.bus.mode", "inprocess");
+  public static final int BUS_PORT = Integer.getInteger("chatflow.bus.port", 7600);
+  // Interface the bus port listens on; the bus is unauthenticated, so set this to the node's
+  // private address (not 0.0.0.0 on a public host) when peers are on other machines
+  public static final String BUS_BIND_ADDRESS =
+      System.getProperty("chatflow.bus.bindAddress", "127.0.0.1");
+  // Comma-separated host:port of the other nodes' bus ports
+  public static final String BUS_PEERS = System.getProperty("chatflow.bus.peers", "");
+  // Relayed frames are collected this long and sent as one record per room
+  public static final int BUS_LINGER_MS = Integer.getInteger("chatflow.bus.lingerMs", 2);
+  public static final int BUS_MAX_BATCH_BYTES =
+      Integer.getInteger("chatflow.bus.maxBatchBytes", 256 * 1024);
+  public static final int BUS_QUEUE_CAPACITY = Integer.getInteger("chatflow.bus.queueCapacity", 65536);
+
+  // Room ownership: comma-separated ws base URIs of all nodes (empty = no routing) and this
+  // node's own entry; a room's owner is picked on a consistent-hash ring of virtualNodes each
+  public static final String CLUSTER_NODES = System.getProperty("chatflow.cluster.nodes", "");
+  public static final String CLUSTER_SELF = System.getProperty("chatflow.cluster.self", "");
+  public static final int CLUSTER_VIRTUAL_NODES =
+      Integer.getInteger("chatflow.cluster.virtualNodes", 160);
+
+  // Write-ahead log of accepted messages: one directory of mmap'ed segments per room
+  public static final boolean WAL_ENABLED =
+      Boolean.parseBoolean(System.getProperty("chatflow.wal.enabled", "true"));
+  public static final String WAL_DIR = System.getProperty("chatflow.wal.dir",
+      System.getProperty("catalina.base", System.getProperty("user.dir")) + "/chatflow-wal");
+  public static final int WAL_SEGMENT_BYTES =
+      Integer.getInteger("chatflow.wal.segmentBytes", 16 * 1024 * 1024);
+  public static final int WAL_MAX_SEGMENTS_PER_ROOM =
+      Integer.getInteger("chatflow.wal.maxSegmentsPerRoom", 64);
+  // Group commit: force dirty segments every N ms, 0 forces on every append
+  public static final int WAL_FSYNC_INTERVAL_MS =
+      Integer.getInteger("chatflow.wal.fsyncIntervalMs", 10);
+
+  // Per-room window of accepted messageIds; retries inside it are acknowledged, not re-broadcast
+  public static final int DEDUPE_WINDOW_SIZE = Integer.getInteger("chatflow.dedupe.windowSize", 4096);
+  public static final long DEDUPE_WINDOW_MS = Long.getLong("chatflow.dedupe.windowMs", 60_000);
+
+  // Token bucket per userId and messageType: sustained messages per second and burst size.
+  // A rate <= 0 leaves that type unlimited
+  public static final boolean RATE_LIMIT_ENABLED =
+      Boolean.parseBoolean(System.getProperty("chatflow.ratelimit.enabled", "true"));
+  public static final int RATE_LIMIT_TEXT_PER_SECOND =
+      Integer.getInteger("chatflow.ratelimit.text.perSecond", 20);
+  public static final int RATE_LIMIT_TEXT_BURST = Integer.getInteger("chatflow.ratelimit.text.burst", 40);
+  public static final int RATE_LIMIT_JOIN_PER_SECOND =
+      Integer.getInteger("chatflow.ratelimit.join.perSecond", 5);
+  public static final int RATE_LIMIT_JOIN_BURST = Integer.getInteger("chatflow.ratelimit.join.burst", 10);
+  public static final int RATE_LIMIT_LEAVE_PER_SECOND =
+      Integer.getInteger("chatflow.ratelimit.leave.perSecond", 5);
+  public static final int RATE_LIMIT_LEAVE_BURST =
+      Integer.getInteger("chatflow.ratelimit.leave.burst", 10);
+
+  // Recent history kept off-heap per room and replayed to joining sessions
+  public static final int HISTORY_MESSAGES = Integer.getInteger("chatflow.history.messages", 100);
+  public static final int HISTORY_BYTES_PER_ROOM =
+      Integer.getInteger("chatflow.history.bytesPerRoom", 64 * 1024);
+  public static final int HISTORY_REPLAY_THREADS =
+      Integer.getInteger("chatflow.history.replayThreads", 2);
+  public static final int HISTORY_REPLAY_QUEUE =
+      Integer.getInteger("chatflow.history.replayQueue", 10000);
+
+  // Presence changes remembered per room (rounded up to a power of two) for ?sinceVersion diffs
+  public static final int PRESENCE_JOURNAL = Integer.getInteger("chatflow.presence.journal", 256);
+
+  // Drain (POST /admin/drain): sessions are closed N at a time, one batch every intervalMs,
+  // each after its in-flight frames are handled and its outbound queue is written, or after
+  // flushTimeoutMs. Undeploy waits up to shutdownTimeoutMs for a drain to finish
+  public static final int DRAIN_BATCH_SIZE = Integer.getInteger("chatflow.drain.batchSize", 200);
+  public static final int DRAIN_BATCH_INTERVAL_MS =
+      Integer.getInteger("chatflow.drain.batchIntervalMs", 100);
+  public static final int DRAIN_FLUSH_TIMEOUT_MS =
+      Integer.getInteger("chatflow.drain.flushTimeoutMs", 2000);
+  public static final int DRAIN_SHUTDOWN_TIMEOUT_MS =
+      Integer.getInteger("chatflow.drain.shutdownTimeoutMs", 5000);
+  // Required in X-Admin-Token for /admin/*; when empty only loopback clients are allowed
+  public static final String ADMIN_TOKEN = System.getProperty("chatflow.admin.token", "");
+
+  // Heartbeat: sessions silent for pingIntervalMs get a ping, sessions silent for idleTimeoutMs
+  // are closed. Checked on a timing wheel of `wheelSlots` slots turning every tickMs; pings and
+  // closes (which may block on a dead peer) run on ioThreads
+  public static final boolean HEARTBEAT_ENABLED =
+      Boolean.parseBoolean(System.getProperty("chatflow.heartbeat.enabled", "true"));
+  public static final int HEARTBEAT_TICK_MS = Integer.getInteger("chatflow.heartbeat.tickMs", 100);
+  public static final int HEARTBEAT_WHEEL_SLOTS =
+      Integer.getInteger("chatflow.heartbeat.wheelSlots", 512);
+  public static final int HEARTBEAT_PING_INTERVAL_MS =
+      Integer.getInteger("chatflow.heartbeat.pingIntervalMs", 30000);
+  public static final int HEARTBEAT_IDLE_TIMEOUT_MS =
+      Integer.getInteger("chatflow.heartbeat.idleTimeoutMs", 75000);
+  public static final int HEARTBEAT_IO_THREADS =
+      Integer.getInteger("chatflow.heartbeat.ioThreads", 4);
+  public static final int HEARTBEAT_IO_QUEUE =
+      Integer.getInteger("chatflow.heartbeat.ioQueue", 65536);
+
+  // EmbeddedServer only (an external Tomcat uses its own server.xml): port (0 = any free port),
+  // context path, and the HTTP connector's worker threads
+  public static final int EMBEDDED_PORT = Integer.getInteger("chatflow.embedded.port", 8080);
+  public static final String EMBEDDED_CONTEXT_PATH =
+      System.getProperty("chatflow.embedded.contextPath", "/server");
+  public static final int EMBEDDED_MAX_THREADS =
+      Integer.getInteger("chatflow.embedded.maxThreads", 200);
+  public static final int EMBEDDED_MIN_SPARE_THREADS =
+      Integer.getInteger("chatflow.embedded.minSpareThreads", 10);
+
+  // Per-stage latency histograms and message counters behind /health/metrics
+  public static final boolean METRICS_ENABLED =
+      Boolean.parseBoolean(System.getProperty("chatflow.metrics.enabled", "true"));
+
+  // /health responses are re-rendered by a ticker every N ms; consistent renders per request
+  public static final int HEALTH_REFRESH_MS = Integer.getInteger("chatflow.health.refreshMs", 1000);
+  public static final boolean HEALTH_CONSISTENT =
+      Boolean.parseBoolean(System.getProperty("chatflow.health.consistent", "false"));
+
+  // Message counters: rooms below this get their own row, stripes (0 = 2 x cores) spread writers
+  public static final int STATS_ROOMS = Integer.getInteger("chatflow.stats.rooms", 256);
+  public static final int STATS_STRIPES = Integer.getInteger("chatflow.stats.stripes", 0);
+
+  // Async logger ring size (rounded up to a power of two) and per-message sampling
+  public static final int LOG_RING_CAPACITY = Integer.getInteger("chatflow.log.capacity", 8192);
+  public static final int LOG_SAMPLE_EVERY = Integer.getInteger("chatflow.log.sampleEvery", 10000);
+  public static final int LOG_MAX_SAMPLED_PER_SECOND =
+      Integer.getInteger("chatflow.log.maxSampledPerSecond", 100);
+  public static final int LOG_FLUSH_BATCH = Integer.getInteger("chatflow.log.flushBatch", 256);
+
+  private ServerConfig() {
+  }
+}
@@ -0,0 +1,99 @@
+package cs6650.ziqunliu.chatflow.server.controller;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.model.response.ErrorResponse;
+import cs6650.ziqunliu.chatflow.server.model.response.SuccessResponse;
+import cs6650.ziqunliu.chatflow.server.service.DrainService;
+
+/**
+ * Operator endpoints:
+ * <ul>
+ *   <li>{@code POST /admin/drain}: take the node out of service before a deploy, see
+ *   {@link DrainService}. 202 when the drain starts, 409 if one already started</li>
+ *   <li>{@code GET /admin/drain}: drain state and progress; {@code DRAINED} means the WAR can
+ *   be replaced without cutting anyone off</li>
+ * </ul>
+ * Requests must carry {@code X-Admin-Token} matching {@code -Dchatflow.admin.token}, or come from
+ * loopback when no token is configured.
+ */
+@WebServlet("/admin/*")
+public class AdminController extends HttpServlet {
+
+  private static final Gson GSON = new Gson();
+  private static final String JSON = "application/json;charset=UTF-8";
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+    if (!authorized(req, res) || !isDrainPath(req, res)) {
+      return;
+    }
+    writeState(res, HttpServletResponse.SC_OK);
+  }
+
+  @Override
+  protected void doPost(HttpServletRequest req, HttpServletResponse res) throws IOException {
+    if (!authorized(req, res) || !isDrainPath(req, res)) {
+      return;
+    }
+    boolean started = DrainService.start();
+    writeState(res, started ? HttpServletResponse.SC_ACCEPTED : HttpServletResponse.SC_CONFLICT);
+  }
+
+  private static boolean isDrainPath(HttpServletRequest req, HttpServletResponse res)
+      throws IOException {
+    if ("/drain".equals(req.getPathInfo())) {
+      return true;
+    }
+    writeError(res, HttpServletResponse.SC_NOT_FOUND, "INVALID_URL", "expected /admin/drain");
+    return false;
+  }
+
+  private static boolean authorized(HttpServletRequest req, HttpServletResponse res)
+      throws IOException {
+    boolean ok;
+    if (ServerConfig.ADMIN_TOKEN.isEmpty()) {
+      String remote = req.getRemoteAddr();
+      ok = "127.0.0.1".equals(remote) || "0:0:0:0:0:0:0:1".equals(remote) || "::1".equals(remote);
+    } else {
+      String token = req.getHeader("X-Admin-Token");
+      // Constant-time compare
+      ok = token != null && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+          ServerConfig.ADMIN_TOKEN.getBytes(StandardCharsets.UTF_8));
+    }
+    if (!ok) {
+      writeError(res, HttpServletResponse.SC_FORBIDDEN, "FORBIDDEN", "admin access denied");
+    }
+    return ok;
+  }
+
+  private static void writeState(HttpServletResponse res, int status) throws IOException {
+    SuccessResponse body = new SuccessResponse(DrainService.getState().name(), null);
+    body.setMessage(DrainService.getStats());
+    body.setServerTimestamp(java.time.Instant.now().toString());
+    write(res, status, GSON.toJson(body));
+  }
+
+  private static void writeError(HttpServletResponse res, int status, String code,
+      String message) throws IOException {
+    ErrorResponse error = new ErrorResponse(code, message, null);
+    error.setServerTimestamp(java.time.Instant.now().toString());
+    write(res, status, GSON.toJson(error));
+  }
+
+  private static void write(HttpServletResponse res, int status, String json)
+      throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    res.setStatus(status);
+    res.setContentType(JSON);
+    res.setContentLength(body.length);
+    res.getOutputStream().write(body);
+  }
+}
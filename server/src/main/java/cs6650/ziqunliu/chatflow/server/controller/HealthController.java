@@ -1,37 +1,51 @@
 package cs6650.ziqunliu.chatflow.server.controller;
 
-import com.google.gson.Gson;
 import java.io.IOException;
 import java.util.logging.Logger;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.health.HealthSnapshot;
+import cs6650.ziqunliu.chatflow.server.metrics.PrometheusExporter;
+import cs6650.ziqunliu.chatflow.server.service.DrainService;
 import cs6650.ziqunliu.chatflow.server.service.RequestStatsService;
-import cs6650.ziqunliu.chatflow.server.model.response.ErrorResponse;
-import cs6650.ziqunliu.chatflow.server.model.response.SuccessResponse;
 
+/**
+ * Health probe, stats and Prometheus metrics. Bodies come pre-rendered from
+ * {@link HealthSnapshot}, so a probe does no serialization or logging. In the consistent mode
+ * ({@code -Dchatflow.health.consistent=true}, or {@code ?consistent=true} on one request)
+ * every response is rendered and logged on the spot.
+ */
 @WebServlet("/health/*")
 public class HealthController extends HttpServlet {
 
   private static final Logger logger = Logger.getLogger(HealthController.class.getName());
-  private static final Gson GSON = new Gson();
+  private static final String JSON = "application/json;charset=UTF-8";
 
   @Override
   protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
-    logger.info("GET " + req.getRequestURI());
-    res.setContentType("application/json");
-    res.setCharacterEncoding("UTF-8");
-
     String urlPath = req.getPathInfo();
+    boolean consistent = ServerConfig.HEALTH_CONSISTENT
+        || (req.getQueryString() != null && "true".equals(req.getParameter("consistent")));
+    HealthSnapshot snapshot;
+    if (consistent) {
+      logger.info("GET " + req.getRequestURI());
+      snapshot = HealthSnapshot.render();
+    } else {
+      snapshot = HealthSnapshot.current();
+    }
+
+    // Prometheus scrape target
+    if ("/metrics".equals(urlPath)) {
+      write(res, HttpServletResponse.SC_OK, PrometheusExporter.CONTENT_TYPE, snapshot.metrics());
+      return;
+    }
 
     // Special endpoint for statistics
     if ("/stats".equals(urlPath)) {
-      res.setStatus(HttpServletResponse.SC_OK);
-      SuccessResponse stats = new SuccessResponse("OK", null);
-      stats.setMessage(RequestStatsService.getStats());
-      stats.setServerTimestamp(java.time.Instant.now().toString());
-      res.getWriter().write(GSON.toJson(stats));
+      write(res, HttpServletResponse.SC_OK, JSON, snapshot.stats());
       return;
     }
 
@@ -39,20 +53,29 @@ public class HealthController extends HttpServlet {
 
     // Check if url is valid
     if (!isUrlValid(urlPath)) {
-      logger.warning("Invalid URL: " + urlPath);
-      res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-      ErrorResponse error = new ErrorResponse("INVALID_URL", "invalid url", null);
-      error.setServerTimestamp(java.time.Instant.now().toString());
-      res.getWriter().write(GSON.toJson(error));
+      if (consistent) {
+        logger.warning("Invalid URL: " + urlPath);
+      }
+      write(res, HttpServletResponse.SC_BAD_REQUEST, JSON, snapshot.invalidUrl());
+      return;
+    }
+
+    // Out of rotation while draining, so load balancers stop sending new sessions
+    if (DrainService.isDraining()) {
+      write(res, HttpServletResponse.SC_SERVICE_UNAVAILABLE, JSON, snapshot.draining());
       return;
     }
 
     // Return 200
-    res.setStatus(HttpServletResponse.SC_OK);
-    SuccessResponse ok = new SuccessResponse("OK", null);
-    ok.setMessage("OK");
-    ok.setServerTimestamp(java.time.Instant.now().toString());
-    res.getWriter().write(GSON.toJson(ok));
+    write(res, HttpServletResponse.SC_OK, JSON, snapshot.ok());
+  }
+
+  private static void write(HttpServletResponse res, int status, String contentType, byte[] body)
+      throws IOException {
+    res.setStatus(status);
+    res.setContentType(contentType);
+    res.setContentLength(body.length);
+    res.getOutputStream().write(body);
   }
 
   private boolean isUrlValid(String urlPath) {
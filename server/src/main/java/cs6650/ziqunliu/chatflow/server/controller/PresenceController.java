@@ -0,0 +1,75 @@
+package cs6650.ziqunliu.chatflow.server.controller;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import cs6650.ziqunliu.chatflow.server.model.response.ErrorResponse;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import cs6650.ziqunliu.chatflow.server.service.PresenceSnapshots;
+
+/**
+ * Room presence over HTTP:
+ * <ul>
+ *   <li>{@code GET /rooms/{roomId}/presence}: every member and the presence version</li>
+ *   <li>{@code GET /rooms/{roomId}/presence?sinceVersion=N}: only the users that joined or left
+ *   after version N, or the full list if N is too old</li>
+ * </ul>
+ * Bodies come pre-rendered from {@link PresenceSnapshots}, so polling an unchanged room does
+ * no serialization.
+ */
+@WebServlet("/rooms/*")
+public class PresenceController extends HttpServlet {
+
+  private static final Gson GSON = new Gson();
+  private static final String JSON = "application/json;charset=UTF-8";
+  private static final String SUFFIX = "/presence";
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+    String urlPath = req.getPathInfo();
+    int roomId = RoomRegistry.INVALID_ROOM_ID;
+    if (urlPath != null && urlPath.length() > SUFFIX.length() + 1 && urlPath.endsWith(SUFFIX)) {
+      roomId = RoomRegistry.parseRoomId(urlPath.substring(1, urlPath.length() - SUFFIX.length()));
+    }
+    if (roomId == RoomRegistry.INVALID_ROOM_ID) {
+      writeError(res, "INVALID_URL", "expected /rooms/{roomId}/presence");
+      return;
+    }
+
+    String since = req.getQueryString() == null ? null : req.getParameter("sinceVersion");
+    if (since == null) {
+      write(res, PresenceSnapshots.snapshot(roomId));
+      return;
+    }
+    long sinceVersion;
+    try {
+      sinceVersion = Long.parseLong(since);
+    } catch (NumberFormatException e) {
+      writeError(res, "INVALID_PARAMETER", "sinceVersion must be a number");
+      return;
+    }
+    write(res, PresenceSnapshots.since(roomId, sinceVersion));
+  }
+
+  private static void write(HttpServletResponse res, byte[] body) throws IOException {
+    res.setStatus(HttpServletResponse.SC_OK);
+    res.setContentType(JSON);
+    res.setContentLength(body.length);
+    res.getOutputStream().write(body);
+  }
+
+  private static void writeError(HttpServletResponse res, String code, String message)
+      throws IOException {
+    ErrorResponse error = new ErrorResponse(code, message, null);
+    error.setServerTimestamp(java.time.Instant.now().toString());
+    byte[] body = GSON.toJson(error).getBytes(StandardCharsets.UTF_8);
+    res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    res.setContentType(JSON);
+    res.setContentLength(body.length);
+    res.getOutputStream().write(body);
+  }
+}
@@ -1,34 +1,70 @@
 package cs6650.ziqunliu.chatflow.server.controller;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
 import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
-import javax.websocket.RemoteEndpoint;
+import javax.websocket.PongMessage;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import cs6650.ziqunliu.chatflow.server.broadcast.BroadcastFrame;
+import cs6650.ziqunliu.chatflow.server.broadcast.RoomBroadcaster;
+import cs6650.ziqunliu.chatflow.server.bus.RoomBus;
+import cs6650.ziqunliu.chatflow.server.bus.RoomBuses;
+import cs6650.ziqunliu.chatflow.server.cluster.ClusterRouting;
+import cs6650.ziqunliu.chatflow.server.codec.BinaryCodec;
+import cs6650.ziqunliu.chatflow.server.codec.ChatMessageDecoder;
+import cs6650.ziqunliu.chatflow.server.codec.DeflateCodec;
+import cs6650.ziqunliu.chatflow.server.codec.WireProtocol;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.dispatch.Dispatchers;
+import cs6650.ziqunliu.chatflow.server.dispatch.MessageDispatcher;
+import cs6650.ziqunliu.chatflow.server.heartbeat.HeartbeatMonitor;
+import cs6650.ziqunliu.chatflow.server.history.HistoryReplayer;
+import cs6650.ziqunliu.chatflow.server.history.RoomHistory;
+import cs6650.ziqunliu.chatflow.server.logging.AsyncLog;
+import cs6650.ziqunliu.chatflow.server.logging.LogEvent;
+import cs6650.ziqunliu.chatflow.server.metrics.MessageMetrics;
+import cs6650.ziqunliu.chatflow.server.metrics.Stage;
+import cs6650.ziqunliu.chatflow.server.room.DedupeWindow;
+import cs6650.ziqunliu.chatflow.server.room.Room;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import cs6650.ziqunliu.chatflow.server.room.RoomState;
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+import cs6650.ziqunliu.chatflow.server.service.DrainService;
 import cs6650.ziqunliu.chatflow.server.service.MessageValidationService;
+import cs6650.ziqunliu.chatflow.server.service.PresenceService;
+import cs6650.ziqunliu.chatflow.server.service.RateLimitService;
+import cs6650.ziqunliu.chatflow.server.service.RequestStatsService;
+import cs6650.ziqunliu.chatflow.server.service.RequestStatsService.Outcome;
 import cs6650.ziqunliu.chatflow.server.model.dto.ChatMessageDTO;
+import cs6650.ziqunliu.chatflow.server.model.response.BatchAckResponse;
+import cs6650.ziqunliu.chatflow.server.model.response.DuplicateAckResponse;
 import cs6650.ziqunliu.chatflow.server.model.response.ErrorResponse;
 import cs6650.ziqunliu.chatflow.server.model.event.MessageBroadcastEvent;
 
 // Test uri ws://<ec2 public ip>:8080/server/ws/chat/1
-@javax.websocket.server.ServerEndpoint("/ws/chat/{roomId}")
+// JSON text by default; clients offering a subprotocol get BinaryCodec and/or DeflateCodec frames
+@javax.websocket.server.ServerEndpoint(value = "/ws/chat/{roomId}",
+    subprotocols = {BinaryCodec.SUBPROTOCOL, DeflateCodec.JSON_SUBPROTOCOL,
+        DeflateCodec.BINARY_SUBPROTOCOL})
 public class ServerWebSocketController {
 
-  private static final Map<String, Set<Session>> roomSessions = new ConcurrentHashMap<>();
-  private static final Gson GSON = new Gson();
-  private static AtomicInteger noOfMessages = new AtomicInteger();
+  private static final MessageDispatcher DISPATCHER = Dispatchers.get();
+  private static final RoomBus BUS = RoomBuses.get();
 
   /**
-   * If `roomId` does not exist in map, add to map.
+   * Parse `roomId` once, cache it with the session's outbound queue in a SessionContext, join
+   * the room (created if it does not exist) and start the session's heartbeat. Non-numeric room
+   * ids and sessions opened while the node drains are rejected, and rooms owned by another
+   * cluster node are redirected there (see {@link ClusterRouting}). The room's
+   * recent history is then replayed in the background, optionally only messages after the
+   * `since` query parameter (a sequence number or an ISO-8601 timestamp).
    *
    * @param session WebSocket connection
    * @param roomId  Identifier passed in by endpoint
@@ -36,74 +72,357 @@ public class ServerWebSocketController {
    */
   @OnOpen
   public void onOpen(Session session, @PathParam("roomId") String roomId) throws IOException {
-    Set<Session> sessions = roomSessions.computeIfAbsent(roomId,
-        k -> ConcurrentHashMap.newKeySet());
-    sessions.add(session);
+    int parsedRoomId = RoomRegistry.parseRoomId(roomId);
+    if (parsedRoomId == RoomRegistry.INVALID_ROOM_ID) {
+      AsyncLog.log(LogEvent.SESSION_REJECTED, 0, 0, roomId);
+      session.close(new CloseReason(CloseReason.CloseCodes.CANNOT_ACCEPT, "invalid roomId"));
+      return;
+    }
+    // Rooms owned by another node: close before joining, the reason names the owner
+    String owner = ClusterRouting.redirectFor(parsedRoomId, ClusterRouting.skipOf(session));
+    if (owner != null) {
+      AsyncLog.log(LogEvent.SESSION_REDIRECTED, parsedRoomId, 0, owner);
+      session.close(new CloseReason(ClusterRouting.REDIRECT, owner));
+      return;
+    }
+    // Draining: send the client to the room's next node before it joins anything
+    if (DrainService.isDraining()) {
+      AsyncLog.log(LogEvent.SESSION_REJECTED, parsedRoomId, 0, roomId);
+      DrainService.refuse(session, parsedRoomId);
+      return;
+    }
 
-    // Print onto console
-    System.out.println("joined room " + roomId + ", sessionId=" + session.getId());
+    // Outbound queue must exist before the session becomes visible to broadcasters
+    SessionContext ctx = new SessionContext(session, parsedRoomId, roomId,
+        RoomBroadcaster.attach(session));
+    ctx.bind();
+    // Batch frames are larger than Tomcat's default 8 KB message buffers
+    session.setMaxTextMessageBufferSize(ServerConfig.MAX_TEXT_MESSAGE_BYTES);
+    session.setMaxBinaryMessageBufferSize(ServerConfig.MAX_TEXT_MESSAGE_BYTES);
 
-    // Send message
-    RemoteEndpoint.Async asyncRemoteEndpoint = session.getAsyncRemote();
-    asyncRemoteEndpoint.sendText("joined room " + roomId + ", sessionId=" + session.getId());
+    // Live frames wait behind the replay; everything before `until` is history, the rest live
+    ctx.getOutbound().hold();
+    Room room = RoomRegistry.join(ctx);
+    if (room == null) {
+      // Every room state this node keeps has sessions; @OnClose detaches the outbound queue
+      AsyncLog.log(LogEvent.SESSION_REJECTED, parsedRoomId, 0, roomId);
+      session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "too many rooms"));
+      return;
+    }
+    // Queued like replayed history, so it is written first, ahead of held live frames
+    ctx.getOutbound().offerReplay(
+        BroadcastFrame.ofText("joined room " + roomId + ", sessionId=" + session.getId()));
+    HeartbeatMonitor.register(ctx);
+    RoomHistory history = room.getState().getHistory();
+    long until = history.end();
+    String since = firstParameter(session, "since");
+    HistoryReplayer.replay(history, ctx.getOutbound(), until,
+        HistoryReplayer.parseSinceSequence(since), HistoryReplayer.parseSinceMillis(since));
+
+    // Log through the async logger, never block on stdout
+    AsyncLog.log(LogEvent.SESSION_OPEN, parsedRoomId, room.size(), session.getId());
+  }
+
+  private static String firstParameter(Session session, String name) {
+    List<String> values = session.getRequestParameterMap().get(name);
+    return values == null || values.isEmpty() ? null : values.get(0);
   }
 
   /**
-   * Accept messages from the client. Serialize JSON into dto. Validate message.
-   * Assemble broadcast event and broadcast.
+   * Accept messages from the client and hand them to the configured dispatcher, which runs
+   * {@link #handleMessage} on this thread (direct) or on the room's shard thread (sharded).
    * @param message
    * @param session
-   * @param roomId
-   * @throws IOException
    */
   @OnMessage
-  public void onMessage(String message, Session session, @PathParam("roomId") String roomId) {
+  public void onMessage(String message, Session session) {
+    SessionContext ctx = SessionContext.of(session);
+    HeartbeatMonitor.touch(ctx);
+    dispatch(ctx, () -> runText(ctx, message));
+  }
+
+  /**
+   * Binary counterpart of {@link #onMessage(String, Session)} for sessions that negotiated
+   * {@link BinaryCodec#SUBPROTOCOL} or a deflate subprotocol. The byte[] is the container's own
+   * copy, safe to hand to another thread. Compressed messages are inflated here, on the thread
+   * reading the session, because the session's DEFLATE stream must see them in order.
+   */
+  @OnMessage
+  public void onBinaryMessage(byte[] message, Session session) {
+    SessionContext ctx = SessionContext.of(session);
+    HeartbeatMonitor.touch(ctx);
+    WireProtocol protocol = ctx.getOutbound().getProtocol();
+    if (!protocol.deflate) {
+      dispatch(ctx, () -> runBinary(ctx, message));
+      return;
+    }
+    byte[] payload = ctx.getOutbound().getDeflate().decode(message);
+    if (payload == null) {
+      sendError(ctx, "INVALID_FRAME", "compressed frame has wrong format");
+    } else if (protocol.binary) {
+      dispatch(ctx, () -> runBinary(ctx, payload));
+    } else {
+      String text = new String(payload, StandardCharsets.UTF_8);
+      dispatch(ctx, () -> runText(ctx, text));
+    }
+  }
+
+  /**
+   * Answer to a heartbeat ping, see {@link HeartbeatMonitor}.
+   */
+  @OnMessage
+  public void onPong(PongMessage pong, Session session) {
+    HeartbeatMonitor.pong(SessionContext.of(session));
+  }
+
+  // Dispatched frames stay counted as in flight on their session until handled, see
+  // DrainService. A frame the dispatcher refuses is never handled, so it is uncounted here
+  private static void dispatch(SessionContext ctx, Runnable task) {
+    ctx.beginMessage();
+    if (!DISPATCHER.dispatch(ctx, task)) {
+      ctx.endMessage();
+    }
+  }
+
+  private static void runText(SessionContext ctx, String message) {
+    try {
+      handleMessage(ctx, message);
+    } finally {
+      ctx.endMessage();
+    }
+  }
+
+  private static void runBinary(SessionContext ctx, byte[] message) {
+    try {
+      handleBinary(ctx, message);
+    } finally {
+      ctx.endMessage();
+    }
+  }
+
+  /**
+   * Decode a binary CHAT or BATCH frame and take it through the same path as JSON.
+   */
+  private static void handleBinary(SessionContext ctx, byte[] message) {
+    long start = MessageMetrics.start();
+    int type = BinaryCodec.typeOf(message);
+    if (type == BinaryCodec.BATCH) {
+      List<ChatMessageDTO> items = BinaryCodec.decodeBatch(message);
+      MessageMetrics.lap(Stage.PARSE, start);
+      if (items == null) {
+        sendError(ctx, "INVALID_FRAME", "binary frame has wrong format");
+      } else {
+        acceptBatch(ctx, items);
+      }
+      return;
+    }
+    ChatMessageDTO dto = type == BinaryCodec.CHAT ? BinaryCodec.decodeChat(message) : null;
+    MessageMetrics.lap(Stage.PARSE, start);
+    if (dto == null) {
+      sendError(ctx, "INVALID_FRAME", "binary frame has wrong format");
+      return;
+    }
+    reportRejection(ctx, accept(ctx, dto, true));
+  }
+
+  /**
+   * Serialize JSON into dto. Validate message. Assemble broadcast event and broadcast. Every
+   * frame goes through the recipient's outbound queue, so this never blocks on a socket write.
+   * A frame starting with '[' is a batch, see {@link #handleBatch}.
+   */
+  private static void handleMessage(SessionContext ctx, String message) {
+    if (isBatch(message)) {
+      handleBatch(ctx, message);
+      return;
+    }
     ChatMessageDTO dto;
 
     // Parse JSON content and handle error.
+    long start = MessageMetrics.start();
     try {
-      // Serialize JSON from WebSocket connection into the model
-      dto = GSON.fromJson(message, ChatMessageDTO.class);
+      // Deserialize JSON from WebSocket connection into the model (Gson for unusual shapes)
+      dto = ChatMessageDecoder.decode(message);
     } catch (JsonParseException e) {
-      ErrorResponse error = new ErrorResponse("INVALID_JSON", "JSON has wrong format", roomId);
-      error.setServerTimestamp(java.time.Instant.now().toString());
-      session.getAsyncRemote().sendText(GSON.toJson(error));
+      sendError(ctx, "INVALID_JSON", "JSON has wrong format");
       return;
+    } finally {
+      MessageMetrics.lap(Stage.PARSE, start);
     }
     // System.out.println("Parsed DTO: " + GSON.toJson(dto));
 
     // Do validation and handle error
-    // validator returns either null or an error message
-    String validatorError = MessageValidationService.validate(dto);
-    if (validatorError != null) {
-      ErrorResponse error = new ErrorResponse("VALIDATION_FAILED", validatorError, roomId);
-      error.setServerTimestamp(java.time.Instant.now().toString());
-      session.getAsyncRemote().sendText(GSON.toJson(error));
+    // validator returns OK or a numeric error code, no exceptions on bad input
+    reportRejection(ctx, accept(ctx, dto, true));
+  }
+
+  /**
+   * A batch frame is a JSON array of messages. Items are validated and broadcast one by one in
+   * order, then the sender gets one BatchAckResponse with a status code per item instead of an
+   * error frame per rejected item.
+   */
+  private static void handleBatch(SessionContext ctx, String message) {
+    List<ChatMessageDTO> items;
+    long start = MessageMetrics.start();
+    try {
+      items = ChatMessageDecoder.decodeBatch(message);
+    } catch (JsonParseException e) {
+      sendError(ctx, "INVALID_JSON", "JSON has wrong format");
+      return;
+    } finally {
+      MessageMetrics.lap(Stage.PARSE, start);
+    }
+    acceptBatch(ctx, items);
+  }
+
+  private static void acceptBatch(SessionContext ctx, List<ChatMessageDTO> items) {
+    // An oversized batch is still answered with a BATCH_ACK, which is what its sender waits for
+    boolean tooLarge = items.size() > ServerConfig.BATCH_MAX_ITEMS;
+    int[] codes = new int[items.size()];
+    int accepted = 0;
+    for (int i = 0; i < codes.length; i++) {
+      ChatMessageDTO dto = items.get(i);
+      if (tooLarge) {
+        codes[i] = MessageValidationService.BATCH_TOO_LARGE;
+        MessageMetrics.rejected(codes[i]);
+        RequestStatsService.record(ctx.getRoomId(),
+            dto == ChatMessageDecoder.MALFORMED ? null : dto.getMessageType(), Outcome.REJECTED);
+      } else if (dto == ChatMessageDecoder.MALFORMED) {
+        codes[i] = MessageValidationService.INVALID_JSON;
+        MessageMetrics.rejected(codes[i]);
+        RequestStatsService.record(ctx.getRoomId(), null, Outcome.REJECTED);
+      } else {
+        codes[i] = accept(ctx, dto, false);
+      }
+      if (codes[i] == MessageValidationService.OK) {
+        accepted++;
+      }
+    }
+    BatchAckResponse ack = new BatchAckResponse(ctx.getRoomIdText(), accepted, codes);
+    ack.setServerTimestamp(java.time.Instant.now().toString());
+    RoomBroadcaster.send(ctx, BroadcastFrame.encode(ack));
+  }
+
+  /**
+   * Error frame for a single message that {@link #accept} refused; nothing for accepted and
+   * duplicate messages, which already got their reply.
+   */
+  private static void reportRejection(SessionContext ctx, int code) {
+    if (code == MessageValidationService.OK || code == MessageValidationService.DUPLICATE) {
       return;
     }
+    sendError(ctx, code == MessageValidationService.RATE_LIMITED ? "RATE_LIMITED"
+        : "VALIDATION_FAILED", MessageValidationService.messageOf(code));
+  }
 
+  /**
+   * Validate one decoded message and, if it is valid and its sender is within the rate limit,
+   * sequence, log and broadcast it. Each step is timed as a {@link Stage}. A message whose
+   * messageId the room accepted within the dedupe window is not broadcast again.
+   *
+   * @param ackDuplicate send the sender a DuplicateAckResponse for a duplicate (batches report
+   *                     it in their BatchAckResponse instead)
+   * @return {@link MessageValidationService#OK}, {@link MessageValidationService#DUPLICATE},
+   *         {@link MessageValidationService#RATE_LIMITED} or the validation error code
+   */
+  private static int accept(SessionContext ctx, ChatMessageDTO dto, boolean ackDuplicate) {
+    long t = MessageMetrics.start();
+    int validationCode = MessageValidationService.validateCode(dto);
+    RoomState state = ctx.getRoom().getState();
+    long fingerprint = 0;
+    long now = 0;
+    if (validationCode == MessageValidationService.OK && dto.getMessageId() != null) {
+      // A retry of an accepted message is acknowledged without spending a rate-limit token
+      fingerprint = DedupeWindow.fingerprint(dto.getUserId(), dto.getMessageId());
+      now = System.currentTimeMillis();
+      long earlier = state.acceptedSequence(fingerprint, now);
+      if (earlier != 0) {
+        MessageMetrics.lap(Stage.VALIDATE, t);
+        return duplicate(ctx, dto, earlier, ackDuplicate);
+      }
+    }
+    if (validationCode == MessageValidationService.OK && !RateLimitService.tryAcquire(
+        MessageValidationService.userIdOf(dto.getUserId()), dto.getMessageType())) {
+      validationCode = MessageValidationService.RATE_LIMITED;
+    }
+    t = MessageMetrics.lap(Stage.VALIDATE, t);
+    if (validationCode != MessageValidationService.OK) {
+      MessageMetrics.rejected(validationCode);
+      RequestStatsService.record(ctx.getRoomId(), dto == null ? null : dto.getMessageType(),
+          Outcome.REJECTED);
+      return validationCode;
+    }
+
+    // Sequence numbers are per room and survive restarts through the WAL
+    long sequence;
+    if (dto.getMessageId() == null) {
+      sequence = state.nextSequence();
+    } else {
+      // Re-checked atomically: a concurrent copy may have been accepted since the lookup
+      sequence = state.claimSequence(fingerprint, now);
+      if (sequence < 0) {
+        return duplicate(ctx, dto, -sequence, ackDuplicate);
+      }
+    }
     MessageBroadcastEvent success = new MessageBroadcastEvent(
         "SUCCESS",
-        roomId,
+        ctx.getRoomIdText(),
         java.time.Instant.now().toString(),
         dto.getUserId(),
         dto.getUsername(),
         dto.getMessage(),
         dto.getTimestamp(),
         dto.getMessageType().name());
+    success.setSequence(sequence);
+    success.setMessageId(dto.getMessageId());
+    t = MessageMetrics.lap(Stage.BUILD_EVENT, t);
+
+    AsyncLog.sample(LogEvent.MESSAGES_RECEIVED);
+    // Encode once; every recipient shares the same frame
+    BroadcastFrame frame = BroadcastFrame.encode(success, sequence);
+    t = MessageMetrics.lap(Stage.SERIALIZE, t);
+
+    // Append to the room's write-ahead log before anyone sees the message; presence is updated
+    // here too, so whoever receives a JOIN can already find its sender online
+    state.append(sequence, frame);
+    PresenceService.apply(state, ctx, MessageValidationService.userIdOf(dto.getUserId()),
+        dto.getMessageType());
+    t = MessageMetrics.lap(Stage.PERSIST, t);
 
-    // Assignment 1: Just echo back to sender, no broadcasting needed
-    // Use synchronous send to avoid async buffer overflow
-    noOfMessages.incrementAndGet();
-    System.out.println("number of mesaages:" + noOfMessages.get());
-    String payload = GSON.toJson(success);
-    if (session.isOpen()) {
-      try {
-        session.getBasicRemote().sendText(payload);  // Synchronous send
-      } catch (IOException e) {
-        System.err.println("Failed to send response: " + e.getMessage());
+    // Fan out to every session in the room, the sender included (its copy is the ACK), and to
+    // the room's sessions on other nodes
+    BUS.publish(ctx.getRoomId(), frame);
+    MessageMetrics.lap(Stage.SEND, t);
+    RequestStatsService.record(ctx.getRoomId(), dto.getMessageType(), Outcome.ACCEPTED);
+    return MessageValidationService.OK;
+  }
+
+  private static int duplicate(SessionContext ctx, ChatMessageDTO dto, long sequence,
+      boolean ackDuplicate) {
+    if (ackDuplicate) {
+      DuplicateAckResponse ack =
+          new DuplicateAckResponse(ctx.getRoomIdText(), dto.getMessageId(), sequence);
+      ack.setServerTimestamp(java.time.Instant.now().toString());
+      RoomBroadcaster.send(ctx, BroadcastFrame.encode(ack));
+    }
+    RequestStatsService.record(ctx.getRoomId(), dto.getMessageType(), Outcome.DUPLICATE);
+    return MessageValidationService.DUPLICATE;
+  }
+
+  private static void sendError(SessionContext ctx, String errorCode, String message) {
+    MessageMetrics.errorFrame(errorCode);
+    ErrorResponse error = new ErrorResponse(errorCode, message, ctx.getRoomIdText());
+    error.setServerTimestamp(java.time.Instant.now().toString());
+    RoomBroadcaster.send(ctx, BroadcastFrame.encode(error));
+  }
+
+  private static boolean isBatch(String message) {
+    for (int i = 0; i < message.length(); i++) {
+      char c = message.charAt(i);
+      if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+        return c == '[';
       }
     }
+    return false;
   }
 
   /**
@@ -111,14 +430,17 @@ public class ServerWebSocketController {
    * @param session
    */
   @OnClose
-  public void onClose(Session session, @PathParam("roomId") String roomId) {
-    Set<Session> sessions = roomSessions.get(roomId);
-    if (sessions != null) {
-      sessions.remove(session);
-      if (sessions.isEmpty()) {
-        roomSessions.remove(roomId);
-      }
+  public void onClose(Session session) {
+    SessionContext ctx = SessionContext.of(session);
+    if (ctx == null) {
+      return;  // Rejected at @OnOpen
     }
+    RoomBroadcaster.detach(ctx);
+    PresenceService.sessionClosed(ctx);
+    Room room = ctx.getRoom();
+    RoomRegistry.leave(ctx);
+    AsyncLog.log(LogEvent.SESSION_CLOSE, ctx.getRoomId(), room == null ? 0 : room.size(),
+        session.getId());
   }
 
   @OnError
@@ -0,0 +1,16 @@
+package cs6650.ziqunliu.chatflow.server.dispatch;
+
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+
+/**
+ * Original model: the container thread that read the frame handles it. Frames of one room may
+ * run concurrently on several container threads.
+ */
+public class DirectDispatcher implements MessageDispatcher {
+
+  @Override
+  public boolean dispatch(SessionContext ctx, Runnable task) {
+    task.run();
+    return true;
+  }
+}
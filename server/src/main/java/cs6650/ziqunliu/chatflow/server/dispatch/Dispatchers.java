@@ -0,0 +1,50 @@
+package cs6650.ziqunliu.chatflow.server.dispatch;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+
+/**
+ * Builds the dispatcher selected by configuration:
+ * <ul>
+ *   <li>{@code direct} (default): handle on the container thread</li>
+ *   <li>{@code sharded}: per-room actor shards, {@code -Dchatflow.dispatch.shards}</li>
+ *   <li>{@code virtual}: virtual thread per message, {@code -Dchatflow.dispatch.maxInFlight}</li>
+ * </ul>
+ */
+public final class Dispatchers {
+
+  private static MessageDispatcher instance;
+
+  private Dispatchers() {
+  }
+
+  /**
+   * The server-wide dispatcher, created on first use.
+   */
+  public static synchronized MessageDispatcher get() {
+    if (instance == null) {
+      instance = create(ServerConfig.DISPATCH_MODE);
+    }
+    return instance;
+  }
+
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      instance.shutdown();
+      instance = null;
+    }
+  }
+
+  public static MessageDispatcher create(String mode) {
+    switch (mode) {
+      case "sharded":
+        return new RoomShardDispatcher(ServerConfig.DISPATCH_SHARDS,
+            ServerConfig.DISPATCH_MAILBOX_CAPACITY);
+      case "virtual":
+        return new VirtualThreadDispatcher(ServerConfig.DISPATCH_MAX_IN_FLIGHT);
+      case "direct":
+        return new DirectDispatcher();
+      default:
+        throw new IllegalArgumentException("Unknown chatflow.dispatch.mode: " + mode);
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package cs6650.ziqunliu.chatflow.server.dispatch;
+
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+
+/**
+ * Decides which thread runs the handling of an inbound frame. The mode is picked once at
+ * startup with {@code -Dchatflow.dispatch.mode}, see {@link Dispatchers}.
+ */
+public interface MessageDispatcher {
+
+  /**
+   * Run (or schedule) {@code task} for a frame received on {@code ctx}'s session.
+   *
+   * @return false if the task was refused (the calling thread was interrupted, or the
+   *     dispatcher is shut down) and will never run
+   */
+  boolean dispatch(SessionContext ctx, Runnable task);
+
+  /**
+   * Stop worker threads, if any. Frames still queued are handled before this returns or the
+   * timeout expires.
+   */
+  default void shutdown() {
+  }
+}
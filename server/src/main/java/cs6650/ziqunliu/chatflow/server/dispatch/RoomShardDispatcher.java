@@ -0,0 +1,109 @@
+package cs6650.ziqunliu.chatflow.server.dispatch;
+
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Actor-style model: every room is pinned to one of N single-threaded shards
+ * ({@code roomId % N}). All frames of a room are handled in arrival order by the same thread,
+ * so a room's messages are accepted, logged and broadcast in the order they arrived, and the
+ * handlers of one room never contend on its dedupe lock. The room's state keeps its locks and
+ * atomics all the same: {@link cs6650.ziqunliu.chatflow.server.room.RoomState} is shared with the
+ * direct and virtual-thread dispatchers, and sessions closing on container threads update it.
+ *
+ * <p>Each shard has a bounded mailbox. When it is full the container thread waits for space,
+ * which pushes back on the reading socket without reordering the room's frames.
+ */
+public class RoomShardDispatcher implements MessageDispatcher {
+
+  private final Shard[] shards;
+
+  public RoomShardDispatcher(int shardCount, int mailboxCapacity) {
+    this.shards = new Shard[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new Shard(i, mailboxCapacity);
+      shards[i].thread.start();
+    }
+  }
+
+  @Override
+  public boolean dispatch(SessionContext ctx, Runnable task) {
+    Shard shard = shards[Math.floorMod(ctx.getRoomId(), shards.length)];
+    if (!shard.running) {
+      return false;
+    }
+    try {
+      shard.mailbox.put(task);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    // Shut down while we were putting: if the shard's last sweep already missed the task, take
+    // it back rather than leave it in a mailbox nobody reads
+    return !(shard.stopped && shard.mailbox.remove(task));
+  }
+
+  public int shardCount() {
+    return shards.length;
+  }
+
+  @Override
+  public void shutdown() {
+    for (Shard shard : shards) {
+      shard.running = false;
+    }
+    for (Shard shard : shards) {
+      try {
+        shard.thread.join(2000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private static final class Shard implements Runnable {
+
+    private final BlockingQueue<Runnable> mailbox;
+    private final Thread thread;
+    private volatile boolean running = true;
+    // Set before the final sweep of the mailbox, see dispatch
+    private volatile boolean stopped;
+
+    Shard(int index, int mailboxCapacity) {
+      this.mailbox = new ArrayBlockingQueue<>(mailboxCapacity);
+      this.thread = new Thread(this, "chatflow-room-shard-" + index);
+      this.thread.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (running || !mailbox.isEmpty()) {
+        Runnable task;
+        try {
+          task = mailbox.poll(100, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          return;
+        }
+        if (task != null) {
+          runSafely(task);
+        }
+      }
+      stopped = true;
+      for (Runnable task = mailbox.poll(); task != null; task = mailbox.poll()) {
+        runSafely(task);
+      }
+    }
+
+    private void runSafely(Runnable task) {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        // One bad frame must not kill the shard and strand its rooms
+        System.err.println(thread.getName() + " task failed: " + e);
+      }
+    }
+  }
+}
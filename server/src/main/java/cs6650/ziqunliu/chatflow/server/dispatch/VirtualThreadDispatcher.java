@@ -0,0 +1,101 @@
+package cs6650.ziqunliu.chatflow.server.dispatch;
+
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Virtual-thread-per-message model: the container thread only takes a permit and starts a
+ * virtual thread, then returns to the selector. Handlers that block (a slow write, persistence)
+ * park a cheap virtual thread instead of one of Tomcat's few worker threads.
+ *
+ * <p>A semaphore caps frames in flight; once it is exhausted the container thread waits for a
+ * permit, which throttles reading from sockets. Frames of the same session or room may run
+ * concurrently and complete out of order, use {@code sharded} when ordering matters.
+ *
+ * <p>Virtual threads need Java 21. The server is built for Java 11, so the executor is looked up
+ * reflectively; on older runtimes this falls back to a cached pool of daemon platform threads
+ * with the same permit cap.
+ */
+public class VirtualThreadDispatcher implements MessageDispatcher {
+
+  private final ExecutorService executor;
+  private final int maxInFlight;
+  private final Semaphore permits;
+  private final boolean virtual;
+
+  public VirtualThreadDispatcher(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+    this.permits = new Semaphore(maxInFlight);
+    ExecutorService virtualExecutor = newVirtualThreadExecutor();
+    this.virtual = virtualExecutor != null;
+    if (virtual) {
+      this.executor = virtualExecutor;
+    } else {
+      System.err.println("Virtual threads unavailable on Java "
+          + System.getProperty("java.version") + ", using platform threads");
+      AtomicInteger counter = new AtomicInteger();
+      this.executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "chatflow-handler-" + counter.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+
+  @Override
+  public boolean dispatch(SessionContext ctx, Runnable task) {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          task.run();
+        } finally {
+          permits.release();
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      // Shut down
+      permits.release();
+      return false;
+    }
+  }
+
+  public boolean isVirtual() {
+    return virtual;
+  }
+
+  public int inFlight() {
+    return maxInFlight - permits.availablePermits();
+  }
+
+  @Override
+  public void shutdown() {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(2, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package cs6650.ziqunliu.chatflow.server.health;
+
+import com.google.gson.Gson;
+import cs6650.ziqunliu.chatflow.server.broadcast.RoomBroadcaster;
+import cs6650.ziqunliu.chatflow.server.bus.RoomBuses;
+import cs6650.ziqunliu.chatflow.server.cluster.ClusterRouting;
+import cs6650.ziqunliu.chatflow.server.codec.ChatMessageDecoder;
+import cs6650.ziqunliu.chatflow.server.codec.DeflateCodec;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.heartbeat.HeartbeatMonitor;
+import cs6650.ziqunliu.chatflow.server.history.HistoryReplayer;
+import cs6650.ziqunliu.chatflow.server.logging.AsyncLog;
+import cs6650.ziqunliu.chatflow.server.metrics.MessageMetrics;
+import cs6650.ziqunliu.chatflow.server.metrics.PrometheusExporter;
+import cs6650.ziqunliu.chatflow.server.model.response.ErrorResponse;
+import cs6650.ziqunliu.chatflow.server.model.response.SuccessResponse;
+import cs6650.ziqunliu.chatflow.server.room.DedupeWindow;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import cs6650.ziqunliu.chatflow.server.service.DrainService;
+import cs6650.ziqunliu.chatflow.server.service.PresenceService;
+import cs6650.ziqunliu.chatflow.server.service.PresenceSnapshots;
+import cs6650.ziqunliu.chatflow.server.service.RateLimitService;
+import cs6650.ziqunliu.chatflow.server.service.RequestStatsService;
+import cs6650.ziqunliu.chatflow.server.wal.WriteAheadLog;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Every /health response body, pre-rendered to bytes. A daemon ticker re-renders them every
+ * {@code -Dchatflow.health.refreshMs}, so a probe costs one volatile read and one write, and
+ * what it sees is at most one interval old. {@link #render()} builds a fresh set for the
+ * strongly consistent mode, where the ticker only closes RequestStatsService's rate intervals.
+ */
+public final class HealthSnapshot {
+
+  private static final Gson GSON = new Gson();
+
+  private static volatile HealthSnapshot current;
+  private static volatile boolean running;
+  private static Thread ticker;
+
+  private final byte[] ok;
+  private final byte[] draining;
+  private final byte[] invalidUrl;
+  private final byte[] stats;
+  private final byte[] metrics;
+
+  private HealthSnapshot(byte[] ok, byte[] draining, byte[] invalidUrl, byte[] stats,
+      byte[] metrics) {
+    this.ok = ok;
+    this.draining = draining;
+    this.invalidUrl = invalidUrl;
+    this.stats = stats;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Render the first snapshot, unless the consistent mode is configured, and start the ticker.
+   * Called once at web application startup.
+   */
+  public static synchronized void start() {
+    if (running || ServerConfig.HEALTH_REFRESH_MS <= 0) {
+      return;
+    }
+    if (!ServerConfig.HEALTH_CONSISTENT) {
+      current = render();
+    }
+    running = true;
+    ticker = new Thread(HealthSnapshot::tickLoop, "chatflow-health-ticker");
+    ticker.setDaemon(true);
+    ticker.start();
+  }
+
+  public static synchronized void shutdown() {
+    running = false;
+    if (ticker != null) {
+      ticker.interrupt();
+      ticker = null;
+    }
+    current = null;
+  }
+
+  /**
+   * @return the latest pre-rendered snapshot, or a fresh one if the ticker is not running
+   */
+  public static HealthSnapshot current() {
+    HealthSnapshot snapshot = current;
+    return snapshot != null ? snapshot : render();
+  }
+
+  /**
+   * Build every response now. Rates are those of the last interval the ticker closed.
+   */
+  public static HealthSnapshot render() {
+    String now = Instant.now().toString();
+
+    SuccessResponse ok = new SuccessResponse("OK", null);
+    ok.setMessage("OK");
+    ok.setServerTimestamp(now);
+
+    ErrorResponse error = new ErrorResponse("INVALID_URL", "invalid url", null);
+    error.setServerTimestamp(now);
+
+    ErrorResponse draining = new ErrorResponse("DRAINING", "server is draining", null);
+    draining.setServerTimestamp(now);
+
+    SuccessResponse stats = new SuccessResponse("OK", null);
+    stats.setMessage(RequestStatsService.getStats() + "; " + RoomBroadcaster.getStats() + "; "
+        + ChatMessageDecoder.getStats() + "; " + AsyncLog.getStats() + "; "
+        + RoomRegistry.getStats() + "; " + WriteAheadLog.getStats()
+        + "; " + HistoryReplayer.getStats() + "; " + DeflateCodec.getStats() + "; "
+        + MessageMetrics.getStats() + "; " + DedupeWindow.getStats() + "; "
+        + RateLimitService.getStats() + "; " + RoomBuses.get().getStats() + "; "
+        + ClusterRouting.getStats() + "; " + PresenceService.getStats() + "; "
+        + PresenceSnapshots.getStats() + "; " + DrainService.getStats() + "; "
+        + HeartbeatMonitor.getStats());
+    stats.setServerTimestamp(now);
+
+    return new HealthSnapshot(utf8(GSON.toJson(ok)), utf8(GSON.toJson(draining)),
+        utf8(GSON.toJson(error)),
+        utf8(GSON.toJson(stats)), utf8(PrometheusExporter.render()));
+  }
+
+  public byte[] ok() {
+    return ok;
+  }
+
+  public byte[] draining() {
+    return draining;
+  }
+
+  public byte[] invalidUrl() {
+    return invalidUrl;
+  }
+
+  public byte[] stats() {
+    return stats;
+  }
+
+  public byte[] metrics() {
+    return metrics;
+  }
+
+  private static void tickLoop() {
+    while (running) {
+      try {
+        Thread.sleep(ServerConfig.HEALTH_REFRESH_MS);
+        RequestStatsService.tick();
+        if (!ServerConfig.HEALTH_CONSISTENT) {
+          current = render();
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        // Keep serving the previous snapshot rather than losing the ticker
+        System.err.println("health: render failed: " + e);
+      }
+    }
+  }
+
+  private static byte[] utf8(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,246 @@
+package cs6650.ziqunliu.chatflow.server.heartbeat;
+
+import cs6650.ziqunliu.chatflow.server.broadcast.RoomBroadcaster;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.logging.AsyncLog;
+import cs6650.ziqunliu.chatflow.server.logging.LogEvent;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+import cs6650.ziqunliu.chatflow.server.service.PresenceService;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.websocket.CloseReason;
+
+/**
+ * Liveness checks for every open session, on one {@link TimingWheel} turned by a single
+ * ticker thread instead of a scheduled task per session. Any inbound frame or pong marks the
+ * session as heard from ({@link #touch}). When its wheel entry comes due, a session heard from
+ * within {@code chatflow.heartbeat.pingIntervalMs} is simply checked again an interval after
+ * that; a quiet one is sent a ping, and one silent for {@code chatflow.heartbeat.idleTimeoutMs}
+ * is reaped: taken out of its room and outbound fan-out at once, then closed with 1001.
+ *
+ * <p>Pings and closes are blocking writes in the container and can stall on a dead peer, so
+ * they run on a small pool; the ticker itself never touches a socket.
+ */
+public final class HeartbeatMonitor {
+
+  private static final String IDLE_REASON = "idle timeout";
+  private static final ByteBuffer PING = ByteBuffer.allocate(0);
+
+  private static final long TICK_MS = Math.max(1, ServerConfig.HEARTBEAT_TICK_MS);
+  private static final long PING_TICKS = ticks(ServerConfig.HEARTBEAT_PING_INTERVAL_MS);
+  private static final long IDLE_TICKS = ticks(ServerConfig.HEARTBEAT_IDLE_TIMEOUT_MS);
+
+  private static final TimingWheel<SessionContext> WHEEL =
+      new TimingWheel<>(ServerConfig.HEARTBEAT_WHEEL_SLOTS);
+  private static final TimingWheel.Handler<SessionContext> CHECK = (ctx, now) -> {
+    try {
+      return check(ctx, now);
+    } catch (RuntimeException e) {
+      return PING_TICKS;  // Look again later rather than lose the rest of the slot
+    }
+  };
+
+  private static final LongAdder pings = new LongAdder();
+  private static final LongAdder pingsFailed = new LongAdder();
+  private static final LongAdder pongs = new LongAdder();
+  private static final LongAdder reaped = new LongAdder();
+
+  private static volatile boolean running;
+  private static Thread ticker;
+  private static volatile ThreadPoolExecutor io;
+
+  private HeartbeatMonitor() {
+  }
+
+  /**
+   * Start the ticker, unless disabled with {@code -Dchatflow.heartbeat.enabled=false}. Called
+   * once at web application startup.
+   */
+  public static synchronized void start() {
+    if (running || !ServerConfig.HEARTBEAT_ENABLED) {
+      return;
+    }
+    io = createExecutor();
+    running = true;
+    ticker = new Thread(HeartbeatMonitor::tickLoop, "chatflow-heartbeat");
+    ticker.setDaemon(true);
+    ticker.start();
+  }
+
+  public static synchronized void shutdown() {
+    running = false;
+    if (ticker != null) {
+      ticker.interrupt();
+      ticker = null;
+    }
+    if (io != null) {
+      io.shutdownNow();
+      io = null;
+    }
+  }
+
+  /**
+   * Start watching a session that just joined its room.
+   */
+  public static void register(SessionContext ctx) {
+    if (!running) {
+      return;
+    }
+    ctx.touch(WHEEL.tick());
+    WHEEL.add(ctx, Math.min(PING_TICKS, IDLE_TICKS));
+  }
+
+  /**
+   * The peer sent a frame: it is alive.
+   */
+  public static void touch(SessionContext ctx) {
+    ctx.touch(WHEEL.tick());
+  }
+
+  /**
+   * The peer answered a ping.
+   */
+  public static void pong(SessionContext ctx) {
+    pongs.increment();
+    ctx.touch(WHEEL.tick());
+  }
+
+  public static long getReapedCount() {
+    return reaped.sum();
+  }
+
+  public static long getPingCount() {
+    return pings.sum();
+  }
+
+  public static long getPingFailedCount() {
+    return pingsFailed.sum();
+  }
+
+  public static long getPongCount() {
+    return pongs.sum();
+  }
+
+  public static String getStats() {
+    if (!running) {
+      return "heartbeat: off";
+    }
+    return String.format("heartbeat: sessions %d, pings %d (failed %d), pongs %d, reaped %d",
+        WHEEL.size(), pings.sum(), pingsFailed.sum(), pongs.sum(), reaped.sum());
+  }
+
+  /**
+   * Wheel handler: decide what a due session needs and when to look at it again.
+   */
+  private static long check(SessionContext ctx, long now) {
+    if (!ctx.getSession().isOpen()) {
+      return -1;  // Closed: leaves the wheel
+    }
+    if (ctx.getOutbound().isClosed()) {
+      // Reaped earlier (or a write failed) and the session is still open: close it again
+      close(ctx);
+      return PING_TICKS;
+    }
+    long idle = now - ctx.lastSeenTick();
+    if (idle >= IDLE_TICKS) {
+      reap(ctx, idle);
+      return PING_TICKS;
+    }
+    if (idle >= PING_TICKS) {
+      ping(ctx);
+      return Math.min(PING_TICKS, IDLE_TICKS - idle);
+    }
+    return Math.min(PING_TICKS, IDLE_TICKS) - idle;
+  }
+
+  // Stop fan-out to the session and drop its users from presence right away; @OnClose repeats
+  // these steps harmlessly
+  private static void reap(SessionContext ctx, long idleTicks) {
+    reaped.increment();
+    RoomBroadcaster.detach(ctx);
+    PresenceService.sessionClosed(ctx);
+    RoomRegistry.leave(ctx);
+    AsyncLog.log(LogEvent.SESSION_REAPED, ctx.getRoomId(), idleTicks * TICK_MS,
+        ctx.getSession().getId());
+    close(ctx);
+  }
+
+  private static void close(SessionContext ctx) {
+    submit(() -> {
+      try {
+        ctx.getSession().close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, IDLE_REASON));
+      } catch (IOException | RuntimeException e) {
+        // The container drops the connection anyway
+      }
+    });
+  }
+
+  private static void ping(SessionContext ctx) {
+    boolean queued = submit(() -> {
+      try {
+        ctx.getSession().getAsyncRemote().sendPing(PING);
+        pings.increment();
+      } catch (IOException | RuntimeException e) {
+        pingsFailed.increment();
+      }
+    });
+    if (!queued) {
+      pingsFailed.increment();
+    }
+  }
+
+  private static boolean submit(Runnable task) {
+    ThreadPoolExecutor executor = io;
+    if (executor == null) {
+      return false;
+    }
+    try {
+      executor.execute(task);
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  private static void tickLoop() {
+    long tickNanos = TICK_MS * 1_000_000L;
+    long next = System.nanoTime();
+    while (running) {
+      next += tickNanos;
+      try {
+        long wait = next - System.nanoTime();
+        if (wait > 0) {
+          TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        // Behind schedule (GC pause, overload): the next iterations catch up without sleeping
+        WHEEL.advance(CHECK);
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        System.err.println("heartbeat: tick failed: " + e);
+      }
+    }
+  }
+
+  private static long ticks(long millis) {
+    return Math.max(1, (millis + TICK_MS - 1) / TICK_MS);
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    AtomicInteger index = new AtomicInteger();
+    int threads = Math.max(1, ServerConfig.HEARTBEAT_IO_THREADS);
+    return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(Math.max(1, ServerConfig.HEARTBEAT_IO_QUEUE)), r -> {
+          Thread t = new Thread(r, "chatflow-heartbeat-io-" + index.getAndIncrement());
+          t.setDaemon(true);
+          return t;
+        });
+  }
+}
@@ -0,0 +1,125 @@
+package cs6650.ziqunliu.chatflow.server.heartbeat;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timing wheel: a ring of slots, one per tick, each holding a linked list of the entries
+ * due in that slot. Scheduling an entry and expiring it are O(1) whatever the number of
+ * entries, and each tick only walks the entries hashed to its slot. An entry is one small node,
+ * allocated when it is added and reused every time it is rescheduled, so a wheel holding every
+ * session creates no task objects and no garbage per check. A delay longer than the wheel
+ * leaves the entry in its slot for extra turns until its deadline tick comes.
+ *
+ * <p>{@link #advance} is for the single thread that turns the wheel; the other methods may be
+ * called from any thread.
+ */
+public final class TimingWheel<T> {
+
+  /**
+   * Called by {@link #advance} for each expired entry. Must not throw.
+   */
+  public interface Handler<T> {
+
+    /**
+     * @return ticks until the entry expires again (at least 1 is used), or a negative value to
+     * remove it from the wheel
+     */
+    long expired(T item, long tick);
+  }
+
+  private static final class Node<T> {
+
+    final T item;
+    long deadline;
+    Node<T> next;
+
+    Node(T item, long deadline) {
+      this.item = item;
+      this.deadline = deadline;
+    }
+  }
+
+  private final Node<T>[] slots;
+  private final int mask;
+  // Entries added since the last tick; moved into their slots by the wheel thread
+  private final Queue<Node<T>> incoming = new ConcurrentLinkedQueue<>();
+  private volatile long tick;
+  private volatile int size;
+
+  /**
+   * @param slots number of slots, rounded up to a power of two; a wheel with more slots than
+   *              the longest delay in ticks never makes an entry wait an extra turn
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public TimingWheel(int slots) {
+    int n = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+    this.slots = (Node<T>[]) new Node[n];
+    this.mask = n - 1;
+  }
+
+  /**
+   * Schedule {@code item} to expire {@code delayTicks} (at least 1) after the current tick.
+   */
+  public void add(T item, long delayTicks) {
+    incoming.offer(new Node<>(item, tick + Math.max(1, delayTicks)));
+  }
+
+  /**
+   * @return the number of ticks advanced so far; the wheel's clock
+   */
+  public long tick() {
+    return tick;
+  }
+
+  /**
+   * @return entries scheduled on the wheel, not counting those added since the last tick
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Expire the current tick's slot, rescheduling or removing each due entry as the handler
+   * says, then move the clock one tick on.
+   *
+   * @return number of entries that expired
+   */
+  public int advance(Handler<T> handler) {
+    long now = tick;
+    for (Node<T> node; (node = incoming.poll()) != null; ) {
+      node.deadline = Math.max(node.deadline, now);
+      insert(node);
+      size++;
+    }
+
+    int index = (int) now & mask;
+    Node<T> node = slots[index];
+    slots[index] = null;
+    int expired = 0;
+    while (node != null) {
+      Node<T> next = node.next;
+      if (node.deadline > now) {
+        insert(node);  // Due on a later turn of the wheel
+      } else {
+        expired++;
+        long delay = handler.expired(node.item, now);
+        if (delay < 0) {
+          size--;
+        } else {
+          node.deadline = now + Math.max(1, delay);
+          insert(node);
+        }
+      }
+      node = next;
+    }
+    tick = now + 1;
+    return expired;
+  }
+
+  private void insert(Node<T> node) {
+    int index = (int) node.deadline & mask;
+    node.next = slots[index];
+    slots[index] = node;
+  }
+}
@@ -0,0 +1,139 @@
+package cs6650.ziqunliu.chatflow.server.history;
+
+import cs6650.ziqunliu.chatflow.server.broadcast.BroadcastFrame;
+import cs6650.ziqunliu.chatflow.server.broadcast.SessionOutbound;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams room history to joining sessions on a small dedicated pool, so a join storm queues
+ * replays instead of occupying Tomcat threads or the room's dispatcher. Each replay copies a
+ * few frames at a time out of {@link RoomHistory} and hands them to the session's outbound
+ * queue, then releases the live frames held back during the replay, minus those it replayed.
+ */
+public final class HistoryReplayer {
+
+  public static final long NO_SEQUENCE = 0;
+  public static final long NO_TIME = Long.MIN_VALUE;
+
+  // Frames copied per history lock acquisition
+  private static final int CHUNK = 32;
+
+  private static final LongAdder replays = new LongAdder();
+  private static final LongAdder replayedFrames = new LongAdder();
+  private static final LongAdder skipped = new LongAdder();
+
+  private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+  private HistoryReplayer() {
+  }
+
+  /**
+   * Replay history entries appended before {@code until} with a sequence above
+   * {@code sinceSequence} and a time at or after {@code sinceMillis}. The outbound must be held;
+   * it is released once the replay finishes, or right away if the pool is saturated.
+   */
+  public static void replay(RoomHistory history, SessionOutbound outbound, long until,
+      long sinceSequence, long sinceMillis) {
+    try {
+      EXECUTOR.execute(() -> stream(history, outbound, until, sinceSequence, sinceMillis));
+    } catch (RejectedExecutionException e) {
+      // Saturated or shutting down: the session goes live without history
+      skipped.increment();
+      outbound.release();
+    }
+  }
+
+  private static void stream(RoomHistory history, SessionOutbound outbound, long until,
+      long sinceSequence, long sinceMillis) {
+    long[] replayed = new long[CHUNK];
+    int count = 0;
+    try {
+      List<String> chunk = new ArrayList<>(CHUNK);
+      long[] sequences = new long[CHUNK];
+      long cursor = 0;
+      while (cursor < until) {
+        chunk.clear();
+        cursor = history.read(cursor, until, sinceSequence, sinceMillis, CHUNK, chunk,
+            sequences);
+        for (int i = 0; i < chunk.size(); i++) {
+          if (!outbound.offerReplay(BroadcastFrame.relayed(chunk.get(i)))) {
+            return;  // session closed
+          }
+          if (count == replayed.length) {
+            replayed = Arrays.copyOf(replayed, count * 2);
+          }
+          replayed[count++] = sequences[i];
+          replayedFrames.increment();
+        }
+      }
+      replays.increment();
+    } finally {
+      outbound.release(replayed, count);
+    }
+  }
+
+  /**
+   * @return the sequence in a numeric {@code since} parameter, otherwise {@link #NO_SEQUENCE}
+   */
+  public static long parseSinceSequence(String since) {
+    if (since == null || since.isEmpty() || since.length() > 18) {
+      return NO_SEQUENCE;
+    }
+    long value = 0;
+    for (int i = 0; i < since.length(); i++) {
+      char c = since.charAt(i);
+      if (c < '0' || c > '9') {
+        return NO_SEQUENCE;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  /**
+   * @return epoch millis of an ISO-8601 {@code since} parameter, otherwise {@link #NO_TIME}
+   */
+  public static long parseSinceMillis(String since) {
+    if (since == null || since.isEmpty() || parseSinceSequence(since) != NO_SEQUENCE) {
+      return NO_TIME;
+    }
+    try {
+      return Instant.parse(since).toEpochMilli();
+    } catch (DateTimeParseException | ArithmeticException e) {
+      return NO_TIME;
+    }
+  }
+
+  public static String getStats() {
+    return String.format(
+        "replays: %d, replayedFrames: %d, replaysSkipped: %d, replayLiveDuplicates: %d",
+        replays.sum(), replayedFrames.sum(), skipped.sum(),
+        SessionOutbound.getReplayDuplicateCount());
+  }
+
+  public static void shutdown() {
+    EXECUTOR.shutdownNow();
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    AtomicInteger index = new AtomicInteger();
+    int threads = Math.max(1, ServerConfig.HISTORY_REPLAY_THREADS);
+    return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(ServerConfig.HISTORY_REPLAY_QUEUE), r -> {
+          Thread t = new Thread(r, "chatflow-history-replay-" + index.getAndIncrement());
+          t.setDaemon(true);
+          return t;
+        });
+  }
+}
@@ -0,0 +1,154 @@
+package cs6650.ziqunliu.chatflow.server.history;
+
+import cs6650.ziqunliu.chatflow.server.wal.DirectBuffers;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The last messages of one room, kept off-heap as their already-encoded frame bytes. One direct
+ * buffer holds both the index (a slot per message: append number, sequence, time, offset,
+ * length) and a byte ring with the frames, so a room's history costs the heap only this object.
+ * The buffer is allocated on the first append; rooms that never talk cost nothing, and
+ * {@link #release()} frees it when the room's state is retired.
+ *
+ * <p>Frames are stored contiguously. A frame that does not fit before the end of the ring starts
+ * again at offset 0, and the oldest messages are evicted until the new frame's bytes are free.
+ * Readers walk by append number, which stays valid while entries are evicted under them.
+ */
+public final class RoomHistory {
+
+  // long append number, long sequence, long time millis, int offset, int length
+  private static final int SLOT_BYTES = 32;
+
+  private final int maxMessages;
+  private final int dataBytes;
+
+  private ByteBuffer buffer;
+  private long first;       // append number of the oldest retained message
+  private long next;        // append number the next message will get
+  private int writeOffset;  // next free byte of the data ring
+  private boolean released;
+
+  public RoomHistory(int maxMessages, int dataBytes) {
+    this.maxMessages = maxMessages;
+    this.dataBytes = dataBytes;
+  }
+
+  /**
+   * Remember an accepted message. Frames larger than the whole ring are skipped.
+   */
+  public synchronized void append(long sequence, long timeMillis, ByteBuffer frame) {
+    int length = frame.remaining();
+    if (released || maxMessages <= 0 || length > dataBytes) {
+      return;
+    }
+    if (buffer == null) {
+      buffer = ByteBuffer.allocateDirect(maxMessages * SLOT_BYTES + dataBytes);
+    }
+
+    int offset = writeOffset;
+    if (offset + length > dataBytes) {
+      // Wrap. Everything still stored behind the old write offset is older than what sits at
+      // the start of the ring, so it goes first to keep the retained range contiguous.
+      while (first < next && offsetOf(first) >= offset) {
+        first++;
+      }
+      offset = 0;
+    }
+    while (first < next
+        && (next - first >= maxMessages || overlaps(first, offset, offset + length))) {
+      first++;
+    }
+
+    int slot = slotOf(next);
+    buffer.putLong(slot, next);
+    buffer.putLong(slot + 8, sequence);
+    buffer.putLong(slot + 16, timeMillis);
+    buffer.putInt(slot + 24, offset);
+    buffer.putInt(slot + 28, length);
+    ByteBuffer target = buffer.duplicate();
+    target.position(dataStart() + offset);
+    target.put(frame.duplicate());
+
+    next++;
+    writeOffset = offset + length;
+  }
+
+  /**
+   * Append number the next message will get. Taken when a session joins, it separates history
+   * to replay from messages the session will receive live.
+   */
+  public synchronized long end() {
+    return next;
+  }
+
+  /**
+   * Copy out up to {@code max} frames with append number in [{@code from}, {@code until}) that
+   * match the filter, decoded to text. A cursor that fell behind eviction resumes at the oldest
+   * retained message.
+   *
+   * @param sequences receives the sequence of the frame added at {@code out} index i at index
+   *                  i - (size of {@code out} before the call); at least {@code max} long
+   * @return the append number to continue from
+   */
+  public synchronized long read(long from, long until, long sinceSequence, long sinceMillis,
+      int max, List<String> out, long[] sequences) {
+    int base = out.size();
+    long cursor = Math.max(from, first);
+    long stop = Math.min(until, next);
+    byte[] scratch = null;
+    while (cursor < stop && out.size() < max) {
+      int slot = slotOf(cursor);
+      cursor++;
+      long sequence = buffer.getLong(slot + 8);
+      if (sequence <= sinceSequence || buffer.getLong(slot + 16) < sinceMillis) {
+        continue;
+      }
+      int offset = buffer.getInt(slot + 24);
+      int length = buffer.getInt(slot + 28);
+      if (scratch == null || scratch.length < length) {
+        scratch = new byte[length];
+      }
+      ByteBuffer source = buffer.duplicate();
+      source.position(dataStart() + offset);
+      source.get(scratch, 0, length);
+      sequences[out.size() - base] = sequence;
+      out.add(new String(scratch, 0, length, StandardCharsets.UTF_8));
+    }
+    return cursor;
+  }
+
+  /**
+   * Free the off-heap buffer. The history reads as empty afterwards and appends are dropped;
+   * every access holds this object's lock, so none can touch the freed memory.
+   */
+  public synchronized void release() {
+    released = true;
+    DirectBuffers.free(buffer);
+    buffer = null;
+    first = next;
+  }
+
+  public synchronized int size() {
+    return (int) (next - first);
+  }
+
+  private int slotOf(long appendNumber) {
+    return (int) (appendNumber % maxMessages) * SLOT_BYTES;
+  }
+
+  private int dataStart() {
+    return maxMessages * SLOT_BYTES;
+  }
+
+  private int offsetOf(long appendNumber) {
+    return buffer.getInt(slotOf(appendNumber) + 24);
+  }
+
+  private boolean overlaps(long appendNumber, int start, int end) {
+    int slot = slotOf(appendNumber);
+    int offset = buffer.getInt(slot + 24);
+    return offset < end && start < offset + buffer.getInt(slot + 28);
+  }
+}
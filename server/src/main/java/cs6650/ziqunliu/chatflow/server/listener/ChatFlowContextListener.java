@@ -0,0 +1,57 @@
+package cs6650.ziqunliu.chatflow.server.listener;
+
+import cs6650.ziqunliu.chatflow.server.bus.RoomBuses;
+import cs6650.ziqunliu.chatflow.server.cluster.ClusterRouting;
+import cs6650.ziqunliu.chatflow.server.codec.DeflateCodec;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.dispatch.Dispatchers;
+import cs6650.ziqunliu.chatflow.server.health.HealthSnapshot;
+import cs6650.ziqunliu.chatflow.server.heartbeat.HeartbeatMonitor;
+import cs6650.ziqunliu.chatflow.server.history.HistoryReplayer;
+import cs6650.ziqunliu.chatflow.server.logging.AsyncLog;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import cs6650.ziqunliu.chatflow.server.service.DrainService;
+import cs6650.ziqunliu.chatflow.server.wal.WriteAheadLog;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Starts and stops the server's background subsystems with the web application, so a WAR
+ * redeploy does not leak their threads.
+ */
+@WebListener
+public class ChatFlowContextListener implements ServletContextListener {
+
+  @Override
+  public void contextInitialized(ServletContextEvent sce) {
+    // Fail the deployment on a bad chatflow.cluster.* setting, before any session opens
+    ClusterRouting.validate();
+    // Start the WAL flusher before the first room opens its log
+    WriteAheadLog.start();
+    // Listen for other nodes before the first room opens
+    RoomBuses.get();
+    RoomRegistry.start();
+    HealthSnapshot.start();
+    HeartbeatMonitor.start();
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent sce) {
+    // Close sessions with "reconnect elsewhere" once their messages are through, unless an
+    // admin drain already did
+    DrainService.drainAndWait(ServerConfig.DRAIN_SHUTDOWN_TIMEOUT_MS);
+    HeartbeatMonitor.shutdown();
+    HealthSnapshot.shutdown();
+    // Let room shards finish the frames already in their mailboxes
+    Dispatchers.shutdown();
+    RoomBuses.shutdown();
+    RoomRegistry.shutdown();
+    HistoryReplayer.shutdown();
+    // Sessions are closed and shards stopped, so no shared frame is compressed after this
+    DeflateCodec.shutdown();
+    WriteAheadLog.shutdown();
+    // Flush whatever is still in the log ring
+    AsyncLog.shutdown();
+  }
+}
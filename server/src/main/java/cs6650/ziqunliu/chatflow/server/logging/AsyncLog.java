@@ -0,0 +1,204 @@
+package cs6650.ziqunliu.chatflow.server.logging;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Non-blocking logger for the WebSocket hot path. Producers claim a slot of a bounded
+ * multi-producer ring with one CAS and write a fixed-size record (event, time, two longs, one
+ * text reference); nothing is formatted on the producer. A single daemon thread formats records
+ * and writes them to stdout in batches. When the ring is full the record is dropped and
+ * counted, producers never wait.
+ */
+public final class AsyncLog {
+
+  private static final int CAPACITY = roundUpToPowerOfTwo(ServerConfig.LOG_RING_CAPACITY);
+  private static final int MASK = CAPACITY - 1;
+
+  // Slot sequence: == position when free for that position, == position + 1 when published
+  private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+  private static final LogEvent[] events = new LogEvent[CAPACITY];
+  private static final long[] times = new long[CAPACITY];
+  private static final long[] argsA = new long[CAPACITY];
+  private static final long[] argsB = new long[CAPACITY];
+  private static final String[] texts = new String[CAPACITY];
+
+  private static final AtomicLong tail = new AtomicLong();
+  private static long head;  // writer thread only
+
+  private static final LongAdder dropped = new LongAdder();
+  private static final LongAdder suppressed = new LongAdder();
+
+  // Per event: occurrence count for sampling, (epochSecond << 32 | count) for the rate cap
+  private static final AtomicLongArray occurrences = new AtomicLongArray(LogEvent.values().length);
+  private static final AtomicLongArray windows = new AtomicLongArray(LogEvent.values().length);
+
+  private static volatile boolean running = true;
+  private static final Thread writer;
+
+  static {
+    for (int i = 0; i < CAPACITY; i++) {
+      sequences.set(i, i);
+    }
+    writer = new Thread(AsyncLog::writeLoop, "chatflow-async-log");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private AsyncLog() {
+  }
+
+  public static boolean log(LogEvent event, long a, long b, String text) {
+    long pos = tail.get();
+    while (true) {
+      int index = (int) (pos & MASK);
+      long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          break;
+        }
+        pos = tail.get();
+      } else if (diff < 0) {
+        // Writer has not freed this slot yet: ring is full
+        dropped.increment();
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+    int index = (int) (pos & MASK);
+    events[index] = event;
+    times[index] = System.currentTimeMillis();
+    argsA[index] = a;
+    argsB[index] = b;
+    texts[index] = text;
+    sequences.lazySet(index, pos + 1);
+    return true;
+  }
+
+  public static boolean log(LogEvent event, long a) {
+    return log(event, a, 0, null);
+  }
+
+  /**
+   * For per-message events: only every {@code chatflow.log.sampleEvery}-th occurrence is
+   * logged, with the occurrence count as argument A, and at most
+   * {@code chatflow.log.maxSampledPerSecond} of them per second.
+   */
+  public static boolean sample(LogEvent event) {
+    long count = occurrences.incrementAndGet(event.ordinal());
+    if (count % ServerConfig.LOG_SAMPLE_EVERY != 0) {
+      return false;
+    }
+    if (!withinRate(event.ordinal())) {
+      suppressed.increment();
+      return false;
+    }
+    return log(event, count);
+  }
+
+  private static boolean withinRate(int slot) {
+    long second = System.currentTimeMillis() / 1000;
+    while (true) {
+      long window = windows.get(slot);
+      long next = (window >>> 32) == second ? window + 1 : (second << 32) | 1;
+      if ((next & 0xFFFFFFFFL) > ServerConfig.LOG_MAX_SAMPLED_PER_SECOND) {
+        return false;
+      }
+      if (windows.compareAndSet(slot, window, next)) {
+        return true;
+      }
+    }
+  }
+
+  public static long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  public static long getSuppressedCount() {
+    return suppressed.sum();
+  }
+
+  public static String getStats() {
+    return String.format("logDropped: %d, logSuppressed: %d", getDroppedCount(),
+        getSuppressedCount());
+  }
+
+  /**
+   * Stop the writer after it has flushed what is already in the ring.
+   */
+  public static void shutdown() {
+    running = false;
+    LockSupport.unpark(writer);
+    try {
+      writer.join(2000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void writeLoop() {
+    PrintStream out = System.out;
+    StringBuilder batch = new StringBuilder(16 * 1024);
+    long reportedDrops = 0;
+    while (true) {
+      int n = drain(batch, ServerConfig.LOG_FLUSH_BATCH);
+      long drops = dropped.sum();
+      if (drops != reportedDrops) {
+        appendRecord(batch, LogEvent.LOG_DROPPED, System.currentTimeMillis(), drops, 0, null);
+        reportedDrops = drops;
+      }
+      if (batch.length() > 0) {
+        out.print(batch);
+        out.flush();
+        batch.setLength(0);
+      }
+      if (n == 0) {
+        if (!running) {
+          return;
+        }
+        LockSupport.parkNanos(1_000_000L);
+      }
+    }
+  }
+
+  private static int drain(StringBuilder batch, int max) {
+    int n = 0;
+    while (n < max) {
+      int index = (int) (head & MASK);
+      if (sequences.get(index) != head + 1) {
+        break;
+      }
+      appendRecord(batch, events[index], times[index], argsA[index], argsB[index], texts[index]);
+      texts[index] = null;
+      sequences.lazySet(index, head + CAPACITY);
+      head++;
+      n++;
+    }
+    return n;
+  }
+
+  private static void appendRecord(StringBuilder sb, LogEvent event, long time, long a, long b,
+      String text) {
+    sb.append(Instant.ofEpochMilli(time)).append(' ').append(event.text);
+    if (event.argA != null) {
+      sb.append(' ').append(event.argA).append('=').append(a);
+    }
+    if (event.argB != null) {
+      sb.append(' ').append(event.argB).append('=').append(b);
+    }
+    if (event.argText != null) {
+      sb.append(' ').append(event.argText).append('=').append(text);
+    }
+    sb.append('\n');
+  }
+
+  private static int roundUpToPowerOfTwo(int n) {
+    return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+  }
+}
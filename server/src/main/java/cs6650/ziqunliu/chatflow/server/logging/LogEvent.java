@@ -0,0 +1,27 @@
+package cs6650.ziqunliu.chatflow.server.logging;
+
+/**
+ * Events the async logger knows how to format. A record carries the event, a timestamp, two
+ * long arguments and one optional text argument; the labels name the arguments in the output.
+ */
+public enum LogEvent {
+  SESSION_OPEN("session opened", "room", "roomSessions", "sessionId"),
+  SESSION_CLOSE("session closed", "room", "roomSessions", "sessionId"),
+  SESSION_REJECTED("session rejected", null, null, "path"),
+  SESSION_REAPED("session reaped", "room", "idleMs", "sessionId"),
+  SESSION_REDIRECTED("session redirected", "room", null, "owner"),
+  MESSAGES_RECEIVED("messages received", "total", null, null),
+  LOG_DROPPED("log records dropped", "total", null, null);
+
+  final String text;
+  final String argA;
+  final String argB;
+  final String argText;
+
+  LogEvent(String text, String argA, String argB, String argText) {
+    this.text = text;
+    this.argA = argA;
+    this.argB = argB;
+    this.argText = argText;
+  }
+}
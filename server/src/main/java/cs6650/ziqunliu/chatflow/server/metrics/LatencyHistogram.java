@@ -0,0 +1,83 @@
+package cs6650.ziqunliu.chatflow.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free latency histogram with HDR-style log-linear buckets: values below 32 ns
+ * get a bucket each, and every power of two above is split into 32 equal sub-buckets, so any
+ * recorded value is known to within ~3%. Values up to 2^37 ns (~137 s) are kept, larger ones
+ * land in the top bucket.
+ *
+ * <p>{@link #record} is two atomic adds on preallocated arrays and never allocates. Readers
+ * copy the buckets with {@link #snapshot}; the copy is not atomic across buckets, which only
+ * matters for values recorded during the copy.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BITS = 5;
+  private static final int SUB = 1 << SUB_BITS;
+  private static final int MAX_EXPONENT = 36;
+  private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+  static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong sumNanos = new AtomicLong();
+
+  public void record(long nanos) {
+    long value = nanos < 0 ? 0 : Math.min(nanos, MAX_VALUE);
+    counts.getAndIncrement(indexOf(value));
+    sumNanos.getAndAdd(value);
+  }
+
+  /**
+   * Copy the current counts into {@code into} (length {@link #BUCKETS}).
+   *
+   * @return the sum of all recorded values in nanos
+   */
+  long snapshot(long[] into) {
+    for (int i = 0; i < BUCKETS; i++) {
+      into[i] = counts.get(i);
+    }
+    return sumNanos.get();
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB - 1);
+    return (exponent - SUB_BITS + 1) * SUB + sub;
+  }
+
+  /**
+   * @return the largest value that falls into bucket {@code index}
+   */
+  static long highestValueOf(int index) {
+    if (index < SUB) {
+      return index;
+    }
+    int group = index / SUB;
+    long low = (long) (SUB + index % SUB) << (group - 1);
+    return low + (1L << (group - 1)) - 1;
+  }
+
+  /**
+   * @return the recorded value at quantile {@code q} (0..1) of a snapshot, to bucket precision
+   */
+  static long valueAtQuantile(long[] buckets, long total, double q) {
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(q * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets[i];
+      if (seen >= rank) {
+        return highestValueOf(i);
+      }
+    }
+    return MAX_VALUE;
+  }
+}
@@ -0,0 +1,116 @@
+package cs6650.ziqunliu.chatflow.server.metrics;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.service.MessageValidationService;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Where the message path records how long it took: a {@link LatencyHistogram} per
+ * {@link Stage}, plus rejections by validation code and error frames by errorCode. Message
+ * counts per room, type and outcome live in RequestStatsService. Everything is preallocated, so
+ * recording is a few atomic adds and no allocation. Rendered by {@link PrometheusExporter}.
+ *
+ * <p>Timing a stage chains one clock read into the next:
+ * <pre>
+ *   long t = MessageMetrics.start();
+ *   ...
+ *   t = MessageMetrics.lap(Stage.VALIDATE, t);
+ * </pre>
+ * With {@code -Dchatflow.metrics.enabled=false} the clock is not read and nothing is recorded.
+ */
+public final class MessageMetrics {
+
+  static final String[] ERROR_CODES =
+      {"INVALID_JSON", "VALIDATION_FAILED", "RATE_LIMITED", "INVALID_FRAME", "OTHER"};
+
+  private static final boolean ENABLED = ServerConfig.METRICS_ENABLED;
+
+  private static final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+  private static final AtomicLongArray rejected =
+      new AtomicLongArray(MessageValidationService.codeCount());
+  private static final AtomicLongArray errorFrames = new AtomicLongArray(ERROR_CODES.length);
+
+  static {
+    for (int i = 0; i < stages.length; i++) {
+      stages[i] = new LatencyHistogram();
+    }
+  }
+
+  private MessageMetrics() {
+  }
+
+  /**
+   * @return the start time of the first stage, 0 when metrics are disabled
+   */
+  public static long start() {
+    return ENABLED ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Record the time since {@code start} for {@code stage}.
+   *
+   * @return the current time, the start of the next stage
+   */
+  public static long lap(Stage stage, long start) {
+    if (!ENABLED) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    stages[stage.ordinal()].record(now - start);
+    return now;
+  }
+
+  /**
+   * @param code a {@link MessageValidationService} code other than OK
+   */
+  public static void rejected(int code) {
+    if (ENABLED) {
+      rejected.getAndIncrement(code);
+    }
+  }
+
+  public static void errorFrame(String errorCode) {
+    if (!ENABLED) {
+      return;
+    }
+    int index = ERROR_CODES.length - 1;
+    for (int i = 0; i < index; i++) {
+      if (ERROR_CODES[i].equals(errorCode)) {
+        index = i;
+        break;
+      }
+    }
+    errorFrames.getAndIncrement(index);
+  }
+
+  static LatencyHistogram histogram(Stage stage) {
+    return stages[stage.ordinal()];
+  }
+
+  static long rejectedCount(int code) {
+    return rejected.get(code);
+  }
+
+  static long errorFrameCount(int index) {
+    return errorFrames.get(index);
+  }
+
+  /**
+   * One-line p50/p99 per stage in microseconds, for /health/stats.
+   */
+  public static String getStats() {
+    StringBuilder sb = new StringBuilder("stageP50/P99Us:");
+    long[] buckets = new long[LatencyHistogram.BUCKETS];
+    for (Stage stage : Stage.values()) {
+      histogram(stage).snapshot(buckets);
+      long total = 0;
+      for (long c : buckets) {
+        total += c;
+      }
+      sb.append(String.format(" %s %.1f/%.1f", stage.label,
+          LatencyHistogram.valueAtQuantile(buckets, total, 0.5) / 1000.0,
+          LatencyHistogram.valueAtQuantile(buckets, total, 0.99) / 1000.0));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,159 @@
+package cs6650.ziqunliu.chatflow.server.metrics;
+
+import cs6650.ziqunliu.chatflow.server.heartbeat.HeartbeatMonitor;
+import cs6650.ziqunliu.chatflow.server.room.DedupeWindow;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import cs6650.ziqunliu.chatflow.server.service.MessageValidationService;
+import cs6650.ziqunliu.chatflow.server.service.RequestStatsService;
+import java.math.BigDecimal;
+
+/**
+ * Renders {@link MessageMetrics} and the RequestStatsService message counters in the
+ * Prometheus text exposition format (version 0.0.4).
+ * Stage histograms are reported with fixed {@code le} bounds from 1 us to 10 s, counted from the
+ * fine-grained buckets underneath, plus p50/p90/p99/p99.9 gauges.
+ */
+public final class PrometheusExporter {
+
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final long[] BOUNDS_NANOS = {1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+      100_000, 250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000, 25_000_000,
+      50_000_000, 100_000_000, 250_000_000, 500_000_000, 1_000_000_000, 2_500_000_000L,
+      5_000_000_000L, 10_000_000_000L};
+  private static final String[] BOUND_LABELS = new String[BOUNDS_NANOS.length];
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+  static {
+    for (int i = 0; i < BOUNDS_NANOS.length; i++) {
+      BOUND_LABELS[i] = BigDecimal.valueOf(BOUNDS_NANOS[i], 9).stripTrailingZeros()
+          .toPlainString();
+    }
+  }
+
+  private PrometheusExporter() {
+  }
+
+  public static String render() {
+    StringBuilder sb = new StringBuilder(16 * 1024);
+    renderStages(sb);
+
+    header(sb, "chatflow_messages_total", "counter",
+        "Messages and batch items by room, messageType and outcome.");
+    RequestStatsService.totals().forEach((roomId, type, outcome, count) ->
+        sb.append("chatflow_messages_total{room=\"")
+            .append(roomId == RequestStatsService.OTHER_ROOM ? "other" : Integer.toString(roomId))
+            .append("\",type=\"").append(type == null ? "UNKNOWN" : type.name())
+            .append("\",outcome=\"").append(outcome.label).append("\"} ").append(count)
+            .append('\n'));
+
+    header(sb, "chatflow_messages_rejected_total", "counter",
+        "Messages or batch items that failed validation, by reason.");
+    for (int code = 1; code < MessageValidationService.codeCount(); code++) {
+      if (code == MessageValidationService.DUPLICATE) {
+        continue;  // Counted as outcome="duplicate" above
+      }
+      sb.append("chatflow_messages_rejected_total{reason=\"")
+          .append(MessageValidationService.nameOf(code)).append("\"} ")
+          .append(MessageMetrics.rejectedCount(code)).append('\n');
+    }
+
+    header(sb, "chatflow_error_frames_total", "counter", "Error frames sent, by errorCode.");
+    for (int i = 0; i < MessageMetrics.ERROR_CODES.length; i++) {
+      sb.append("chatflow_error_frames_total{code=\"").append(MessageMetrics.ERROR_CODES[i])
+          .append("\"} ").append(MessageMetrics.errorFrameCount(i)).append('\n');
+    }
+
+    counter(sb, "chatflow_dedupe_lookups_total", "messageId lookups in room dedupe windows.",
+        DedupeWindow.getLookupCount());
+    counter(sb, "chatflow_dedupe_hits_total", "messageIds found in a dedupe window.",
+        DedupeWindow.getHitCount());
+    counter(sb, "chatflow_dedupe_evictions_total",
+        "messageIds displaced from a dedupe window before it expired.",
+        DedupeWindow.getEvictionCount());
+
+    counter(sb, "chatflow_heartbeat_pings_total", "Heartbeat pings sent to quiet sessions.",
+        HeartbeatMonitor.getPingCount());
+    counter(sb, "chatflow_heartbeat_ping_failures_total",
+        "Heartbeat pings that failed or were skipped because the ping pool was full.",
+        HeartbeatMonitor.getPingFailedCount());
+    counter(sb, "chatflow_heartbeat_pongs_total", "Pongs received from sessions.",
+        HeartbeatMonitor.getPongCount());
+    counter(sb, "chatflow_sessions_reaped_total",
+        "Sessions closed after chatflow.heartbeat.idleTimeoutMs without a frame or pong.",
+        HeartbeatMonitor.getReapedCount());
+
+    header(sb, "chatflow_rooms", "gauge", "Rooms with at least one connected session.");
+    sb.append("chatflow_rooms ").append(RoomRegistry.roomCount()).append('\n');
+    return sb.toString();
+  }
+
+  private static void renderStages(StringBuilder sb) {
+    long[] buckets = new long[LatencyHistogram.BUCKETS];
+    long[][] quantiles = new long[Stage.values().length][];
+
+    header(sb, "chatflow_stage_latency_seconds", "histogram",
+        "Time spent in each stage of handling an inbound message.");
+    for (Stage stage : Stage.values()) {
+      long sumNanos = MessageMetrics.histogram(stage).snapshot(buckets);
+      long cumulative = 0;
+      int bucket = 0;
+      for (int b = 0; b < BOUNDS_NANOS.length; b++) {
+        while (bucket < LatencyHistogram.BUCKETS
+            && LatencyHistogram.highestValueOf(bucket) <= BOUNDS_NANOS[b]) {
+          cumulative += buckets[bucket++];
+        }
+        sample(sb, "chatflow_stage_latency_seconds_bucket", stage, "le", BOUND_LABELS[b])
+            .append(cumulative).append('\n');
+      }
+      while (bucket < LatencyHistogram.BUCKETS) {
+        cumulative += buckets[bucket++];
+      }
+      sample(sb, "chatflow_stage_latency_seconds_bucket", stage, "le", "+Inf")
+          .append(cumulative).append('\n');
+      sample(sb, "chatflow_stage_latency_seconds_sum", stage, null, null)
+          .append(seconds(sumNanos)).append('\n');
+      sample(sb, "chatflow_stage_latency_seconds_count", stage, null, null)
+          .append(cumulative).append('\n');
+
+      long[] values = new long[QUANTILES.length];
+      for (int q = 0; q < QUANTILES.length; q++) {
+        values[q] = LatencyHistogram.valueAtQuantile(buckets, cumulative, QUANTILES[q]);
+      }
+      quantiles[stage.ordinal()] = values;
+    }
+
+    header(sb, "chatflow_stage_latency_quantile_seconds", "gauge",
+        "Latency quantiles of each stage since startup, to ~3% precision.");
+    for (Stage stage : Stage.values()) {
+      for (int q = 0; q < QUANTILES.length; q++) {
+        sample(sb, "chatflow_stage_latency_quantile_seconds", stage, "quantile",
+            Double.toString(QUANTILES[q]))
+            .append(seconds(quantiles[stage.ordinal()][q])).append('\n');
+      }
+    }
+  }
+
+  private static StringBuilder sample(StringBuilder sb, String name, Stage stage,
+      String label, String value) {
+    sb.append(name).append("{stage=\"").append(stage.label).append('"');
+    if (label != null) {
+      sb.append(',').append(label).append("=\"").append(value).append('"');
+    }
+    return sb.append("} ");
+  }
+
+  private static void header(StringBuilder sb, String name, String type, String help) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void counter(StringBuilder sb, String name, String help, long value) {
+    header(sb, name, "counter", help);
+    sb.append(name).append(' ').append(value).append('\n');
+  }
+
+  private static String seconds(long nanos) {
+    return Double.toString(nanos / 1e9);
+  }
+}
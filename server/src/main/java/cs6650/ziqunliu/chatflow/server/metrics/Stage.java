@@ -0,0 +1,24 @@
+package cs6650.ziqunliu.chatflow.server.metrics;
+
+/**
+ * Steps of handling one inbound message, in order. {@link #label} is the Prometheus label value.
+ */
+public enum Stage {
+  // Frame to DTO(s), once per frame, also for batches. Inflating deflate frames happens
+  // before dispatch and is timed by DeflateCodec
+  PARSE("parse"),
+  VALIDATE("validate"),
+  // Sequence number and MessageBroadcastEvent
+  BUILD_EVENT("build_event"),
+  SERIALIZE("serialize"),
+  // WAL and history append
+  PERSIST("persist"),
+  // Fan-out into every recipient's outbound queue
+  SEND("send");
+
+  public final String label;
+
+  Stage(String label) {
+    this.label = label;
+  }
+}
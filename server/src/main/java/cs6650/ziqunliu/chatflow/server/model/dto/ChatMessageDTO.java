@@ -9,6 +9,8 @@ public class ChatMessageDTO {
   private String message;
   private String timestamp;
   private MessageType messageType;
+  // Optional, client-chosen; retries of one message reuse it so the server can drop duplicates
+  private String messageId;
 
   public ChatMessageDTO() {
   }
@@ -42,6 +44,10 @@ public class ChatMessageDTO {
     return messageType;
   }
 
+  public String getMessageId() {
+    return messageId;
+  }
+
   public void setUserId(String userId) {
     this.userId = userId;
   }
@@ -62,6 +68,10 @@ public class ChatMessageDTO {
     this.messageType = messageType;
   }
 
+  public void setMessageId(String messageId) {
+    this.messageId = messageId;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (o == null || getClass() != o.getClass()) {
@@ -70,12 +80,13 @@ public class ChatMessageDTO {
     ChatMessageDTO that = (ChatMessageDTO) o;
     return Objects.equals(userId, that.userId) && Objects.equals(username,
         that.username) && Objects.equals(message, that.message) && Objects.equals(
-        timestamp, that.timestamp) && Objects.equals(messageType, that.messageType);
+        timestamp, that.timestamp) && Objects.equals(messageType, that.messageType)
+        && Objects.equals(messageId, that.messageId);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(userId, username, message, timestamp, messageType);
+    return Objects.hash(userId, username, message, timestamp, messageType, messageId);
   }
 
   @Override
@@ -86,6 +97,7 @@ public class ChatMessageDTO {
         ", message='" + message + '\'' +
         ", timestamp=" + timestamp +
         ", messageType=" + messageType +
+        ", messageId='" + messageId + '\'' +
         '}';
   }
 }
@@ -7,6 +7,9 @@ public class MessageBroadcastEvent extends SuccessResponse {
   private String username;
   private String clientTimestamp;
   private String messageType;
+  private long sequence;
+  // The sender's messageId, echoed so it can match this frame as its ACK
+  private String messageId;
 
   public MessageBroadcastEvent(String status, String roomId, String serverTimestamp,
       String userId, String username, String message, String clientTimestamp, String messageType) {
@@ -43,6 +46,22 @@ public class MessageBroadcastEvent extends SuccessResponse {
     this.clientTimestamp = clientTimestamp;
   }
 
+  public long getSequence() {
+    return sequence;
+  }
+
+  public void setSequence(long sequence) {
+    this.sequence = sequence;
+  }
+
+  public String getMessageId() {
+    return messageId;
+  }
+
+  public void setMessageId(String messageId) {
+    this.messageId = messageId;
+  }
+
   public String getMessageType() {
     return messageType;
   }
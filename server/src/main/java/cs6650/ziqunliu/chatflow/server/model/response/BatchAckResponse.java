@@ -0,0 +1,62 @@
+package cs6650.ziqunliu.chatflow.server.model.response;
+
+/**
+ * Single reply to a batch frame. {@code codes[i]} is the outcome of item i, using the numeric
+ * codes of MessageValidationService (0 = accepted and broadcast, DUPLICATE = accepted
+ * earlier, not broadcast again).
+ */
+public class BatchAckResponse {
+
+  private String status;
+  private String roomId;
+  private int accepted;
+  private int[] codes;
+  private String serverTimestamp;
+
+  public BatchAckResponse(String roomId, int accepted, int[] codes) {
+    this.status = "BATCH_ACK";
+    this.roomId = roomId;
+    this.accepted = accepted;
+    this.codes = codes;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public void setStatus(String status) {
+    this.status = status;
+  }
+
+  public String getRoomId() {
+    return roomId;
+  }
+
+  public void setRoomId(String roomId) {
+    this.roomId = roomId;
+  }
+
+  public int getAccepted() {
+    return accepted;
+  }
+
+  public void setAccepted(int accepted) {
+    this.accepted = accepted;
+  }
+
+  public int[] getCodes() {
+    return codes;
+  }
+
+  public void setCodes(int[] codes) {
+    this.codes = codes;
+  }
+
+  public String getServerTimestamp() {
+    return serverTimestamp;
+  }
+
+  public void setServerTimestamp(String serverTimestamp) {
+    this.serverTimestamp = serverTimestamp;
+  }
+}
@@ -0,0 +1,62 @@
+package cs6650.ziqunliu.chatflow.server.model.response;
+
+/**
+ * Reply to a message whose messageId the room accepted before (a client retry). Only the sender
+ * gets it; the message is not validated, logged or broadcast again. {@code sequence} is the one
+ * the first copy was broadcast with.
+ */
+public class DuplicateAckResponse {
+
+  private String status;
+  private String roomId;
+  private String messageId;
+  private long sequence;
+  private String serverTimestamp;
+
+  public DuplicateAckResponse(String roomId, String messageId, long sequence) {
+    this.status = "DUPLICATE";
+    this.roomId = roomId;
+    this.messageId = messageId;
+    this.sequence = sequence;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public void setStatus(String status) {
+    this.status = status;
+  }
+
+  public String getRoomId() {
+    return roomId;
+  }
+
+  public void setRoomId(String roomId) {
+    this.roomId = roomId;
+  }
+
+  public String getMessageId() {
+    return messageId;
+  }
+
+  public void setMessageId(String messageId) {
+    this.messageId = messageId;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public void setSequence(long sequence) {
+    this.sequence = sequence;
+  }
+
+  public String getServerTimestamp() {
+    return serverTimestamp;
+  }
+
+  public void setServerTimestamp(String serverTimestamp) {
+    this.serverTimestamp = serverTimestamp;
+  }
+}
@@ -0,0 +1,84 @@
+package cs6650.ziqunliu.chatflow.server.model.response;
+
+/**
+ * Body of GET /rooms/{roomId}/presence. A {@code SNAPSHOT} lists every member; a {@code DIFF}
+ * (for {@code ?sinceVersion=}) lists only the users whose membership changed after
+ * {@code sinceVersion}, split by where they are now: {@code joined} are present, {@code left}
+ * are not. Applying a diff to the snapshot of {@code sinceVersion} gives the one of
+ * {@code version}.
+ */
+public class PresenceResponse {
+
+  private String status;
+  private String roomId;
+  private long version;
+  private Long sinceVersion;
+  private int count;
+  private int[] members;
+  private int[] joined;
+  private int[] left;
+  private String serverTimestamp;
+
+  public static PresenceResponse snapshot(String roomId, long version, int[] members) {
+    PresenceResponse response = new PresenceResponse("SNAPSHOT", roomId, version);
+    response.count = members.length;
+    response.members = members;
+    return response;
+  }
+
+  public static PresenceResponse diff(String roomId, long sinceVersion, long version, int count,
+      int[] joined, int[] left) {
+    PresenceResponse response = new PresenceResponse("DIFF", roomId, version);
+    response.sinceVersion = sinceVersion;
+    response.count = count;
+    response.joined = joined;
+    response.left = left;
+    return response;
+  }
+
+  private PresenceResponse(String status, String roomId, long version) {
+    this.status = status;
+    this.roomId = roomId;
+    this.version = version;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public String getRoomId() {
+    return roomId;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public Long getSinceVersion() {
+    return sinceVersion;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public int[] getMembers() {
+    return members;
+  }
+
+  public int[] getJoined() {
+    return joined;
+  }
+
+  public int[] getLeft() {
+    return left;
+  }
+
+  public String getServerTimestamp() {
+    return serverTimestamp;
+  }
+
+  public void setServerTimestamp(String serverTimestamp) {
+    this.serverTimestamp = serverTimestamp;
+  }
+}
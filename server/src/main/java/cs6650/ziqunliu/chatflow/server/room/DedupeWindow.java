@@ -0,0 +1,142 @@
+package cs6650.ziqunliu.chatflow.server.room;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recently accepted messageIds of one room, for dropping client retries. A fixed table of
+ * 64-bit fingerprints (userId + messageId), 4-way set associative: an id is looked up in the 4
+ * slots of its set, and a new id takes an empty or expired slot of the set, else its oldest
+ * one. Memory is bounded by {@code chatflow.dedupe.windowSize} entries (24 bytes each),
+ * allocated on the room's first messageId.
+ *
+ * <p>An id counts as a duplicate while its entry is younger than {@code chatflow.dedupe.windowMs}
+ * and still in the table. Under heavy traffic entries can be displaced earlier (counted as
+ * evictions); a retry after that is processed again, which is the at-least-once behavior
+ * without ids. Distinct ids only collide if their 64-bit fingerprints do.
+ *
+ * <p>Not thread-safe; {@link RoomState} calls it under its own lock.
+ */
+public final class DedupeWindow {
+
+  private static final int WAYS = 4;
+
+  private static final LongAdder lookups = new LongAdder();
+  private static final LongAdder hits = new LongAdder();
+  private static final LongAdder evictions = new LongAdder();
+
+  private final int capacity;
+  private final long windowMillis;
+
+  private long[] fingerprints;
+  private long[] sequences;
+  private long[] times;
+
+  DedupeWindow(int capacity, long windowMillis) {
+    // Whole sets, power-of-two number of sets
+    int sets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS) * 2 - 1);
+    this.capacity = capacity <= 0 ? 0 : sets * WAYS;
+    this.windowMillis = windowMillis;
+  }
+
+  /**
+   * @return the sequence the id was accepted with, or 0 if it is not in the window
+   */
+  long find(long fingerprint, long nowMillis) {
+    lookups.increment();
+    long sequence = recheck(fingerprint, nowMillis);
+    if (sequence != 0) {
+      hits.increment();
+    }
+    return sequence;
+  }
+
+  /**
+   * {@link #find} without counting a lookup, for an id that was already looked up.
+   */
+  long recheck(long fingerprint, long nowMillis) {
+    if (fingerprints == null) {
+      return 0;
+    }
+    int base = setOf(fingerprint);
+    for (int i = base; i < base + WAYS; i++) {
+      if (fingerprints[i] == fingerprint && nowMillis - times[i] < windowMillis) {
+        return sequences[i];
+      }
+    }
+    return 0;
+  }
+
+  void put(long fingerprint, long sequence, long nowMillis) {
+    if (capacity == 0) {
+      return;
+    }
+    if (fingerprints == null) {
+      fingerprints = new long[capacity];
+      sequences = new long[capacity];
+      times = new long[capacity];
+    }
+    int base = setOf(fingerprint);
+    int victim = base;
+    for (int i = base; i < base + WAYS; i++) {
+      if (fingerprints[i] == 0 || nowMillis - times[i] >= windowMillis) {
+        victim = i;
+        break;
+      }
+      if (times[i] < times[victim]) {
+        victim = i;
+      }
+    }
+    if (fingerprints[victim] != 0 && nowMillis - times[victim] < windowMillis) {
+      evictions.increment();
+    }
+    fingerprints[victim] = fingerprint;
+    sequences[victim] = sequence;
+    times[victim] = nowMillis;
+  }
+
+  private int setOf(long fingerprint) {
+    return (int) (fingerprint & (capacity / WAYS - 1)) * WAYS;
+  }
+
+  /**
+   * 64-bit fingerprint of a sender's messageId (FNV-1a, then a final mix). Never 0, which
+   * marks an empty slot.
+   */
+  public static long fingerprint(String userId, String messageId) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < userId.length(); i++) {
+      h = (h ^ userId.charAt(i)) * 0x100000001b3L;
+    }
+    // Separator outside the char range keeps ("1", "23") apart from ("12", "3")
+    h = (h ^ 0x10000) * 0x100000001b3L;
+    for (int i = 0; i < messageId.length(); i++) {
+      h = (h ^ messageId.charAt(i)) * 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h == 0 ? 1 : h;
+  }
+
+  public static long getHitCount() {
+    return hits.sum();
+  }
+
+  public static long getLookupCount() {
+    return lookups.sum();
+  }
+
+  public static long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  public static String getStats() {
+    long lookupCount = lookups.sum();
+    long hitCount = hits.sum();
+    return String.format("dedupeLookups: %d, dedupeHits: %d, dedupeHitRate: %.4f, "
+            + "dedupeEvictions: %d", lookupCount, hitCount,
+        lookupCount == 0 ? 0.0 : (double) hitCount / lookupCount, evictions.sum());
+  }
+}
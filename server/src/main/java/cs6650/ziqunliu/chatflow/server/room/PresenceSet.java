@@ -0,0 +1,322 @@
+package cs6650.ziqunliu.chatflow.server.room;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Users present in one room, as a bitmap over userIds 0..maxUserId split into chunks of
+ * {@link #CHUNK_BITS} bits. A chunk is allocated the first time one of its users joins and is
+ * then kept, so a room costs its ~400-byte chunk table plus ~160 bytes per 1024-userId range
+ * anyone in it has ever come from, at most ~16 KB for all 100,000 users, plus the journal.
+ *
+ * <p>Updates are lock-free: a chunk is installed with a compare-and-set on the chunk table, a
+ * bit with a compare-and-set on its word. The set holds one bit per user; {@link RoomState}
+ * counts a user's further sessions per user, so it never locks the whole room either.
+ * {@link #size()} and {@link #version()} move after the bit, only when it actually changed, so
+ * readers may briefly see a member the counters do not include yet.
+ *
+ * <p>Versions carry the set's epoch in bits 32 and up, drawn from a server-wide counter that
+ * starts at a random value, and count changes in the low 32 bits. A room whose state was
+ * retired and recreated, or a restarted server, therefore never reuses a version some client
+ * may still hold: a version from another epoch is simply unknown to {@link #changedSince}.
+ * Epochs stay below 2^21, so versions are exact as JSON numbers in any client.
+ *
+ * <p>The last {@code journalSize} changes are kept in a ring indexed by version, each slot one
+ * long holding the version's change count and the userId it changed. {@link #changedSince}
+ * lists the users touched after a version; callers report their current state rather than
+ * replaying joins and leaves, so two racing updates of one user cannot leave a client with the
+ * wrong outcome.
+ */
+public final class PresenceSet {
+
+  public static final int CHUNK_BITS = 1024;
+  private static final int WORDS_PER_CHUNK = CHUNK_BITS / 64;
+  // Words plus the AtomicLongArray and its array's headers
+  private static final int CHUNK_BYTES = WORDS_PER_CHUNK * 8 + 32;
+
+  private static final LongAdder totalMembers = new LongAdder();
+  private static final AtomicLong allocatedBytes = new AtomicLong();
+
+  // Journal slot: change count << USER_BITS | userId
+  private static final int USER_BITS = 24;
+  private static final long USER_MASK = (1L << USER_BITS) - 1;
+
+  // Version: epoch << EPOCH_SHIFT | change count
+  private static final int EPOCH_SHIFT = 32;
+  private static final int EPOCH_MASK = (1 << 21) - 1;
+  private static final long COUNT_MASK = (1L << EPOCH_SHIFT) - 1;
+  private static final AtomicInteger epochs =
+      new AtomicInteger(ThreadLocalRandom.current().nextInt(EPOCH_MASK));
+
+  private final AtomicReferenceArray<AtomicLongArray> chunks;
+  private final AtomicInteger size = new AtomicInteger();
+  // Changes so far; the low half of the version
+  private final AtomicLong version = new AtomicLong();
+  private final long epoch = nextEpoch() << EPOCH_SHIFT;
+  private final int journalMask;
+  // Allocated on the first change
+  private final AtomicReference<AtomicLongArray> journal = new AtomicReference<>();
+  // Set once by release(); later allocations stay out of allocatedBytes
+  private volatile boolean released;
+
+  public PresenceSet(int maxUserId) {
+    this(maxUserId, 256);
+  }
+
+  /**
+   * @param journalSize changes remembered for {@link #changedSince}, rounded up to a power of two
+   */
+  public PresenceSet(int maxUserId, int journalSize) {
+    if (maxUserId > USER_MASK) {
+      throw new IllegalArgumentException("maxUserId too large: " + maxUserId);
+    }
+    this.chunks = new AtomicReferenceArray<>(maxUserId / CHUNK_BITS + 1);
+    this.journalMask = Integer.highestOneBit(Math.max(1, journalSize) * 2 - 1) - 1;
+    allocatedBytes.addAndGet(16 + 4L * chunks.length());
+  }
+
+  /**
+   * @return true if the user was not present before
+   */
+  public boolean add(int userId) {
+    if (!inRange(userId)) {
+      return false;
+    }
+    AtomicLongArray chunk = chunkFor(userId);
+    int word = (userId % CHUNK_BITS) >>> 6;
+    long bit = 1L << userId;
+    while (true) {
+      long current = chunk.get(word);
+      if ((current & bit) != 0) {
+        return false;
+      }
+      if (chunk.compareAndSet(word, current, current | bit)) {
+        size.incrementAndGet();
+        record(version.incrementAndGet(), userId);
+        totalMembers.increment();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return true if the user was present before
+   */
+  public boolean remove(int userId) {
+    if (!inRange(userId)) {
+      return false;
+    }
+    AtomicLongArray chunk = chunks.get(userId / CHUNK_BITS);
+    if (chunk == null) {
+      return false;
+    }
+    int word = (userId % CHUNK_BITS) >>> 6;
+    long bit = 1L << userId;
+    while (true) {
+      long current = chunk.get(word);
+      if ((current & bit) == 0) {
+        return false;
+      }
+      if (chunk.compareAndSet(word, current, current & ~bit)) {
+        size.decrementAndGet();
+        record(version.incrementAndGet(), userId);
+        totalMembers.decrement();
+        return true;
+      }
+    }
+  }
+
+  public boolean contains(int userId) {
+    if (!inRange(userId)) {
+      return false;
+    }
+    AtomicLongArray chunk = chunks.get(userId / CHUNK_BITS);
+    return chunk != null && (chunk.get((userId % CHUNK_BITS) >>> 6) & (1L << userId)) != 0;
+  }
+
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * This set's epoch plus its number of membership changes so far; equal versions mean nothing
+   * changed in between. Never 0, which stands for a room nobody joined.
+   */
+  public long version() {
+    return epoch | version.get();
+  }
+
+  /**
+   * @return present userIds in ascending order
+   */
+  public int[] members() {
+    return collect(null);
+  }
+
+  /**
+   * @return userIds present both here and in {@code other}, ascending
+   */
+  public int[] intersect(PresenceSet other) {
+    return collect(other);
+  }
+
+  /**
+   * Users whose membership changed after version {@code since}, up to and including
+   * {@code until} (usually a {@link #version()} read just before).
+   *
+   * @return distinct userIds in ascending order, or null if {@code since} is from another
+   * epoch, the journal no longer reaches back to it, or a change in range is still being
+   * recorded; send a full list then
+   */
+  public int[] changedSince(long since, long until) {
+    if ((since & ~COUNT_MASK) != epoch || (until & ~COUNT_MASK) != epoch) {
+      return null;
+    }
+    since &= COUNT_MASK;
+    until &= COUNT_MASK;
+    if (since >= until) {
+      return new int[0];
+    }
+    if (until - since > journalMask + 1) {
+      return null;
+    }
+    AtomicLongArray ring = journal.get();
+    if (ring == null) {
+      return null;
+    }
+    int[] users = new int[(int) (until - since)];
+    for (long v = since + 1; v <= until; v++) {
+      long slot = ring.get((int) (v & journalMask));
+      if (slot >>> USER_BITS != v) {
+        return null;
+      }
+      users[(int) (v - since - 1)] = (int) (slot & USER_MASK);
+    }
+    Arrays.sort(users);
+    int distinct = 0;
+    for (int i = 0; i < users.length; i++) {
+      if (i == 0 || users[i] != users[i - 1]) {
+        users[distinct++] = users[i];
+      }
+    }
+    return distinct == users.length ? users : Arrays.copyOf(users, distinct);
+  }
+
+  public int intersectCount(PresenceSet other) {
+    int count = 0;
+    int n = Math.min(chunks.length(), other.chunks.length());
+    for (int c = 0; c < n; c++) {
+      AtomicLongArray a = chunks.get(c);
+      AtomicLongArray b = other.chunks.get(c);
+      if (a == null || b == null) {
+        continue;
+      }
+      for (int w = 0; w < WORDS_PER_CHUNK; w++) {
+        count += Long.bitCount(a.get(w) & b.get(w));
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Bytes held by this set's chunk table, chunks and journal.
+   */
+  public long memoryBytes() {
+    long bytes = 16 + 4L * chunks.length();
+    if (journal.get() != null) {
+      bytes += 8L * (journalMask + 1) + 32;
+    }
+    for (int c = 0; c < chunks.length(); c++) {
+      if (chunks.get(c) != null) {
+        bytes += CHUNK_BYTES;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Take this set's footprint off {@link #getAllocatedBytes()}; called when its room state is
+   * retired. The set stays usable, but what it allocates afterwards is not counted. Idempotent.
+   */
+  public void release() {
+    if (!released) {
+      released = true;
+      allocatedBytes.addAndGet(-memoryBytes());
+    }
+  }
+
+  public static long getTotalMembers() {
+    return totalMembers.sum();
+  }
+
+  public static long getAllocatedBytes() {
+    return allocatedBytes.get();
+  }
+
+  private int[] collect(PresenceSet other) {
+    int[] result = new int[other == null ? Math.max(16, size.get()) : 16];
+    int count = 0;
+    int n = other == null ? chunks.length() : Math.min(chunks.length(), other.chunks.length());
+    for (int c = 0; c < n; c++) {
+      AtomicLongArray a = chunks.get(c);
+      AtomicLongArray b = other == null ? null : other.chunks.get(c);
+      if (a == null || (other != null && b == null)) {
+        continue;
+      }
+      for (int w = 0; w < WORDS_PER_CHUNK; w++) {
+        long bits = b == null ? a.get(w) : a.get(w) & b.get(w);
+        while (bits != 0) {
+          if (count == result.length) {
+            result = Arrays.copyOf(result, result.length * 2);
+          }
+          result[count++] = c * CHUNK_BITS + w * 64 + Long.numberOfTrailingZeros(bits);
+          bits &= bits - 1;
+        }
+      }
+    }
+    return count == result.length ? result : Arrays.copyOf(result, count);
+  }
+
+  private void record(long v, int userId) {
+    AtomicLongArray ring = journal.get();
+    if (ring == null) {
+      AtomicLongArray fresh = new AtomicLongArray(journalMask + 1);
+      if (journal.compareAndSet(null, fresh) && !released) {
+        allocatedBytes.addAndGet(8L * (journalMask + 1) + 32);
+      }
+      ring = journal.get();
+    }
+    ring.set((int) (v & journalMask), v << USER_BITS | userId);
+  }
+
+  // 1..EPOCH_MASK, so no version is 0
+  private static long nextEpoch() {
+    return Math.floorMod(epochs.getAndIncrement(), EPOCH_MASK) + 1;
+  }
+
+  private boolean inRange(int userId) {
+    return userId >= 0 && userId / CHUNK_BITS < chunks.length();
+  }
+
+  private AtomicLongArray chunkFor(int userId) {
+    int index = userId / CHUNK_BITS;
+    AtomicLongArray chunk = chunks.get(index);
+    if (chunk != null) {
+      return chunk;
+    }
+    AtomicLongArray fresh = new AtomicLongArray(WORDS_PER_CHUNK);
+    if (chunks.compareAndSet(index, null, fresh)) {
+      if (!released) {
+        allocatedBytes.addAndGet(CHUNK_BYTES);
+      }
+      return fresh;
+    }
+    return chunks.get(index);
+  }
+}
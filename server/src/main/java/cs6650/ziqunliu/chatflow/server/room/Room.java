@@ -0,0 +1,87 @@
+package cs6650.ziqunliu.chatflow.server.room;
+
+/**
+ * One chat room. Membership is a copy-on-write array: the fan-out loop reads it without locks,
+ * joins and leaves copy it under the room's monitor. A room that became empty is retired under
+ * the same monitor, so a concurrent join either lands before the retirement or sees it and
+ * creates a fresh room; no session can end up in a room that was already removed.
+ */
+public final class Room {
+
+  private static final SessionContext[] EMPTY = new SessionContext[0];
+
+  private final int id;
+  private final RoomState state;
+  private volatile SessionContext[] members = EMPTY;
+  private volatile boolean retired;
+
+  Room(RoomState state) {
+    this.id = state.getId();
+    this.state = state;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public RoomState getState() {
+    return state;
+  }
+
+  /**
+   * Snapshot of the current members. Do not modify the returned array.
+   */
+  public SessionContext[] members() {
+    return members;
+  }
+
+  public int size() {
+    return members.length;
+  }
+
+  boolean isRetired() {
+    return retired;
+  }
+
+  /**
+   * @return false if the room was retired, the caller must retry on a fresh room
+   */
+  synchronized boolean join(SessionContext ctx) {
+    if (retired) {
+      return false;
+    }
+    SessionContext[] current = members;
+    SessionContext[] next = new SessionContext[current.length + 1];
+    System.arraycopy(current, 0, next, 0, current.length);
+    next[current.length] = ctx;
+    members = next;
+    return true;
+  }
+
+  /**
+   * @return true if this leave emptied the room and retired it
+   */
+  synchronized boolean leave(SessionContext ctx) {
+    SessionContext[] current = members;
+    int index = -1;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i] == ctx) {
+        index = i;
+        break;
+      }
+    }
+    if (index < 0) {
+      return false;
+    }
+    if (current.length == 1) {
+      members = EMPTY;
+      retired = true;
+      return true;
+    }
+    SessionContext[] next = new SessionContext[current.length - 1];
+    System.arraycopy(current, 0, next, 0, index);
+    System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+    members = next;
+    return false;
+  }
+}
@@ -0,0 +1,366 @@
+package cs6650.ziqunliu.chatflow.server.room;
+
+import cs6650.ziqunliu.chatflow.server.bus.RoomBuses;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.service.PresenceSnapshots;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * All live rooms, keyed by the int roomId parsed at @OnOpen. Ids below
+ * {@code chatflow.room.directSlots} index a flat array (no hashing at all); larger ids fall back
+ * to a map. Join, leave and empty-room cleanup are atomic with respect to each other, see
+ * {@link Room}. Each room's {@link RoomState} is kept in a parallel table, so it survives the
+ * room emptying. A room appearing or going away is reported to the room bus, which tells other
+ * nodes whether to relay the room here.
+ *
+ * <p>States are bounded: a sweeper thread retires those whose room has had no session for
+ * {@code chatflow.room.stateIdleMs}, and a new room beyond {@code chatflow.room.maxStates}
+ * takes the place of the least recently used idle one, or is refused if every state has
+ * sessions. Creating a room and retiring a state hold one lock, so a state is never retired
+ * while a room is being opened on it. Building a state recovers its WAL, so that part runs
+ * outside the lock, under a lock striped by room id that keeps one room from being built twice.
+ */
+public final class RoomRegistry {
+
+  public static final int INVALID_ROOM_ID = -1;
+
+  private static final AtomicReferenceArray<Room> direct =
+      new AtomicReferenceArray<>(ServerConfig.ROOM_DIRECT_SLOTS);
+  private static final ConcurrentHashMap<Integer, Room> overflow = new ConcurrentHashMap<>();
+  private static final AtomicReferenceArray<RoomState> directStates =
+      new AtomicReferenceArray<>(ServerConfig.ROOM_DIRECT_SLOTS);
+  private static final ConcurrentHashMap<Integer, RoomState> overflowStates =
+      new ConcurrentHashMap<>();
+
+  // Held to create a room, to publish a state and to retire one
+  private static final Object lifecycle = new Object();
+  // Held while a state is built; taken before lifecycle
+  private static final Object[] building = new Object[64];
+  // Guarded by lifecycle; includes the states being built
+  private static int stateCount;
+  private static final LongAdder retired = new LongAdder();
+  private static final LongAdder refused = new LongAdder();
+
+  private static volatile Thread sweeper;
+  private static volatile boolean running;
+
+  static {
+    for (int i = 0; i < building.length; i++) {
+      building[i] = new Object();
+    }
+  }
+
+  private RoomRegistry() {
+  }
+
+  /**
+   * Start retiring idle room states. Called once at web application startup.
+   */
+  public static synchronized void start() {
+    if (running || ServerConfig.ROOM_STATE_IDLE_MS <= 0) {
+      return;
+    }
+    running = true;
+    Thread t = new Thread(RoomRegistry::sweepLoop, "chatflow-room-sweeper");
+    t.setDaemon(true);
+    t.start();
+    sweeper = t;
+  }
+
+  public static synchronized void shutdown() {
+    running = false;
+    Thread t = sweeper;
+    if (t != null) {
+      t.interrupt();
+      sweeper = null;
+    }
+  }
+
+  /**
+   * Parse a path roomId. Only plain decimal digits are accepted.
+   *
+   * @return the id, or {@link #INVALID_ROOM_ID}
+   */
+  public static int parseRoomId(String text) {
+    if (text == null || text.isEmpty() || text.length() > 9) {
+      return INVALID_ROOM_ID;
+    }
+    int id = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c < '0' || c > '9') {
+        return INVALID_ROOM_ID;
+      }
+      id = id * 10 + (c - '0');
+    }
+    return id;
+  }
+
+  /**
+   * Add a session to its room, creating the room if needed.
+   *
+   * @return the room, or null if it would need a new state and every one of the
+   *     {@code chatflow.room.maxStates} has sessions
+   */
+  public static Room join(SessionContext ctx) {
+    int roomId = ctx.getRoomId();
+    while (true) {
+      Room room = getOrCreate(roomId);
+      if (room == null) {
+        refused.increment();
+        return null;
+      }
+      if (room.join(ctx)) {
+        ctx.setRoom(room);
+        return room;
+      }
+      // Lost the race against the last leave of this room; the next lookup replaces it
+    }
+  }
+
+  /**
+   * Remove a session from its room and drop the room if it is now empty.
+   */
+  public static void leave(SessionContext ctx) {
+    Room room = ctx.getRoom();
+    if (room == null) {
+      return;
+    }
+    // Before the leave, so a sweep that sees the room gone also sees it was just used
+    room.getState().touch();
+    if (room.leave(ctx)) {
+      remove(room);
+    }
+  }
+
+  /**
+   * @return the live room, or null if nobody is in it
+   */
+  public static Room get(int roomId) {
+    Room room = roomId < direct.length() ? direct.get(roomId) : overflow.get(roomId);
+    return room == null || room.isRetired() ? null : room;
+  }
+
+  /**
+   * State of a room, created on first use (which recovers its WAL).
+   *
+   * @return the state, or null if creating it would exceed {@code chatflow.room.maxStates}
+   */
+  public static RoomState state(int roomId) {
+    RoomState state = existingState(roomId);
+    if (state != null) {
+      return state;
+    }
+    synchronized (building[roomId & (building.length - 1)]) {
+      state = existingState(roomId);
+      if (state != null) {
+        return state;
+      }
+      synchronized (lifecycle) {
+        if (stateCount >= ServerConfig.ROOM_MAX_STATES && !retireLeastRecentlyUsed()) {
+          return null;
+        }
+        // Reserve the slot; a retire of this room's previous state has completed by now
+        stateCount++;
+      }
+      try {
+        state = new RoomState(roomId);
+      } catch (RuntimeException | Error e) {
+        synchronized (lifecycle) {
+          stateCount--;
+        }
+        throw e;
+      }
+      synchronized (lifecycle) {
+        if (roomId < directStates.length()) {
+          directStates.set(roomId, state);
+        } else {
+          overflowStates.put(roomId, state);
+        }
+      }
+      return state;
+    }
+  }
+
+  /**
+   * State of a room if it was ever used, without creating it.
+   */
+  public static RoomState existingState(int roomId) {
+    return roomId >= directStates.length() ? overflowStates.get(roomId)
+        : directStates.get(roomId);
+  }
+
+  /**
+   * @return ids of the rooms that currently have sessions on this node
+   */
+  public static int[] liveRoomIds() {
+    List<Integer> ids = new ArrayList<>();
+    for (int i = 0; i < direct.length(); i++) {
+      Room room = direct.get(i);
+      if (room != null && !room.isRetired()) {
+        ids.add(i);
+      }
+    }
+    for (Room room : overflow.values()) {
+      if (!room.isRetired()) {
+        ids.add(room.getId());
+      }
+    }
+    int[] result = new int[ids.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = ids.get(i);
+    }
+    return result;
+  }
+
+  public static String getStats() {
+    int states;
+    synchronized (lifecycle) {
+      states = stateCount;
+    }
+    return "rooms: " + roomCount() + ", roomStates: " + states + ", retiredRoomStates: "
+        + retired.sum() + ", refusedRooms: " + refused.sum();
+  }
+
+  /**
+   * @return number of rooms that currently have sessions; a retired room still waiting to be
+   * removed from its slot is not counted
+   */
+  public static int roomCount() {
+    int count = 0;
+    for (Room room : overflow.values()) {
+      if (!room.isRetired()) {
+        count++;
+      }
+    }
+    for (int i = 0; i < direct.length(); i++) {
+      Room room = direct.get(i);
+      if (room != null && !room.isRetired()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static Room getOrCreate(int roomId) {
+    while (true) {
+      Room current = get(roomId);
+      if (current != null) {
+        return current;
+      }
+      RoomState state = state(roomId);
+      if (state == null) {
+        return null;
+      }
+      Room fresh;
+      synchronized (lifecycle) {
+        current = get(roomId);
+        if (current != null) {
+          return current;
+        }
+        if (existingState(roomId) != state) {
+          // Retired between being built and being opened on; build it again
+          continue;
+        }
+        state.touch();
+        fresh = new Room(state);
+        // Rooms are only created here; remove() of the retired one clears only its own slot
+        if (roomId < direct.length()) {
+          direct.set(roomId, fresh);
+        } else {
+          overflow.put(roomId, fresh);
+        }
+      }
+      // Other nodes start relaying this room here; the bus re-reads the registry
+      RoomBuses.get().interestChanged(roomId);
+      return fresh;
+    }
+  }
+
+  // Caller holds lifecycle
+  private static boolean retireLeastRecentlyUsed() {
+    RoomState oldest = null;
+    for (RoomState state : states()) {
+      if (get(state.getId()) == null
+          && (oldest == null || state.lastUsedMillis() < oldest.lastUsedMillis())) {
+        oldest = state;
+      }
+    }
+    if (oldest == null) {
+      return false;
+    }
+    retire(oldest);
+    return true;
+  }
+
+  // Caller holds lifecycle and has checked the room has no sessions
+  private static void retire(RoomState state) {
+    int roomId = state.getId();
+    if (roomId < directStates.length()) {
+      directStates.compareAndSet(roomId, state, null);
+    } else {
+      overflowStates.remove(roomId, state);
+    }
+    stateCount--;
+    retired.increment();
+    state.retire();
+    PresenceSnapshots.forget(roomId);
+  }
+
+  private static List<RoomState> states() {
+    List<RoomState> states = new ArrayList<>(overflowStates.values());
+    for (int i = 0; i < directStates.length(); i++) {
+      RoomState state = directStates.get(i);
+      if (state != null) {
+        states.add(state);
+      }
+    }
+    return states;
+  }
+
+  private static void sweepLoop() {
+    long interval = Math.max(1000, Math.min(60_000, ServerConfig.ROOM_STATE_IDLE_MS / 2));
+    while (running) {
+      try {
+        Thread.sleep(interval);
+      } catch (InterruptedException e) {
+        return;
+      }
+      sweep(System.currentTimeMillis() - ServerConfig.ROOM_STATE_IDLE_MS);
+    }
+  }
+
+  /**
+   * Retire the states of rooms without sessions that were last used before {@code cutoff}.
+   */
+  static void sweep(long cutoffMillis) {
+    for (RoomState state : states()) {
+      if (state.lastUsedMillis() >= cutoffMillis) {
+        continue;
+      }
+      // One state per lock hold, so opening rooms never waits for a whole sweep
+      synchronized (lifecycle) {
+        int roomId = state.getId();
+        if (existingState(roomId) == state && get(roomId) == null
+            && state.lastUsedMillis() < cutoffMillis) {
+          retire(state);
+        }
+      }
+    }
+  }
+
+  private static void remove(Room room) {
+    int roomId = room.getId();
+    // Only clears the slot if it still holds this retired room
+    if (roomId < direct.length()) {
+      direct.compareAndSet(roomId, room, null);
+    } else {
+      overflow.remove(roomId, room);
+    }
+    RoomBuses.get().interestChanged(roomId);
+  }
+}
@@ -0,0 +1,232 @@
+package cs6650.ziqunliu.chatflow.server.room;
+
+import cs6650.ziqunliu.chatflow.server.broadcast.BroadcastFrame;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.history.HistoryReplayer;
+import cs6650.ziqunliu.chatflow.server.history.RoomHistory;
+import cs6650.ziqunliu.chatflow.server.service.MessageValidationService;
+import cs6650.ziqunliu.chatflow.server.wal.RoomLog;
+import cs6650.ziqunliu.chatflow.server.wal.WriteAheadLog;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable side of a room: its message sequence, write-ahead log, recent history, window of
+ * accepted messageIds and the users present (from JOIN/LEAVE messages of live sessions). Unlike
+ * {@link Room}, which only exists while somebody is connected, a room's state outlives its
+ * sessions, so sequences keep growing when a room empties and fills again. Only after the room
+ * has had no session for {@code chatflow.room.stateIdleMs}, or to stay under
+ * {@code chatflow.room.maxStates}, does {@link RoomRegistry} retire it.
+ */
+public final class RoomState {
+
+  private static final String SERVER_TIMESTAMP = "\"serverTimestamp\":\"";
+
+  private final int id;
+  private final RoomLog log;
+  private final AtomicLong sequence;
+  private final RoomHistory history =
+      new RoomHistory(ServerConfig.HISTORY_MESSAGES, ServerConfig.HISTORY_BYTES_PER_ROOM);
+  private final DedupeWindow dedupe =
+      new DedupeWindow(ServerConfig.DEDUPE_WINDOW_SIZE, ServerConfig.DEDUPE_WINDOW_MS);
+  private final PresenceSet presence =
+      new PresenceSet(MessageValidationService.MAX_USER_ID, ServerConfig.PRESENCE_JOURNAL);
+  // Sessions beyond the first that hold a user JOINed; a user is present while it holds at
+  // least one. Every claim or release of a user runs inside compute() on its key, which orders
+  // the changes of one user without a room-wide lock
+  private final ConcurrentHashMap<Integer, Integer> extraClaims = new ConcurrentHashMap<>();
+
+  // When a session last joined or left the room
+  private volatile long lastUsedMillis = System.currentTimeMillis();
+
+  RoomState(int id) {
+    this.id = id;
+    this.log = WriteAheadLog.open(id);
+    // Continue after whatever the WAL recovered
+    this.sequence = new AtomicLong(WriteAheadLog.lastSequence(log));
+    // Refill the history from the newest logged messages, so ?since= reaches back past a
+    // restart or a retired state
+    WriteAheadLog.readTail(log, ServerConfig.HISTORY_MESSAGES,
+        (seq, payload) -> history.append(seq, serverTimeMillis(payload), payload));
+  }
+
+  /**
+   * @return epoch millis of a logged broadcast frame's {@code serverTimestamp}, or
+   *     {@link HistoryReplayer#NO_TIME} if it has none, so a time-based replay skips it
+   */
+  static long serverTimeMillis(ByteBuffer frame) {
+    String json = StandardCharsets.UTF_8.decode(frame.duplicate()).toString();
+    int start = json.indexOf(SERVER_TIMESTAMP);
+    int end = start < 0 ? -1 : json.indexOf('"', start + SERVER_TIMESTAMP.length());
+    if (end < 0) {
+      return HistoryReplayer.NO_TIME;
+    }
+    try {
+      return Instant.parse(json.substring(start + SERVER_TIMESTAMP.length(), end))
+          .toEpochMilli();
+    } catch (DateTimeParseException | ArithmeticException e) {
+      return HistoryReplayer.NO_TIME;
+    }
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  long lastUsedMillis() {
+    return lastUsedMillis;
+  }
+
+  void touch() {
+    lastUsedMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * Close the room's WAL and unmap its segments, free its history buffer and uncount its
+   * presence set; the next state of this room recovers its sequence and history from disk.
+   * Called by the registry once no session is left, so whatever still appends afterwards is a
+   * message from a session closed long ago and is neither logged nor kept.
+   */
+  void retire() {
+    if (log != null) {
+      WriteAheadLog.close(id, log);
+    }
+    history.release();
+    presence.release();
+  }
+
+  /**
+   * Reserve the sequence number of the next accepted message.
+   */
+  public long nextSequence() {
+    return sequence.incrementAndGet();
+  }
+
+  /**
+   * Look a messageId up in the dedupe window without reserving anything, so a retry can be
+   * recognized before the message is charged to its sender's rate limit.
+   *
+   * @param idFingerprint {@link DedupeWindow#fingerprint} of the sender and messageId
+   * @return the sequence the earlier copy was accepted with, or 0
+   */
+  public long acceptedSequence(long idFingerprint, long nowMillis) {
+    synchronized (dedupe) {
+      return dedupe.find(idFingerprint, nowMillis);
+    }
+  }
+
+  /**
+   * Reserve the sequence of an accepted message that carries a messageId, unless the same
+   * sender's id was accepted within the dedupe window. The id is checked again under the same
+   * lock as the reservation, so two concurrent copies of one message cannot both get a
+   * sequence; call {@link #acceptedSequence} first, which counts the lookup.
+   *
+   * @param idFingerprint {@link DedupeWindow#fingerprint} of the sender and messageId
+   * @return the new sequence, or the negated sequence of the earlier copy for a duplicate
+   */
+  public long claimSequence(long idFingerprint, long nowMillis) {
+    synchronized (dedupe) {
+      long earlier = dedupe.recheck(idFingerprint, nowMillis);
+      if (earlier != 0) {
+        return -earlier;
+      }
+      long next = sequence.incrementAndGet();
+      dedupe.put(idFingerprint, next, nowMillis);
+      return next;
+    }
+  }
+
+  public long lastSequence() {
+    return sequence.get();
+  }
+
+  public RoomHistory getHistory() {
+    return history;
+  }
+
+  public PresenceSet getPresence() {
+    return presence;
+  }
+
+  /**
+   * Count a JOIN of {@code userId} by {@code ctx}; the user becomes present with their first
+   * session's JOIN. A session JOINing the same user twice counts once.
+   *
+   * @return true if the room's members changed
+   */
+  public boolean join(SessionContext ctx, int userId) {
+    boolean[] changed = new boolean[1];
+    extraClaims.compute(userId, (user, extra) -> {
+      if (!ctx.addJoined(user)) {
+        return extra;
+      }
+      if (extra == null && presence.add(user)) {
+        changed[0] = true;
+        return null;
+      }
+      return extra == null ? 1 : extra + 1;
+    });
+    return changed[0];
+  }
+
+  /**
+   * Drop {@code ctx}'s JOIN of {@code userId}; the user stays present while another session
+   * holds one. A LEAVE from a session that never JOINed the user changes nothing.
+   *
+   * @return true if the room's members changed
+   */
+  public boolean leave(SessionContext ctx, int userId) {
+    boolean[] changed = new boolean[1];
+    extraClaims.compute(userId, (user, extra) -> {
+      if (!ctx.removeJoined(user)) {
+        return extra;
+      }
+      return release(user, extra, changed);
+    });
+    return changed[0];
+  }
+
+  /**
+   * Drop every JOIN {@code ctx} still holds, as if it had sent a LEAVE for each; called when
+   * the session closes, and safe to call again.
+   *
+   * @return number of users no longer present
+   */
+  public int leaveAll(SessionContext ctx) {
+    int[] users = ctx.releaseJoined();
+    boolean[] changed = new boolean[1];
+    int left = 0;
+    for (int userId : users) {
+      changed[0] = false;
+      extraClaims.compute(userId, (user, extra) -> release(user, extra, changed));
+      if (changed[0]) {
+        left++;
+      }
+    }
+    return left;
+  }
+
+  // Inside compute() on userId's key: the new extra-claim count after one claim is dropped
+  private Integer release(int userId, Integer extra, boolean[] changed) {
+    if (extra == null) {
+      changed[0] = presence.remove(userId);
+      return null;
+    }
+    return extra == 1 ? null : extra - 1;
+  }
+
+  /**
+   * Persist an accepted message's encoded frame, if the WAL is enabled, and add it to the
+   * room's history.
+   */
+  public void append(long sequence, BroadcastFrame frame) {
+    if (log != null) {
+      WriteAheadLog.append(log, sequence, frame.bytes());
+    }
+    history.append(sequence, System.currentTimeMillis(), frame.bytes());
+  }
+}
@@ -0,0 +1,162 @@
+package cs6650.ziqunliu.chatflow.server.room;
+
+import cs6650.ziqunliu.chatflow.server.broadcast.SessionOutbound;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.websocket.Session;
+
+/**
+ * Per-session state resolved once at @OnOpen and cached in the session's user properties, so
+ * onMessage and the fan-out loop never re-parse the path or look the room up again.
+ */
+public final class SessionContext {
+
+  private static final String KEY = "chatflow.context";
+
+  private final Session session;
+  private final int roomId;
+  private final String roomIdText;
+  private final SessionOutbound outbound;
+  private volatile Room room;
+  // Frames received and not yet handled; only this session's reader and handler touch it
+  private final AtomicInteger inFlight = new AtomicInteger();
+  // Set by a drain: room broadcasts skip this session, replies to its own frames still go out
+  private volatile boolean fanInStopped;
+  // Heartbeat wheel tick of the last frame or pong from the peer
+  private volatile long lastSeenTick;
+  // userIds this session JOINed and has not LEFT, ascending; null once released at close.
+  // Guarded by this
+  private int[] joined = new int[0];
+
+  public SessionContext(Session session, int roomId, String roomIdText,
+      SessionOutbound outbound) {
+    this.session = session;
+    this.roomId = roomId;
+    this.roomIdText = roomIdText;
+    this.outbound = outbound;
+  }
+
+  public static SessionContext of(Session session) {
+    return (SessionContext) session.getUserProperties().get(KEY);
+  }
+
+  public void bind() {
+    session.getUserProperties().put(KEY, this);
+  }
+
+  public Session getSession() {
+    return session;
+  }
+
+  public int getRoomId() {
+    return roomId;
+  }
+
+  public String getRoomIdText() {
+    return roomIdText;
+  }
+
+  public SessionOutbound getOutbound() {
+    return outbound;
+  }
+
+  /**
+   * Count a received frame as in flight until {@link #endMessage()}; a drain waits for zero
+   * before closing the session.
+   */
+  public void beginMessage() {
+    inFlight.incrementAndGet();
+  }
+
+  public void endMessage() {
+    inFlight.decrementAndGet();
+  }
+
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * Stop queueing room broadcasts for this session, so its outbound queue can empty before a
+   * drain closes it. ACKs and errors for frames it sent are still queued.
+   */
+  public void stopFanIn() {
+    fanInStopped = true;
+  }
+
+  public boolean isFanInStopped() {
+    return fanInStopped;
+  }
+
+  /**
+   * Record that the peer was heard from at {@code tick}. Writes at most once per tick, so busy
+   * sessions do not keep invalidating the field's cache line.
+   */
+  public void touch(long tick) {
+    if (lastSeenTick != tick) {
+      lastSeenTick = tick;
+    }
+  }
+
+  public long lastSeenTick() {
+    return lastSeenTick;
+  }
+
+  /**
+   * Record that this session JOINed {@code userId}.
+   *
+   * @return false if it already had, or if the session's claims were released
+   */
+  public synchronized boolean addJoined(int userId) {
+    if (joined == null) {
+      return false;
+    }
+    int at = Arrays.binarySearch(joined, userId);
+    if (at >= 0) {
+      return false;
+    }
+    int insert = -at - 1;
+    int[] grown = new int[joined.length + 1];
+    System.arraycopy(joined, 0, grown, 0, insert);
+    grown[insert] = userId;
+    System.arraycopy(joined, insert, grown, insert + 1, joined.length - insert);
+    joined = grown;
+    return true;
+  }
+
+  /**
+   * @return false if this session had not JOINed {@code userId}
+   */
+  public synchronized boolean removeJoined(int userId) {
+    if (joined == null) {
+      return false;
+    }
+    int at = Arrays.binarySearch(joined, userId);
+    if (at < 0) {
+      return false;
+    }
+    int[] shrunk = new int[joined.length - 1];
+    System.arraycopy(joined, 0, shrunk, 0, at);
+    System.arraycopy(joined, at + 1, shrunk, at, shrunk.length - at);
+    joined = shrunk;
+    return true;
+  }
+
+  /**
+   * Hand over the users this session still holds JOINed, once; later calls, and JOINs still in
+   * flight, get nothing.
+   */
+  public synchronized int[] releaseJoined() {
+    int[] users = joined == null ? new int[0] : joined;
+    joined = null;
+    return users;
+  }
+
+  public Room getRoom() {
+    return room;
+  }
+
+  void setRoom(Room room) {
+    this.room = room;
+  }
+}
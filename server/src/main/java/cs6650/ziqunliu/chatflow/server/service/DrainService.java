@@ -0,0 +1,216 @@
+package cs6650.ziqunliu.chatflow.server.service;
+
+import cs6650.ziqunliu.chatflow.server.broadcast.RoomBroadcaster;
+import cs6650.ziqunliu.chatflow.server.cluster.ClusterRouting;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.room.Room;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+
+/**
+ * Takes the node out of service without cutting anyone off mid-message. Once started, new
+ * sessions are refused with {@link #CLOSE_CODE} and /health reports 503, so load balancers and
+ * clients go elsewhere. A background thread then closes the existing sessions in batches of
+ * {@code chatflow.drain.batchSize}, {@code chatflow.drain.batchIntervalMs} apart. A batch is
+ * first cut off from room broadcasts ({@link RoomBroadcaster#stopFanIn}), so its queues stop
+ * filling in busy rooms; each session is then closed only after the frames it sent are handled
+ * ({@link SessionContext#inFlight()}) and the frames queued for it are written
+ * ({@code SessionOutbound.isFlushed()}), so every accepted message is acknowledged before its
+ * sender is told to reconnect. Room messages from others sent in that window are not delivered
+ * to the closing session. A session that does not quiet down within
+ * {@code chatflow.drain.flushTimeoutMs} is closed anyway and counted as forced.
+ *
+ * <p>With cluster routing on, the close reason is the ws base URI of the node that takes the
+ * room over ({@link ClusterRouting#fallbackFor}), and the client reconnects there at once
+ * rather than back to this node.
+ */
+public class DrainService {
+
+  /** 1012 Service Restart: the server is going away, reconnect (to the node in the reason). */
+  public static final CloseReason.CloseCode CLOSE_CODE = CloseReason.CloseCodes.SERVICE_RESTART;
+  private static final String CLOSE_REASON = "server draining, reconnect";
+
+  public enum State { SERVING, DRAINING, DRAINED }
+
+  private static volatile State state = State.SERVING;
+  private static Thread drainer;
+  private static volatile long startedAtMillis;
+  private static volatile long finishedAtMillis;
+
+  private static final AtomicLong remaining = new AtomicLong();
+  private static final LongAdder closed = new LongAdder();
+  private static final LongAdder forced = new LongAdder();
+  private static final LongAdder refused = new LongAdder();
+
+  /**
+   * Start draining, if not already started.
+   *
+   * @return false if a drain was already started
+   */
+  public static synchronized boolean start() {
+    if (state != State.SERVING) {
+      return false;
+    }
+    startedAtMillis = System.currentTimeMillis();
+    state = State.DRAINING;
+    drainer = new Thread(DrainService::drainLoop, "chatflow-drain");
+    drainer.setDaemon(true);
+    drainer.start();
+    return true;
+  }
+
+  /**
+   * Drain before the web application stops: start a drain if none was started and wait up to
+   * {@code timeoutMs} for it to finish.
+   */
+  public static void drainAndWait(long timeoutMs) {
+    start();
+    Thread thread;
+    synchronized (DrainService.class) {
+      thread = drainer;
+    }
+    if (thread == null) {
+      return;
+    }
+    try {
+      thread.join(Math.max(1, timeoutMs));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return true once a drain started: new sessions must be refused
+   */
+  public static boolean isDraining() {
+    return state != State.SERVING;
+  }
+
+  public static State getState() {
+    return state;
+  }
+
+  /**
+   * Refuse a session of {@code roomId} opened while draining.
+   */
+  public static void refuse(Session session, int roomId) throws IOException {
+    refused.increment();
+    session.close(closeReason(session, roomId));
+  }
+
+  public static String getStats() {
+    State current = state;
+    StringBuilder sb = new StringBuilder("drain: ").append(current);
+    if (current != State.SERVING) {
+      long end = current == State.DRAINED ? finishedAtMillis : System.currentTimeMillis();
+      sb.append(" for ").append(end - startedAtMillis).append(" ms, closed ")
+          .append(closed.sum()).append(" (forced ").append(forced.sum()).append("), remaining ")
+          .append(remaining.get()).append(", refused ").append(refused.sum());
+    }
+    return sb.toString();
+  }
+
+  private static void drainLoop() {
+    try {
+      // A session that passed the @OnOpen check just before the state changed may join after
+      // a sweep: sweep until one finds nobody new, the last one a batch interval after the rest
+      Set<SessionContext> done = Collections.newSetFromMap(new IdentityHashMap<>());
+      boolean settled = false;
+      while (true) {
+        List<SessionContext> sessions = liveSessions(done);
+        if (sessions.isEmpty()) {
+          if (settled) {
+            break;
+          }
+          settled = true;
+          Thread.sleep(ServerConfig.DRAIN_BATCH_INTERVAL_MS);
+          continue;
+        }
+        settled = false;
+        remaining.set(sessions.size());
+        done.addAll(sessions);
+        closeInBatches(sessions);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      finishedAtMillis = System.currentTimeMillis();
+      state = State.DRAINED;
+    }
+  }
+
+  private static void closeInBatches(List<SessionContext> sessions) throws InterruptedException {
+    int batchSize = Math.max(1, ServerConfig.DRAIN_BATCH_SIZE);
+    for (int from = 0; from < sessions.size(); from += batchSize) {
+      if (from > 0) {
+        Thread.sleep(ServerConfig.DRAIN_BATCH_INTERVAL_MS);
+      }
+      List<SessionContext> batch =
+          sessions.subList(from, Math.min(sessions.size(), from + batchSize));
+      // Otherwise traffic in the room keeps refilling the queues awaitQuiet waits on
+      for (SessionContext ctx : batch) {
+        RoomBroadcaster.stopFanIn(ctx);
+      }
+      long deadline = System.nanoTime() + ServerConfig.DRAIN_FLUSH_TIMEOUT_MS * 1_000_000L;
+      for (SessionContext ctx : batch) {
+        boolean quiet = awaitQuiet(ctx, deadline);
+        if (!quiet) {
+          forced.increment();
+        }
+        // Also done by @OnClose, which a peer that stopped reading may hold up
+        PresenceService.sessionClosed(ctx);
+        try {
+          ctx.getSession().close(closeReason(ctx.getSession(), ctx.getRoomId()));
+        } catch (IOException | IllegalStateException e) {
+          // Already closed by the peer
+        }
+        closed.increment();
+        remaining.decrementAndGet();
+      }
+    }
+  }
+
+  private static CloseReason closeReason(Session session, int roomId) {
+    String fallback = ClusterRouting.fallbackFor(roomId, ClusterRouting.skipOf(session));
+    return new CloseReason(CLOSE_CODE, fallback != null ? fallback : CLOSE_REASON);
+  }
+
+  /**
+   * Wait until the session has no frame in flight either way, or until {@code deadline}.
+   */
+  private static boolean awaitQuiet(SessionContext ctx, long deadline)
+      throws InterruptedException {
+    while (ctx.inFlight() > 0 || !ctx.getOutbound().isFlushed()) {
+      if (!ctx.getSession().isOpen()) {
+        return true;
+      }
+      if (System.nanoTime() - deadline >= 0) {
+        return false;
+      }
+      Thread.sleep(1);
+    }
+    return true;
+  }
+
+  private static List<SessionContext> liveSessions(Set<SessionContext> done) {
+    List<SessionContext> sessions = new ArrayList<>();
+    for (int roomId : RoomRegistry.liveRoomIds()) {
+      Room room = RoomRegistry.get(roomId);
+      if (room != null) {
+        Collections.addAll(sessions, room.members());
+      }
+    }
+    sessions.removeIf(ctx -> done.contains(ctx) || !ctx.getSession().isOpen());
+    return sessions;
+  }
+}
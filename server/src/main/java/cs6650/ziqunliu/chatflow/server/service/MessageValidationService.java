@@ -5,72 +5,360 @@ import java.time.format.DateTimeParseException;
 import cs6650.ziqunliu.chatflow.server.model.dto.ChatMessageDTO;
 import cs6650.ziqunliu.chatflow.server.model.MessageType;
 
+/**
+ * Validates incoming messages. {@link #validateCode} is the hot path: it parses userId and the
+ * timestamp by hand and reports failures as numeric codes, so malformed traffic never builds an
+ * exception. {@link #validate} keeps the original String contract on top of it.
+ */
 public class MessageValidationService {
 
+  public static final int OK = 0;
+  public static final int NULL_MESSAGE = 1;
+  public static final int USER_ID_MISSING = 2;
+  public static final int USER_ID_OUT_OF_RANGE = 3;
+  public static final int USER_ID_INVALID = 4;
+  public static final int USERNAME_MISSING = 5;
+  public static final int USERNAME_LENGTH = 6;
+  public static final int USERNAME_INVALID = 7;
+  public static final int MESSAGE_MISSING = 8;
+  public static final int MESSAGE_LENGTH = 9;
+  public static final int TIMESTAMP_MISSING = 10;
+  public static final int TIMESTAMP_INVALID = 11;
+  public static final int MESSAGE_TYPE_INVALID = 12;
+  // Batch item that is not a message object; never returned by validateCode
+  public static final int INVALID_JSON = 13;
+  public static final int MESSAGE_ID_INVALID = 14;
+  // Retry of a message the room already accepted; acknowledged, never returned by validateCode
+  public static final int DUPLICATE = 15;
+  // Sender is over its RateLimitService budget; never returned by validateCode
+  public static final int RATE_LIMITED = 16;
+  // Every item of a batch over chatflow.batch.maxItems; never returned by validateCode
+  public static final int BATCH_TOO_LARGE = 17;
+
+  public static final int MAX_USER_ID = 100_000;
+  public static final int MAX_MESSAGE_ID_LENGTH = 64;
+
+  // Indexed by code
+  private static final String[] MESSAGES = {
+      null,
+      "Incoming message is null.",
+      "userId missing",
+      "userId must be between 1 and 100,000",
+      "userId invalid",  // Can be wrong format or long overflow
+      "username missing",
+      "username must be between 3 and 20",
+      "username invalid",
+      "message missing",
+      "message must be between 1 and 500",
+      "Timestamp missing",
+      "Timestamp invalid",
+      "messageType invalid",
+      "JSON has wrong format",
+      "messageId must be between 1 and 64 characters",
+      "duplicate of an accepted message",
+      "rate limit exceeded",
+      "batch has too many messages"
+  };
+
+  // Metric labels, indexed by code
+  private static final String[] NAMES = {
+      "OK", "NULL_MESSAGE", "USER_ID_MISSING", "USER_ID_OUT_OF_RANGE", "USER_ID_INVALID",
+      "USERNAME_MISSING", "USERNAME_LENGTH", "USERNAME_INVALID", "MESSAGE_MISSING",
+      "MESSAGE_LENGTH", "TIMESTAMP_MISSING", "TIMESTAMP_INVALID", "MESSAGE_TYPE_INVALID",
+      "INVALID_JSON", "MESSAGE_ID_INVALID", "DUPLICATE", "RATE_LIMITED",
+      "BATCH_TOO_LARGE"
+  };
+
+  // Outcomes of the hand-written timestamp scan
+  private static final int TS_VALID = 0;
+  private static final int TS_INVALID = 1;
+  private static final int TS_UNSURE = 2;
+
+  private static final int[] DAYS_IN_MONTH = {0, 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
   public static String validate(ChatMessageDTO jsonMessage) {
+    return messageOf(validateCode(jsonMessage));
+  }
+
+  /**
+   * @return the error text of a code, null for {@link #OK}
+   */
+  public static String messageOf(int code) {
+    return MESSAGES[code];
+  }
+
+  /**
+   * @return the constant name of a code, e.g. USERNAME_LENGTH
+   */
+  public static String nameOf(int code) {
+    return NAMES[code];
+  }
+
+  /**
+   * @return the number of distinct codes, {@link #OK} included
+   */
+  public static int codeCount() {
+    return NAMES.length;
+  }
+
+  public static int validateCode(ChatMessageDTO jsonMessage) {
 
     if (jsonMessage == null) {
-      return "Incoming message is null.";
+      return NULL_MESSAGE;
     }
 
     // Validate userId: must be between 1 and 100_000
     String userIdStr = jsonMessage.getUserId();
     if (userIdStr == null) {
-      return "userId missing";
+      return USER_ID_MISSING;
     }
-    try {
-      long userId = Long.parseLong(userIdStr);
-      if (userId < 1 || userId > 100000) {
-        return "userId must be between 1 and 100,000";
-      }
-    } catch (NumberFormatException e) {
-      return "userId invalid";  // Can be wrong format or long overflow
+    int userIdCode = checkUserId(userIdStr);
+    if (userIdCode != OK) {
+      return userIdCode;
     }
 
     // Validate username: must be between 3 and 20 char's
     String username = jsonMessage.getUsername();
     if (username == null) {
-      return "username missing";
+      return USERNAME_MISSING;
     }
     if (username.length() < 3 || username.length() > 20) {
-      return "username must be between 3 and 20";
+      return USERNAME_LENGTH;
     }
     for (int i = 0; i < username.length(); i++) {
       char ch = username.charAt(i);
       if (!isAlphanumeric(ch)) {
-        return "username invalid";
+        return USERNAME_INVALID;
       }
     }
 
     // Validate message: must be between 1 and 500
     String message = jsonMessage.getMessage();
     if (message == null) {
-      return "message missing";
+      return MESSAGE_MISSING;
     }
     if (message.length() < 1 || message.length() > 500) {
-      return "message must be between 1 and 500";
+      return MESSAGE_LENGTH;
     }
 
     // Validate timestmap: must be ISO-8601
     String timestamp = jsonMessage.getTimestamp();
     if (timestamp == null)
-      return "Timestamp missing";
-    try {
-      Instant.parse(timestamp);
-    } catch (DateTimeParseException e) {
-      return "Timestamp invalid";
+      return TIMESTAMP_MISSING;
+    if (!isInstant(timestamp)) {
+      return TIMESTAMP_INVALID;
     }
 
     // Validate messageType: must be one of {TEXT, JOIN, LEAVE}
     MessageType messageType = jsonMessage.getMessageType();
     if (messageType == null)
-      return "messageType invalid";
+      return MESSAGE_TYPE_INVALID;
+
+    // Optional messageId: 1..64 characters when present
+    String messageId = jsonMessage.getMessageId();
+    if (messageId != null
+        && (messageId.isEmpty() || messageId.length() > MAX_MESSAGE_ID_LENGTH)) {
+      return MESSAGE_ID_INVALID;
+    }
 
-    return null;
+    return OK;
+  }
+
+  /**
+   * @return the numeric userId of a message that passed {@link #validateCode}, 1..100,000
+   */
+  public static int userIdOf(String validUserId) {
+    int i = validUserId.charAt(0) == '+' ? 1 : 0;
+    int userId = 0;
+    // Leading zeros aside, at most six digits are left, so this cannot overflow
+    for (; i < validUserId.length(); i++) {
+      userId = userId * 10 + Character.digit(validUserId.charAt(i), 10);
+    }
+    return userId;
   }
 
   private static boolean isAlphanumeric(char c) {
     return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
   }
 
+  /**
+   * Same accept/reject rules and overflow checks as {@link Long#parseLong(String)}, including
+   * its use of {@link Character#digit} (non-ASCII digits are accepted there too), followed by the
+   * 1..100,000 range check.
+   */
+  private static int checkUserId(String s) {
+    int len = s.length();
+    if (len == 0) {
+      return USER_ID_INVALID;
+    }
+    boolean negative = false;
+    int i = 0;
+    long limit = -Long.MAX_VALUE;
+    char firstChar = s.charAt(0);
+    if (firstChar < '0') {
+      if (firstChar == '-') {
+        negative = true;
+        limit = Long.MIN_VALUE;
+      } else if (firstChar != '+') {
+        return USER_ID_INVALID;
+      }
+      if (len == 1) {
+        return USER_ID_INVALID;
+      }
+      i++;
+    }
+    // Accumulate negatively like parseLong so Long.MIN_VALUE does not overflow
+    long multmin = limit / 10;
+    long result = 0;
+    while (i < len) {
+      int digit = Character.digit(s.charAt(i++), 10);
+      if (digit < 0 || result < multmin) {
+        return USER_ID_INVALID;
+      }
+      result *= 10;
+      if (result < limit + digit) {
+        return USER_ID_INVALID;
+      }
+      result -= digit;
+    }
+    long userId = negative ? result : -result;
+    if (userId < 1 || userId > MAX_USER_ID) {
+      return USER_ID_OUT_OF_RANGE;
+    }
+    return OK;
+  }
+
+  /**
+   * Whether {@link Instant#parse} accepts the text. The whole ISO-8601 structure is scanned by
+   * hand and every UTC ('Z') form is decided here, lower case 't' and 'z', 24:00 and the
+   * 23:59:60 leap second included. Only well-formed text with a signed or longer-than-four-digit
+   * year, or with an offset instead of 'Z', is passed to Instant.parse: year range and offsets
+   * (rejected before JDK 12) follow the running JDK's rules.
+   */
+  private static boolean isInstant(String timestamp) {
+    int result = scanInstant(timestamp);
+    if (result != TS_UNSURE) {
+      return result == TS_VALID;
+    }
+    try {
+      Instant.parse(timestamp);
+      return true;
+    } catch (DateTimeParseException e) {
+      return false;
+    }
+  }
+
+  private static int scanInstant(String s) {
+    int len = s.length();
+    int pos = 0;
+    boolean signed = len > 0 && (s.charAt(0) == '+' || s.charAt(0) == '-');
+    if (signed) {
+      pos++;
+    }
+    // The JDK reads at most ten year digits
+    int yearStart = pos;
+    while (pos < len && pos - yearStart < 10 && isDigit(s.charAt(pos))) {
+      pos++;
+    }
+    int yearDigits = pos - yearStart;
+    // -MM-ddTHH:mm:ss is 15 chars, followed by at least the zone
+    if (yearDigits < 4 || len - pos < 16) {
+      return TS_INVALID;
+    }
+    int month = digits(s, pos + 1, 2);
+    int day = digits(s, pos + 4, 2);
+    int hour = digits(s, pos + 7, 2);
+    int minute = digits(s, pos + 10, 2);
+    int second = digits(s, pos + 13, 2);
+    char t = s.charAt(pos + 6);
+    if (month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0
+        || s.charAt(pos) != '-' || s.charAt(pos + 3) != '-' || (t != 'T' && t != 't')
+        || s.charAt(pos + 9) != ':' || s.charAt(pos + 12) != ':') {
+      return TS_INVALID;
+    }
+    pos += 15;
+
+    // Up to nine fraction digits; the JDK also takes a '.' with none
+    boolean zeroFraction = true;
+    if (s.charAt(pos) == '.') {
+      int start = ++pos;
+      while (pos < len && pos - start < 9 && isDigit(s.charAt(pos))) {
+        zeroFraction &= s.charAt(pos) == '0';
+        pos++;
+      }
+    }
+    if (pos >= len) {
+      return TS_INVALID;
+    }
+    char zone = s.charAt(pos);
+    boolean offset = zone == '+' || zone == '-';
+    if (offset) {
+      if (!isOffset(s, pos + 1)) {
+        return TS_INVALID;
+      }
+    } else if ((zone != 'Z' && zone != 'z') || pos + 1 != len) {
+      return TS_INVALID;
+    }
+    if (signed || yearDigits > 4 || offset) {
+      return TS_UNSURE;
+    }
+
+    // Instant.parse turns 24:00 into midnight of the next day and 23:59:60 into 23:59:59
+    if (hour == 24 && minute == 0 && second == 0 && zeroFraction) {
+      hour = 0;
+    } else if (hour == 23 && minute == 59 && second == 60) {
+      second = 59;
+    }
+    int year = digits(s, yearStart, 4);
+    if (month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month] || hour > 23
+        || minute > 59 || second > 59) {
+      return TS_INVALID;
+    }
+    if (month == 2 && day == 29 && !isLeapYear(year)) {
+      return TS_INVALID;
+    }
+    return TS_VALID;
+  }
+
+  /**
+   * Whether s[start..] is the rest of an offset after its sign: HH, HH:mm or HH:mm:ss.
+   */
+  private static boolean isOffset(String s, int start) {
+    int len = s.length();
+    for (int pos = start; ; pos += 3) {
+      if (pos + 2 > len || digits(s, pos, 2) < 0) {
+        return false;
+      }
+      if (pos + 2 == len) {
+        return true;
+      }
+      if (pos - start == 6 || s.charAt(pos + 2) != ':') {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * @return the ASCII decimal value of s[start, start + count), or -1
+   */
+  private static int digits(String s, int start, int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      char c = s.charAt(i);
+      if (!isDigit(c)) {
+        return -1;
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isLeapYear(int year) {
+    return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+  }
+
 }
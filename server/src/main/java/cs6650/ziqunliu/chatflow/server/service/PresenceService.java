@@ -0,0 +1,141 @@
+package cs6650.ziqunliu.chatflow.server.service;
+
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import cs6650.ziqunliu.chatflow.server.room.PresenceSet;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import cs6650.ziqunliu.chatflow.server.room.RoomState;
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Who is in which room, as told by accepted JOIN and LEAVE messages. A user is present while at
+ * least one open session has JOINed them and not LEFT; closing a session, however it ends, takes
+ * back its JOINs, so a user connected twice stays present until both are gone. Each room's
+ * members are a {@link PresenceSet} kept with its {@link RoomState}; queries read the bitmaps
+ * only, never the rooms' sessions, and a room nobody ever joined reads as empty without being
+ * created.
+ *
+ * <p>Presence is per node: it covers messages accepted here, which with room ownership (see
+ * {@code cluster.ClusterRouting}) are all of the room's messages.
+ */
+public class PresenceService {
+
+  private static final int[] NONE = new int[0];
+  // Users who stopped being present because their last session closed
+  private static final LongAdder closedLeaves = new LongAdder();
+
+  /**
+   * Apply a message accepted from {@code ctx}: JOIN adds its sender to the room, LEAVE takes the
+   * session's JOIN back, TEXT leaves presence alone.
+   *
+   * @param userId a validated userId, see {@link MessageValidationService#userIdOf}
+   * @return true if the room's members changed
+   */
+  public static boolean apply(RoomState state, SessionContext ctx, int userId, MessageType type) {
+    switch (type) {
+      case JOIN:
+        return state.join(ctx, userId);
+      case LEAVE:
+        return state.leave(ctx, userId);
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Take back every JOIN a closing session still holds. Idempotent, so each close path (close,
+   * heartbeat reap, drain) can call it.
+   */
+  public static void sessionClosed(SessionContext ctx) {
+    RoomState state = RoomRegistry.existingState(ctx.getRoomId());
+    if (state != null) {
+      int left = state.leaveAll(ctx);
+      if (left > 0) {
+        closedLeaves.add(left);
+      }
+    }
+  }
+
+  public static boolean isOnline(int roomId, int userId) {
+    PresenceSet presence = presence(roomId);
+    return presence != null && presence.contains(userId);
+  }
+
+  public static int count(int roomId) {
+    PresenceSet presence = presence(roomId);
+    return presence == null ? 0 : presence.size();
+  }
+
+  /**
+   * @return userIds present in the room, ascending
+   */
+  public static int[] members(int roomId) {
+    PresenceSet presence = presence(roomId);
+    return presence == null ? NONE : presence.members();
+  }
+
+  /**
+   * @return userIds present in every one of {@code roomIds}, ascending
+   */
+  public static int[] intersection(int... roomIds) {
+    if (roomIds.length == 0) {
+      return NONE;
+    }
+    PresenceSet first = presence(roomIds[0]);
+    if (first == null) {
+      return NONE;
+    }
+    if (roomIds.length == 1) {
+      return first.members();
+    }
+    PresenceSet second = presence(roomIds[1]);
+    if (second == null) {
+      return NONE;
+    }
+    int[] result = first.intersect(second);
+    for (int i = 2; i < roomIds.length && result.length > 0; i++) {
+      PresenceSet next = presence(roomIds[i]);
+      if (next == null) {
+        return NONE;
+      }
+      int kept = 0;
+      for (int userId : result) {
+        if (next.contains(userId)) {
+          result[kept++] = userId;
+        }
+      }
+      result = Arrays.copyOf(result, kept);
+    }
+    return result;
+  }
+
+  /**
+   * Number of users present in both rooms, without building the list.
+   */
+  public static int intersectionCount(int roomA, int roomB) {
+    PresenceSet a = presence(roomA);
+    PresenceSet b = presence(roomB);
+    return a == null || b == null ? 0 : a.intersectCount(b);
+  }
+
+  /**
+   * Version of the room's members, see {@link PresenceSet#version()}; 0 for a room nobody
+   * joined.
+   */
+  public static long version(int roomId) {
+    PresenceSet presence = presence(roomId);
+    return presence == null ? 0 : presence.version();
+  }
+
+  public static String getStats() {
+    return "presence: " + PresenceSet.getTotalMembers() + " members, "
+        + PresenceSet.getAllocatedBytes() / 1024 + " KB, " + closedLeaves.sum()
+        + " left on close";
+  }
+
+  private static PresenceSet presence(int roomId) {
+    RoomState state = RoomRegistry.existingState(roomId);
+    return state == null ? null : state.getPresence();
+  }
+}
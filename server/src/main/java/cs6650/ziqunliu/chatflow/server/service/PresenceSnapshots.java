@@ -0,0 +1,136 @@
+package cs6650.ziqunliu.chatflow.server.service;
+
+import com.google.gson.Gson;
+import cs6650.ziqunliu.chatflow.server.model.response.PresenceResponse;
+import cs6650.ziqunliu.chatflow.server.room.PresenceSet;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import cs6650.ziqunliu.chatflow.server.room.RoomState;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serialized presence responses for GET /rooms/{roomId}/presence. A room's full snapshot, and
+ * the empty diff a client that is up to date gets, are rendered once per presence version and
+ * served as the same bytes until the next JOIN or LEAVE changes the room, so polling costs a
+ * version read and a map lookup. Diffs from older versions are rendered per request from the
+ * room's change journal; they are at most {@code chatflow.presence.journal} users long.
+ */
+public class PresenceSnapshots {
+
+  private static final Gson GSON = new Gson();
+
+  private static final class Rendered {
+
+    // The set rendered, null for a room without state
+    final PresenceSet presence;
+    final long version;
+    final byte[] snapshot;
+    final byte[] unchanged;
+
+    Rendered(PresenceSet presence, long version, byte[] snapshot, byte[] unchanged) {
+      this.presence = presence;
+      this.version = version;
+      this.snapshot = snapshot;
+      this.unchanged = unchanged;
+    }
+  }
+
+  // Only rooms that exist are cached, so unknown ids cannot grow the map
+  private static final ConcurrentHashMap<Integer, Rendered> cache = new ConcurrentHashMap<>();
+  private static final LongAdder hits = new LongAdder();
+  private static final LongAdder renders = new LongAdder();
+  private static final LongAdder diffs = new LongAdder();
+
+  /**
+   * @return the room's members as a {@code SNAPSHOT} response
+   */
+  public static byte[] snapshot(int roomId) {
+    return current(roomId).snapshot;
+  }
+
+  /**
+   * @return the changes after {@code sinceVersion} as a {@code DIFF} response, or a
+   * {@code SNAPSHOT} if the room's journal no longer reaches back that far or the version is
+   * from another epoch: an earlier state of the room, since retired, or an earlier server
+   */
+  public static byte[] since(int roomId, long sinceVersion) {
+    Rendered rendered = current(roomId);
+    if (sinceVersion == rendered.version) {
+      return rendered.unchanged;
+    }
+    RoomState state = RoomRegistry.existingState(roomId);
+    if (state == null || sinceVersion > rendered.version) {
+      return rendered.snapshot;
+    }
+    PresenceSet presence = state.getPresence();
+    long version = presence.version();
+    int[] changed = presence.changedSince(sinceVersion, version);
+    if (changed == null) {
+      return rendered.snapshot;
+    }
+    int joinedCount = 0;
+    int[] left = new int[changed.length];
+    int leftCount = 0;
+    for (int userId : changed) {
+      if (presence.contains(userId)) {
+        changed[joinedCount++] = userId;
+      } else {
+        left[leftCount++] = userId;
+      }
+    }
+    diffs.increment();
+    return render(PresenceResponse.diff(Integer.toString(roomId), sinceVersion, version,
+        presence.size(), Arrays.copyOf(changed, joinedCount),
+        Arrays.copyOf(left, leftCount)));
+  }
+
+  /**
+   * Drop the cached responses of a room whose state was retired.
+   */
+  public static void forget(int roomId) {
+    cache.remove(roomId);
+  }
+
+  public static String getStats() {
+    return "presenceRequests: cached " + hits.sum() + " rendered " + renders.sum() + " diffs "
+        + diffs.sum();
+  }
+
+  private static Rendered current(int roomId) {
+    RoomState state = RoomRegistry.existingState(roomId);
+    if (state == null) {
+      return render(null, roomId, 0, new int[0]);
+    }
+    PresenceSet presence = state.getPresence();
+    long version = presence.version();
+    Rendered rendered = cache.get(roomId);
+    if (rendered != null && rendered.version == version) {
+      hits.increment();
+      return rendered;
+    }
+    // Members read after the version may include a change or two beyond it; a later diff from
+    // this version reports those users' current state again, which is harmless
+    rendered = render(presence, roomId, version, presence.members());
+    // Keep the newest rendering when concurrent requests race; versions only order within one
+    // state, and a rendering of a retired state is always replaced
+    cache.merge(roomId, rendered, (old, fresh) ->
+        old.presence == fresh.presence && old.version >= fresh.version ? old : fresh);
+    return rendered;
+  }
+
+  private static Rendered render(PresenceSet presence, int roomId, long version, int[] members) {
+    renders.increment();
+    String id = Integer.toString(roomId);
+    int[] none = new int[0];
+    return new Rendered(presence, version, render(PresenceResponse.snapshot(id, version, members)),
+        render(PresenceResponse.diff(id, version, version, members.length, none, none)));
+  }
+
+  private static byte[] render(PresenceResponse response) {
+    response.setServerTimestamp(Instant.now().toString());
+    return GSON.toJson(response).getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,113 @@
+package cs6650.ziqunliu.chatflow.server.service;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-user token buckets, one per MessageType, sized by {@code chatflow.ratelimit.<type>.*}.
+ * Each bucket is a single long in an {@link AtomicLongArray} indexed directly by userId
+ * (1..100,000), so there is no map and no per-user object.
+ *
+ * <p>The long is the bucket's "theoretical arrival time" (the virtual-scheduling form of a token
+ * bucket): the time at which the bucket would be full again. Taking a token moves it one
+ * interval ({@code 1 / perSecond}) later, and it may run at most {@code burst} intervals ahead
+ * of now. Refill is therefore implicit in the clock, and {@link #tryAcquire} is one read and
+ * one compare-and-set, retried only when the same user's bucket changed concurrently.
+ */
+public class RateLimitService {
+
+  private static final MessageType[] TYPES = MessageType.values();
+  private static final long EPOCH_NANOS = System.nanoTime();
+
+  // Indexed by MessageType ordinal; a null bucket array means the type is unlimited
+  private static final AtomicLongArray[] buckets = new AtomicLongArray[TYPES.length];
+  private static final long[] intervalNanos = new long[TYPES.length];
+  private static final long[] burstNanos = new long[TYPES.length];
+  private static final LongAdder[] limited = new LongAdder[TYPES.length];
+
+  static {
+    for (MessageType type : TYPES) {
+      int t = type.ordinal();
+      limited[t] = new LongAdder();
+      int perSecond = perSecond(type);
+      if (!ServerConfig.RATE_LIMIT_ENABLED || perSecond <= 0) {
+        continue;
+      }
+      intervalNanos[t] = 1_000_000_000L / perSecond;
+      burstNanos[t] = intervalNanos[t] * Math.max(1, burst(type));
+      buckets[t] = new AtomicLongArray(MessageValidationService.MAX_USER_ID + 1);
+    }
+  }
+
+  /**
+   * Take one token from the user's bucket for {@code type}.
+   *
+   * @param userId a validated userId, see {@link MessageValidationService#userIdOf}
+   * @return false if the bucket is empty; the message must then be refused
+   */
+  public static boolean tryAcquire(int userId, MessageType type) {
+    AtomicLongArray bucket = buckets[type.ordinal()];
+    return bucket == null || tryAcquire(bucket, userId, type, System.nanoTime() - EPOCH_NANOS);
+  }
+
+  /**
+   * {@link #tryAcquire(int, MessageType)} at a given time, nanos since class initialization.
+   * Used by benchmarks to leave out the clock read.
+   */
+  public static boolean tryAcquire(int userId, MessageType type, long nowNanos) {
+    AtomicLongArray bucket = buckets[type.ordinal()];
+    return bucket == null || tryAcquire(bucket, userId, type, nowNanos);
+  }
+
+  private static boolean tryAcquire(AtomicLongArray bucket, int userId, MessageType type,
+      long now) {
+    int t = type.ordinal();
+    while (true) {
+      long fullAt = bucket.get(userId);
+      long next = Math.max(fullAt, now) + intervalNanos[t];
+      if (next - now > burstNanos[t]) {
+        limited[t].increment();
+        return false;
+      }
+      if (bucket.compareAndSet(userId, fullAt, next)) {
+        return true;
+      }
+    }
+  }
+
+  public static long getLimitedCount(MessageType type) {
+    return limited[type.ordinal()].sum();
+  }
+
+  public static String getStats() {
+    StringBuilder sb = new StringBuilder("rateLimited:");
+    for (MessageType type : TYPES) {
+      sb.append(' ').append(type.name()).append(' ').append(getLimitedCount(type));
+    }
+    return sb.toString();
+  }
+
+  private static int perSecond(MessageType type) {
+    switch (type) {
+      case JOIN:
+        return ServerConfig.RATE_LIMIT_JOIN_PER_SECOND;
+      case LEAVE:
+        return ServerConfig.RATE_LIMIT_LEAVE_PER_SECOND;
+      default:
+        return ServerConfig.RATE_LIMIT_TEXT_PER_SECOND;
+    }
+  }
+
+  private static int burst(MessageType type) {
+    switch (type) {
+      case JOIN:
+        return ServerConfig.RATE_LIMIT_JOIN_BURST;
+      case LEAVE:
+        return ServerConfig.RATE_LIMIT_LEAVE_BURST;
+      default:
+        return ServerConfig.RATE_LIMIT_TEXT_BURST;
+    }
+  }
+}
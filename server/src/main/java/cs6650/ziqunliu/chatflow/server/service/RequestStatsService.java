@@ -1,29 +1,220 @@
 package cs6650.ziqunliu.chatflow.server.service;
 
-import java.util.concurrent.atomic.AtomicLong;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Request and message counters. Messages are counted per (room, messageType, outcome) in one
+ * preallocated table of longs, copied into {@code chatflow.stats.stripes} stripes; a thread
+ * always adds to the stripe picked by its id, so threads on different cores rarely touch the
+ * same cache line. Stripes are padded apart by a cache line.
+ *
+ * <p>Rooms {@code 0..chatflow.stats.rooms-1} get their own row, larger ids share one "other"
+ * row. Messages whose type could not be read count under a separate unknown-type column.
+ *
+ * <p>Readers never block writers: {@link #totals()} sums the stripes, and
+ * {@link #snapshotAndReset()} drains them into the running totals and returns what arrived
+ * since the previous drain, for rates. Rate intervals are closed by {@link #tick()} on the
+ * health ticker alone, so however often /health/stats is read, it reports a rate over a full
+ * interval.
+ */
 public class RequestStatsService {
-  private static final AtomicLong getRequests = new AtomicLong(0);
-  private static final AtomicLong postRequests = new AtomicLong(0);
+
+  public enum Outcome {
+    ACCEPTED("accepted"),
+    REJECTED("rejected"),
+    // Retry of an accepted messageId, acknowledged without a broadcast
+    DUPLICATE("duplicate");
+
+    public final String label;
+
+    Outcome(String label) {
+      this.label = label;
+    }
+  }
+
+  public static final int OTHER_ROOM = -1;
+
+  private static final MessageType[] TYPES = MessageType.values();
+  private static final Outcome[] OUTCOMES = Outcome.values();
+  private static final int ROOMS = Math.max(0, ServerConfig.STATS_ROOMS);
+  // One more row for "other" rooms, one more column for an unknown type
+  private static final int TYPE_COLUMNS = TYPES.length + 1;
+  private static final int CELLS = (ROOMS + 1) * TYPE_COLUMNS * OUTCOMES.length;
+  private static final int STRIPES = stripeCount(ServerConfig.STATS_STRIPES);
+  // Cells rounded up to whole cache lines, plus one line of padding between stripes
+  private static final int STRIDE = (CELLS + 7) / 8 * 8 + 8;
+
+  private static final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);
+  private static final LongAdder getRequests = new LongAdder();
+  private static final LongAdder postRequests = new LongAdder();
+
+  // Drained counts, guarded by the class lock
+  private static final long[] drained = new long[CELLS];
+  private static final long startNanos = System.nanoTime();
+  private static long lastDrainNanos = startNanos;
+  // Last interval closed by tick(), null before the first
+  private static volatile Snapshot lastInterval;
 
   public static void incrementGet() {
-    getRequests.incrementAndGet();
+    getRequests.increment();
   }
 
   public static void incrementPost() {
-    postRequests.incrementAndGet();
+    postRequests.increment();
   }
 
   public static long getGetCount() {
-    return getRequests.get();
+    return getRequests.sum();
   }
 
   public static long getPostCount() {
-    return postRequests.get();
+    return postRequests.sum();
   }
 
+  /**
+   * Count one message. Never allocates.
+   *
+   * @param type null if the message had no valid type
+   */
+  public static void record(int roomId, MessageType type, Outcome outcome) {
+    int stripe = (int) (mix(Thread.currentThread().getId()) & (STRIPES - 1));
+    cells.getAndIncrement(stripe * STRIDE + cellOf(roomId, type, outcome));
+  }
+
+  /**
+   * @return counts since startup
+   */
+  public static synchronized Snapshot totals() {
+    long[] counts = drained.clone();
+    for (int cell = 0; cell < CELLS; cell++) {
+      for (int stripe = 0; stripe < STRIPES; stripe++) {
+        counts[cell] += cells.get(stripe * STRIDE + cell);
+      }
+    }
+    return new Snapshot(counts, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Close the current rate interval. Called by the health ticker every
+   * {@code -Dchatflow.health.refreshMs}, and by nothing else.
+   */
+  public static void tick() {
+    lastInterval = snapshotAndReset();
+  }
+
+  /**
+   * Move everything counted so far into the running totals.
+   *
+   * @return the counts since the previous call and the time that covers
+   */
+  public static synchronized Snapshot snapshotAndReset() {
+    long[] counts = new long[CELLS];
+    for (int cell = 0; cell < CELLS; cell++) {
+      for (int stripe = 0; stripe < STRIPES; stripe++) {
+        counts[cell] += cells.getAndSet(stripe * STRIDE + cell, 0);
+      }
+      drained[cell] += counts[cell];
+    }
+    long now = System.nanoTime();
+    Snapshot snapshot = new Snapshot(counts, now - lastDrainNanos);
+    lastDrainNanos = now;
+    return snapshot;
+  }
+
+  /**
+   * Counters and the accepted rate of the last closed interval (since startup before the first
+   * {@link #tick()}). Reading resets nothing.
+   */
   public static String getStats() {
-    return String.format("GET: %d, POST: %d, Total: %d",
-        getGetCount(), getPostCount(), getGetCount() + getPostCount());
+    Snapshot totals = totals();
+    Snapshot interval = lastInterval != null ? lastInterval : totals;
+    return String.format(
+        "GET: %d, POST: %d, Total: %d, messagesAccepted: %d, messagesRejected: %d, "
+            + "messagesDuplicate: %d, acceptedPerSecond: %.1f",
+        getGetCount(), getPostCount(), getGetCount() + getPostCount(),
+        totals.total(Outcome.ACCEPTED), totals.total(Outcome.REJECTED),
+        totals.total(Outcome.DUPLICATE),
+        interval.ratePerSecond(interval.total(Outcome.ACCEPTED)));
+  }
+
+  private static int cellOf(int roomId, MessageType type, Outcome outcome) {
+    int row = roomId >= 0 && roomId < ROOMS ? roomId : ROOMS;
+    int column = type == null ? TYPES.length : type.ordinal();
+    return (row * TYPE_COLUMNS + column) * OUTCOMES.length + outcome.ordinal();
+  }
+
+  private static long mix(long id) {
+    // Sequential thread ids spread over all stripes
+    long h = id * 0x9E3779B97F4A7C15L;
+    return h ^ (h >>> 32);
+  }
+
+  private static int stripeCount(int requested) {
+    int n = requested > 0 ? requested : Runtime.getRuntime().availableProcessors() * 2;
+    return Integer.highestOneBit(Math.max(1, Math.min(n, 64)) * 2 - 1);
+  }
+
+  /**
+   * Counts per (room, type, outcome), either totals or one interval.
+   */
+  public static final class Snapshot {
+
+    private final long[] counts;
+    private final long intervalNanos;
+
+    private Snapshot(long[] counts, long intervalNanos) {
+      this.counts = counts;
+      this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * @param roomId a room id, or {@link #OTHER_ROOM} for the shared row
+     * @param type null for the unknown-type column
+     */
+    public long count(int roomId, MessageType type, Outcome outcome) {
+      return counts[cellOf(roomId, type, outcome)];
+    }
+
+    public long total(Outcome outcome) {
+      long sum = 0;
+      for (int cell = outcome.ordinal(); cell < CELLS; cell += OUTCOMES.length) {
+        sum += counts[cell];
+      }
+      return sum;
+    }
+
+    /**
+     * @return {@code count} per second over this snapshot's interval (since startup for totals)
+     */
+    public double ratePerSecond(long count) {
+      return intervalNanos <= 0 ? 0.0 : count * 1e9 / intervalNanos;
+    }
+
+    public long getIntervalNanos() {
+      return intervalNanos;
+    }
+
+    /**
+     * Visit every non-zero cell.
+     */
+    public void forEach(CellVisitor visitor) {
+      for (int cell = 0; cell < CELLS; cell++) {
+        if (counts[cell] == 0) {
+          continue;
+        }
+        int outcome = cell % OUTCOMES.length;
+        int column = cell / OUTCOMES.length % TYPE_COLUMNS;
+        int row = cell / OUTCOMES.length / TYPE_COLUMNS;
+        visitor.visit(row == ROOMS ? OTHER_ROOM : row,
+            column == TYPES.length ? null : TYPES[column], OUTCOMES[outcome], counts[cell]);
+      }
+    }
+  }
+
+  public interface CellVisitor {
+    void visit(int roomId, MessageType type, Outcome outcome, long count);
   }
-}
\ No newline at end of file
+}
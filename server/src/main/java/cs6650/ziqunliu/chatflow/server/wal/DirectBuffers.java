@@ -0,0 +1,53 @@
+package cs6650.ziqunliu.chatflow.server.wal;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Frees direct and memory-mapped buffers right away instead of whenever the collector gets to
+ * their small heap objects, which under a quiet heap can be never. Uses
+ * {@code sun.misc.Unsafe.invokeCleaner}; where that is unavailable buffers are left to the
+ * collector as before.
+ */
+public final class DirectBuffers {
+
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    try {
+      Class<?> type = Class.forName("sun.misc.Unsafe");
+      Field field = type.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      unsafe = field.get(null);
+      invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      unsafe = null;
+      invokeCleaner = null;
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+  }
+
+  private DirectBuffers() {
+  }
+
+  /**
+   * Release the memory of a direct buffer (not a view of one). Nothing may touch the buffer or
+   * its views afterwards; the caller guarantees that, typically by freeing under the same lock
+   * every access takes.
+   */
+  public static void free(ByteBuffer buffer) {
+    if (INVOKE_CLEANER == null || buffer == null || !buffer.isDirect()) {
+      return;
+    }
+    try {
+      INVOKE_CLEANER.invoke(UNSAFE, buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Left to the collector
+    }
+  }
+}
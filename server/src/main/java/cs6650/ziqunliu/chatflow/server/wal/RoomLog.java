@@ -0,0 +1,442 @@
+package cs6650.ziqunliu.chatflow.server.wal;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of one room, split into fixed-size memory-mapped segment files named, in
+ * ascending order, after a sequence at or just below their first record's
+ * ({@code 00000000000000000042.log}).
+ *
+ * <p>Record layout, little overhead on top of the frame bytes:
+ * <pre>
+ *   int  length     payload bytes, 0 marks the end of the segment's data
+ *   int  crc32c     over sequence + payload
+ *   long sequence
+ *   byte[length]    payload (the encoded broadcast frame)
+ * </pre>
+ * Appending is a memory copy into the mapping; durability comes from {@link #flush()}, called
+ * by the group-commit thread of {@link WriteAheadLog}. The same thread maps the next segment
+ * ahead of time ({@link #prepare()}), so an append that fills a segment only swaps mappings;
+ * forcing the full segment and deleting old ones happen on that thread too. A segment prepared
+ * but never written reads back as empty. {@link #close()} forces and unmaps everything. Recovery
+ * keeps the longest valid prefix:
+ * the first record with a bad length or checksum ends the log, and everything after it is
+ * zeroed or deleted. {@link #readTail} reads the newest records back, to refill a room's
+ * history.
+ */
+public final class RoomLog {
+
+  static final int HEADER_BYTES = 16;
+
+  // Appends that found no prepared segment and had to map one themselves
+  private static final LongAdder inlineRolls = new LongAdder();
+
+  private final Path dir;
+  private final int segmentBytes;
+  private final int maxSegments;
+  private final CRC32C crc = new CRC32C();
+  private final ByteBuffer longBuffer = ByteBuffer.allocate(8);
+  private final List<Path> segments = new ArrayList<>();
+
+  private MappedByteBuffer segment;
+  private ByteBuffer writeView;
+  private int position;
+  private long lastSequence;
+  // Sequence in the newest segment file's name, prepared or in use
+  private long newestName;
+  // Mapped by the flusher for the next roll
+  private MappedByteBuffer spare;
+  private Path spareFile;
+  // Rolled away from by appends, not forced yet
+  private final List<MappedByteBuffer> sealed = new ArrayList<>();
+  private boolean closed;
+
+  // Held around every force, so close() never unmaps a segment being forced. Taken before this
+  private final Object forceLock = new Object();
+  private boolean unmapped;
+
+  // Written by appenders, cleared by the flusher
+  private volatile boolean dirty;
+
+  RoomLog(Path dir, int segmentBytes, int maxSegments) throws IOException {
+    this.dir = dir;
+    this.segmentBytes = segmentBytes;
+    this.maxSegments = maxSegments;
+    Files.createDirectories(dir);
+    recover();
+  }
+
+  /**
+   * Append one record. Sequences are reserved by the caller and may arrive slightly out of
+   * order from concurrent handlers; recovery only relies on the maximum.
+   */
+  synchronized void append(long sequence, ByteBuffer payload) throws IOException {
+    if (closed) {
+      throw new IOException("WAL closed");
+    }
+    int length = payload.remaining();
+    if (HEADER_BYTES + length + 4 > segmentBytes) {
+      throw new IOException("record of " + length + " bytes does not fit a WAL segment");
+    }
+    // Keep 4 bytes for the zero length that terminates a full segment
+    if (segment == null || position + HEADER_BYTES + length + 4 > segmentBytes) {
+      roll(sequence);
+    }
+
+    crc.reset();
+    crc.update(longBytes(sequence));
+    crc.update(payload.duplicate());
+
+    writeView.position(position + 8);
+    writeView.putLong(sequence);
+    writeView.put(payload);
+    writeView.putInt(position + 4, (int) crc.getValue());
+    // Length last: a torn record reads as length 0 or fails the checksum
+    writeView.putInt(position, length);
+    position += HEADER_BYTES + length;
+
+    if (sequence > lastSequence) {
+      lastSequence = sequence;
+    }
+    dirty = true;
+  }
+
+  /**
+   * Force the current segment, and any an append rolled away from, to disk if anything was
+   * appended since the last flush. Rolled-away segments are unmapped after their force.
+   */
+  void flush() {
+    if (!dirty) {
+      return;
+    }
+    dirty = false;
+    synchronized (forceLock) {
+      if (unmapped) {
+        return;
+      }
+      MappedByteBuffer current;
+      MappedByteBuffer[] rolled;
+      synchronized (this) {
+        current = segment;
+        rolled = sealed.toArray(new MappedByteBuffer[0]);
+        sealed.clear();
+      }
+      // Nothing appends to a rolled segment any more, so it is unmapped once durable
+      for (MappedByteBuffer full : rolled) {
+        full.force();
+        DirectBuffers.free(full);
+      }
+      if (current != null) {
+        current.force();
+      }
+    }
+  }
+
+  /**
+   * Refuse further appends, force what was written and unmap every segment; the prepared
+   * segment, never written, is deleted. Idempotent.
+   */
+  void close() throws IOException {
+    Path unused;
+    synchronized (forceLock) {
+      if (unmapped) {
+        return;
+      }
+      List<MappedByteBuffer> mapped;
+      synchronized (this) {
+        closed = true;
+        mapped = new ArrayList<>(sealed);
+        if (segment != null) {
+          mapped.add(segment);
+        }
+        sealed.clear();
+        segment = null;
+        writeView = null;
+        if (spare != null) {
+          DirectBuffers.free(spare);
+        }
+        unused = spareFile;
+        spare = null;
+        spareFile = null;
+      }
+      for (MappedByteBuffer buffer : mapped) {
+        buffer.force();
+        DirectBuffers.free(buffer);
+      }
+      unmapped = true;
+    }
+    if (unused != null) {
+      Files.deleteIfExists(unused);
+    }
+  }
+
+  /**
+   * Flusher-side housekeeping: once the current segment is half full, map the next one so the
+   * append that fills it only swaps, and delete the oldest segments beyond the limit. Call
+   * after {@link #flush()}, so deleted segments were forced first.
+   */
+  void prepare() throws IOException {
+    // Under forceLock so close() waits for a segment being mapped rather than missing it
+    synchronized (forceLock) {
+      if (!unmapped) {
+        prepareNext();
+      }
+    }
+  }
+
+  private void prepareNext() throws IOException {
+    List<Path> expired = new ArrayList<>();
+    MappedByteBuffer current;
+    long name;
+    synchronized (this) {
+      while (segments.size() > maxSegments) {
+        expired.add(segments.remove(0));
+      }
+      current = segment;
+      boolean needed = spare == null && (current == null || position > segmentBytes / 2);
+      // Reserve the name, so an inline roll meanwhile picks a later one
+      name = needed ? Math.max(lastSequence, newestName) + 1 : 0;
+      if (needed) {
+        newestName = name;
+      }
+    }
+    for (Path file : expired) {
+      Files.deleteIfExists(file);
+    }
+    if (name == 0) {
+      return;
+    }
+
+    Path file = segmentFile(name);
+    MappedByteBuffer mapped = map(file);
+    syncDirectory();
+    synchronized (this) {
+      if (segment == current) {
+        spare = mapped;
+        spareFile = file;
+        return;
+      }
+    }
+    // An append rolled inline meanwhile; this file would now sort before the current one
+    DirectBuffers.free(mapped);
+    Files.deleteIfExists(file);
+  }
+
+  synchronized long lastSequence() {
+    return lastSequence;
+  }
+
+  /**
+   * Visit the newest {@code maxRecords} records, oldest first, in the order they were appended.
+   * Segments are mapped read-only one at a time and unmapped again, so the payload passed to
+   * the visitor is only valid during the call.
+   */
+  synchronized void readTail(int maxRecords, WriteAheadLog.RecordVisitor visitor)
+      throws IOException {
+    if (closed || maxRecords <= 0) {
+      return;
+    }
+    // Count back from the newest segment until the segments cover enough records
+    int first = segments.size();
+    int found = 0;
+    while (first > 0 && found < maxRecords) {
+      first--;
+      found += visitSegment(segments.get(first), 0, null);
+    }
+    int skip = Math.max(0, found - maxRecords);
+    for (int i = first; i < segments.size(); i++) {
+      visitSegment(segments.get(i), skip, visitor);
+      skip = 0;
+    }
+  }
+
+  /**
+   * Walk one segment file's records up to the end marker, passing all but the first
+   * {@code skip} to {@code visitor} if there is one. Recovery already cut the log after its
+   * last valid record, so checksums are not verified again.
+   *
+   * @return number of records in the segment
+   */
+  private int visitSegment(Path file, int skip, WriteAheadLog.RecordVisitor visitor)
+      throws IOException {
+    MappedByteBuffer mapped;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          Math.min(channel.size(), segmentBytes));
+    } catch (NoSuchFileException e) {
+      // Expired and deleted by the flusher meanwhile
+      return 0;
+    }
+    try {
+      int count = 0;
+      int at = 0;
+      ByteBuffer view = mapped.duplicate();
+      while (at + HEADER_BYTES <= mapped.limit()) {
+        int length = mapped.getInt(at);
+        if (length <= 0 || at + HEADER_BYTES + length > mapped.limit()) {
+          break;
+        }
+        if (visitor != null && count >= skip) {
+          view.limit(at + HEADER_BYTES + length).position(at + HEADER_BYTES);
+          visitor.visit(mapped.getLong(at + 8), view.slice());
+          view.limit(mapped.limit());
+        }
+        count++;
+        at += HEADER_BYTES + length;
+      }
+      return count;
+    } finally {
+      DirectBuffers.free(mapped);
+    }
+  }
+
+  private ByteBuffer longBytes(long value) {
+    longBuffer.clear();
+    longBuffer.putLong(0, value);
+    return longBuffer;
+  }
+
+  static long getInlineRolls() {
+    return inlineRolls.sum();
+  }
+
+  // The full segment is forced by the next flush(), old ones are deleted by prepare()
+  private void roll(long firstSequence) throws IOException {
+    if (segment != null) {
+      sealed.add(segment);
+    }
+    Path file;
+    if (spare != null) {
+      use(spare);
+      file = spareFile;
+      spare = null;
+      spareFile = null;
+    } else {
+      inlineRolls.increment();
+      newestName = Math.max(firstSequence, newestName + 1);
+      file = segmentFile(newestName);
+      use(map(file));
+      syncDirectory();
+    }
+    position = 0;
+    segments.add(file);
+  }
+
+  private void use(MappedByteBuffer mapped) {
+    segment = mapped;
+    writeView = mapped.duplicate();
+  }
+
+  private Path segmentFile(long name) {
+    return dir.resolve(String.format("%020d.log", name));
+  }
+
+  private MappedByteBuffer map(Path file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      if (raf.length() < segmentBytes) {
+        raf.setLength(segmentBytes);
+      }
+      FileChannel channel = raf.getChannel();
+      // The mapping stays valid after the channel is closed
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    }
+  }
+
+  private void recover() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.log")) {
+      for (Path file : stream) {
+        files.add(file);
+      }
+    }
+    // Zero-padded names sort by first sequence
+    Collections.sort(files);
+
+    for (int i = 0; i < files.size(); i++) {
+      Path file = files.get(i);
+      // Only the last segment stays mapped
+      DirectBuffers.free(segment);
+      use(map(file));
+      segments.add(file);
+      newestName = parseName(file);
+      boolean intact = scan();
+      if (!intact) {
+        // Torn tail: cut here, zero the rest of this segment and drop anything after it
+        for (int k = position; k < segmentBytes; k++) {
+          segment.put(k, (byte) 0);
+        }
+        segment.force();
+        for (int j = i + 1; j < files.size(); j++) {
+          Files.deleteIfExists(files.get(j));
+        }
+        return;
+      }
+    }
+  }
+
+  private static long parseName(Path file) {
+    String name = file.getFileName().toString();
+    try {
+      return Long.parseLong(name.substring(0, name.length() - ".log".length()));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Walk the mapped segment from the start, leaving {@code position} after the last valid
+   * record.
+   *
+   * @return false if the walk stopped on a corrupt record rather than the end marker
+   */
+  private boolean scan() {
+    position = 0;
+    ByteBuffer view = segment.duplicate();
+    while (position + HEADER_BYTES <= segmentBytes) {
+      int length = segment.getInt(position);
+      if (length == 0) {
+        return true;
+      }
+      if (length < 0 || position + HEADER_BYTES + length > segmentBytes) {
+        return false;
+      }
+      int storedCrc = segment.getInt(position + 4);
+      long sequence = segment.getLong(position + 8);
+      view.limit(position + HEADER_BYTES + length).position(position + HEADER_BYTES);
+      crc.reset();
+      crc.update(longBytes(sequence));
+      crc.update(view);
+      view.limit(segmentBytes);
+      if ((int) crc.getValue() != storedCrc) {
+        return false;
+      }
+      if (sequence > lastSequence) {
+        lastSequence = sequence;
+      }
+      position += HEADER_BYTES + length;
+    }
+    return true;
+  }
+
+  private void syncDirectory() {
+    // Make the new segment's directory entry durable; not supported on every platform
+    try (FileChannel channel = FileChannel.open(dir)) {
+      channel.force(true);
+    } catch (IOException ignored) {
+    }
+  }
+}
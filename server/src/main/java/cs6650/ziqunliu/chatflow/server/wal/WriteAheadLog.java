@@ -0,0 +1,229 @@
+package cs6650.ziqunliu.chatflow.server.wal;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-room write-ahead log of accepted messages ({@code -Dchatflow.wal.dir}, one
+ * {@code room-<id>} directory each). Appends only copy into a memory-mapped segment; a single
+ * group-commit thread forces dirty segments every {@code -Dchatflow.wal.fsyncIntervalMs}, so
+ * the ACK path never waits for the disk and a crash loses at most that interval.
+ * With an interval of 0 every append is forced before it returns. The same thread maps each
+ * room's next segment before the current one fills and deletes expired ones, so appends never
+ * create or delete files unless they outrun it.
+ */
+public final class WriteAheadLog {
+
+  // How often the flusher prepares segments when fsyncIntervalMs is 0 and it has nothing to force
+  private static final int HOUSEKEEPING_MS = 10;
+
+  private static final ConcurrentHashMap<Integer, RoomLog> logs = new ConcurrentHashMap<>();
+  private static final Path root = Paths.get(ServerConfig.WAL_DIR);
+
+  private static final LongAdder appends = new LongAdder();
+  private static final LongAdder appendedBytes = new LongAdder();
+  private static final LongAdder appendNanos = new LongAdder();
+  private static final LongAdder fsyncs = new LongAdder();
+  private static final LongAdder errors = new LongAdder();
+
+  private static volatile Thread flusher;
+  private static volatile boolean running;
+
+  private WriteAheadLog() {
+  }
+
+  /**
+   * Receives the records read back by {@link #readTail}.
+   */
+  public interface RecordVisitor {
+
+    /**
+     * @param payload the record's payload, only valid during the call
+     */
+    void visit(long sequence, ByteBuffer payload);
+  }
+
+  public static boolean isEnabled() {
+    return ServerConfig.WAL_ENABLED;
+  }
+
+  /**
+   * Create the WAL directory and start the group-commit thread. Rooms are recovered lazily, by
+   * the {@link #open} of their first state, so only rooms in use are mapped. Called once at web
+   * application startup.
+   */
+  public static synchronized void start() {
+    if (!isEnabled() || running) {
+      return;
+    }
+    try {
+      Files.createDirectories(root);
+    } catch (IOException e) {
+      throw new UncheckedIOException("cannot create WAL directory " + root, e);
+    }
+    running = true;
+    Thread t = new Thread(WriteAheadLog::flushLoop, "chatflow-wal-flusher");
+    t.setDaemon(true);
+    t.start();
+    flusher = t;
+  }
+
+  /**
+   * Force everything to disk and stop the group-commit thread.
+   */
+  public static synchronized void shutdown() {
+    running = false;
+    Thread t = flusher;
+    if (t != null) {
+      t.interrupt();
+      try {
+        t.join(2000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      flusher = null;
+    }
+    flushAll();
+  }
+
+  /**
+   * Open (recovering if needed) the log of a room. Logs stay open until the room's state is
+   * retired, see {@link #close}.
+   *
+   * @return the log, or null when the WAL is disabled
+   */
+  public static RoomLog open(int roomId) {
+    if (!isEnabled()) {
+      return null;
+    }
+    return logs.computeIfAbsent(roomId, id -> {
+      try {
+        return new RoomLog(root.resolve("room-" + id), ServerConfig.WAL_SEGMENT_BYTES,
+            ServerConfig.WAL_MAX_SEGMENTS_PER_ROOM);
+      } catch (IOException e) {
+        throw new UncheckedIOException("cannot open WAL of room " + id, e);
+      }
+    });
+  }
+
+  /**
+   * Force and unmap a room's log and forget it; the next {@link #open} of the room recovers it
+   * from disk again. Appends to the closed log fail and are counted as errors.
+   */
+  public static void close(int roomId, RoomLog log) {
+    logs.remove(roomId, log);
+    try {
+      log.close();
+    } catch (IOException | RuntimeException e) {
+      if (errors.sum() < 10) {
+        System.err.println("WAL close failed: " + e);
+      }
+      errors.increment();
+    }
+  }
+
+  /**
+   * @return highest sequence recovered or appended for the room, 0 if none
+   */
+  public static long lastSequence(RoomLog log) {
+    return log == null ? 0 : log.lastSequence();
+  }
+
+  /**
+   * Read the room's newest {@code maxRecords} messages back, oldest first. Failures are
+   * counted and reported; whatever was visited before one stays visited.
+   */
+  public static void readTail(RoomLog log, int maxRecords, RecordVisitor visitor) {
+    if (log == null) {
+      return;
+    }
+    try {
+      log.readTail(maxRecords, visitor);
+    } catch (IOException | RuntimeException e) {
+      if (errors.sum() < 10) {
+        System.err.println("WAL read failed: " + e);
+      }
+      errors.increment();
+    }
+  }
+
+  /**
+   * Append an accepted message. Failures are counted and reported, the message is still
+   * delivered.
+   */
+  public static boolean append(RoomLog log, long sequence, ByteBuffer payload) {
+    long start = System.nanoTime();
+    int length = payload.remaining();
+    try {
+      log.append(sequence, payload);
+      if (ServerConfig.WAL_FSYNC_INTERVAL_MS == 0) {
+        log.flush();
+        fsyncs.increment();
+      }
+    } catch (IOException | RuntimeException e) {
+      if (errors.sum() < 10) {
+        System.err.println("WAL append failed: " + e);
+      }
+      errors.increment();
+      return false;
+    }
+    appends.increment();
+    appendedBytes.add(RoomLog.HEADER_BYTES + length);
+    appendNanos.add(System.nanoTime() - start);
+    return true;
+  }
+
+  public static String getStats() {
+    long n = appends.sum();
+    return String.format("walAppends: %d, walBytes: %d, walAvgAppendMicros: %.2f, "
+            + "walFsyncs: %d, walInlineRolls: %d, walErrors: %d", n, appendedBytes.sum(),
+        n == 0 ? 0.0 : appendNanos.sum() / 1000.0 / n, fsyncs.sum(), RoomLog.getInlineRolls(),
+        errors.sum());
+  }
+
+  private static void flushLoop() {
+    int interval = ServerConfig.WAL_FSYNC_INTERVAL_MS;
+    while (running) {
+      try {
+        Thread.sleep(interval > 0 ? interval : HOUSEKEEPING_MS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (interval > 0) {
+        flushAll();
+      }
+      prepareAll();
+    }
+  }
+
+  private static void prepareAll() {
+    for (RoomLog log : logs.values()) {
+      try {
+        log.prepare();
+      } catch (IOException | RuntimeException e) {
+        if (errors.sum() < 10) {
+          System.err.println("WAL segment preparation failed: " + e);
+        }
+        errors.increment();
+      }
+    }
+  }
+
+  private static void flushAll() {
+    for (RoomLog log : logs.values()) {
+      try {
+        log.flush();
+        fsyncs.increment();
+      } catch (RuntimeException e) {
+        errors.increment();
+      }
+    }
+  }
+}
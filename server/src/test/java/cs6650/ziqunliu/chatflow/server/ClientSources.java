@@ -0,0 +1,52 @@
+package cs6650.ziqunliu.chatflow.server;
+
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Locates client-part2's sources for the tests that compile the client's copy of a shared
+ * class. The repository root is {@code -Dchatflow.repo.root} when the build sets it, otherwise
+ * the nearest directory holding client-part2 above the test classes or the working directory,
+ * so the tests pass whichever directory they are run from.
+ */
+public final class ClientSources {
+
+  static final String ROOT_PROPERTY = "chatflow.repo.root";
+  private static final String CLIENT_SOURCES = "client-part2/src/main/java";
+
+  private ClientSources() {
+  }
+
+  /**
+   * @param className fully qualified name of a client-part2 class
+   * @return its source file; if the repository root cannot be found, a path that does not
+   *     exist, for the caller's assertion to report
+   */
+  public static Path of(String className) {
+    Path relative = Paths.get(CLIENT_SOURCES, className.replace('.', '/') + ".java");
+    String root = System.getProperty(ROOT_PROPERTY);
+    if (root != null) {
+      return Paths.get(root).resolve(relative).toAbsolutePath();
+    }
+    for (Path start : new Path[] {classLocation(), Paths.get("").toAbsolutePath()}) {
+      for (Path dir = start; dir != null; dir = dir.getParent()) {
+        if (Files.isDirectory(dir.resolve(CLIENT_SOURCES))) {
+          return dir.resolve(relative);
+        }
+      }
+    }
+    return relative.toAbsolutePath();
+  }
+
+  // Directory or jar the test classes were loaded from, null if unknown
+  private static Path classLocation() {
+    try {
+      return Paths.get(ClientSources.class.getProtectionDomain().getCodeSource().getLocation()
+          .toURI());
+    } catch (URISyntaxException | RuntimeException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Minimal single-threaded timing loop shared by the server micro-benchmarks. Run them with
+ * {@code java -cp <server classes + gson> cs6650.ziqunliu.chatflow.server.benchmark.<Name>}.
+ */
+final class BenchmarkSupport {
+
+  interface Op {
+    // Return something derived from the work so the JIT cannot drop it
+    int run(int i);
+  }
+
+  static volatile int sink;
+
+  private BenchmarkSupport() {
+  }
+
+  /**
+   * Warm up, then time {@code iterations} calls and print ns/op and allocated bytes/op.
+   */
+  static void measure(String name, int iterations, Op op) {
+    int acc = 0;
+    for (int i = 0; i < iterations; i++) {
+      acc += op.run(i);
+    }
+    long bytesBefore = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      acc += op.run(i);
+    }
+    long elapsed = System.nanoTime() - start;
+    long bytes = allocatedBytes() - bytesBefore;
+    sink = acc;
+    System.out.printf("%-28s %10.1f ns/op %10.1f B/op%n", name, (double) elapsed / iterations,
+        bytes < 0 ? Double.NaN : (double) bytes / iterations);
+  }
+
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
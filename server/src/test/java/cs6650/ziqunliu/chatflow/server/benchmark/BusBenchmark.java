@@ -0,0 +1,125 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.broadcast.BroadcastFrame;
+import cs6650.ziqunliu.chatflow.server.bus.SocketRoomBus;
+import cs6650.ziqunliu.chatflow.server.model.event.MessageBroadcastEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inter-node traffic of {@link SocketRoomBus}: one node publishes messages spread over N rooms
+ * to a peer subscribed to all of them, over loopback TCP. Reports the relay throughput and how
+ * many bus records (one per room per batch) and bytes the messages took, with and without the
+ * linger: once as fast as possible, once paced at {@code rate} messages per second. Run with
+ * {@code -Dchatflow.wal.enabled=false}.
+ *
+ * <p>Usage: {@code BusBenchmark [messages] [rate]}
+ */
+public class BusBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int messages = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int rate = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+    MessageBroadcastEvent event = new MessageBroadcastEvent("SUCCESS", "1",
+        "2026-01-01T00:00:01.123Z", "4242", "user4242", "Working on distributed systems.",
+        "2026-01-01T00:00:00.456Z", "TEXT");
+    event.setSequence(123456);
+    BroadcastFrame frame = BroadcastFrame.encode(event);
+
+    System.out.printf("%-10s %-8s %-8s %14s %10s %12s %14s %12s%n", "pace", "lingerMs",
+        "rooms", "messages/s", "flushes", "records", "msgs/record", "bytes/msg");
+    for (int pace : new int[]{0, rate}) {
+      for (int lingerMs : new int[]{0, 2}) {
+        for (int rooms : new int[]{1, 10, 100}) {
+          // Paced runs last 5 s
+          run(pace, lingerMs, rooms, pace == 0 ? messages : pace * 5, frame);
+        }
+      }
+    }
+  }
+
+  private static void run(int pace, int lingerMs, int rooms, int messages, BroadcastFrame frame)
+      throws Exception {
+    SocketRoomBus bus = new SocketRoomBus(InetAddress.getLoopbackAddress(), 0,
+        Collections.emptyList(), lingerMs, 256 * 1024, 1 << 20);
+    AtomicLong received = new AtomicLong();
+    AtomicLong records = new AtomicLong();
+    AtomicLong bytes = new AtomicLong();
+    try (Socket socket = new Socket("127.0.0.1", bus.getPort())) {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(socket.getOutputStream()));
+      for (int room = 1; room <= rooms; room++) {
+        out.writeByte(SocketRoomBus.SUBSCRIBE);
+        out.writeInt(room);
+      }
+      out.flush();
+      Thread reader = new Thread(() -> read(socket, received, records, bytes));
+      reader.start();
+      // Wait until the subscription is applied
+      while (received.get() == 0) {
+        bus.publish(rooms, frame);
+        Thread.sleep(10);
+      }
+      received.set(0);
+      records.set(0);
+      bytes.set(0);
+      long flushesBefore = bus.getFlushCount();
+
+      long start = System.nanoTime();
+      for (int i = 0; i < messages; i++) {
+        if (pace > 0) {
+          long due = start + (long) i * 1_000_000_000L / pace;
+          while (System.nanoTime() < due) {
+            Thread.onSpinWait();
+          }
+        }
+        bus.publish(1 + i % rooms, frame);
+        // Keep the relay queue from overflowing; the benchmark measures the bus, not drops
+        while (i - received.get() > 500_000) {
+          Thread.onSpinWait();
+        }
+      }
+      while (received.get() < messages) {
+        Thread.sleep(1);
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.printf("%-10s %-8d %-8d %14.0f %10d %12d %14.1f %12.1f%n",
+          pace == 0 ? "max" : Integer.toString(pace), lingerMs, rooms,
+          messages / seconds, bus.getFlushCount() - flushesBefore, records.get(), (double) messages / records.get(),
+          (double) bytes.get() / messages);
+    } finally {
+      bus.shutdown();
+    }
+  }
+
+  private static void read(Socket socket, AtomicLong received, AtomicLong records,
+      AtomicLong bytes) {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(socket.getInputStream(), 64 * 1024))) {
+      byte[] buffer = new byte[64 * 1024];
+      while (true) {
+        in.readByte();
+        in.readInt();
+        int count = in.readInt();
+        long size = 9;
+        for (int i = 0; i < count; i++) {
+          int length = in.readInt();
+          in.readFully(buffer, 0, length);
+          size += 4 + length;
+        }
+        bytes.addAndGet(size);
+        records.incrementAndGet();
+        received.addAndGet(count);
+      }
+    } catch (IOException e) {
+      // Bus shut down
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.broadcast.BroadcastFrame;
+import cs6650.ziqunliu.chatflow.server.codec.BinaryCodec;
+import cs6650.ziqunliu.chatflow.server.codec.ChatMessageDecoder;
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import cs6650.ziqunliu.chatflow.server.model.dto.ChatMessageDTO;
+import cs6650.ziqunliu.chatflow.server.model.event.MessageBroadcastEvent;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON text vs the chatflow.binary.v1 encoding: wire bytes per message, inbound decode cost
+ * and outbound broadcast encode cost, on messages shaped like the load client's.
+ */
+public class CodecBenchmark {
+
+  private static final int ITERATIONS = 2_000_000;
+  private static final String[] PHRASES = {"Hello everyone!", "Working on distributed systems.",
+      "Does anyone know how to fix this bug?", "Great job on the presentation today!"};
+
+  public static void main(String[] args) {
+    int n = 1024;
+    int mask = n - 1;
+    String[] jsonIn = new String[n];
+    byte[][] binaryIn = new byte[n][];
+    MessageBroadcastEvent[] events = new MessageBroadcastEvent[n];
+    long jsonInBytes = 0;
+    long binaryInBytes = 0;
+    long jsonOutBytes = 0;
+    long binaryOutBytes = 0;
+
+    for (int i = 0; i < n; i++) {
+      int userId = 1 + (i * 7919) % 100_000;
+      String message = PHRASES[i % PHRASES.length];
+      String timestamp = "2025-02-01T10:15:30.123456Z";
+      jsonIn[i] = "{\"userId\":" + userId + ",\"username\":\"user" + userId + "\","
+          + "\"message\":\"" + message + "\",\"roomId\":" + (1 + i % 20) + ","
+          + "\"messageType\":\"TEXT\",\"timestamp\":\"" + timestamp + "\"}";
+      ByteBuffer chat = BinaryCodec.encodeChat(new ChatMessageDTO(Integer.toString(userId),
+          "user" + userId, message, timestamp, MessageType.TEXT));
+      binaryIn[i] = new byte[chat.remaining()];
+      chat.get(binaryIn[i]);
+
+      events[i] = new MessageBroadcastEvent("SUCCESS", Integer.toString(1 + i % 20),
+          "2025-02-01T10:15:30.456789Z", Integer.toString(userId), "user" + userId, message,
+          timestamp, "TEXT");
+      events[i].setSequence(1_000_000L + i);
+
+      jsonInBytes += jsonIn[i].getBytes(StandardCharsets.UTF_8).length;
+      binaryInBytes += binaryIn[i].length;
+      jsonOutBytes += BroadcastFrame.encode(events[i]).bytes().remaining();
+      binaryOutBytes += BinaryCodec.encode(events[i]).remaining();
+    }
+    System.out.printf("inbound  bytes/msg: json %.1f, binary %.1f%n", (double) jsonInBytes / n,
+        (double) binaryInBytes / n);
+    System.out.printf("outbound bytes/msg: json %.1f, binary %.1f%n", (double) jsonOutBytes / n,
+        (double) binaryOutBytes / n);
+
+    for (int round = 0; round < 3; round++) {
+      BenchmarkSupport.measure("json decode", ITERATIONS,
+          i -> ChatMessageDecoder.decode(jsonIn[i & mask]).getUsername().length());
+      BenchmarkSupport.measure("binary decode", ITERATIONS,
+          i -> BinaryCodec.decodeChat(binaryIn[i & mask]).getUsername().length());
+      BenchmarkSupport.measure("json encode (broadcast)", ITERATIONS,
+          i -> BroadcastFrame.encode(events[i & mask]).text().length());
+      BenchmarkSupport.measure("binary encode (broadcast)", ITERATIONS,
+          i -> BinaryCodec.encode(events[i & mask]).remaining());
+    }
+  }
+}
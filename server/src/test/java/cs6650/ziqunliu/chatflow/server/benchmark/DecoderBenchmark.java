@@ -0,0 +1,33 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import com.google.gson.Gson;
+import cs6650.ziqunliu.chatflow.server.codec.ChatMessageDecoder;
+import cs6650.ziqunliu.chatflow.server.model.dto.ChatMessageDTO;
+
+/**
+ * Gson reflection binding vs {@link ChatMessageDecoder} on frames shaped like the load client's
+ * ChatMessage.toJson() output.
+ */
+public class DecoderBenchmark {
+
+  private static final Gson GSON = new Gson();
+  private static final int ITERATIONS = 2_000_000;
+
+  public static void main(String[] args) {
+    String[] frames = new String[1024];
+    for (int i = 0; i < frames.length; i++) {
+      int userId = 1 + (i * 7919) % 100_000;
+      frames[i] = "{\"userId\":" + userId + ",\"username\":\"user" + userId + "\","
+          + "\"message\":\"Working on distributed systems.\",\"roomId\":" + (1 + i % 20) + ","
+          + "\"messageType\":\"TEXT\",\"timestamp\":\"2025-02-01T10:15:30.123456Z\"}";
+    }
+    int mask = frames.length - 1;
+
+    for (int round = 0; round < 3; round++) {
+      BenchmarkSupport.measure("gson.fromJson", ITERATIONS,
+          i -> GSON.fromJson(frames[i & mask], ChatMessageDTO.class).getUsername().length());
+      BenchmarkSupport.measure("ChatMessageDecoder.decode", ITERATIONS,
+          i -> ChatMessageDecoder.decode(frames[i & mask]).getUsername().length());
+    }
+  }
+}
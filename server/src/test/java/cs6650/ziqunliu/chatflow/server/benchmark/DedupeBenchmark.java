@@ -0,0 +1,56 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.room.DedupeWindow;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import cs6650.ziqunliu.chatflow.server.room.RoomState;
+
+/**
+ * Cost of sequencing a message with a messageId (fingerprint, window lookup, re-check and
+ * insert) vs a plain sequence, and how many live ids a room's window loses early as it fills
+ * up. Run with {@code -Dchatflow.wal.enabled=false} so no room logs are opened.
+ */
+public class DedupeBenchmark {
+
+  public static void main(String[] args) {
+    String[] ids = new String[1 << 16];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = "k3x9q2-" + Long.toString(i, 36);
+    }
+    RoomState plain = RoomRegistry.state(1);
+    RoomState fresh = RoomRegistry.state(2);
+    RoomState retried = RoomRegistry.state(3);
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < ServerConfig.DEDUPE_WINDOW_SIZE / 2; i++) {
+      retried.claimSequence(DedupeWindow.fingerprint("42", ids[i]), now);
+    }
+
+    for (int round = 0; round < 3; round++) {
+      BenchmarkSupport.measure("sequence, no messageId", 20_000_000,
+          i -> (int) plain.nextSequence());
+      BenchmarkSupport.measure("look up + claim new messageId", 5_000_000, i -> {
+        // 64K ids cycled through a 4K window: an id is long displaced when it comes back
+        long fingerprint = DedupeWindow.fingerprint("42", ids[i & (ids.length - 1)]);
+        return (int) (fresh.acceptedSequence(fingerprint, now)
+            + fresh.claimSequence(fingerprint, now));
+      });
+      BenchmarkSupport.measure("look up retried messageId", 5_000_000,
+          i -> (int) retried.acceptedSequence(DedupeWindow.fingerprint("42",
+              ids[i & (ServerConfig.DEDUPE_WINDOW_SIZE / 2 - 1)]), now));
+    }
+
+    // Early evictions while one window goes from empty to full, all ids inside windowMs
+    int size = ServerConfig.DEDUPE_WINDOW_SIZE;
+    for (int percent : new int[]{25, 50, 75, 100}) {
+      RoomState state = RoomRegistry.state(100 + percent);
+      int count = size * percent / 100;
+      long evictionsBefore = DedupeWindow.getEvictionCount();
+      for (int i = 0; i < count; i++) {
+        state.claimSequence(DedupeWindow.fingerprint("7", "fill-" + percent + "-" + i), now);
+      }
+      System.out.printf("window %3d%% filled: %5.1f%% of ids evicted early%n", percent,
+          100.0 * (DedupeWindow.getEvictionCount() - evictionsBefore) / count);
+    }
+    System.out.println(DedupeWindow.getStats());
+  }
+}
@@ -0,0 +1,81 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.broadcast.BroadcastFrame;
+import cs6650.ziqunliu.chatflow.server.codec.BinaryCodec;
+import cs6650.ziqunliu.chatflow.server.codec.DeflateCodec;
+import cs6650.ziqunliu.chatflow.server.model.event.MessageBroadcastEvent;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire bytes and cost of the deflate subprotocols on broadcast frames shaped like the load
+ * client's, per message (shared, no context takeover) and per session stream (takeover). Run
+ * with {@code -Dchatflow.deflate.minBytes=0} to see every frame compressed.
+ */
+public class DeflateBenchmark {
+
+  private static final int ITERATIONS = 200_000;
+  private static final String[] PHRASES = {"Hello!", "How are you?", "Anyone here?",
+      "Nice to meet you.", "Working on distributed systems.", "It fails sometimes.",
+      "Throughput matters.", "Room is busy.", "Ping.", "Done."};
+
+  public static void main(String[] args) {
+    int n = 1024;
+    int mask = n - 1;
+    ByteBuffer[] text = new ByteBuffer[n];
+    ByteBuffer[] binary = new ByteBuffer[n];
+    long textBytes = 0;
+    long binaryBytes = 0;
+
+    for (int i = 0; i < n; i++) {
+      int userId = 1 + (i * 7919) % 100_000;
+      MessageBroadcastEvent event = new MessageBroadcastEvent("SUCCESS",
+          Integer.toString(1 + i % 20), "2025-02-01T10:15:30.456789Z", Integer.toString(userId),
+          "user" + userId, PHRASES[(i * 31) % PHRASES.length], "2025-02-01T10:15:30.123456Z",
+          "TEXT");
+      event.setSequence(1_000_000L + i);
+      text[i] = BroadcastFrame.encode(event).bytes();
+      binary[i] = BinaryCodec.encode(event);
+      textBytes += text[i].remaining();
+      binaryBytes += binary[i].remaining();
+    }
+
+    System.out.printf("raw          bytes/msg: json %.1f, binary %.1f%n", (double) textBytes / n,
+        (double) binaryBytes / n);
+    System.out.printf("shared       bytes/msg: json %.1f, binary %.1f%n",
+        wireBytes(text, null) / n, wireBytes(binary, null) / n);
+    DeflateCodec.Session textStream = new DeflateCodec.Session();
+    if (textStream.encode(text[0]) != null) {
+      System.out.printf("takeover     bytes/msg: json %.1f, binary %.1f%n",
+          wireBytes(text, textStream) / n, wireBytes(binary, new DeflateCodec.Session()) / n);
+    }
+    ByteBuffer batch = ByteBuffer.wrap(joined(text, 100));
+    System.out.printf("json x100    bytes/msg: raw %.1f, shared %.1f%n",
+        batch.remaining() / 100.0, DeflateCodec.encodeShared(batch).remaining() / 100.0);
+
+    for (int round = 0; round < 3; round++) {
+      BenchmarkSupport.measure("deflate shared (json)", ITERATIONS,
+          i -> DeflateCodec.encodeShared(text[i & mask]).remaining());
+      BenchmarkSupport.measure("deflate shared (binary)", ITERATIONS,
+          i -> DeflateCodec.encodeShared(binary[i & mask]).remaining());
+    }
+    System.out.println(DeflateCodec.getStats());
+  }
+
+  private static double wireBytes(ByteBuffer[] frames, DeflateCodec.Session stream) {
+    long total = 0;
+    for (ByteBuffer frame : frames) {
+      total += (stream == null ? DeflateCodec.encodeShared(frame) : stream.encode(frame))
+          .remaining();
+    }
+    return total;
+  }
+
+  private static byte[] joined(ByteBuffer[] frames, int count) {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < count; i++) {
+      sb.append(i == 0 ? "" : ",").append(StandardCharsets.UTF_8.decode(frames[i].duplicate()));
+    }
+    return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+  }
+}
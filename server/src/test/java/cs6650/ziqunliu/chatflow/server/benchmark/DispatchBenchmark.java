@@ -0,0 +1,98 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.broadcast.BroadcastFrame;
+import cs6650.ziqunliu.chatflow.server.codec.ChatMessageDecoder;
+import cs6650.ziqunliu.chatflow.server.dispatch.DirectDispatcher;
+import cs6650.ziqunliu.chatflow.server.dispatch.MessageDispatcher;
+import cs6650.ziqunliu.chatflow.server.dispatch.RoomShardDispatcher;
+import cs6650.ziqunliu.chatflow.server.model.dto.ChatMessageDTO;
+import cs6650.ziqunliu.chatflow.server.model.event.MessageBroadcastEvent;
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+import cs6650.ziqunliu.chatflow.server.service.MessageValidationService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Throughput of the direct (container thread) model vs per-room shards. Producer threads play
+ * the container's worker threads; each handled frame is decoded, validated, encoded and bumps
+ * a per-room sequence. Direct mode needs an atomic for that sequence, shards use a plain long.
+ *
+ * <p>Args: [producers] [rooms] [messagesPerProducer]
+ */
+public class DispatchBenchmark {
+
+  public static void main(String[] args) throws InterruptedException {
+    int producers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    int rooms = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    int perProducer = args.length > 2 ? Integer.parseInt(args[2]) : 250_000;
+    int cores = Runtime.getRuntime().availableProcessors();
+
+    System.out.printf("producers=%d rooms=%d messages=%d cores=%d%n", producers, rooms,
+        producers * perProducer, cores);
+    for (int round = 0; round < 2; round++) {
+      run("direct", new DirectDispatcher(), false, producers, rooms, perProducer);
+      int previous = 0;
+      for (int shards : new int[]{1, cores, 2 * cores}) {
+        if (shards == previous) {
+          continue;
+        }
+        previous = shards;
+        RoomShardDispatcher dispatcher = new RoomShardDispatcher(shards, 8192);
+        run("sharded x" + shards, dispatcher, true, producers, rooms, perProducer);
+        dispatcher.shutdown();
+      }
+    }
+  }
+
+  private static void run(String name, MessageDispatcher dispatcher, boolean confined,
+      int producers, int rooms, int perProducer) throws InterruptedException {
+    SessionContext[] contexts = new SessionContext[rooms];
+    for (int r = 0; r < rooms; r++) {
+      contexts[r] = new SessionContext(null, r + 1, Integer.toString(r + 1), null);
+    }
+    AtomicLongArray atomicSequences = new AtomicLongArray(rooms);
+    long[] confinedSequences = new long[rooms];
+    CountDownLatch done = new CountDownLatch(producers * perProducer);
+
+    Thread[] threads = new Thread[producers];
+    long start = System.nanoTime();
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      threads[p] = new Thread(() -> {
+        for (int i = 0; i < perProducer; i++) {
+          int room = (producer + i) % rooms;
+          String frame = frame(producer, i, room);
+          dispatcher.dispatch(contexts[room], () -> {
+            handle(frame, room, confined, atomicSequences, confinedSequences);
+            done.countDown();
+          });
+        }
+      });
+      threads[p].start();
+    }
+    done.await();
+    long elapsed = System.nanoTime() - start;
+    System.out.printf("%-14s %12.0f msg/s%n", name,
+        producers * (double) perProducer / (elapsed / 1e9));
+  }
+
+  private static void handle(String frame, int room, boolean confined,
+      AtomicLongArray atomicSequences, long[] confinedSequences) {
+    ChatMessageDTO dto = ChatMessageDecoder.decode(frame);
+    if (MessageValidationService.validateCode(dto) != MessageValidationService.OK) {
+      throw new IllegalStateException("benchmark frame rejected");
+    }
+    long sequence = confined ? ++confinedSequences[room] : atomicSequences.incrementAndGet(room);
+    MessageBroadcastEvent event = new MessageBroadcastEvent("SUCCESS", Integer.toString(room),
+        "2025-02-01T10:15:30Z", dto.getUserId(), dto.getUsername(), dto.getMessage(),
+        dto.getTimestamp(), dto.getMessageType().name());
+    BenchmarkSupport.sink += BroadcastFrame.encode(event).text().length() + (int) sequence;
+  }
+
+  private static String frame(int producer, int i, int room) {
+    int userId = 1 + (producer * 31 + i) % 100_000;
+    return "{\"userId\":" + userId + ",\"username\":\"user" + userId + "\","
+        + "\"message\":\"Throughput matters.\",\"roomId\":" + room + ","
+        + "\"messageType\":\"TEXT\",\"timestamp\":\"2025-02-01T10:15:30.123Z\"}";
+  }
+}
@@ -0,0 +1,21 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.health.HealthSnapshot;
+
+/**
+ * Server-side cost of a /health probe: rendering the bodies per request (consistent mode, and
+ * what every probe paid before) vs reading the ticker's pre-rendered snapshot.
+ */
+public class HealthBenchmark {
+
+  public static void main(String[] args) {
+    HealthSnapshot.start();
+    for (int round = 0; round < 3; round++) {
+      BenchmarkSupport.measure("render per probe", 20_000,
+          i -> HealthSnapshot.render().ok().length);
+      BenchmarkSupport.measure("pre-rendered snapshot", 20_000_000,
+          i -> HealthSnapshot.current().ok().length);
+    }
+    HealthSnapshot.shutdown();
+  }
+}
@@ -0,0 +1,36 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.metrics.LatencyHistogram;
+import cs6650.ziqunliu.chatflow.server.metrics.MessageMetrics;
+import cs6650.ziqunliu.chatflow.server.metrics.PrometheusExporter;
+import cs6650.ziqunliu.chatflow.server.metrics.Stage;
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import cs6650.ziqunliu.chatflow.server.service.RequestStatsService;
+import cs6650.ziqunliu.chatflow.server.service.RequestStatsService.Outcome;
+
+/**
+ * Cost of the always-on message metrics: one histogram record, one timed stage (clock read +
+ * record) and counting an accepted message, plus rendering /health/metrics.
+ */
+public class MetricsBenchmark {
+
+  private static final int ITERATIONS = 20_000_000;
+
+  public static void main(String[] args) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int round = 0; round < 3; round++) {
+      BenchmarkSupport.measure("histogram record", ITERATIONS, i -> {
+        histogram.record(1_000 + (i & 0xFFFF));
+        return i;
+      });
+      BenchmarkSupport.measure("stage lap", ITERATIONS,
+          i -> (int) MessageMetrics.lap(Stage.VALIDATE, System.nanoTime()));
+      BenchmarkSupport.measure("message counter", ITERATIONS, i -> {
+        RequestStatsService.record(1 + i % 20, MessageType.TEXT, Outcome.ACCEPTED);
+        return i;
+      });
+      BenchmarkSupport.measure("render /health/metrics", 2_000,
+          i -> PrometheusExporter.render().length());
+    }
+  }
+}
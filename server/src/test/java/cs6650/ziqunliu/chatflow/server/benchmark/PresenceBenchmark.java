@@ -0,0 +1,57 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.room.PresenceSet;
+import cs6650.ziqunliu.chatflow.server.service.MessageValidationService;
+import java.util.Random;
+
+/**
+ * {@link PresenceSet} costs: JOIN/LEAVE updates, membership checks, listing members and
+ * intersecting two rooms, and how much memory a room takes as it fills up with random users.
+ */
+public class PresenceBenchmark {
+
+  public static void main(String[] args) {
+    int maxUserId = MessageValidationService.MAX_USER_ID;
+    int[] users = new int[1 << 20];
+    Random random = new Random(42);
+    for (int i = 0; i < users.length; i++) {
+      users[i] = 1 + random.nextInt(maxUserId);
+    }
+    int mask = users.length - 1;
+
+    PresenceSet churn = new PresenceSet(maxUserId);
+    PresenceSet busy = new PresenceSet(maxUserId);
+    PresenceSet other = new PresenceSet(maxUserId);
+    for (int i = 0; i < 50_000; i++) {
+      busy.add(users[i]);
+      other.add(users[users.length - 1 - i]);
+    }
+    PresenceSet small = new PresenceSet(maxUserId);
+    for (int i = 0; i < 1_000; i++) {
+      small.add(users[i]);
+    }
+
+    for (int round = 0; round < 3; round++) {
+      BenchmarkSupport.measure("join/leave (alternating)", 20_000_000,
+          i -> (i & 1) == 0 ? (churn.add(users[(i >>> 1) & mask]) ? 1 : 0)
+              : (churn.remove(users[(i >>> 1) & mask]) ? 1 : 0));
+      BenchmarkSupport.measure("isOnline", 20_000_000,
+          i -> busy.contains(users[i & mask]) ? 1 : 0);
+      BenchmarkSupport.measure("members, 1K users", 200_000, i -> small.members().length);
+      BenchmarkSupport.measure("members, ~40K users", 2_000, i -> busy.members().length);
+      BenchmarkSupport.measure("intersect count, ~40K x ~40K", 200_000,
+          i -> busy.intersectCount(other));
+      BenchmarkSupport.measure("intersect list, ~40K x ~40K", 2_000,
+          i -> busy.intersect(other).length);
+    }
+
+    System.out.printf("%-12s %12s%n", "users", "bytes/room");
+    for (int count : new int[]{0, 10, 100, 1_000, 10_000, 100_000}) {
+      PresenceSet set = new PresenceSet(maxUserId);
+      for (int i = 0; i < count; i++) {
+        set.add(users[i]);
+      }
+      System.out.printf("%-12d %12d%n", set.size(), set.memoryBytes());
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import cs6650.ziqunliu.chatflow.server.room.RoomState;
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+import cs6650.ziqunliu.chatflow.server.service.PresenceService;
+import cs6650.ziqunliu.chatflow.server.service.PresenceSnapshots;
+
+/**
+ * What a presence poll costs: a cached snapshot or up-to-date diff vs rendering a snapshot after
+ * every change, and a diff over the last few changes. Run with
+ * {@code -Dchatflow.wal.enabled=false}.
+ */
+public class PresenceSnapshotBenchmark {
+
+  public static void main(String[] args) {
+    RoomState room = RoomRegistry.state(1);
+    // One session holds every JOIN, so its LEAVEs take them back
+    SessionContext session = new SessionContext(null, 1, "1", null);
+    for (int userId = 1; userId <= 1_000; userId++) {
+      PresenceService.apply(room, session, userId * 37, MessageType.JOIN);
+    }
+    long version = PresenceService.version(1);
+
+    for (int round = 0; round < 3; round++) {
+      BenchmarkSupport.measure("snapshot, unchanged room", 20_000_000,
+          i -> PresenceSnapshots.snapshot(1).length);
+      BenchmarkSupport.measure("sinceVersion = current", 20_000_000,
+          i -> PresenceSnapshots.since(1, PresenceService.version(1)).length);
+      // Every poll sees a new version: the render cost the cache saves
+      BenchmarkSupport.measure("snapshot after a change", 20_000,
+          i -> {
+            PresenceService.apply(room, session, 50_001 + (i & 1),
+                (i & 2) == 0 ? MessageType.JOIN : MessageType.LEAVE);
+            return PresenceSnapshots.snapshot(1).length;
+          });
+      long since = PresenceService.version(1);
+      for (int i = 0; i < 10; i++) {
+        PresenceService.apply(room, session, 60_000 + i,
+            round % 2 == 0 ? MessageType.JOIN : MessageType.LEAVE);
+      }
+      long sinceTen = since;
+      BenchmarkSupport.measure("diff of 10 changes", 200_000,
+          i -> PresenceSnapshots.since(1, sinceTen).length);
+    }
+    System.out.println("version " + version + " -> " + PresenceService.version(1) + "; "
+        + PresenceSnapshots.getStats());
+  }
+}
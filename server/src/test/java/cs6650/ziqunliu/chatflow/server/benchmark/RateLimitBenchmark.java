@@ -0,0 +1,38 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import cs6650.ziqunliu.chatflow.server.service.MessageValidationService;
+import cs6650.ziqunliu.chatflow.server.service.RateLimitService;
+
+/**
+ * Per-message cost of the userId token buckets: a token taken, a message refused, and the full
+ * check the controller does (userId parse, clock read, bucket update).
+ */
+public class RateLimitBenchmark {
+
+  public static void main(String[] args) {
+    String[] userIds = new String[MessageValidationService.MAX_USER_ID];
+    for (int i = 0; i < userIds.length; i++) {
+      userIds[i] = Integer.toString(i + 1);
+    }
+
+    // Simulated clock, 1 ms per message
+    long[] now = {0};
+    for (int round = 0; round < 3; round++) {
+      // Messages spread over all users: every bucket always has tokens
+      BenchmarkSupport.measure("token taken", 20_000_000,
+          i -> RateLimitService.tryAcquire(1 + i % MessageValidationService.MAX_USER_ID,
+              MessageType.TEXT, now[0] += 1_000_000) ? 1 : 0);
+      // One user, frozen clock: the burst is gone after the first few calls
+      long frozen = now[0];
+      BenchmarkSupport.measure("message refused", 20_000_000,
+          i -> RateLimitService.tryAcquire(7, MessageType.TEXT, frozen) ? 1 : 0);
+      // Real clock on LEAVE, whose buckets the simulated times above never touched
+      BenchmarkSupport.measure("controller check", 20_000_000,
+          i -> RateLimitService.tryAcquire(
+              MessageValidationService.userIdOf(userIds[i % userIds.length]),
+              MessageType.LEAVE) ? 1 : 0);
+    }
+    System.out.println(RateLimitService.getStats());
+  }
+}
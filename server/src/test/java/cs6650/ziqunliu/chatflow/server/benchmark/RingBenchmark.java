@@ -0,0 +1,63 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.cluster.ConsistentHashRing;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ConsistentHashRing} over {@code rooms} roomIds: lookup cost, how evenly the rooms are
+ * spread (largest node share vs the ideal 1/N) and what fraction of rooms change owner when a
+ * node is added or removed, for several virtual node counts.
+ *
+ * <p>Usage: {@code RingBenchmark [rooms]}
+ */
+public class RingBenchmark {
+
+  public static void main(String[] args) {
+    int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+    ConsistentHashRing ring = new ConsistentHashRing(nodes(4), 160);
+    for (int round = 0; round < 3; round++) {
+      BenchmarkSupport.measure("nodeFor, 4 nodes x 160", 20_000_000,
+          i -> ring.nodeFor(i % rooms).length());
+    }
+
+    System.out.printf("%-6s %-8s %14s %14s %14s%n", "nodes", "vnodes", "max share/1/N",
+        "moved on add", "moved on rm");
+    for (int n : new int[]{2, 4, 8}) {
+      for (int virtualNodes : new int[]{1, 16, 160}) {
+        ConsistentHashRing before = new ConsistentHashRing(nodes(n), virtualNodes);
+        ConsistentHashRing added = new ConsistentHashRing(nodes(n + 1), virtualNodes);
+        ConsistentHashRing removed = new ConsistentHashRing(nodes(n - 1), virtualNodes);
+        Map<String, Integer> counts = new HashMap<>();
+        int movedOnAdd = 0;
+        int movedOnRemove = 0;
+        for (int room = 1; room <= rooms; room++) {
+          String owner = before.nodeFor(room);
+          counts.merge(owner, 1, Integer::sum);
+          if (!owner.equals(added.nodeFor(room))) {
+            movedOnAdd++;
+          }
+          if (!owner.equals(removed.nodeFor(room))) {
+            movedOnRemove++;
+          }
+        }
+        int max = counts.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+        // Ideal: 1/(n+1) of rooms move to a new node, the removed node's 1/n move away
+        System.out.printf("%-6d %-8d %14.2f %13.1f%% %13.1f%%%n", n, virtualNodes,
+            (double) max * n / rooms, 100.0 * movedOnAdd / rooms,
+            100.0 * movedOnRemove / rooms);
+      }
+    }
+  }
+
+  private static List<String> nodes(int count) {
+    List<String> nodes = new ArrayList<>();
+    for (int i = 1; i <= count; i++) {
+      nodes.add("ws://10.0.0." + i + ":8080/server/ws/chat");
+    }
+    return nodes;
+  }
+}
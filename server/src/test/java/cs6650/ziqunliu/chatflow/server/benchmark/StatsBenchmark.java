@@ -0,0 +1,55 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import cs6650.ziqunliu.chatflow.server.service.RequestStatsService;
+import cs6650.ziqunliu.chatflow.server.service.RequestStatsService.Outcome;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Message counting under contention: the striped (room, type, outcome) table of
+ * RequestStatsService vs one shared AtomicLong, with every thread counting as fast as it can.
+ *
+ * <p>Args: [threads] [incrementsPerThread]
+ */
+public class StatsBenchmark {
+
+  private static final AtomicLong shared = new AtomicLong();
+
+  public static void main(String[] args) throws InterruptedException {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+    System.out.printf("threads=%d increments=%d cores=%d%n", threads, (long) threads * perThread,
+        Runtime.getRuntime().availableProcessors());
+    for (int round = 0; round < 3; round++) {
+      run("shared AtomicLong", threads, perThread, i -> shared.incrementAndGet());
+      run("striped table", threads, perThread,
+          i -> RequestStatsService.record(1 + i % 20, MessageType.TEXT, Outcome.ACCEPTED));
+    }
+    RequestStatsService.Snapshot interval = RequestStatsService.snapshotAndReset();
+    System.out.printf("drained %d accepted, room 1: %d%n", interval.total(Outcome.ACCEPTED),
+        interval.count(1, MessageType.TEXT, Outcome.ACCEPTED));
+  }
+
+  private interface Increment {
+    void run(int i);
+  }
+
+  private static void run(String name, int threads, int perThread, Increment op)
+      throws InterruptedException {
+    Thread[] workers = new Thread[threads];
+    long start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      workers[t] = new Thread(() -> {
+        for (int i = 0; i < perThread; i++) {
+          op.run(i);
+        }
+      });
+      workers[t].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("%-20s %12.0f increments/s%n", name, threads * (double) perThread / seconds);
+  }
+}
@@ -0,0 +1,91 @@
+package cs6650.ziqunliu.chatflow.server.benchmark;
+
+import cs6650.ziqunliu.chatflow.server.heartbeat.TimingWheel;
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heartbeat bookkeeping for many sessions: the {@link TimingWheel} behind HeartbeatMonitor
+ * (100 ms ticks, 30 s interval, so 1/300 of the sessions come due per tick) against a periodic
+ * ScheduledThreadPoolExecutor task per session. Reports the cost of a tick, of registering a
+ * session, of marking a session active, and the heap each approach keeps per session.
+ */
+public class TimingWheelBenchmark {
+
+  private static final int SESSIONS = 300_000;
+  private static final long INTERVAL_TICKS = 300;
+
+  public static void main(String[] args) throws Exception {
+    SessionContext[] sessions = new SessionContext[SESSIONS];
+    for (int i = 0; i < sessions.length; i++) {
+      sessions[i] = new SessionContext(null, i & 1023, Integer.toString(i & 1023), null);
+    }
+
+    long before = usedHeap();
+    TimingWheel<SessionContext> wheel = new TimingWheel<>(512);
+    // Spread the first checks over one interval, as sessions that connected over time would be
+    for (int i = 0; i < sessions.length; i++) {
+      wheel.add(sessions[i], 1 + i % INTERVAL_TICKS);
+    }
+    wheel.advance((ctx, tick) -> 1);
+    long wheelBytes = usedHeap() - before;
+
+    // Every session was heard from within the interval: the common case for a busy server
+    TimingWheel.Handler<SessionContext> active = (ctx, now) -> {
+      ctx.touch(now);
+      return INTERVAL_TICKS - (now - ctx.lastSeenTick());
+    };
+    SessionContext one = sessions[0];
+    for (int round = 0; round < 3; round++) {
+      BenchmarkSupport.measure("tick, 300K sessions", 3_000, i -> wheel.advance(active));
+      BenchmarkSupport.measure("touch (same tick)", 50_000_000, i -> {
+        one.touch(7);
+        return 1;
+      });
+      TimingWheel<SessionContext> scratch = new TimingWheel<>(512);
+      BenchmarkSupport.measure("wheel add + place", 1_000_000, i -> {
+        scratch.add(sessions[i % SESSIONS], INTERVAL_TICKS);
+        return (i & 1023) == 1023 ? scratch.advance((ctx, tick) -> -1) : 0;
+      });
+    }
+
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+    executor.setRemoveOnCancelPolicy(true);
+    Runnable check = () -> { };
+    ScheduledFuture<?>[] futures = new ScheduledFuture<?>[SESSIONS];
+    before = usedHeap();
+    long start = System.nanoTime();
+    for (int i = 0; i < futures.length; i++) {
+      futures[i] = executor.scheduleAtFixedRate(check, 30_000 + i % 30_000, 30_000,
+          TimeUnit.MILLISECONDS);
+    }
+    long scheduleNanos = System.nanoTime() - start;
+    long executorBytes = usedHeap() - before;
+    start = System.nanoTime();
+    for (ScheduledFuture<?> future : futures) {
+      future.cancel(false);
+    }
+    long cancelNanos = System.nanoTime() - start;
+    executor.shutdownNow();
+
+    System.out.printf("%-36s %10.1f ns/op%n", "executor scheduleAtFixedRate",
+        (double) scheduleNanos / SESSIONS);
+    System.out.printf("%-36s %10.1f ns/op%n", "executor cancel", (double) cancelNanos / SESSIONS);
+    System.out.printf("%-36s %10.1f B/session%n", "wheel heap",
+        (double) wheelBytes / SESSIONS);
+    System.out.printf("%-36s %10.1f B/session%n", "executor heap",
+        (double) executorBytes / SESSIONS);
+    BenchmarkSupport.sink = wheel.size() + futures.length;
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
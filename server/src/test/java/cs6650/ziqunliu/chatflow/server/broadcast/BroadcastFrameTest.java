@@ -0,0 +1,80 @@
+package cs6650.ziqunliu.chatflow.server.broadcast;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import cs6650.ziqunliu.chatflow.server.codec.BinaryCodec;
+import cs6650.ziqunliu.chatflow.server.model.event.MessageBroadcastEvent;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The lazily built binary form of a frame: every recipient gets the same encoding, however
+ * many binary sessions ask for it at once, and frames without a binary form stay text.
+ */
+class BroadcastFrameTest {
+
+  private static final int THREADS = 8;
+  private static final int FRAMES = 2_000;
+
+  @Test
+  void racingCallersAllGetTheBinaryForm() throws Exception {
+    MessageBroadcastEvent event = event(1);
+    ByteBuffer expected = BinaryCodec.encode(event);
+    BroadcastFrame[] frames = new BroadcastFrame[FRAMES];
+    for (int i = 0; i < FRAMES; i++) {
+      frames[i] = i % 2 == 0 ? BroadcastFrame.encode(event, 1)
+          : BroadcastFrame.relayed(BroadcastFrame.encode(event).text());
+    }
+
+    CyclicBarrier barrier = new CyclicBarrier(THREADS);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread[] workers = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      workers[t] = new Thread(() -> {
+        try {
+          for (BroadcastFrame frame : frames) {
+            // Line the threads up on every frame so its first calls overlap
+            barrier.await();
+            assertEquals(expected, frame.binary());
+            assertNotNull(frame.deflatedBinary());
+          }
+        } catch (InterruptedException | BrokenBarrierException e) {
+          failure.compareAndSet(null, e);
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+          barrier.reset();
+        }
+      });
+      workers[t].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    assertNull(failure.get());
+  }
+
+  @Test
+  void framesWithoutABinaryFormStayText() {
+    assertNull(BroadcastFrame.ofText("{\"status\":\"PONG\"}").binary());
+    assertNull(BroadcastFrame.relayed("not json").binary());
+    MessageBroadcastEvent event = event(2);
+    event.setUserId("not a number");
+    BroadcastFrame frame = BroadcastFrame.encode(event);
+    assertNull(frame.binary());
+    assertNull(frame.binary());
+    assertNull(frame.deflatedBinary());
+  }
+
+  private static MessageBroadcastEvent event(long sequence) {
+    MessageBroadcastEvent event = new MessageBroadcastEvent("SUCCESS", "7",
+        "2024-01-01T00:00:00.123456Z", "42", "user42", "hello", "2024-01-01T00:00:00Z", "TEXT");
+    event.setSequence(sequence);
+    event.setMessageId("m-" + sequence);
+    return event;
+  }
+}
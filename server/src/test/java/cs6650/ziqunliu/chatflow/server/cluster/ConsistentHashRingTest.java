@@ -0,0 +1,138 @@
+package cs6650.ziqunliu.chatflow.server.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import cs6650.ziqunliu.chatflow.server.ClientSources;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Ring placement: every node gets a fair share, adding or removing a node only moves the rooms
+ * it gains or loses, skipping a room's owner finds the node that would own it without that one,
+ * and the client's copy of the class (client-part2, compiled from source here) routes every
+ * room to the same node as this one.
+ */
+class ConsistentHashRingTest {
+
+  private static final List<String> NODES = Arrays.asList("ws://10.0.0.1:8080/server",
+      "ws://10.0.0.2:8080/server", "ws://10.0.0.3:8080/server", "ws://10.0.0.4:8080/server");
+  private static final int ROOMS = 100_000;
+  private static final Path CLIENT_SOURCE =
+      ClientSources.of("cs6650.ziqunliu.chatflow.client.websocket.ConsistentHashRing");
+
+  @Test
+  void virtualNodesSpreadRoomsEvenly() {
+    ConsistentHashRing ring = new ConsistentHashRing(NODES, 160);
+    Map<String, Integer> counts = new HashMap<>();
+    for (int roomId = 0; roomId < ROOMS; roomId++) {
+      counts.merge(ring.nodeFor(roomId), 1, Integer::sum);
+    }
+    assertEquals(NODES.size(), counts.size());
+    for (int count : counts.values()) {
+      // A quarter each, give or take 20%
+      assertTrue(Math.abs(count - ROOMS / 4) < ROOMS / 20, counts.toString());
+    }
+  }
+
+  @Test
+  void addingANodeOnlyMovesRoomsToIt() {
+    ConsistentHashRing before = new ConsistentHashRing(NODES.subList(0, 3), 160);
+    ConsistentHashRing after = new ConsistentHashRing(NODES, 160);
+    String added = NODES.get(3);
+    int moved = 0;
+    for (int roomId = 0; roomId < ROOMS; roomId++) {
+      String owner = after.nodeFor(roomId);
+      if (!owner.equals(before.nodeFor(roomId))) {
+        assertEquals(added, owner, "room " + roomId);
+        moved++;
+      }
+    }
+    assertTrue(Math.abs(moved - ROOMS / 4) < ROOMS / 20, "moved " + moved);
+  }
+
+  @Test
+  void nodeOrderDuplicatesAndBlanksDoNotMatter() {
+    List<String> shuffled = new ArrayList<>(NODES);
+    Collections.reverse(shuffled);
+    shuffled.add(" " + NODES.get(0) + " ");
+    shuffled.add("");
+    ConsistentHashRing ring = new ConsistentHashRing(NODES, 64);
+    ConsistentHashRing other = new ConsistentHashRing(shuffled, 64);
+    assertEquals(NODES.size(), other.nodes().size());
+    for (int roomId = 0; roomId < ROOMS; roomId++) {
+      assertEquals(ring.nodeFor(roomId), other.nodeFor(roomId));
+    }
+  }
+
+  @Test
+  void skippingTheOwnerRoutesLikeARingWithoutIt() {
+    ConsistentHashRing ring = new ConsistentHashRing(NODES, 160);
+    for (int roomId = 0; roomId < 20_000; roomId++) {
+      String owner = ring.nodeFor(roomId);
+      assertEquals(owner, ring.nodeFor(roomId, 0));
+      List<String> rest = new ArrayList<>(NODES);
+      rest.remove(owner);
+      assertEquals(new ConsistentHashRing(rest, 160).nodeFor(roomId), ring.nodeFor(roomId, 1),
+          "room " + roomId);
+      Set<String> seen = new HashSet<>();
+      for (int skip = 0; skip < NODES.size(); skip++) {
+        assertTrue(seen.add(ring.nodeFor(roomId, skip)));
+      }
+      assertNull(ring.nodeFor(roomId, NODES.size()));
+      assertNull(ring.nodeFor(roomId, -1));
+    }
+  }
+
+  @Test
+  void ringWithoutNodesIsRejected() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new ConsistentHashRing(Arrays.asList(" ", ""), 64));
+  }
+
+  @Test
+  void clientCopyRoutesLikeTheServer() throws Exception {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    assumeTrue(compiler != null, "needs a JDK to compile the client copy");
+    assertTrue(Files.exists(CLIENT_SOURCE), "client copy not found at " + CLIENT_SOURCE);
+
+    Path out = Files.createTempDirectory("client-ring");
+    assertEquals(0, compiler.run(null, null, null, "-d", out.toString(),
+        CLIENT_SOURCE.toString()));
+    try (URLClassLoader loader = new URLClassLoader(new URL[] {out.toUri().toURL()}, null)) {
+      Class<?> type = loader.loadClass("cs6650.ziqunliu.chatflow.client.websocket."
+          + "ConsistentHashRing");
+      Constructor<?> constructor = type.getConstructor(List.class, int.class);
+      Method nodeFor = type.getMethod("nodeFor", int.class);
+      for (int nodes = 1; nodes <= NODES.size(); nodes++) {
+        for (int virtualNodes : new int[] {1, 64, 160}) {
+          List<String> names = NODES.subList(0, nodes);
+          ConsistentHashRing server = new ConsistentHashRing(names, virtualNodes);
+          Object client = constructor.newInstance(names, virtualNodes);
+          for (int roomId = 0; roomId < 20_000; roomId++) {
+            assertEquals(server.nodeFor(roomId), nodeFor.invoke(client, roomId),
+                nodes + " nodes, " + virtualNodes + " virtual, room " + roomId);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package cs6650.ziqunliu.chatflow.server.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import cs6650.ziqunliu.chatflow.server.model.dto.ChatMessageDTO;
+import cs6650.ziqunliu.chatflow.server.model.event.MessageBroadcastEvent;
+import cs6650.ziqunliu.chatflow.server.model.response.BatchAckResponse;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link BinaryCodec} frames decode to the DTO they were encoded from, alone and in batches,
+ * with any subset of fields; truncated or padded frames decode to null instead of throwing;
+ * and outbound frames have the documented layout or fall back to text.
+ */
+class BinaryCodecTest {
+
+  private static final MessageType[] TYPES = MessageType.values();
+
+  @Test
+  void chatRoundTripsWithEveryFieldSubset() {
+    Random random = new Random(12);
+    for (int flags = 0; flags < 64; flags++) {
+      for (int i = 0; i < 20; i++) {
+        ChatMessageDTO dto = randomChat(random, flags);
+        byte[] frame = bytes(BinaryCodec.encodeChat(dto));
+        assertEquals(BinaryCodec.CHAT, BinaryCodec.typeOf(frame));
+        assertEquals(dto, BinaryCodec.decodeChat(frame));
+      }
+    }
+  }
+
+  @Test
+  void batchRoundTripsInOrder() {
+    Random random = new Random(13);
+    List<ChatMessageDTO> items = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      items.add(randomChat(random, random.nextInt(64)));
+    }
+    byte[] frame = batch(items);
+    assertEquals(BinaryCodec.BATCH, BinaryCodec.typeOf(frame));
+    assertEquals(items, BinaryCodec.decodeBatch(frame));
+    assertEquals(0, BinaryCodec.decodeBatch(batch(new ArrayList<>())).size());
+  }
+
+  @Test
+  void truncatedOrPaddedFramesAreMalformed() {
+    Random random = new Random(14);
+    ChatMessageDTO dto = randomChat(random, 63);
+    byte[] chat = bytes(BinaryCodec.encodeChat(dto));
+    for (int length = 0; length < chat.length; length++) {
+      assertNull(BinaryCodec.decodeChat(Arrays.copyOf(chat, length)), "length " + length);
+    }
+    assertNull(BinaryCodec.decodeChat(Arrays.copyOf(chat, chat.length + 1)));
+
+    byte[] frame = batch(Arrays.asList(dto, randomChat(random, 63)));
+    for (int length = 0; length < frame.length; length++) {
+      assertNull(BinaryCodec.decodeBatch(Arrays.copyOf(frame, length)), "length " + length);
+    }
+    assertNull(BinaryCodec.decodeBatch(Arrays.copyOf(frame, frame.length + 1)));
+    // Unknown flag bits and a count the frame cannot hold
+    assertNull(BinaryCodec.decodeChat(new byte[] {BinaryCodec.CHAT, 0x40}));
+    assertNull(BinaryCodec.decodeBatch(new byte[] {BinaryCodec.BATCH, 0x7F, 0}));
+    assertEquals(-1, BinaryCodec.typeOf(new byte[0]));
+  }
+
+  @Test
+  void unknownMessageTypeDecodesToNull() {
+    ChatMessageDTO dto = BinaryCodec.decodeChat(new byte[] {BinaryCodec.CHAT, 0x10, 9});
+    assertNull(dto.getMessageType());
+  }
+
+  @Test
+  void batchAckHasTheDocumentedLayout() {
+    byte[] frame = bytes(BinaryCodec.encode(new BatchAckResponse("300", 2, new int[] {0, 3, 0})));
+    // roomId 300 is the two-byte varint AC 02
+    assertArrayEquals(new byte[] {BinaryCodec.BATCH_ACK, (byte) 0xAC, 0x02, 2, 3, 0, 3, 0},
+        frame);
+  }
+
+  @Test
+  void broadcastOutsideTheBinaryRangesFallsBackToText() {
+    MessageBroadcastEvent event = new MessageBroadcastEvent("SUCCESS", "7",
+        "2024-01-01T00:00:00.123456Z", "42", "user42", "hello", "2024-01-01T00:00:00Z", "TEXT");
+    event.setSequence(5);
+    assertEquals(BinaryCodec.BROADCAST, BinaryCodec.typeOf(bytes(BinaryCodec.encode(event))));
+
+    event.setClientTimestamp("+1000000000-01-01T00:00:00Z");
+    assertNull(BinaryCodec.encode(event));
+    event.setClientTimestamp("2024-01-01T00:00:00Z");
+    event.setUserId("not a number");
+    assertNull(BinaryCodec.encode(event));
+    assertNull(BinaryCodec.encode("no binary form"));
+  }
+
+  private static ChatMessageDTO randomChat(Random random, int flags) {
+    ChatMessageDTO dto = new ChatMessageDTO();
+    if ((flags & 1) != 0) {
+      dto.setUserId(Long.toString(random.nextBoolean() ? random.nextInt(100_000) + 1
+          : random.nextLong()));
+    }
+    if ((flags & 2) != 0) {
+      dto.setUsername("user" + random.nextInt(100_000));
+    }
+    if ((flags & 4) != 0) {
+      dto.setMessage(randomText(random));
+    }
+    if ((flags & 8) != 0) {
+      // Whole seconds, millis and micros, before and after the epoch
+      long micros = random.nextLong() % 4_000_000_000_000_000L;
+      micros -= micros % (random.nextBoolean() ? 1_000_000 : random.nextBoolean() ? 1_000 : 1);
+      dto.setTimestamp(Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+          Math.floorMod(micros, 1_000_000L) * 1_000).toString());
+    }
+    if ((flags & 16) != 0) {
+      dto.setMessageType(TYPES[random.nextInt(TYPES.length)]);
+    }
+    if ((flags & 32) != 0) {
+      dto.setMessageId(random.nextBoolean() ? "" : "m-" + random.nextInt());
+    }
+    return dto;
+  }
+
+  private static String randomText(Random random) {
+    StringBuilder sb = new StringBuilder();
+    int length = random.nextInt(random.nextInt(10) == 0 ? 2_000 : 40);
+    for (int i = 0; i < length; i++) {
+      switch (random.nextInt(4)) {
+        case 0:
+          sb.append('é');
+          break;
+        case 1:
+          sb.appendCodePoint(0x1F600);
+          break;
+        default:
+          sb.append((char) ('a' + random.nextInt(26)));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * A BATCH frame as a binary client builds it: the count, then each CHAT frame without its
+   * type byte.
+   */
+  private static byte[] batch(List<ChatMessageDTO> items) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(BinaryCodec.BATCH);
+    int count = items.size();
+    while ((count & ~0x7F) != 0) {
+      out.write((count & 0x7F) | 0x80);
+      count >>>= 7;
+    }
+    out.write(count);
+    for (ChatMessageDTO dto : items) {
+      byte[] chat = bytes(BinaryCodec.encodeChat(dto));
+      out.write(chat, 1, chat.length - 1);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] bytes(ByteBuffer buffer) {
+    byte[] out = new byte[buffer.remaining()];
+    buffer.duplicate().get(out);
+    return out;
+  }
+}
@@ -0,0 +1,225 @@
+package cs6650.ziqunliu.chatflow.server.codec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import cs6650.ziqunliu.chatflow.server.model.dto.ChatMessageDTO;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link ChatMessageDecoder} must give exactly what Gson gives: the same DTO, or an exception
+ * where Gson throws. Hand-picked edge cases come first, then a seeded corpus of mutated frames;
+ * both exercise the fast path and its hand-off to Gson.
+ */
+class ChatMessageDecoderTest {
+
+  private static final Gson GSON = new Gson();
+
+  private static final String VALID = "{\"userId\":\"42\",\"username\":\"user42\","
+      + "\"message\":\"hello world\",\"timestamp\":\"2024-01-01T00:00:00.123456Z\","
+      + "\"messageType\":\"TEXT\",\"messageId\":\"m-1\"}";
+
+  private static final List<String> MESSAGES = Arrays.asList(
+      VALID,
+      "{}",
+      "{\"userId\":\"1\"}",
+      " {\"userId\" : \"1\" , \"username\" : \"abc\" } ",
+      "{\t\"userId\":\"1\"\n}",
+      "{\"userId\":1}",
+      "{\"userId\":-1}",
+      "{\"userId\":1.0}",
+      "{\"userId\":1e3}",
+      "{\"userId\":01}",
+      "{\"userId\":true}",
+      "{\"userId\":null}",
+      "{\"userId\":{\"a\":1}}",
+      "{\"userId\":[\"1\"]}",
+      "{\"userId\":\"1\",\"userId\":\"2\"}",
+      "{\"unknown\":\"x\",\"userId\":\"1\"}",
+      "{\"unknown\":{\"nested\":[1,2,{\"a\":null}]},\"userId\":\"1\"}",
+      "{\"unknown\":true,\"other\":null,\"n\":-1.5e-3}",
+      "{\"message\":\"quote \\\" backslash \\\\ slash \\/ tab \\t newline \\n\"}",
+      "{\"message\":\"unicode \\u00e9\\u4e2d\\ud83d\\ude00\"}",
+      "{\"message\":\"raw \u00e9\u4e2d\"}",
+      "{\"message\":\"bad escape \\x\"}",
+      "{\"message\":\"short unicode \\u12\"}",
+      "{\"message\":\"unterminated}",
+      "{\"message\":\"control \u0001 char\"}",
+      "{\"messageType\":\"JOIN\"}",
+      "{\"messageType\":\"LEAVE\"}",
+      "{\"messageType\":\"text\"}",
+      "{\"messageType\":\"UNKNOWN\"}",
+      "{\"messageType\":1}",
+      "{\"messageType\":null}",
+      "{\"messageId\":\"\"}",
+      "{\"userId\":\"1\",}",
+      "{,\"userId\":\"1\"}",
+      "{\"userId\":\"1\"}}",
+      "{\"userId\":\"1\"} trailing",
+      "{\"userId\":\"1\"}{}",
+      "{'userId':'1'}",
+      "{userId:\"1\"}",
+      "{\"userId\":\"1\" // comment\n}",
+      "{\"userId\":\"1\";\"username\":\"abc\"}",
+      "{\"userId\" \"1\"}",
+      "[]",
+      "[{\"userId\":\"1\"}]",
+      "\"string\"",
+      "42",
+      "null",
+      "",
+      "   ",
+      "{",
+      "}",
+      "\ufeff{\"userId\":\"1\"}");
+
+  private static final List<String> BATCHES = Arrays.asList(
+      "[" + VALID + "," + VALID + "]",
+      "[]",
+      " [ ] ",
+      "[null]",
+      "[" + VALID + ",null]",
+      "[1,\"x\",true,[]," + VALID + "]",
+      "[{\"userId\":1},{\"messageType\":\"nope\"}]",
+      "[" + VALID + ",]",
+      "[," + VALID + "]",
+      "[" + VALID + "",
+      "[" + VALID + "] x",
+      VALID,
+      "null",
+      "",
+      "{\"items\":[]}");
+
+  private static final String MUTATIONS = "{}[]\",:\\ 0123456789.-eE+trufalsn/\u00e9\t";
+
+  @Test
+  void edgeCasesDecodeLikeGson() {
+    for (String json : MESSAGES) {
+      assertSameAsGson(json);
+    }
+  }
+
+  @Test
+  void mutatedFramesDecodeLikeGson() {
+    Random random = new Random(3650);
+    for (int i = 0; i < 100_000; i++) {
+      assertSameAsGson(mutate(MESSAGES.get(random.nextInt(MESSAGES.size())), random));
+    }
+  }
+
+  @Test
+  void edgeCaseBatchesDecodeLikeGson() {
+    for (String json : BATCHES) {
+      assertBatchSameAsGson(json);
+    }
+    for (String json : MESSAGES) {
+      assertBatchSameAsGson("[" + json + "]");
+      assertBatchSameAsGson("[" + VALID + "," + json + "]");
+    }
+  }
+
+  @Test
+  void mutatedBatchesDecodeLikeGson() {
+    Random random = new Random(3651);
+    for (int i = 0; i < 50_000; i++) {
+      assertBatchSameAsGson(mutate(BATCHES.get(random.nextInt(BATCHES.size())), random));
+    }
+  }
+
+  @Test
+  void wellFormedFramesTakeTheFastPath() {
+    long before = ChatMessageDecoder.getFallbackCount();
+    ChatMessageDecoder.decode(VALID);
+    ChatMessageDecoder.decodeBatch("[" + VALID + "," + VALID + "]");
+    assertEquals(before, ChatMessageDecoder.getFallbackCount());
+  }
+
+  private static void assertSameAsGson(String json) {
+    Object expected;
+    try {
+      expected = GSON.fromJson(json, ChatMessageDTO.class);
+    } catch (RuntimeException e) {
+      expected = Thrown.INSTANCE;
+    }
+    Object actual;
+    try {
+      actual = ChatMessageDecoder.decode(json);
+    } catch (JsonParseException e) {
+      actual = Thrown.INSTANCE;
+    }
+    assertEquals(expected, actual, json);
+  }
+
+  private static void assertBatchSameAsGson(String json) {
+    Object expected;
+    try {
+      expected = gsonBatch(json);
+    } catch (RuntimeException e) {
+      expected = Thrown.INSTANCE;
+    }
+    Object actual;
+    try {
+      actual = ChatMessageDecoder.decodeBatch(json);
+    } catch (JsonParseException e) {
+      actual = Thrown.INSTANCE;
+    }
+    assertEquals(expected, actual, json);
+    if (actual instanceof List) {
+      // MALFORMED equals an empty message, so check the placeholders by identity too
+      List<?> expectedItems = (List<?>) expected;
+      List<?> actualItems = (List<?>) actual;
+      for (int i = 0; i < actualItems.size(); i++) {
+        assertTrue((expectedItems.get(i) == ChatMessageDecoder.MALFORMED)
+            == (actualItems.get(i) == ChatMessageDecoder.MALFORMED), json + " item " + i);
+      }
+    }
+  }
+
+  // Items bound one by one, so a bad item does not fail the whole batch
+  private static List<ChatMessageDTO> gsonBatch(String json) {
+    JsonElement root = JsonParser.parseString(json);
+    if (!root.isJsonArray()) {
+      throw new JsonParseException("not an array");
+    }
+    List<ChatMessageDTO> items = new ArrayList<>();
+    for (JsonElement item : root.getAsJsonArray()) {
+      try {
+        items.add(GSON.fromJson(item, ChatMessageDTO.class));
+      } catch (RuntimeException e) {
+        items.add(ChatMessageDecoder.MALFORMED);
+      }
+    }
+    return items;
+  }
+
+  // One to three random replacements, insertions or deletions
+  private static String mutate(String seed, Random random) {
+    StringBuilder sb = new StringBuilder(seed);
+    int count = 1 + random.nextInt(3);
+    for (int m = 0; m < count; m++) {
+      char c = MUTATIONS.charAt(random.nextInt(MUTATIONS.length()));
+      int op = sb.length() == 0 ? 1 : random.nextInt(3);
+      if (op == 0) {
+        sb.setCharAt(random.nextInt(sb.length()), c);
+      } else if (op == 1) {
+        sb.insert(random.nextInt(sb.length() + 1), c);
+      } else {
+        sb.deleteCharAt(random.nextInt(sb.length()));
+      }
+    }
+    return sb.toString();
+  }
+
+  // Stands for "threw" in comparisons
+  private enum Thrown {
+    INSTANCE
+  }
+}
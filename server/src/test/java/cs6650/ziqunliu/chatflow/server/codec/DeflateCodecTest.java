@@ -0,0 +1,210 @@
+package cs6650.ziqunliu.chatflow.server.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import cs6650.ziqunliu.chatflow.server.ClientSources;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link DeflateCodec} messages unwrap to the payload they were made from: shared frames,
+ * a context takeover stream that goes on across messages, and payloads too small to compress.
+ * Malformed or oversized input and closed sessions give null. The client's copy of the codec
+ * (client-part2, compiled from source here) reads what the server writes and the other way
+ * round.
+ */
+class DeflateCodecTest {
+
+  private static final Path CLIENT_SOURCE =
+      ClientSources.of("cs6650.ziqunliu.chatflow.client.websocket.DeflateCodec");
+
+  @Test
+  void sharedMessagesRoundTripInAnyOrder() {
+    Random random = new Random(13);
+    DeflateCodec.Session session = new DeflateCodec.Session();
+    try {
+      for (int i = 0; i < 200; i++) {
+        byte[] payload = payload(random);
+        byte[] message = bytes(DeflateCodec.encodeShared(ByteBuffer.wrap(payload)));
+        boolean compressed = payload.length >= ServerConfig.DEFLATE_MIN_BYTES;
+        // Every compressed shared message starts its own stream
+        assertEquals(compressed ? DeflateCodec.COMPRESSED | DeflateCodec.RESET : 0, message[0]);
+        assertArrayEquals(payload, session.decode(message));
+      }
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test
+  void sharedMessagesFromShortLivedThreadsRoundTrip() throws InterruptedException {
+    // One thread per message, as virtual dispatch threads are, all compressing at once
+    Thread[] threads = new Thread[64];
+    byte[][] payloads = new byte[threads.length][];
+    byte[][] messages = new byte[threads.length][];
+    Random random = new Random(16);
+    for (int i = 0; i < threads.length; i++) {
+      int index = i;
+      payloads[i] = payload(random);
+      threads[i] = new Thread(() -> messages[index] =
+          bytes(DeflateCodec.encodeShared(ByteBuffer.wrap(payloads[index]))));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    DeflateCodec.Session session = new DeflateCodec.Session();
+    try {
+      for (int i = 0; i < threads.length; i++) {
+        assertArrayEquals(payloads[i], session.decode(messages[i]), "message " + i);
+      }
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test
+  void takeoverStreamDecodesAcrossMessages() {
+    Random random = new Random(14);
+    Deflater deflater = new Deflater(ServerConfig.DEFLATE_LEVEL, true);
+    deflater.setDictionary(DeflateCodec.DICTIONARY);
+    DeflateCodec.Session session = new DeflateCodec.Session();
+    try {
+      for (int i = 0; i < 200; i++) {
+        byte[] payload = payload(random);
+        int header = DeflateCodec.COMPRESSED | (i == 0 ? DeflateCodec.RESET : 0);
+        assertArrayEquals(payload, session.decode(takeover(deflater, payload, header)));
+      }
+    } finally {
+      deflater.end();
+      session.close();
+    }
+  }
+
+  @Test
+  void badInputAndClosedSessionsGiveNull() {
+    DeflateCodec.Session session = new DeflateCodec.Session();
+    assertNull(session.decode(new byte[0]));
+    byte[] garbage = {(byte) (DeflateCodec.COMPRESSED | DeflateCodec.RESET), (byte) 0xFF, 1, 2};
+    assertNull(session.decode(garbage));
+
+    // Compresses to a few hundred bytes, inflates past the limit
+    byte[] bomb = new byte[ServerConfig.MAX_TEXT_MESSAGE_BYTES + 1];
+    Arrays.fill(bomb, (byte) 'a');
+    assertNull(session.decode(bytes(DeflateCodec.encodeShared(ByteBuffer.wrap(bomb)))));
+
+    byte[] payload = new byte[ServerConfig.DEFLATE_MIN_BYTES * 4];
+    Arrays.fill(payload, (byte) 'b');
+    byte[] message = bytes(DeflateCodec.encodeShared(ByteBuffer.wrap(payload)));
+    assertArrayEquals(payload, session.decode(message));
+    session.close();
+    session.close();
+    assertNull(session.decode(message));
+    assertNull(session.encode(ByteBuffer.wrap(payload)));
+  }
+
+  @Test
+  void sessionEncodesOnlyWithContextTakeover() {
+    assumeTrue(!ServerConfig.DEFLATE_CONTEXT_TAKEOVER, "takeover is on in this JVM");
+    DeflateCodec.Session session = new DeflateCodec.Session();
+    assertNull(session.encode(ByteBuffer.wrap(new byte[1_000])));
+    session.close();
+  }
+
+  @Test
+  void clientCopyReadsAndWritesTheSameMessages() throws Exception {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    assumeTrue(compiler != null, "needs a JDK to compile the client copy");
+    assertTrue(Files.exists(CLIENT_SOURCE), "client copy not found at " + CLIENT_SOURCE);
+
+    Path out = Files.createTempDirectory("client-deflate");
+    assertEquals(0, compiler.run(null, null, null, "-d", out.toString(),
+        CLIENT_SOURCE.toString()));
+    try (URLClassLoader loader = new URLClassLoader(new URL[] {out.toUri().toURL()}, null)) {
+      Class<?> codec = loader.loadClass("cs6650.ziqunliu.chatflow.client.websocket."
+          + "DeflateCodec");
+      Field dictionary = codec.getDeclaredField("DICTIONARY");
+      dictionary.setAccessible(true);
+      assertArrayEquals(DeflateCodec.DICTIONARY, (byte[]) dictionary.get(null));
+
+      Class<?> sessionType = loader.loadClass(codec.getName() + "$Session");
+      Method encode = sessionType.getMethod("encode", ByteBuffer.class);
+      Method decode = sessionType.getMethod("decode", ByteBuffer.class);
+      Method close = sessionType.getMethod("close");
+      Object client = sessionType.getConstructor().newInstance();
+      DeflateCodec.Session server = new DeflateCodec.Session();
+      try {
+        Random random = new Random(15);
+        for (int i = 0; i < 200; i++) {
+          byte[] payload = payload(random);
+          byte[] inbound = bytes((ByteBuffer) encode.invoke(client, ByteBuffer.wrap(payload)));
+          assertArrayEquals(payload, server.decode(inbound), "client to server " + i);
+          ByteBuffer outbound = DeflateCodec.encodeShared(ByteBuffer.wrap(payload));
+          assertArrayEquals(payload, (byte[]) decode.invoke(client, outbound),
+              "server to client " + i);
+        }
+      } finally {
+        close.invoke(client);
+        server.close();
+      }
+    }
+  }
+
+  /**
+   * Broadcast-like JSON of varied length, some of it below the compression threshold.
+   */
+  private static byte[] payload(Random random) {
+    StringBuilder sb = new StringBuilder("{\"status\":\"SUCCESS\",\"roomId\":\"")
+        .append(random.nextInt(20)).append("\",\"message\":\"");
+    int words = random.nextInt(random.nextInt(10) == 0 ? 2_000 : 20);
+    for (int i = 0; i < words; i++) {
+      sb.append(random.nextBoolean() ? "Hello! " : "x" + random.nextInt(1_000_000) + ' ');
+    }
+    String json = sb.append("\"}").toString();
+    return (random.nextInt(5) == 0 ? json.substring(0, Math.min(json.length(), 40)) : json)
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Continue one DEFLATE stream the way a context takeover peer does, tail dropped.
+   */
+  private static byte[] takeover(Deflater deflater, byte[] payload, int header) {
+    deflater.setInput(payload);
+    byte[] out = new byte[payload.length + 64];
+    out[0] = (byte) header;
+    int length = 1;
+    while (true) {
+      length += deflater.deflate(out, length, out.length - length, Deflater.SYNC_FLUSH);
+      if (length < out.length) {
+        break;
+      }
+      out = Arrays.copyOf(out, out.length * 2);
+    }
+    return Arrays.copyOf(out, length - 4);
+  }
+
+  private static byte[] bytes(ByteBuffer buffer) {
+    byte[] out = new byte[buffer.remaining()];
+    buffer.duplicate().get(out);
+    return out;
+  }
+}
@@ -0,0 +1,181 @@
+package cs6650.ziqunliu.chatflow.server.embedded;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.controller.AdminController;
+import cs6650.ziqunliu.chatflow.server.controller.HealthController;
+import cs6650.ziqunliu.chatflow.server.controller.PresenceController;
+import cs6650.ziqunliu.chatflow.server.controller.ServerWebSocketController;
+import cs6650.ziqunliu.chatflow.server.listener.ChatFlowContextListener;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import javax.servlet.Servlet;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.websocket.server.WsSci;
+
+/**
+ * Runs the server in-process on embedded Tomcat, for local benchmarks and anything else that
+ * needs a live endpoint without building and deploying the WAR. Nothing is scanned: the
+ * WebSocket endpoint, the servlets and the lifecycle listener are registered by hand. URLs are
+ * the same as the deployed WAR's ({@code /server/ws/chat/{roomId}}, {@code /server/health},
+ * ...). The startup time is printed; it has not been benchmarked.
+ *
+ * <p>Lives with the tests so the WAR neither bundles nor compiles against Tomcat's
+ * implementation: building it needs {@code org.apache.tomcat.embed:tomcat-embed-core} and
+ * {@code tomcat-embed-websocket} 9.0.x in test scope.
+ *
+ * <pre>
+ * java -cp &lt;server classes, server test classes, gson, tomcat-embed-core,
+ *     tomcat-embed-websocket&gt; \
+ *   cs6650.ziqunliu.chatflow.server.embedded.EmbeddedServer [clientMainClass [args...]]
+ * </pre>
+ *
+ * With a client main class on the classpath (e.g. client-part2's ClientMain), the client runs
+ * in the same JVM with {@code -Dchatflow.uri} pointed at this server, and the JVM exits when
+ * the client returns.
+ */
+public final class EmbeddedServer {
+
+  private static final Logger logger = Logger.getLogger(EmbeddedServer.class.getName());
+
+  private final Tomcat tomcat;
+  private final Connector connector;
+  private final String contextPath;
+  private final Path baseDir;
+
+  private EmbeddedServer(Tomcat tomcat, Connector connector, String contextPath, Path baseDir) {
+    this.tomcat = tomcat;
+    this.connector = connector;
+    this.contextPath = contextPath;
+    this.baseDir = baseDir;
+  }
+
+  /**
+   * Start a server on {@code port} (0 for any free port) under
+   * {@code -Dchatflow.embedded.contextPath}.
+   */
+  public static EmbeddedServer start(int port) throws LifecycleException, IOException {
+    return start(port, ServerConfig.EMBEDDED_CONTEXT_PATH);
+  }
+
+  public static EmbeddedServer start(int port, String contextPath)
+      throws LifecycleException, IOException {
+    Path baseDir = Files.createTempDirectory("chatflow-tomcat");
+    Tomcat tomcat = new Tomcat();
+    tomcat.setBaseDir(baseDir.toString());
+
+    // NIO connector. Tomcat 9's NIO endpoint always runs one acceptor, so only the worker
+    // pool is tunable
+    Connector connector = new Connector("HTTP/1.1");
+    connector.setPort(port);
+    setProperty(connector, "maxThreads", ServerConfig.EMBEDDED_MAX_THREADS);
+    setProperty(connector, "minSpareThreads", ServerConfig.EMBEDDED_MIN_SPARE_THREADS);
+    tomcat.setConnector(connector);
+    tomcat.getHost().setAutoDeploy(false);
+
+    // No docBase, no web.xml and no annotation scanning: everything the WAR finds by its
+    // annotations is listed here
+    Context context = tomcat.addContext(contextPath, null);
+    context.addServletContainerInitializer(new WsSci(),
+        Collections.singleton(ServerWebSocketController.class));
+    context.addApplicationListener(ChatFlowContextListener.class.getName());
+    addServlet(context, "health", new HealthController(), "/health/*");
+    addServlet(context, "presence", new PresenceController(), "/rooms/*");
+    addServlet(context, "admin", new AdminController(), "/admin/*");
+
+    tomcat.start();
+    return new EmbeddedServer(tomcat, connector, contextPath, baseDir);
+  }
+
+  /**
+   * @return the port the server listens on, the actual one if started on port 0
+   */
+  public int getPort() {
+    return connector.getLocalPort();
+  }
+
+  /**
+   * @return the chat endpoint's base URI; append {@code /{roomId}}
+   */
+  public String wsUri() {
+    return "ws://localhost:" + getPort() + contextPath + "/ws/chat";
+  }
+
+  /**
+   * Stop the server. Sessions are drained first by the context listener, as on undeploy.
+   */
+  public void stop() throws LifecycleException {
+    try {
+      tomcat.stop();
+      tomcat.destroy();
+    } finally {
+      deleteQuietly(baseDir);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    long start = System.nanoTime();
+    EmbeddedServer server = start(ServerConfig.EMBEDDED_PORT);
+    System.out.printf("ChatFlow embedded server on %s, started in %d ms%n", server.wsUri(),
+        (System.nanoTime() - start) / 1_000_000);
+
+    if (args.length == 0) {
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          server.stop();
+        } catch (LifecycleException e) {
+          System.err.println("embedded: stop failed: " + e);
+        }
+      }, "chatflow-embedded-stop"));
+      server.tomcat.getServer().await();
+      return;
+    }
+
+    // Load client in the same JVM; an explicit -Dchatflow.uri wins
+    if (System.getProperty("chatflow.uri") == null) {
+      System.setProperty("chatflow.uri", server.wsUri());
+    }
+    int status = 0;
+    try {
+      Class.forName(args[0]).getMethod("main", String[].class)
+          .invoke(null, (Object) Arrays.copyOfRange(args, 1, args.length));
+    } catch (InvocationTargetException e) {
+      logger.log(Level.SEVERE, args[0] + " failed", e.getCause());
+      status = 1;
+    } finally {
+      server.stop();
+    }
+    // The client's WebSocket container may leave non-daemon threads behind
+    System.exit(status);
+  }
+
+  private static void addServlet(Context context, String name, Servlet servlet,
+      String pattern) {
+    Tomcat.addServlet(context, name, servlet);
+    context.addServletMappingDecoded(pattern, name);
+  }
+
+  private static void setProperty(Connector connector, String name, int value) {
+    if (!connector.setProperty(name, Integer.toString(value))) {
+      System.err.println("embedded: connector does not support " + name + ", ignored");
+    }
+  }
+
+  private static void deleteQuietly(Path dir) {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    } catch (IOException e) {
+      // Only a temp directory
+    }
+  }
+}
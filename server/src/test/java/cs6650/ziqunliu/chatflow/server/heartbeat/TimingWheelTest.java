@@ -0,0 +1,109 @@
+package cs6650.ziqunliu.chatflow.server.heartbeat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The wheel fires every entry on exactly its deadline tick: once, on every reschedule, across
+ * extra turns for delays longer than the wheel, and never again once the handler removes it.
+ */
+class TimingWheelTest {
+
+  @Test
+  void entryExpiresOnItsDeadlineTick() {
+    TimingWheel<String> wheel = new TimingWheel<>(8);
+    wheel.add("a", 3);
+    List<Long> fired = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      wheel.advance((item, tick) -> {
+        fired.add(tick);
+        return -1;
+      });
+    }
+    assertEquals(Arrays.asList(3L), fired);
+    assertEquals(0, wheel.size());
+    assertEquals(10, wheel.tick());
+  }
+
+  @Test
+  void delayLongerThanTheWheelWaitsExtraTurns() {
+    TimingWheel<String> wheel = new TimingWheel<>(4);
+    wheel.add("late", 11);
+    List<Long> fired = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      wheel.advance((item, tick) -> {
+        fired.add(tick);
+        return -1;
+      });
+    }
+    assertEquals(Arrays.asList(11L), fired);
+  }
+
+  @Test
+  void rescheduledEntryFiresEveryPeriod() {
+    TimingWheel<String> wheel = new TimingWheel<>(16);
+    wheel.add("periodic", 5);
+    List<Long> fired = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      wheel.advance((item, tick) -> {
+        fired.add(tick);
+        return 7;
+      });
+    }
+    assertEquals(Arrays.asList(5L, 12L, 19L, 26L, 33L), fired);
+    assertEquals(1, wheel.size());
+  }
+
+  @Test
+  void zeroOrTinyDelaysStillMoveForward() {
+    TimingWheel<String> wheel = new TimingWheel<>(8);
+    wheel.add("now", 0);
+    List<Long> fired = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      wheel.advance((item, tick) -> {
+        fired.add(tick);
+        return 0;
+      });
+    }
+    assertEquals(Arrays.asList(1L, 2L, 3L), fired);
+  }
+
+  @Test
+  void manyEntriesWithRandomReschedulesMatchTheirDeadlines() {
+    TimingWheel<Integer> wheel = new TimingWheel<>(32);
+    Random random = new Random(24);
+    Map<Integer, Long> due = new HashMap<>();
+    for (int item = 0; item < 2_000; item++) {
+      long delay = 1 + random.nextInt(100);
+      due.put(item, delay);
+      wheel.add(item, delay);
+    }
+    int[] expired = new int[1];
+    for (int i = 0; i < 1_000; i++) {
+      wheel.advance((item, tick) -> {
+        assertEquals(due.get(item), tick, "item " + item);
+        expired[0]++;
+        if (random.nextInt(4) == 0) {
+          due.remove(item);
+          return -1;
+        }
+        long delay = 1 + random.nextInt(100);
+        due.put(item, tick + delay);
+        return delay;
+      });
+    }
+    assertEquals(due.size(), wheel.size());
+    assertTrue(expired[0] > 2_000, "expired " + expired[0]);
+    for (long deadline : due.values()) {
+      assertTrue(deadline >= wheel.tick(), "overdue " + deadline);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package cs6650.ziqunliu.chatflow.server.history;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The history ring across wraps: whatever it retains is the newest appends, in order and byte
+ * for byte, within both the message and byte limits, and a reader's cursor survives eviction.
+ */
+class RoomHistoryTest {
+
+  private static final int MAX_MESSAGES = 8;
+  private static final int DATA_BYTES = 256;
+
+  @Test
+  void retainsTheNewestFramesAcrossWraps() {
+    RoomHistory history = new RoomHistory(MAX_MESSAGES, DATA_BYTES);
+    List<String> appended = new ArrayList<>();
+    Random random = new Random(42);
+    for (int sequence = 1; sequence <= 2_000; sequence++) {
+      String frame = frame(sequence, random.nextInt(90));
+      history.append(sequence, sequence, utf8(frame));
+      appended.add(frame);
+
+      List<String> out = new ArrayList<>();
+      long[] sequences = new long[MAX_MESSAGES];
+      history.read(0, history.end(), 0, 0, MAX_MESSAGES, out, sequences);
+      assertEquals(history.size(), out.size());
+      assertTrue(!out.isEmpty() && out.size() <= MAX_MESSAGES, "after " + sequence);
+      assertEquals(appended.subList(appended.size() - out.size(), appended.size()), out);
+      int bytes = 0;
+      for (int i = 0; i < out.size(); i++) {
+        assertEquals(sequence - out.size() + 1 + i, sequences[i]);
+        bytes += out.get(i).length();
+      }
+      assertTrue(bytes <= DATA_BYTES, "retained " + bytes + " bytes");
+    }
+  }
+
+  @Test
+  void cursorBehindEvictionResumesAtTheOldest() {
+    RoomHistory history = new RoomHistory(4, DATA_BYTES);
+    for (int sequence = 1; sequence <= 10; sequence++) {
+      history.append(sequence, sequence, utf8(frame(sequence, 10)));
+    }
+    List<String> out = new ArrayList<>();
+    long[] sequences = new long[2];
+    long next = history.read(0, history.end(), 0, 0, 2, out, sequences);
+    assertArrayEquals(new long[] {7, 8}, sequences);
+    next = history.read(next, history.end(), 0, 0, 4, out, new long[4]);
+    assertEquals(history.end(), next);
+    assertEquals(Arrays.asList(frame(7, 10), frame(8, 10), frame(9, 10), frame(10, 10)), out);
+  }
+
+  @Test
+  void filtersBySequenceAndTime() {
+    RoomHistory history = new RoomHistory(MAX_MESSAGES, DATA_BYTES);
+    for (int sequence = 1; sequence <= 6; sequence++) {
+      history.append(sequence, 1000 + sequence, utf8(frame(sequence, 5)));
+    }
+    long[] sequences = new long[MAX_MESSAGES];
+    List<String> out = new ArrayList<>();
+    history.read(0, history.end(), 4, 0, MAX_MESSAGES, out, sequences);
+    assertEquals(Arrays.asList(frame(5, 5), frame(6, 5)), out);
+    out.clear();
+    history.read(0, history.end(), 0, 1003, MAX_MESSAGES, out, sequences);
+    assertArrayEquals(new long[] {3, 4, 5, 6}, Arrays.copyOf(sequences, out.size()));
+  }
+
+  @Test
+  void oversizedFramesAreSkipped() {
+    RoomHistory history = new RoomHistory(MAX_MESSAGES, DATA_BYTES);
+    history.append(1, 1, utf8(frame(1, 10)));
+    history.append(2, 2, utf8(frame(2, DATA_BYTES)));
+    assertEquals(1, history.size());
+  }
+
+  @Test
+  void releasedHistoryIsEmpty() {
+    RoomHistory history = new RoomHistory(MAX_MESSAGES, DATA_BYTES);
+    history.append(1, 1, utf8(frame(1, 10)));
+    history.release();
+    history.append(2, 2, utf8(frame(2, 10)));
+    List<String> out = new ArrayList<>();
+    history.read(0, history.end(), 0, 0, MAX_MESSAGES, out, new long[MAX_MESSAGES]);
+    assertEquals(0, history.size());
+    assertTrue(out.isEmpty());
+  }
+
+  // Sequence number padded to a recognizable frame of about `padding` more bytes
+  private static String frame(int sequence, int padding) {
+    StringBuilder sb = new StringBuilder("{\"sequence\":").append(sequence).append(",\"p\":\"");
+    for (int i = 0; i < padding; i++) {
+      sb.append((char) ('a' + (sequence + i) % 26));
+    }
+    return sb.append("\"}").toString();
+  }
+
+  private static ByteBuffer utf8(String frame) {
+    return ByteBuffer.wrap(frame.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,88 @@
+package cs6650.ziqunliu.chatflow.server.room;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The dedupe window: an accepted id is found until the window expires or enough newer ids
+ * displace it from its set, and fingerprints keep senders and ids apart.
+ */
+class DedupeWindowTest {
+
+  private static final long WINDOW_MS = 1_000;
+
+  @Test
+  void acceptedIdIsFoundUntilTheWindowExpires() {
+    DedupeWindow window = new DedupeWindow(64, WINDOW_MS);
+    long id = DedupeWindow.fingerprint("7", "m-1");
+    assertEquals(0, window.find(id, 0));
+    window.put(id, 42, 100);
+
+    assertEquals(42, window.find(id, 100));
+    assertEquals(42, window.recheck(id, 100 + WINDOW_MS - 1));
+    assertEquals(0, window.find(id, 100 + WINDOW_MS));
+  }
+
+  @Test
+  void expiredIdCanBeAcceptedAgain() {
+    DedupeWindow window = new DedupeWindow(64, WINDOW_MS);
+    long id = DedupeWindow.fingerprint("7", "m-1");
+    window.put(id, 1, 0);
+    window.put(id, 2, WINDOW_MS);
+    assertEquals(2, window.find(id, WINDOW_MS + 1));
+  }
+
+  @Test
+  void fullSetDisplacesItsOldestEntry() {
+    // One set of four ways: every id lands in it
+    DedupeWindow window = new DedupeWindow(4, WINDOW_MS);
+    for (int i = 1; i <= 4; i++) {
+      window.put(i, i, i);
+    }
+    window.put(5, 5, 5);
+
+    assertEquals(0, window.find(1, 5));
+    for (int i = 2; i <= 5; i++) {
+      assertEquals(i, window.find(i, 5));
+    }
+  }
+
+  @Test
+  void zeroCapacityRemembersNothing() {
+    DedupeWindow window = new DedupeWindow(0, WINDOW_MS);
+    window.put(99, 1, 0);
+    assertEquals(0, window.find(99, 0));
+  }
+
+  @Test
+  void retriesAreFoundWhileTheTableHasRoom() {
+    DedupeWindow window = new DedupeWindow(1024, WINDOW_MS);
+    long evictionsBefore = DedupeWindow.getEvictionCount();
+    for (int i = 1; i <= 100; i++) {
+      window.put(DedupeWindow.fingerprint(Integer.toString(i % 10), "m-" + i), i, 0);
+    }
+    for (int i = 1; i <= 100; i++) {
+      assertEquals(i, window.find(DedupeWindow.fingerprint(Integer.toString(i % 10), "m-" + i),
+          WINDOW_MS - 1));
+    }
+    assertEquals(evictionsBefore, DedupeWindow.getEvictionCount());
+  }
+
+  @Test
+  void fingerprintSeparatesSenderFromMessageId() {
+    assertNotEquals(DedupeWindow.fingerprint("1", "23"), DedupeWindow.fingerprint("12", "3"));
+    assertNotEquals(DedupeWindow.fingerprint("1", "m"), DedupeWindow.fingerprint("2", "m"));
+    assertEquals(DedupeWindow.fingerprint("1", "m"), DedupeWindow.fingerprint("1", "m"));
+    Set<Long> seen = new HashSet<>();
+    for (int i = 0; i < 100_000; i++) {
+      long fingerprint = DedupeWindow.fingerprint(Integer.toString(i % 100), "m-" + i);
+      assertNotEquals(0, fingerprint);
+      assertTrue(seen.add(fingerprint), "collision at " + i);
+    }
+  }
+}
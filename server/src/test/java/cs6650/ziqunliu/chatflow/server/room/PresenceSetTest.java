@@ -0,0 +1,212 @@
+package cs6650.ziqunliu.chatflow.server.room;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Presence bitmaps against a sorted set of the same operations, the change journal behind
+ * presence diffs, and a room's claims by several sessions of one user. States created here use
+ * ids far above real rooms and are retired, and their empty WAL directories removed, at the end.
+ */
+class PresenceSetTest {
+
+  private static final int MAX_USER_ID = 100_000;
+  private static final int FIRST_ROOM = 900_000;
+
+  @Test
+  void matchesASortedSetUnderRandomJoinsAndLeaves() {
+    PresenceSet set = new PresenceSet(MAX_USER_ID, 64);
+    TreeSet<Integer> expected = new TreeSet<>();
+    Random random = new Random(21);
+    for (int i = 0; i < 50_000; i++) {
+      // Clustered ids, so chunks fill up and empty out again
+      int userId = random.nextInt(4) * 25_000 + random.nextInt(3_000);
+      if (random.nextBoolean()) {
+        assertEquals(expected.add(userId), set.add(userId));
+      } else {
+        assertEquals(expected.remove(userId), set.remove(userId));
+      }
+    }
+    assertEquals(expected.size(), set.size());
+    assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), set.members());
+    for (int userId = 0; userId <= MAX_USER_ID; userId += 7) {
+      assertEquals(expected.contains(userId), set.contains(userId));
+    }
+  }
+
+  @Test
+  void outOfRangeUsersAreIgnored() {
+    PresenceSet set = new PresenceSet(MAX_USER_ID);
+    assertFalse(set.add(-1));
+    assertFalse(set.add(MAX_USER_ID + PresenceSet.CHUNK_BITS));
+    assertFalse(set.contains(-1));
+    assertEquals(0, set.size());
+  }
+
+  @Test
+  void versionMovesOnlyOnRealChanges() {
+    PresenceSet set = new PresenceSet(MAX_USER_ID);
+    long start = set.version();
+    assertNotEquals(0, start);
+    set.add(5);
+    set.add(5);
+    set.remove(6);
+    assertEquals(start + 1, set.version());
+    set.remove(5);
+    assertEquals(start + 2, set.version());
+  }
+
+  @Test
+  void changedSinceListsEachTouchedUserOnce() {
+    PresenceSet set = new PresenceSet(MAX_USER_ID, 16);
+    long since = set.version();
+    set.add(3);
+    set.add(1);
+    set.remove(3);
+    set.add(2);
+    long until = set.version();
+
+    assertArrayEquals(new int[] {1, 2, 3}, set.changedSince(since, until));
+    assertArrayEquals(new int[] {2, 3}, set.changedSince(since + 2, until));
+    assertArrayEquals(new int[0], set.changedSince(until, until));
+  }
+
+  @Test
+  void changedSinceGivesUpBeyondTheJournal() {
+    PresenceSet set = new PresenceSet(MAX_USER_ID, 16);
+    long since = set.version();
+    for (int userId = 0; userId < 17; userId++) {
+      set.add(userId);
+    }
+    assertNull(set.changedSince(since, set.version()));
+    assertEquals(16, set.changedSince(since + 1, set.version()).length);
+  }
+
+  @Test
+  void versionsOfAnotherSetAreUnknown() {
+    PresenceSet before = new PresenceSet(MAX_USER_ID);
+    before.add(1);
+    PresenceSet after = new PresenceSet(MAX_USER_ID);
+    after.add(2);
+    // Another epoch, even when the change counts line up
+    assertNotEquals(before.version(), after.version());
+    assertNull(after.changedSince(before.version() - 1, after.version()));
+    assertNull(after.changedSince(0, after.version()));
+  }
+
+  @Test
+  void intersectionMatchesMembersOfBoth() {
+    PresenceSet a = new PresenceSet(MAX_USER_ID);
+    PresenceSet b = new PresenceSet(MAX_USER_ID);
+    for (int userId = 0; userId < 5_000; userId += 3) {
+      a.add(userId);
+    }
+    for (int userId = 0; userId < 5_000; userId += 5) {
+      b.add(userId);
+    }
+    int[] both = a.intersect(b);
+    assertEquals(both.length, a.intersectCount(b));
+    for (int userId : both) {
+      assertEquals(0, userId % 15);
+    }
+    assertEquals((4_999 / 15) + 1, both.length);
+  }
+
+  @Test
+  void releaseTakesTheFootprintOffTheTotal() {
+    long before = PresenceSet.getAllocatedBytes();
+    PresenceSet set = new PresenceSet(MAX_USER_ID, 16);
+    for (int userId = 0; userId < MAX_USER_ID; userId += 1_000) {
+      set.add(userId);
+    }
+    assertEquals(before + set.memoryBytes(), PresenceSet.getAllocatedBytes());
+    set.release();
+    set.release();
+    assertEquals(before, PresenceSet.getAllocatedBytes());
+  }
+
+  @Test
+  void userStaysPresentUntilTheirLastSessionLeaves() {
+    RoomState state = RoomRegistry.state(FIRST_ROOM);
+    SessionContext first = session(FIRST_ROOM);
+    SessionContext second = session(FIRST_ROOM);
+
+    assertTrue(state.join(first, 7));
+    assertFalse(state.join(first, 7));
+    assertFalse(state.join(second, 7));
+    assertFalse(state.leave(first, 7));
+    assertFalse(state.leave(first, 7));
+    assertTrue(state.getPresence().contains(7));
+    assertEquals(1, state.leaveAll(second));
+    assertFalse(state.getPresence().contains(7));
+    // A released session can no longer claim anyone
+    assertFalse(state.join(second, 8));
+    assertFalse(state.getPresence().contains(8));
+  }
+
+  @Test
+  void concurrentSessionsLeaveNoUserBehind() throws InterruptedException {
+    RoomState state = RoomRegistry.state(FIRST_ROOM + 1);
+    int threads = 4;
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      SessionContext ctx = session(FIRST_ROOM + 1);
+      Random random = new Random(t);
+      workers[t] = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < 20_000; i++) {
+          int userId = random.nextInt(64);
+          if (random.nextBoolean()) {
+            state.join(ctx, userId);
+          } else {
+            state.leave(ctx, userId);
+          }
+        }
+        state.leaveAll(ctx);
+      });
+      workers[t].start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    assertEquals(0, state.getPresence().size());
+  }
+
+  @AfterAll
+  static void retireStates() throws IOException {
+    RoomRegistry.sweep(Long.MAX_VALUE);
+    for (int roomId = FIRST_ROOM; roomId <= FIRST_ROOM + 1; roomId++) {
+      Files.deleteIfExists(Paths.get(ServerConfig.WAL_DIR, "room-" + roomId));
+    }
+    try {
+      Files.deleteIfExists(Paths.get(ServerConfig.WAL_DIR));
+    } catch (DirectoryNotEmptyException e) {
+      // A real WAL lives there
+    }
+  }
+
+  private static SessionContext session(int roomId) {
+    return new SessionContext(null, roomId, Integer.toString(roomId), null);
+  }
+}
@@ -0,0 +1,187 @@
+package cs6650.ziqunliu.chatflow.server.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import cs6650.ziqunliu.chatflow.server.model.dto.ChatMessageDTO;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link MessageValidationService#validate} against the original rules it replaced, which
+ * parsed userId with {@link Long#parseLong} and the timestamp with {@link Instant#parse} and
+ * caught their exceptions ({@link #legacyValidate}). Hand-picked edge cases come first, then a
+ * seeded corpus of mutated userIds and timestamps, mostly malformed.
+ */
+class MessageValidationServiceTest {
+
+  private static final List<String> TIMESTAMPS = Arrays.asList(
+      "2024-01-01T00:00:00Z", "2024-01-01T00:00:00.123456789Z", "2024-01-01T00:00:00.Z",
+      "2024-01-01T00:00:00.1234567890Z", "2024-01-01t00:00:00z", "2024-02-29T12:00:00Z",
+      "2023-02-29T12:00:00Z", "2100-02-29T12:00:00Z", "2000-02-29T12:00:00Z",
+      "0000-02-29T00:00:00Z", "2024-04-31T00:00:00Z", "2024-13-01T00:00:00Z",
+      "2024-00-01T00:00:00Z", "2024-01-00T00:00:00Z", "2023-12-31T24:00:00Z",
+      "2023-12-31T24:00:00.000Z", "2023-12-31T24:00:00.001Z", "2023-12-31T24:01:00Z",
+      "2023-12-31T25:00:00Z", "2023-12-31T23:59:60Z", "2023-12-31T23:59:60.5Z",
+      "2023-12-31T12:30:60Z", "2023-12-31T23:60:00Z", "9999-12-31T24:00:00Z",
+      "+2024-01-01T00:00:00Z", "-0001-01-01T00:00:00Z", "+12345-01-01T00:00:00Z",
+      "12345-01-01T00:00:00Z", "+1000000000-12-31T23:59:59Z", "-1000000000-01-01T00:00:00Z",
+      "+10000000000-01-01T00:00:00Z", "+-2024-01-01T00:00:00Z", "202-01-01T00:00:00Z",
+      "2024-01-01T00:00:00+01:00", "2024-01-01T00:00:00-01:30:15", "2024-01-01T00:00:00+01",
+      "2024-01-01T00:00:00+0100", "2024-01-01T00:00:00+01:0", "2024-01-01T00:00:00+18:00",
+      "2024-01-01T00:00:00+19:00", "2024-01-01T00:00:00Z+01:00", "2024-01-01T00:00:00+01:00Z",
+      "2024-01-01T00:00:00", "2024-01-01 00:00:00Z", "2024-01-01T00:00Z", "2024-1-01T00:00:00Z",
+      "2024-01-01T00:00:00ZZ", "2024-01-01T00:00:00z ", " 2024-01-01T00:00:00Z",
+      "2024-01-01T00:00:00\u0660Z", "\u0662024-01-01T00:00:00Z", "", "Z", "T", "-", "+");
+
+  private static final List<String> USER_IDS = Arrays.asList(
+      "1", "100000", "100001", "0", "-1", "+1", "+", "-", "", " 1", "1 ", "01", "000100000",
+      "1.0", "1e3", "\u0661\u0662", "\uff11", "9223372036854775807", "9223372036854775808",
+      "-9223372036854775808", "-9223372036854775809", "99999999999999999999", "0x10", "abc");
+
+  private static final String MUTATIONS = "0123456789+-:.TtZz x\u0660";
+
+  @Test
+  void timestampEdgeCasesMatchInstantParse() {
+    for (String timestamp : TIMESTAMPS) {
+      assertSame(message("5", timestamp));
+    }
+  }
+
+  @Test
+  void mutatedTimestampsMatchInstantParse() {
+    Random random = new Random(6650);
+    for (int i = 0; i < 200_000; i++) {
+      String seed = TIMESTAMPS.get(random.nextInt(TIMESTAMPS.size()));
+      assertSame(message("5", mutate(seed, random)));
+    }
+  }
+
+  @Test
+  void userIdsMatchParseLong() {
+    Random random = new Random(6651);
+    List<String> corpus = new ArrayList<>(USER_IDS);
+    for (int i = 0; i < 50_000; i++) {
+      corpus.add(mutate(USER_IDS.get(random.nextInt(USER_IDS.size())), random));
+    }
+    for (String userId : corpus) {
+      assertSame(message(userId, "2024-01-01T00:00:00Z"));
+    }
+  }
+
+  @Test
+  void otherFieldsMatchLegacyRules() {
+    assertSame(null);
+    ChatMessageDTO base = message("5", "2024-01-01T00:00:00Z");
+    for (String username : Arrays.asList(null, "", "ab", "abc", "a_c", "abcdefghij0123456789",
+        "abcdefghij0123456789x", "\u00e9bc")) {
+      ChatMessageDTO dto = copy(base);
+      dto.setUsername(username);
+      assertSame(dto);
+    }
+    char[] longMessage = new char[501];
+    Arrays.fill(longMessage, 'm');
+    for (String message : Arrays.asList(null, "", "m", new String(longMessage, 0, 500),
+        new String(longMessage))) {
+      ChatMessageDTO dto = copy(base);
+      dto.setMessage(message);
+      assertSame(dto);
+    }
+    ChatMessageDTO noType = copy(base);
+    noType.setMessageType(null);
+    assertSame(noType);
+    ChatMessageDTO noUser = copy(base);
+    noUser.setUserId(null);
+    noUser.setTimestamp("not a timestamp");
+    assertSame(noUser);
+  }
+
+  private static void assertSame(ChatMessageDTO dto) {
+    assertEquals(legacyValidate(dto), MessageValidationService.validate(dto),
+        dto == null ? "null message" : dto.getUserId() + " / " + dto.getTimestamp());
+  }
+
+  private static ChatMessageDTO message(String userId, String timestamp) {
+    return new ChatMessageDTO(userId, "user5", "hello", timestamp, MessageType.TEXT);
+  }
+
+  private static ChatMessageDTO copy(ChatMessageDTO dto) {
+    return new ChatMessageDTO(dto.getUserId(), dto.getUsername(), dto.getMessage(),
+        dto.getTimestamp(), dto.getMessageType());
+  }
+
+  // One to three random replacements, insertions or deletions
+  private static String mutate(String seed, Random random) {
+    StringBuilder sb = new StringBuilder(seed);
+    int count = 1 + random.nextInt(3);
+    for (int m = 0; m < count; m++) {
+      char c = MUTATIONS.charAt(random.nextInt(MUTATIONS.length()));
+      int op = sb.length() == 0 ? 1 : random.nextInt(3);
+      if (op == 0) {
+        sb.setCharAt(random.nextInt(sb.length()), c);
+      } else if (op == 1) {
+        sb.insert(random.nextInt(sb.length() + 1), c);
+      } else {
+        sb.deleteCharAt(random.nextInt(sb.length()));
+      }
+    }
+    return sb.toString();
+  }
+
+  // The validation as it was before the hand-written parsers; messageId did not exist yet
+  private static String legacyValidate(ChatMessageDTO jsonMessage) {
+    if (jsonMessage == null) {
+      return "Incoming message is null.";
+    }
+    String userIdStr = jsonMessage.getUserId();
+    if (userIdStr == null) {
+      return "userId missing";
+    }
+    try {
+      long userId = Long.parseLong(userIdStr);
+      if (userId < 1 || userId > 100000) {
+        return "userId must be between 1 and 100,000";
+      }
+    } catch (NumberFormatException e) {
+      return "userId invalid";
+    }
+    String username = jsonMessage.getUsername();
+    if (username == null) {
+      return "username missing";
+    }
+    if (username.length() < 3 || username.length() > 20) {
+      return "username must be between 3 and 20";
+    }
+    for (int i = 0; i < username.length(); i++) {
+      char ch = username.charAt(i);
+      if (!((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9'))) {
+        return "username invalid";
+      }
+    }
+    String message = jsonMessage.getMessage();
+    if (message == null) {
+      return "message missing";
+    }
+    if (message.length() < 1 || message.length() > 500) {
+      return "message must be between 1 and 500";
+    }
+    String timestamp = jsonMessage.getTimestamp();
+    if (timestamp == null) {
+      return "Timestamp missing";
+    }
+    try {
+      Instant.parse(timestamp);
+    } catch (DateTimeParseException e) {
+      return "Timestamp invalid";
+    }
+    if (jsonMessage.getMessageType() == null) {
+      return "messageType invalid";
+    }
+    return null;
+  }
+}
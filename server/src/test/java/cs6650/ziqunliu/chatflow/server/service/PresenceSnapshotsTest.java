@@ -0,0 +1,136 @@
+package cs6650.ziqunliu.chatflow.server.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.google.gson.Gson;
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import cs6650.ziqunliu.chatflow.server.model.response.PresenceResponse;
+import cs6650.ziqunliu.chatflow.server.room.PresenceSet;
+import cs6650.ziqunliu.chatflow.server.room.RoomRegistry;
+import cs6650.ziqunliu.chatflow.server.room.RoomState;
+import cs6650.ziqunliu.chatflow.server.room.SessionContext;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Presence responses as a polling client sees them: a snapshot, then diffs that applied in
+ * order give the next snapshot, cached bytes while nothing changes, and a snapshot again
+ * whenever a diff cannot be trusted. Rooms use ids far above real ones; their empty WAL
+ * directories are removed at the end.
+ */
+class PresenceSnapshotsTest {
+
+  private static final Gson GSON = new Gson();
+  private static final int FIRST_ROOM = 910_000;
+
+  @Test
+  void diffsAppliedInOrderGiveTheNextSnapshot() {
+    int roomId = FIRST_ROOM;
+    RoomState state = RoomRegistry.state(roomId);
+    SessionContext session = session(roomId);
+    for (int userId = 1; userId <= 5; userId++) {
+      PresenceService.apply(state, session, userId, MessageType.JOIN);
+    }
+    PresenceResponse first = parse(PresenceSnapshots.snapshot(roomId));
+    assertEquals("SNAPSHOT", first.getStatus());
+    assertArrayEquals(new int[] {1, 2, 3, 4, 5}, first.getMembers());
+
+    PresenceService.apply(state, session, 2, MessageType.LEAVE);
+    PresenceService.apply(state, session, 9, MessageType.JOIN);
+    PresenceService.apply(state, session, 4, MessageType.LEAVE);
+    PresenceService.apply(state, session, 4, MessageType.JOIN);
+    PresenceResponse diff = parse(PresenceSnapshots.since(roomId, first.getVersion()));
+    assertEquals("DIFF", diff.getStatus());
+    assertEquals(first.getVersion(), (long) diff.getSinceVersion());
+    // User 4 left and came back: reported by where they are now
+    assertArrayEquals(new int[] {4, 9}, diff.getJoined());
+    assertArrayEquals(new int[] {2}, diff.getLeft());
+
+    PresenceResponse second = parse(PresenceSnapshots.snapshot(roomId));
+    assertEquals(second.getVersion(), diff.getVersion());
+    assertArrayEquals(new int[] {1, 3, 4, 5, 9}, second.getMembers());
+    assertEquals(second.getCount(), diff.getCount());
+  }
+
+  @Test
+  void upToDateClientGetsTheSameCachedBytes() {
+    int roomId = FIRST_ROOM + 1;
+    RoomState state = RoomRegistry.state(roomId);
+    PresenceService.apply(state, session(roomId), 1, MessageType.JOIN);
+    long version = PresenceService.version(roomId);
+
+    byte[] unchanged = PresenceSnapshots.since(roomId, version);
+    assertSame(unchanged, PresenceSnapshots.since(roomId, version));
+    assertSame(PresenceSnapshots.snapshot(roomId), PresenceSnapshots.snapshot(roomId));
+    PresenceResponse response = parse(unchanged);
+    assertEquals("DIFF", response.getStatus());
+    assertEquals(0, response.getJoined().length + response.getLeft().length);
+  }
+
+  @Test
+  void versionBeyondTheJournalGetsASnapshot() {
+    int roomId = FIRST_ROOM + 2;
+    RoomState state = RoomRegistry.state(roomId);
+    SessionContext session = session(roomId);
+    long since = PresenceService.version(roomId);
+    for (int userId = 1; userId <= ServerConfig.PRESENCE_JOURNAL * 2 + 1; userId++) {
+      PresenceService.apply(state, session, userId, MessageType.JOIN);
+    }
+    assertEquals("SNAPSHOT", parse(PresenceSnapshots.since(roomId, since)).getStatus());
+  }
+
+  @Test
+  void versionOfAnEarlierStateGetsASnapshot() {
+    int roomId = FIRST_ROOM + 3;
+    RoomState state = RoomRegistry.state(roomId);
+    PresenceService.apply(state, session(roomId), 1, MessageType.JOIN);
+    // A version handed out by another set, as a retired state of this room would have
+    PresenceSet earlier = new PresenceSet(1_000);
+    earlier.add(1);
+    long stale = earlier.version();
+    PresenceService.apply(state, session(roomId), 2, MessageType.JOIN);
+
+    PresenceResponse response = parse(PresenceSnapshots.since(roomId, stale));
+    assertEquals("SNAPSHOT", response.getStatus());
+    assertArrayEquals(new int[] {1, 2}, response.getMembers());
+    assertEquals("SNAPSHOT", parse(PresenceSnapshots.since(roomId, 0)).getStatus());
+  }
+
+  @Test
+  void roomNobodyJoinedIsEmptyAtVersionZero() {
+    int roomId = FIRST_ROOM + 99;
+    PresenceResponse response = parse(PresenceSnapshots.snapshot(roomId));
+    assertEquals(0, response.getVersion());
+    assertEquals(0, response.getCount());
+    assertEquals("DIFF", parse(PresenceSnapshots.since(roomId, 0)).getStatus());
+    assertEquals(null, RoomRegistry.existingState(roomId));
+  }
+
+  @AfterAll
+  static void removeWalDirectories() throws IOException {
+    for (int roomId = FIRST_ROOM; roomId <= FIRST_ROOM + 3; roomId++) {
+      Files.deleteIfExists(Paths.get(ServerConfig.WAL_DIR, "room-" + roomId));
+    }
+    try {
+      Files.deleteIfExists(Paths.get(ServerConfig.WAL_DIR));
+    } catch (DirectoryNotEmptyException e) {
+      // A real WAL lives there
+    }
+  }
+
+  private static SessionContext session(int roomId) {
+    return new SessionContext(null, roomId, Integer.toString(roomId), null);
+  }
+
+  private static PresenceResponse parse(byte[] body) {
+    return GSON.fromJson(new String(body, StandardCharsets.UTF_8), PresenceResponse.class);
+  }
+}
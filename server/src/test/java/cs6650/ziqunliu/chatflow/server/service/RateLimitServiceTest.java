@@ -0,0 +1,96 @@
+package cs6650.ziqunliu.chatflow.server.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * GCRA token buckets on a synthetic clock: a fresh user gets the configured burst and no more,
+ * tokens come back one interval at a time, idle time never banks more than a burst, and users
+ * and message types do not share buckets. Every test uses its own userIds, since the buckets
+ * are server-wide, and times far from the ones real traffic in the same JVM would use.
+ */
+class RateLimitServiceTest {
+
+  private static final long SECOND = 1_000_000_000L;
+  private static final long START = 1_000_000 * SECOND;
+  private static final int BURST = Math.max(1, ServerConfig.RATE_LIMIT_TEXT_BURST);
+  private static final long INTERVAL =
+      SECOND / Math.max(1, ServerConfig.RATE_LIMIT_TEXT_PER_SECOND);
+
+  @BeforeEach
+  void requireTextLimit() {
+    assumeTrue(ServerConfig.RATE_LIMIT_ENABLED && ServerConfig.RATE_LIMIT_TEXT_PER_SECOND > 0,
+        "TEXT rate limit disabled");
+  }
+
+  @Test
+  void freshUserGetsExactlyTheBurst() {
+    assertEquals(BURST, drain(101, START));
+  }
+
+  @Test
+  void tokensComeBackOneIntervalAtATime() {
+    drain(102, START);
+    assertFalse(acquire(102, START + INTERVAL - 1));
+    assertTrue(acquire(102, START + INTERVAL));
+    assertFalse(acquire(102, START + INTERVAL));
+    // Three intervals later, three tokens
+    assertEquals(3, drain(102, START + 4 * INTERVAL));
+  }
+
+  @Test
+  void idleTimeBanksAtMostOneBurst() {
+    drain(103, START);
+    assertEquals(BURST, drain(103, START + 3600 * SECOND));
+  }
+
+  @Test
+  void sustainedRateIsThePerSecondLimit() {
+    drain(104, START);
+    int accepted = 0;
+    // Ten attempts per interval for ten seconds
+    for (long now = START; now < START + 10 * SECOND; now += INTERVAL / 10) {
+      if (acquire(104, now)) {
+        accepted++;
+      }
+    }
+    assertTrue(Math.abs(accepted - 10 * SECOND / INTERVAL) <= 1, "accepted " + accepted);
+  }
+
+  @Test
+  void usersAndTypesHaveSeparateBuckets() {
+    drain(105, START);
+    assertFalse(acquire(105, START));
+    assertTrue(acquire(106, START));
+    boolean joinLimited = ServerConfig.RATE_LIMIT_JOIN_PER_SECOND > 0;
+    assertTrue(!joinLimited || RateLimitService.tryAcquire(105, MessageType.JOIN, START));
+  }
+
+  @Test
+  void refusalsAreCounted() {
+    long before = RateLimitService.getLimitedCount(MessageType.TEXT);
+    drain(107, START);
+    assertEquals(before + 1, RateLimitService.getLimitedCount(MessageType.TEXT));
+  }
+
+  // Take tokens at one instant until refused; returns how many were granted
+  private static int drain(int userId, long now) {
+    int granted = 0;
+    while (acquire(userId, now)) {
+      granted++;
+      assertTrue(granted <= BURST, "more than a burst granted");
+    }
+    return granted;
+  }
+
+  private static boolean acquire(int userId, long now) {
+    return RateLimitService.tryAcquire(userId, MessageType.TEXT, now);
+  }
+}
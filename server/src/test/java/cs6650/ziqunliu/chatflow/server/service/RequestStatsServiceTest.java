@@ -0,0 +1,119 @@
+package cs6650.ziqunliu.chatflow.server.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import cs6650.ziqunliu.chatflow.server.config.ServerConfig;
+import cs6650.ziqunliu.chatflow.server.model.MessageType;
+import cs6650.ziqunliu.chatflow.server.service.RequestStatsService.Outcome;
+import cs6650.ziqunliu.chatflow.server.service.RequestStatsService.Snapshot;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Striped message counters: concurrent threads on many stripes lose no count, every message
+ * lands in its own (room, type, outcome) cell or the shared other-room and unknown-type ones,
+ * and draining moves counts into the totals without losing or repeating any. The counters are
+ * global, so every check compares against what was there before.
+ */
+class RequestStatsServiceTest {
+
+  private static final MessageType[] TYPES = MessageType.values();
+  private static final Outcome[] OUTCOMES = Outcome.values();
+
+  @Test
+  void concurrentRecordsAllAddUp() throws InterruptedException {
+    int threads = 16;
+    int perThread = 50_000;
+    int rooms = Math.min(8, ServerConfig.STATS_ROOMS);
+    Snapshot before = RequestStatsService.totals();
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    long[][][] expected = new long[rooms][TYPES.length][OUTCOMES.length];
+    for (int t = 0; t < threads; t++) {
+      Random random = new Random(t);
+      int[][] ops = new int[perThread][3];
+      for (int[] op : ops) {
+        op[0] = random.nextInt(rooms);
+        op[1] = random.nextInt(TYPES.length);
+        op[2] = random.nextInt(OUTCOMES.length);
+        expected[op[0]][op[1]][op[2]]++;
+      }
+      workers[t] = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int[] op : ops) {
+          RequestStatsService.record(op[0], TYPES[op[1]], OUTCOMES[op[2]]);
+        }
+      });
+      workers[t].start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    Snapshot after = RequestStatsService.totals();
+    long total = 0;
+    for (int room = 0; room < rooms; room++) {
+      for (MessageType type : TYPES) {
+        for (Outcome outcome : OUTCOMES) {
+          long count = expected[room][type.ordinal()][outcome.ordinal()];
+          assertEquals(count, after.count(room, type, outcome) - before.count(room, type, outcome),
+              room + " " + type + " " + outcome);
+          total += count;
+        }
+      }
+    }
+    assertEquals((long) threads * perThread, total);
+  }
+
+  @Test
+  void unknownRoomsAndTypesShareTheirCells() {
+    Snapshot before = RequestStatsService.totals();
+    RequestStatsService.record(-5, MessageType.TEXT, Outcome.REJECTED);
+    RequestStatsService.record(ServerConfig.STATS_ROOMS, MessageType.TEXT, Outcome.REJECTED);
+    RequestStatsService.record(Integer.MAX_VALUE, MessageType.TEXT, Outcome.REJECTED);
+    RequestStatsService.record(0, null, Outcome.REJECTED);
+    RequestStatsService.record(0, null, Outcome.REJECTED);
+    Snapshot after = RequestStatsService.totals();
+
+    int other = RequestStatsService.OTHER_ROOM;
+    assertEquals(3, after.count(other, MessageType.TEXT, Outcome.REJECTED)
+        - before.count(other, MessageType.TEXT, Outcome.REJECTED));
+    assertEquals(2, after.count(0, null, Outcome.REJECTED)
+        - before.count(0, null, Outcome.REJECTED));
+    assertEquals(5, after.total(Outcome.REJECTED) - before.total(Outcome.REJECTED));
+
+    Map<String, Long> visited = new HashMap<>();
+    after.forEach((roomId, type, outcome, count) ->
+        visited.put(roomId + " " + type + " " + outcome, count));
+    assertEquals(after.count(other, MessageType.TEXT, Outcome.REJECTED),
+        (long) visited.get(other + " TEXT REJECTED"));
+    assertEquals(after.count(0, null, Outcome.REJECTED), (long) visited.get("0 null REJECTED"));
+    assertTrue(visited.values().stream().allMatch(count -> count > 0));
+  }
+
+  @Test
+  void drainingKeepsTotalsAndCountsEachMessageOnce() {
+    RequestStatsService.snapshotAndReset();
+    Snapshot before = RequestStatsService.totals();
+    for (int i = 0; i < 7; i++) {
+      RequestStatsService.record(1, MessageType.JOIN, Outcome.DUPLICATE);
+    }
+    Snapshot interval = RequestStatsService.snapshotAndReset();
+    assertEquals(7, interval.count(1, MessageType.JOIN, Outcome.DUPLICATE));
+    assertTrue(interval.getIntervalNanos() > 0);
+    assertEquals(0, RequestStatsService.snapshotAndReset().total(Outcome.DUPLICATE));
+
+    Snapshot after = RequestStatsService.totals();
+    assertEquals(7, after.count(1, MessageType.JOIN, Outcome.DUPLICATE)
+        - before.count(1, MessageType.JOIN, Outcome.DUPLICATE));
+  }
+}
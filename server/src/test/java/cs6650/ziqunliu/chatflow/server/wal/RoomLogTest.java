@@ -0,0 +1,221 @@
+package cs6650.ziqunliu.chatflow.server.wal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Recovery of a room log: the first torn or corrupt record ends it, later segments are
+ * dropped, and appends continue after the last intact sequence; reading the tail back gives the
+ * newest intact records in order. Segments are 1 KB, so a few dozen records span several of
+ * them.
+ */
+class RoomLogTest {
+
+  private static final int SEGMENT_BYTES = 1024;
+  // 16-byte header plus a 48-byte payload: 15 records fill a segment
+  private static final int RECORD_BYTES = RoomLog.HEADER_BYTES + 48;
+
+  private Path dir;
+
+  @BeforeEach
+  void createDir() throws IOException {
+    dir = Files.createTempDirectory("room-log-test");
+  }
+
+  @AfterEach
+  void deleteDir() throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  @Test
+  void recoversEverySequenceOfACleanLog() throws IOException {
+    RoomLog log = open();
+    append(log, 1, 40);
+    log.close();
+
+    assertEquals(40, reopenedLastSequence());
+  }
+
+  @Test
+  void flippedPayloadByteEndsTheLogAtThePreviousRecord() throws IOException {
+    RoomLog log = open();
+    append(log, 1, 10);
+    log.close();
+    // Record 8 starts 7 records into the only segment
+    corrupt(segments().get(0), 7 * RECORD_BYTES + RoomLog.HEADER_BYTES + 5);
+
+    RoomLog recovered = open();
+    assertEquals(7, recovered.lastSequence());
+    append(recovered, 8, 3);
+    recovered.close();
+    assertEquals(10, reopenedLastSequence());
+  }
+
+  @Test
+  void tornRecordInAnEarlySegmentDropsTheLaterOnes() throws IOException {
+    RoomLog log = open();
+    append(log, 1, 40);
+    log.close();
+    List<Path> before = segments();
+    assertTrue(before.size() >= 3, "records should span three segments");
+    // Half-written length of the second segment's third record
+    corrupt(before.get(1), 2 * RECORD_BYTES + 1);
+
+    RoomLog recovered = open();
+    assertEquals(15 + 2, recovered.lastSequence());
+    assertEquals(before.subList(0, 2), segments());
+    recovered.close();
+  }
+
+  @Test
+  void preparedSegmentRecoversAsEmpty() throws IOException {
+    RoomLog log = open();
+    append(log, 1, 10);
+    // Past half of the segment: the flusher maps the next one ahead of time
+    log.flush();
+    log.prepare();
+    assertEquals(2, segments().size());
+    log.flush();
+    // Crash: the log is abandoned, never closed (which would delete the prepared segment)
+    RoomLog recovered = open();
+    assertEquals(10, recovered.lastSequence());
+    append(recovered, 11, 5);
+    recovered.close();
+    assertEquals(15, reopenedLastSequence());
+  }
+
+  @Test
+  void segmentsUnmappedByFlushKeepTheirRecords() throws IOException {
+    RoomLog log = open();
+    // Flushing between rolls unmaps each segment an append rolled away from
+    for (long first = 1; first <= 60; first += 10) {
+      append(log, first, 10);
+      log.flush();
+    }
+    assertTrue(segments().size() >= 4, "records should span four segments");
+    append(log, 61, 5);
+    log.close();
+    assertEquals(65, reopenedLastSequence());
+  }
+
+  @Test
+  void tailReadsTheNewestRecordsInOrder() throws IOException {
+    RoomLog log = open();
+    append(log, 1, 40);
+    log.close();
+
+    RoomLog recovered = open();
+    assertEquals(sequences(36, 40), tail(recovered, 5));
+    // Starts in the middle of the second segment
+    assertEquals(sequences(21, 40), tail(recovered, 20));
+    assertEquals(sequences(1, 40), tail(recovered, 100));
+    assertEquals(sequences(1, 0), tail(recovered, 0));
+    append(recovered, 41, 3);
+    assertEquals(sequences(39, 43), tail(recovered, 5));
+    recovered.close();
+  }
+
+  @Test
+  void tailStopsAtTheLastIntactRecord() throws IOException {
+    RoomLog log = open();
+    append(log, 1, 40);
+    log.close();
+    corrupt(segments().get(1), 2 * RECORD_BYTES + RoomLog.HEADER_BYTES + 5);
+
+    RoomLog recovered = open();
+    assertEquals(sequences(8, 17), tail(recovered, 10));
+    recovered.close();
+  }
+
+  @Test
+  void closedLogRefusesAppends() throws IOException {
+    RoomLog log = open();
+    append(log, 1, 1);
+    log.close();
+    log.close();
+    boolean refused = false;
+    try {
+      append(log, 2, 1);
+    } catch (IOException e) {
+      refused = true;
+    }
+    assertTrue(refused);
+    assertFalse(segments().isEmpty());
+  }
+
+  private RoomLog open() throws IOException {
+    return new RoomLog(dir, SEGMENT_BYTES, 64);
+  }
+
+  private long reopenedLastSequence() throws IOException {
+    RoomLog log = open();
+    long last = log.lastSequence();
+    log.close();
+    return last;
+  }
+
+  private static void append(RoomLog log, long first, int count) throws IOException {
+    for (long sequence = first; sequence < first + count; sequence++) {
+      byte[] payload = String.format("%-48d", sequence).getBytes(StandardCharsets.US_ASCII);
+      log.append(sequence, ByteBuffer.wrap(payload));
+    }
+  }
+
+  /**
+   * Sequences read back by {@link RoomLog#readTail}, each checked against its payload.
+   */
+  private static List<Long> tail(RoomLog log, int maxRecords) throws IOException {
+    List<Long> read = new ArrayList<>();
+    log.readTail(maxRecords, (sequence, payload) -> {
+      byte[] bytes = new byte[payload.remaining()];
+      payload.get(bytes);
+      assertEquals(sequence, Long.parseLong(new String(bytes, StandardCharsets.US_ASCII).trim()));
+      read.add(sequence);
+    });
+    return read;
+  }
+
+  private static List<Long> sequences(long first, long last) {
+    List<Long> sequences = new ArrayList<>();
+    for (long sequence = first; sequence <= last; sequence++) {
+      sequences.add(sequence);
+    }
+    return sequences;
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter(file -> file.toString().endsWith(".log")).sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static void corrupt(Path file, long offset) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(offset);
+      int value = raf.read();
+      raf.seek(offset);
+      raf.write(value ^ 0x5A);
+    }
+  }
+}